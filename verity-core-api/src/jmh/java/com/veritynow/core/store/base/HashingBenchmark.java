@@ -0,0 +1,98 @@
+package com.veritynow.core.store.base;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.veritynow.core.store.HashingSession;
+
+/**
+ * Hashing of a file through each path of {@link DefaultHashingService}, per chunk size:
+ *  - stream: InputStream read into the heap, copied into the direct buffer per chunk
+ *  - channel: FileChannel read straight into the direct buffer
+ *  - mapped: session(Path), the file hashed from a read-only mapping
+ *
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Djmh.args=HashingBenchmark
+ * The file is written once per trial and read from the page cache afterwards, so this measures hashing and copying,
+ * not the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class HashingBenchmark {
+
+	@Param({ "XXH3", "SHA-256" })
+	String algo;
+
+	@Param({ "1024", "16384", "131072", "1048576" })
+	int chunkSize;
+
+	@Param({ "67108864" })
+	long contentSize;
+
+	private Path file;
+	private DefaultHashingService hs;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = Files.createTempFile("hashing-benchmark", ".bin");
+		Random random = new Random(42);
+		byte[] buf = new byte[1024 * 1024];
+		try (OutputStream os = Files.newOutputStream(file, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long n = 0; n < contentSize; n += buf.length) {
+				random.nextBytes(buf);
+				os.write(buf, 0, (int) Math.min(buf.length, contentSize - n));
+			}
+		}
+		hs = new DefaultHashingService(algo, 0, chunkSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public String stream() throws IOException {
+		try (InputStream is = Files.newInputStream(file); HashingSession s = hs.session(is, false)) {
+			return s.hash();
+		}
+	}
+
+	@Benchmark
+	public String channel() throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ); HashingSession s = hs.session(ch)) {
+			return s.hash();
+		}
+	}
+
+	@Benchmark
+	public String mapped() {
+		try (HashingSession s = hs.session(file)) {
+			return s.hash();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.veritynow.core.store.base;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.veritynow.core.store.HashingService.Hasher;
+import com.veritynow.core.store.HashingSession;
+import com.veritynow.core.store.base.DefaultHashingService.Xxh3Backend;
+
+/**
+ * XXH3-128 through the LWJGL natives against the plain Java backend, per payload size:
+ *  - heap: session over a byte array, the path of uploads and ingests
+ *  - direct: a hasher fed a direct buffer, the path of mapped files
+ *
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Djmh.args=XxHashBenchmark
+ * Small payloads measure per call overhead (JNI transition, state reset), large ones raw throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class XxHashBenchmark {
+
+	@Param({ "NATIVE", "JAVA" })
+	String backend;
+
+	@Param({ "16", "240", "4096", "131072", "16777216" })
+	int payloadSize;
+
+	private byte[] payload;
+	private ByteBuffer direct;
+	private DefaultHashingService hs;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		payload = new byte[payloadSize];
+		new Random(42).nextBytes(payload);
+		direct = ByteBuffer.allocateDirect(payloadSize);
+		direct.put(payload).flip();
+		hs = new DefaultHashingService("XXH3", 0, DefaultHashingService.DEFAULT_CHUNK_SIZE, Xxh3Backend.valueOf(backend));
+	}
+
+	@Benchmark
+	public String heap() {
+		try (HashingSession s = hs.session(new ByteArrayInputStream(payload), false)) {
+			return s.hash();
+		}
+	}
+
+	@Benchmark
+	public String direct() {
+		try (Hasher h = hs.newHasher()) {
+			h.update(direct.duplicate());
+			return h.digest();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.veritynow.util.FSUtil;
+import com.veritynow.util.FileSync;
+
+/**
+ * Create and lookup latency of blob files against directory fan-out, one {@link ShardLayout} at a time:
+ *  - create: a 64 byte blob through {@link FileSystemBlobBackend#publish(Path, String)}, stage + rename like an ingest
+ *  - hit: open and read a random existing blob
+ *  - miss: check a name that does not exist
+ *
+ * Run with: mvn -Pbenchmarks test-compile exec:exec -Djmh.args="ShardFanoutBenchmark -p directory=/data/bench -p blobs=1000000"
+ * Run it on the filesystem the store uses (directory, a temp directory when empty), with at least as many blobs
+ * as a shard of production holds: the differences only show once directories grow past what the dentry cache
+ * and the directory index handle well. Sample time reports the p50/p99 as well as the mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class ShardFanoutBenchmark {
+
+	private static final byte[] PAYLOAD = new byte[64];
+
+	@Param({ "1x2", "2x2", "1x3" })
+	String layout;
+
+	@Param({ "200000" })
+	int blobs;
+
+	@Param({ "" })
+	String directory;
+
+	private Path dir;
+	private Path staging;
+	private FileSystemBlobBackend backend;
+	private String[] names;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Path root = directory.isEmpty() ? Files.createTempDirectory("vn-shard-bench") : Path.of(directory);
+		dir = root.resolve("layout-" + layout);
+		FSUtil.deleteRecursively(dir);
+		backend = new FileSystemBlobBackend(layout, dir, ShardLayout.parse(layout), null, FileSync.NONE);
+		staging = dir.resolve("incoming");
+		names = new String[blobs];
+		for (int i = 0; i < blobs; i++) {
+			names[i] = randomName();
+			publish(names[i]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FSUtil.deleteRecursively(dir);
+	}
+
+	@Benchmark
+	public void create() throws IOException {
+		publish(randomName());
+	}
+
+	@Benchmark
+	public int hit() throws IOException {
+		try (InputStream in = backend.open(names[ThreadLocalRandom.current().nextInt(blobs)], 0)) {
+			return in.readAllBytes().length;
+		}
+	}
+
+	@Benchmark
+	public boolean miss() throws IOException {
+		return backend.exists(randomName());
+	}
+
+	private void publish(String name) throws IOException {
+		Path staged = FSUtil.stagingPath(staging);
+		Files.write(staged, PAYLOAD);
+		backend.publish(staged, name);
+	}
+
+	private static String randomName() {
+		byte[] b = new byte[20];
+		ThreadLocalRandom.current().nextBytes(b);
+		return HexFormat.of().formatHex(b) + "-SHA-1";
+	}
+}
@@ -1,15 +1,42 @@
 package com.veritynow.core.store;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface HashingService {
-	
+
+	//hash content in a session of its own, the results are read from the returned session.
+	//Hashing state is drawn from a bounded pool for the duration of the call only, so these are safe
+	//on any number of threads, virtual ones included. Prefer them to the per-thread calls below.
+	//cacheContent - cache the content if set to true, see HashingSession.getInputStream
+	HashingSession session(InputStream content, boolean cacheContent);
+
+	//same as session, while writing the content to target in the same pass.
+	//target must not exist, it is created by this call
+	HashingSession session(InputStream content, Path target);
+
+	//same as session, for the content of the file; large files are hashed from a memory mapping
+	HashingSession session(Path contentPath);
+
+	//same as session, reading the channel straight into a direct buffer (no heap copy of the content)
+	HashingSession session(ReadableByteChannel content);
+
+	//The calls below keep the results of the last hash of the calling thread, read back with
+	//hash(), size(), header() and getInputStream().
+
 	//compute the hash of content. 
 	//cacheContent - cache the content if set to true
 	String hash(InputStream content, boolean cacheContent);
 	
+	//compute the hash of content while writing it to target in the same pass.
+	//target must not exist, it is created by this call
+	String hash(InputStream content, Path target);
+	
 	//compute the hash of content specified by the file path
 	String hash(Path contentPath);
 		
@@ -29,4 +56,34 @@ public interface HashingService {
 	
 	String getAlgorithm();
 
+	//algorithms of the secondary digests every session and hasher computes next to the hash, e.g. sha-256
+	//for content identity outside the store; lower case, as getAlgorithm
+	List<String> getDigestAlgorithms();
+
+	//incremental hash of content that arrives in pieces, possibly on different threads;
+	//the hasher owns its state, independent of the calls above, and must be closed
+	Hasher newHasher();
+
+	interface Hasher extends AutoCloseable {
+
+		void update(byte[] b, int off, int len);
+
+		//the remaining bytes of b, consumed; a direct (or mapped) buffer is hashed in place
+		void update(ByteBuffer b);
+
+		//hash of everything updated so far, the hasher takes no more updates afterwards
+		String digest();
+
+		long size();
+
+		//first BUFFER_SIZE content
+		Optional<byte[]> header();
+
+		//secondary digests, once digested
+		Map<String, String> digests();
+
+		@Override
+		void close();
+	}
+
 }
\ No newline at end of file
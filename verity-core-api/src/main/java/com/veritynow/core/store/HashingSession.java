@@ -0,0 +1,33 @@
+package com.veritynow.core.store;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The outcome of hashing one content with {@link HashingService#session}, owned by the caller rather than
+ * by the thread that did the hashing.
+ *
+ * The hashing state (native XXH3 state, scratch buffers) is only borrowed for the duration of the call,
+ * a session holds plain results plus the cached copy of the content when one was asked for.
+ * Closing a session deletes that copy, unless a stream opened with deleteOnClose took it over.
+ */
+public interface HashingSession extends AutoCloseable {
+
+	String hash();
+
+	long size();
+
+	//first BUFFER_SIZE content, useful for file type discovery
+	Optional<byte[]> header();
+
+	//secondary digests of the same content, computed in the same pass, keyed by algorithm
+	//(see HashingService.getDigestAlgorithms); empty when none are configured
+	Map<String, String> digests();
+
+	//Get an InputStream for reading the cached content, empty unless the session cached it
+	Optional<InputStream> getInputStream(boolean deleteOnClose);
+
+	@Override
+	void close();
+}
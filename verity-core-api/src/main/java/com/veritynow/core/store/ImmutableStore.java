@@ -2,16 +2,53 @@ package com.veritynow.core.store;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public interface  ImmutableStore<KEY, I, O> extends Store<KEY, I, O> {
 	
 		
 	public Optional<O> save(String name, String mimetype, InputStream is) throws IOException;
 	public Optional<O> save(I meta, InputStream is) throws IOException;
+	// same as save, base is a previous version of the content the store may keep it as a delta against
+	public default Optional<O> save(String name, String mimetype, InputStream is, KEY base) throws IOException {
+		return save(name, mimetype, is);
+	}
+	// same as save, content is a file the caller already hashed into key with getHashingService();
+	// the store takes the file over, it is gone once this returns
+	public default Optional<O> adopt(I meta, Path content, KEY key) throws IOException {
+		try (InputStream is = Files.newInputStream(content, StandardOpenOption.DELETE_ON_CLOSE)) {
+			return save(meta, is);
+		}
+	}
+	// same as adopt, with the secondary digests (HashingService.getDigestAlgorithms) computed along with key
+	public default Optional<O> adopt(I meta, Path content, KEY key, Map<String, String> digests) throws IOException {
+		return adopt(meta, content, key);
+	}
 	public Optional<O> getMeta(KEY key) throws IOException; 
+	// same as getMeta, for content a new version is about to reference: a store that collects unreferenced
+	// content keeps it for a while
+	public default Optional<O> touch(KEY key) throws IOException {
+		return getMeta(key);
+	}
+	// the meta of the content whose digest under algorithm is digest: the store's own algorithm or a secondary one
+	public default Optional<O> getMetaByDigest(String algorithm, String digest) throws IOException {
+		return Optional.empty();
+	}
+	// the meta of every known key, in key order, answered in one round trip
+	public Map<KEY, O> getMetas(Collection<KEY> keys) throws IOException;
 	public Optional<InputStream> retrieve(KEY key) throws IOException; 
+	
+	// the file holding exactly the content bytes, when the store keeps it that way; lets callers use zero-copy transfers
+	public Optional<Path> locate(KEY key) throws IOException;
 	public boolean exists(KEY key) throws IOException;
+	// the subset of keys already stored, answered in one round trip
+	public Set<KEY> existing(Collection<KEY> keys) throws IOException;
 	
 	
 	public HashingService getHashingService();
@@ -127,6 +127,23 @@ public interface Store<KEY, I, O> {
      */
     Optional<InputStream> read(KEY key) throws IOException;
 
+    /**
+     * Read a byte range of the current content associated with the given key.
+     *
+     * <p>
+     * The returned stream yields at most {@code length} bytes starting at {@code offset};
+     * fewer if the content ends first. Implementations should seek rather than read and
+     * discard the leading bytes whenever their storage allows it.
+     * </p>
+     *
+     * @param key    logical key
+     * @param offset first byte to return (0 based)
+     * @param length maximum number of bytes to return
+     * @return content stream if present
+     * @throws IOException on I/O failure
+     */
+    Optional<InputStream> read(KEY key, long offset, long length) throws IOException;
+
     /**
      * Update the content of an existing key.
      *
@@ -2,8 +2,12 @@ package com.veritynow.core.store;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Version-aware extension of {@link Store} that exposes per-path version history and
@@ -118,6 +122,32 @@ public interface VersionStore<PK, BLOBMETA, VERSIONMETA> extends Store<PK, BLOBM
      * @throws IOException on I/O failure
      */
     Optional<InputStream> getContent(PK key) throws IOException;
+
+    /**
+     * Retrieve a byte range of the binary content for a concrete key {@code PK}.
+     *
+     * @param key    concrete key identifying a specific stored object instance
+     * @param offset first byte to return (0 based)
+     * @param length maximum number of bytes to return
+     * @return content stream if resolvable
+     * @throws IOException on I/O failure
+     * @see Store#read(Object, long, long)
+     */
+    Optional<InputStream> getContent(PK key, long offset, long length) throws IOException;
+
+    /**
+     * Locate the file holding exactly the content bytes of a concrete key {@code PK}.
+     *
+     * <p>
+     * Empty when the key is not resolvable or when the content is not stored as a plain
+     * file (e.g. compressed, chunked or packed); callers then fall back to {@link #getContent(Object)}.
+     * </p>
+     *
+     * @param key concrete key identifying a specific stored object instance
+     * @return path of the content file if available
+     * @throws IOException on I/O failure
+     */
+    Optional<Path> getContentPath(PK key) throws IOException;
     
     /**
      * Retrieve the meta information of the content for a concrete key {@code PK}.
@@ -135,6 +165,113 @@ public interface VersionStore<PK, BLOBMETA, VERSIONMETA> extends Store<PK, BLOBM
      */
     Optional<BLOBMETA> getContentMeta(PK key) throws IOException;
 
+    /**
+     * Retrieve the meta information of the content of many hashes at once.
+     *
+     * <p>
+     * Meant for listings: the meta of N contents costs a single lookup instead of N
+     * {@link #getContentMeta(Object)} calls.
+     * </p>
+     *
+     * @param hashes content hashes computed with the store's hash algorithm
+     * @return meta information keyed by hash, in the order given, unknown hashes left out
+     * @throws IOException on I/O failure
+     */
+    Map<String, BLOBMETA> getContentMetas(Collection<String> hashes) throws IOException;
+
+    /**
+     * Retrieve the meta information of content known by a digest other than its hash, e.g. the SHA-256 a
+     * client computed.
+     *
+     * <p>
+     * Any algorithm of {@link HashingService#getDigestAlgorithms()} is looked up, as well as the store's hash
+     * algorithm itself. Content stored before a digest algorithm was configured is not found by it.
+     * </p>
+     *
+     * @param algorithm digest algorithm, e.g. {@code sha-256}
+     * @param digest    hex digest of the content
+     * @return meta information of the content, empty when unknown
+     * @throws IOException on I/O failure
+     */
+    Optional<BLOBMETA> getContentMetaByDigest(String algorithm, String digest) throws IOException;
+
+    /**
+     * Determine which of the given content hashes are already stored.
+     *
+     * <p>
+     * Lets a client skip uploading content the store already holds, see
+     * {@link #createFromContent(Object, String)} and {@link #updateFromContent(Object)}.
+     * </p>
+     *
+     * @param hashes content hashes computed with the store's hash algorithm
+     * @return the hashes that are stored (possibly empty)
+     * @throws IOException on I/O failure
+     */
+    Set<String> findExistingContent(Collection<String> hashes) throws IOException;
+
+    /**
+     * Store content without creating a version, so it can be referenced by hash later.
+     *
+     * <p>
+     * Lets a caller that receives the content before it knows what to do with it (e.g. a streamed
+     * upload) store it as it arrives, then use {@link #createFromContent(Object, String)} or
+     * {@link #updateFromContent(Object)}. Content no version ends up referencing is garbage collected.
+     * </p>
+     *
+     * @param meta    name and mime type of the content
+     * @param content content bytes
+     * @return meta information of the stored content
+     * @throws IOException on I/O failure
+     */
+    Optional<BLOBMETA> putContent(BLOBMETA meta, InputStream content) throws IOException;
+
+    /**
+     * Same as {@link #putContent(Object, InputStream)}, with the content in a file already hashed with the
+     * store's hash algorithm, e.g. assembled from the parts of a resumable upload.
+     *
+     * <p>
+     * The store takes the file over (it is gone once this returns) and trusts the given hash,
+     * the content is not read again to compute it.
+     * </p>
+     *
+     * @param meta    name and mime type of the content
+     * @param content file holding the content bytes
+     * @param hash    hash of the content computed with the store's hash algorithm
+     * @return meta information of the stored content
+     * @throws IOException on I/O failure
+     */
+    Optional<BLOBMETA> putContent(BLOBMETA meta, Path content, String hash) throws IOException;
+
+    /**
+     * Same as {@link #putContent(Object, Path, String)}, with the secondary digests computed along with the
+     * hash, kept with the content for {@link #getContentMetaByDigest(String, String)}.
+     *
+     * @param digests hex digests keyed by algorithm, as {@link HashingService.Hasher#digests()}
+     */
+    Optional<BLOBMETA> putContent(BLOBMETA meta, Path content, String hash, Map<String, String> digests)
+            throws IOException;
+
+    /**
+     * Same as {@link Store#create(Object, Object, InputStream, String)}, with the content given by the hash
+     * of content the store already holds instead of its bytes.
+     *
+     * @param key concrete key carrying the parent path and the content hash
+     * @param id  version identifier, generated when {@code null}
+     * @return metadata of the created version, or empty if the content is not stored
+     * @throws IOException on I/O failure
+     */
+    Optional<VERSIONMETA> createFromContent(PK key, String id) throws IOException;
+
+    /**
+     * Same as {@link Store#update(Object, InputStream)}, with the content given by the hash
+     * of content the store already holds instead of its bytes.
+     *
+     * @param key concrete key carrying the path and the content hash
+     * @return metadata of the new version, or empty if the path or the content is unknown
+     * @throws IOException on I/O failure
+     */
+    Optional<VERSIONMETA> updateFromContent(PK key) throws IOException;
+
     /**
      * Determine whether the given key has a resolvable path.
      *
@@ -103,6 +103,14 @@ public abstract class AbstractStore<KEY, I, O> implements Store<KEY, I, O> {
 		return out;
 	}
 
+	@Override
+	public Optional<InputStream> read(KEY key, long offset, long length) throws IOException {
+		StoreUtils.enforceRange(offset, length);
+		Optional<InputStream> in = read(key);
+		if (in.isEmpty()) return in;
+		return Optional.of(StoreUtils.slice(in.get(), offset, length));
+	}
+
 	@Override
 	public List<InputStream> bulkRead(List<KEY> keys) throws IOException {
 		List<InputStream> out = new ArrayList<InputStream>();
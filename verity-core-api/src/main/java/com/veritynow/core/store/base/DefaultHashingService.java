@@ -4,15 +4,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,93 +39,191 @@ import org.springframework.beans.factory.annotation.Value;
 
 
 import com.veritynow.core.store.HashingService;
+import com.veritynow.core.store.HashingSession;
 
 /**
  * HashingService implementation supporting:
- *  - XXH3 128-bit via LWJGL native xxHash bindings (streaming: reset/update/digest)
+ *  - XXH3 128-bit via LWJGL native xxHash bindings (streaming: reset/update/digest),
+ *    or via {@link Xxh3Java} on hosts without the natives (same hash)
+ *  - XXH3-TREE: XXH3 128-bit of fixed size leaves, hashed in parallel, combined into a root (see TREE_LEAF_SIZE)
  *  - Any MessageDigest algorithm (e.g., SHA-256) for fallback
+ *  - Secondary MessageDigest digests (e.g. SHA-256 next to XXH3), computed from the same reads as the hash
  *
  * Design goals:
  *  - No full-content heap load
  *  - Preserve existing cacheContent behavior (optional spooling for later re-read)
+ *  - Single-pass spooling into a caller supplied target (no second copy of the content)
  *  - Maintain header + size tracking
  *
  * Notes:
- *  - XXH3State is stored per-thread (ThreadLocal) to avoid allocating/freeing native state per call.
- *  - Chunk updates use a per-thread direct ByteBuffer scratch to satisfy LWJGL native calls efficiently.
+ *  - Hashing state (a native XXH3State, or a MessageDigest, with its scratch buffers) is borrowed from a pool
+ *    for the duration of a hash call and reset on its next use; at most maxIdle states are kept between calls,
+ *    the others are freed. No native state is tied to a thread, any number of (virtual) threads can hash.
+ *  - Results are handed back in a {@link HashingSession}. The per-thread hash()/size()/header() calls only
+ *    remember the last session of the calling thread, a plain heap object.
+ *  - Content is hashed chunkSize bytes at a time. Streams are read into the heap buffer of the state and copied
+ *    once into its direct buffer for the LWJGL native call; channels are read straight into the direct buffer.
+ *  - Files of at least MAP_MIN_SIZE are hashed from a read-only mapping, MAP_WINDOW bytes per native call,
+ *    without copying the content at all. A mapped file must not be truncated while it is hashed.
+ *  - The header stays bounded by bufferSize whatever the chunk size.
+ *  - The XXH3 backend is chosen once: AUTO takes the natives when an XXH3 state can be created, plain Java
+ *    otherwise. The Java backend hashes heap arrays in place, direct and mapped buffers through the heap buffer.
+ *  - XXH3-TREE leaves are hashed on a dedicated fork-join pool when the content is in a file: files larger than a
+ *    leaf are hashed a mapped leaf per task, content spooled to a file has every leaf hashed as soon as it is
+ *    written. Content that is not in a file is hashed leaf after leaf, to the same root.
+ *  - Secondary digests are sequential by nature: with XXH3-TREE they are computed on the calling thread while
+ *    the pool hashes the leaves.
  */
 public class DefaultHashingService implements HashingService {
 
 	public static int BUFFER_SIZE = 1024;
 
+	public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+
+	static final long MAP_MIN_SIZE = 1024 * 1024;
+	static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+	public static final String TREE_ALGORITHM = "XXH3-TREE";
+
+	// part of the XXH3-TREE definition: root = XXH3-128(leaf_0 || .. || leaf_n-1 || le64(size)), leaf_i the 16 byte
+	// XXH3-128 (high64, low64 big-endian) of the i-th leaf; changing it changes every tree hash
+	public static final int TREE_LEAF_SIZE = 4 * 1024 * 1024;
+
+	private static final int DIGEST_SIZE = 16;
+
+	public enum Xxh3Backend {
+		AUTO, NATIVE, JAVA;
+
+		public static Xxh3Backend of(String s) {
+			return valueOf(s.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
 	private static final Logger LOGGER = LogManager.getLogger();
 
 	private final boolean isXXH3;
 
-	// For MessageDigest algorithms (SHA-256, etc.). Null when XXH3 mode is active.
-	private final ThreadLocal<MessageDigest> digest;
+	private final boolean isTree;
 
-	private final ThreadLocal<Long> size = ThreadLocal.withInitial(() -> -1L);
-	private final ThreadLocal<String> hash = ThreadLocal.withInitial(() -> null);
-	private final ThreadLocal<byte[]> header = ThreadLocal.withInitial(() -> null);
+	// leaf hashing of XXH3-TREE, created with the service but its threads are only started on demand
+	private final ForkJoinPool treePool;
 
-	private final ThreadLocal<Path> tempPath = new ThreadLocal<>();
-	private final ThreadLocal<String> algorithm = new ThreadLocal<>();
-	private final ThreadLocal<Boolean> cacheContent = ThreadLocal.withInitial(() -> false);
-	private final ThreadLocal<Integer> bufferSize = ThreadLocal.withInitial(() -> BUFFER_SIZE);
+	// XXH3 through the LWJGL natives, otherwise in plain Java
+	private final boolean nativeXXH3;
 
-	// LWJGL xxHash state + scratch buffers (per-thread)
-	private final ThreadLocal<XXH3State> xxh3State = ThreadLocal.withInitial(() -> {
-		XXH3State s = XXHash.XXH3_createState();
-		if (s == null) {
-			throw new IllegalStateException("XXH3_createState() returned null; LWJGL natives may be missing.");
-		}
-		return s;
-	});
+	// as configured, for the MessageDigest of each state
+	private final String digestAlgorithm;
 
-	private final ThreadLocal<ByteBuffer> directChunk = ThreadLocal.withInitial(() ->
-		// allocateDirect once per thread; capacity is adjusted lazily if bufferSize changes
-		ByteBuffer.allocateDirect(BUFFER_SIZE)
-	);
+	private final String algorithm;
 
-	private final ThreadLocal<XXH128Hash> xxh128Result = ThreadLocal.withInitial(() ->
-		// uses BufferUtils internally (direct buffer); result struct is re-used per thread
-		XXH128Hash.create()
-	);
+	// secondary digests, as configured for MessageDigest and as reported
+	private final List<String> digestNames;
+	private final List<String> digestAlgorithms;
+
+	private volatile int bufferSize = BUFFER_SIZE;
+
+	// bytes read and hashed per update
+	private final int chunkSize;
+
+	// idle hashing states, bounded: a state returned to a full pool is freed
+	private final BlockingQueue<Engine> idle;
+
+	// idle XXH3 states for the leaves and roots of XXH3-TREE
+	private final BlockingQueue<Engine> idleLeaves;
+
+	// last session of the calling thread, for the per-thread calls
+	private final ThreadLocal<HashingSession> last = new ThreadLocal<>();
 
 	public DefaultHashingService(@Value("${verity.store.hash.algo:XXH3}") String algo) throws NoSuchAlgorithmException {
-		this.isXXH3 = "XXH3".equalsIgnoreCase(algo);
+		this(algo, 0, DEFAULT_CHUNK_SIZE, Xxh3Backend.AUTO);
+	}
 
-		if (this.isXXH3) {
-			this.digest = null;
-		} else {
-			this.digest = ThreadLocal.withInitial(() -> {
-				try {
-					return MessageDigest.getInstance(algo);
-				} catch (NoSuchAlgorithmException e) {
-					return null;
+	public DefaultHashingService(String algo, int maxIdle, int chunkSize) throws NoSuchAlgorithmException {
+		this(algo, maxIdle, chunkSize, Xxh3Backend.AUTO, 0, List.of());
+	}
+
+	public DefaultHashingService(String algo, int maxIdle, int chunkSize, Xxh3Backend backend)
+			throws NoSuchAlgorithmException {
+		this(algo, maxIdle, chunkSize, backend, 0, List.of());
+	}
+
+	/**
+	 * maxIdle bounds the hashing states kept between calls, 0 for two per core.
+	 * chunkSize is the number of bytes read and hashed per update, at least BUFFER_SIZE.
+	 * backend selects the XXH3 implementation, ignored for other algorithms.
+	 * treeParallelism is the number of XXH3-TREE leaves hashed at once, 0 for one per core.
+	 * digests are the MessageDigest algorithms computed next to the hash, the hash algorithm itself is skipped.
+	 */
+	public DefaultHashingService(String algo, int maxIdle, int chunkSize, Xxh3Backend backend, int treeParallelism,
+			List<String> digests) throws NoSuchAlgorithmException {
+		this.isTree = TREE_ALGORITHM.equalsIgnoreCase(algo.trim());
+		this.isXXH3 = "XXH3".equalsIgnoreCase(algo) || isTree;
+		this.digestAlgorithm = algo;
+
+		if (!this.isXXH3) {
+			// fail now rather than on first use
+			MessageDigest.getInstance(algo);
+		}
+		this.nativeXXH3 = isXXH3 && switch (backend) {
+			case NATIVE -> {
+				if (!nativeAvailable()) {
+					throw new IllegalStateException("XXH3 natives requested but LWJGL xxHash is not available");
 				}
-			});
+				yield true;
+			}
+			case JAVA -> false;
+			case AUTO -> nativeAvailable();
+		};
+
+		List<String> names = new ArrayList<>();
+		List<String> algorithms = new ArrayList<>();
+		for (String d : digests) {
+			String a = d.toLowerCase(Locale.ROOT).trim();
+			if (a.isEmpty() || a.equals(algo.toLowerCase(Locale.ROOT).trim()) || algorithms.contains(a)) {
+				continue;
+			}
+			MessageDigest.getInstance(d.trim());
+			names.add(d.trim());
+			algorithms.add(a);
 		}
-
-		if (this.digest == null && !this.isXXH3) {
-			throw new NoSuchAlgorithmException(algo);
+		this.digestNames = List.copyOf(names);
+		this.digestAlgorithms = List.copyOf(algorithms);
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		this.idle = new ArrayBlockingQueue<>(maxIdle > 0 ? maxIdle : 2 * cores);
+		this.idleLeaves = new ArrayBlockingQueue<>(isTree ? idle.remainingCapacity() : 1);
+		this.chunkSize = Math.max(chunkSize, BUFFER_SIZE);
+		this.treePool = isTree ? new ForkJoinPool(treeParallelism > 0 ? treeParallelism : cores, pool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName("vn-tree-hash-" + t.getPoolIndex());
+			return t;
+		}, null, false) : null;
+		this.algorithm = algo.toLowerCase().trim();
+		LOGGER.info("Default hashing service using {} algorithm{} started, {} byte chunks, keeping up to {} idle hashing states",
+				algo, isXXH3 ? (nativeXXH3 ? " (native)" : " (java)") : "", this.chunkSize, idle.remainingCapacity());
+		if (isTree) {
+			LOGGER.info("{} leaves of {} bytes, up to {} hashed in parallel", TREE_ALGORITHM, TREE_LEAF_SIZE,
+					treePool.getParallelism());
+		}
+		if (!digestAlgorithms.isEmpty()) {
+			LOGGER.info("Secondary digests {} computed with every hash", digestAlgorithms);
 		}
-
-		LOGGER.info("Default hashing service using {} algorithm started ", algo);
-		algorithm.set(algo.toLowerCase().trim());
 	}
 
 	@Override
-	public String hash(Path contentPath) {
+	public HashingSession session(Path contentPath) {
 		Objects.requireNonNull(contentPath, "content");
 		try {
 			if (!Files.isRegularFile(contentPath)) {
 				throw new RuntimeException("Path is not a regular file " + contentPath);
 			}
-			try (InputStream is = Files.newInputStream(contentPath)) {
-				// No caching for Path hashing; this preserves the old behavior (streaming).
-				return hash(is, false);
+			// No caching for Path hashing
+			try (FileChannel ch = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+				long size = ch.size();
+				if (isTree && size > TREE_LEAF_SIZE) {
+					return hashTree(ch, size);
+				}
+				return size < MAP_MIN_SIZE ? hash(ch) : hashMapped(ch, size);
 			}
 		} catch (Exception e) {
 			throw new RuntimeException("Error computing hash " + contentPath, e);
@@ -119,211 +231,426 @@ public class DefaultHashingService implements HashingService {
 	}
 
 	@Override
-	public String hash(InputStream content, boolean cacheContent) {
+	public HashingSession session(ReadableByteChannel content) {
 		Objects.requireNonNull(content, "content");
+		return hash(content);
+	}
 
-		this.cacheContent.set(cacheContent);
+	@Override
+	public HashingSession session(InputStream content, boolean cacheContent) {
+		Objects.requireNonNull(content, "content");
 
-		if (cacheContent) {
-			prepareTempFile();
-		} else {
-			// ensure any prior cached temp file in this thread does not leak across calls
-			cleanupTempIfPresent();
-			tempPath.set(null);
+		if (!cacheContent) {
+			return hash(content, OutputStream.nullOutputStream(), null);
 		}
 
-		if (isXXH3) {
-			return hashXxh3_128_streaming(content, cacheContent);
+		Path cached;
+		try {
+			cached = Files.createTempFile(UUID.randomUUID().toString(), "content");
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to buffer content", e);
+		}
+		try {
+			if (isTree) {
+				try (FileChannel sink = FileChannel.open(cached, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					return hashTree(content, sink, cached);
+				}
+			}
+			try (OutputStream sink = Files.newOutputStream(cached, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				return hash(content, sink, cached);
+			}
+		} catch (IOException | RuntimeException e) {
+			deleteQuietly(cached);
+			if (e instanceof RuntimeException re) {
+				throw re;
+			}
+			throw new RuntimeException("Unable to buffer content", e);
 		}
-
-		return hashMessageDigest_streaming(content, cacheContent);
 	}
 
-	private String hashXxh3_128_streaming(InputStream content, boolean cacheContent) {
-		final XXH3State state = xxh3State.get();
-		final XXH128Hash out = xxh128Result.get();
+	@Override
+	public HashingSession session(InputStream content, Path target) {
+		Objects.requireNonNull(content, "content");
+		Objects.requireNonNull(target, "target");
 
-		// Ensure scratch direct buffer is at least bufferSize capacity
-		ByteBuffer scratch = directChunk.get();
-		int bs = bufferSize.get();
-		if (scratch.capacity() < bs) {
-			scratch = ByteBuffer.allocateDirect(bs);
-			directChunk.set(scratch);
+		// the caller owns target, nothing is cached on our side
+		try {
+			if (isTree) {
+				try (FileChannel sink = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+						StandardOpenOption.WRITE)) {
+					return hashTree(content, sink, null);
+				}
+			}
+			try (OutputStream sink = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE)) {
+				return hash(content, sink, null);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write content to " + target, e);
 		}
+	}
 
-		// reset state
-		int rc = XXHash.XXH3_128bits_reset(state);
-		if (rc != XXHash.XXH_OK) {
-			throw new RuntimeException("XXH3_128bits_reset failed (rc=" + rc + ")");
-		}
+	@Override
+	public String hash(Path contentPath) {
+		return remember(session(contentPath)).hash();
+	}
 
-		size.set(0L);
-		header.set(null);
+	@Override
+	public String hash(InputStream content, boolean cacheContent) {
+		return remember(session(content, cacheContent)).hash();
+	}
 
-		final byte[] heapBuf = new byte[bs];
+	@Override
+	public String hash(InputStream content, Path target) {
+		return remember(session(content, target)).hash();
+	}
 
-		try (OutputStream fos = (cacheContent
-				? Files.newOutputStream(tempPath.get(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
-				: OutputStream.nullOutputStream())) {
+	@Override
+	public Optional<String> hash() {
+		HashingSession s = last.get();
+		if (s == null || s.size() == 0) {
+			return Optional.empty();
+		}
+		return Optional.of(s.hash());
+	}
 
-			while (true) {
-				int n = content.read(heapBuf);
-				if (n < 0) break;
-				if (n == 0) continue;
+	@Override
+	public Optional<Long> size() {
+		HashingSession s = last.get();
+		if (s == null) {
+			return Optional.empty();
+		}
+		return Optional.of(s.size());
+	}
 
-				// capture header on first chunk only (exact bytes read)
-				if (header.get() == null) {
-					header.set(Arrays.copyOf(heapBuf, n));
-				}
+	@Override
+	public Optional<InputStream> getInputStream(boolean deleteOnClose) {
+		HashingSession s = last.get();
+		if (s == null) {
+			return Optional.empty();
+		}
+		return s.getInputStream(deleteOnClose);
+	}
 
-				size.set(size.get() + n);
+	@Override
+	public Optional<byte[]> header() {
+		HashingSession s = last.get();
+		if (s == null) {
+			return Optional.empty();
+		}
+		return s.header();
+	}
 
-				if (cacheContent) {
-					fos.write(heapBuf, 0, n);
-				}
+	public void setBufferSize(int bs) {
+		bufferSize = bs < BUFFER_SIZE ? BUFFER_SIZE : bs;
+	}
 
-				// copy into direct scratch and update hash state
-				scratch.clear();
-				scratch.put(heapBuf, 0, n);
-				scratch.flip();
+	public int getBufferSize() {
+		return bufferSize;
+	}
 
-				rc = XXHash.XXH3_128bits_update(state, scratch);
-				if (rc != XXHash.XXH_OK) {
-					throw new RuntimeException("XXH3_128bits_update failed (rc=" + rc + ")");
-				}
-			}
+	@Override
+	public String getAlgorithm() {
+		return algorithm;
+	}
 
-			// digest -> out
-			XXHash.XXH3_128bits_digest(state, out);
+	@Override
+	public List<String> getDigestAlgorithms() {
+		return digestAlgorithms;
+	}
 
-			// stable 128-bit hex: high||low (32 hex chars)
-			long hi = out.high64();
-			long lo = out.low64();
-			hash.set(toHex128(hi, lo));
+	@Override
+	public Hasher newHasher() {
+		// a hasher may live for long, it owns its state instead of holding one of the pool
+		return new EngineHasher(newEngine());
+	}
+
+	// ----------------------------
+	// Streaming
+	// ----------------------------
+
+	private HashingSession hash(InputStream content, OutputStream sink, Path cached) {
+		Engine engine = borrow();
+		try {
+			byte[] buf = engine.buffer;
+			long size = 0;
+			byte[] header = null;
 
-			return hash.get();
+			while (true) {
+				// whole chunks, a native update per few bytes read off a socket costs more than the hashing
+				int n = content.readNBytes(buf, 0, chunkSize);
+				if (n == 0) break;
 
+				// capture header on first chunk only
+				if (header == null) {
+					header = Arrays.copyOf(buf, Math.min(n, bufferSize));
+				}
+				size += n;
+				sink.write(buf, 0, n);
+				engine.update(buf, 0, n);
+			}
+			return new Session(engine.digest(), size, header, engine.digests(), cached);
 		} catch (Exception e) {
-			throw new RuntimeException("Error computing XXH3_128 hash", e);
+			throw new RuntimeException("Error computing " + algorithm + " hash", e);
+		} finally {
+			release(engine);
 		}
 	}
 
-	private String hashMessageDigest_streaming(InputStream content, boolean cacheContent) {
-		try (OutputStream fos = (cacheContent
-				? Files.newOutputStream(tempPath.get(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
-				: OutputStream.nullOutputStream())) {
+	private HashingSession hash(ReadableByteChannel content) {
+		Engine engine = borrow();
+		try {
+			ByteBuffer buf = engine.direct;
+			long size = 0;
+			byte[] header = null;
+			boolean eof = false;
+
+			while (!eof) {
+				buf.clear().limit(chunkSize);
+				while (buf.hasRemaining()) {
+					if (content.read(buf) < 0) {
+						eof = true;
+						break;
+					}
+				}
+				buf.flip();
+				if (!buf.hasRemaining()) {
+					continue;
+				}
+				if (header == null) {
+					header = head(buf);
+				}
+				size += buf.remaining();
+				engine.update(buf);
+			}
+			return new Session(engine.digest(), size, header, engine.digests(), null);
+		} catch (Exception e) {
+			throw new RuntimeException("Error computing " + algorithm + " hash", e);
+		} finally {
+			release(engine);
+		}
+	}
 
-			size.set(0L);
+	// the file is hashed where the page cache holds it, a window per update
+	private HashingSession hashMapped(FileChannel content, long size) {
+		Engine engine = borrow();
+		try {
+			byte[] header = null;
+			for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+				MappedByteBuffer window = content.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos));
+				if (header == null) {
+					header = head(window);
+				}
+				engine.update(window);
+			}
+			return new Session(engine.digest(), size, header, engine.digests(), null);
+		} catch (Exception e) {
+			throw new RuntimeException("Error computing " + algorithm + " hash", e);
+		} finally {
+			release(engine);
+		}
+	}
 
-			final int bs = bufferSize.get();
-			final byte[] buf = new byte[bs];
+	// ----------------------------
+	// XXH3-TREE
+	// ----------------------------
 
-			int n = content.read(buf);
-			if (n < 0) {
-				// empty stream
-				header.set(new byte[0]);
-				hash.set(toHex(digest.get().digest()));
-				return hash.get();
+	// every leaf of the file a task
+	private HashingSession hashTree(FileChannel content, long size) throws IOException {
+		List<ForkJoinTask<byte[]>> leaves = new ArrayList<>();
+		for (long pos = 0; pos < size; pos += TREE_LEAF_SIZE) {
+			leaves.add(leaf(content, pos, Math.min(TREE_LEAF_SIZE, size - pos)));
+		}
+		byte[] header = new byte[(int) Math.min(bufferSize, size)];
+		content.read(ByteBuffer.wrap(header), 0);
+		if (digestNames.isEmpty()) {
+			return new Session(root(leaves, size), size, header, Map.of(), null);
+		}
+		Engine engine = borrow();
+		try {
+			for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+				engine.updateDigests(content.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos)));
 			}
+			return new Session(root(leaves, size), size, header, engine.finishDigests(), null);
+		} finally {
+			release(engine);
+		}
+	}
 
-			header.set(Arrays.copyOf(buf, n));
+	// spools content to sink, a leaf is handed to the pool as soon as it is written
+	private HashingSession hashTree(InputStream content, FileChannel sink, Path cached) {
+		List<ForkJoinTask<byte[]>> leaves = new ArrayList<>();
+		Engine engine = borrow();
+		try {
+			byte[] buf = engine.buffer;
+			long size = 0;
+			byte[] header = null;
 
-			MessageDigest md = digest.get();
-			md.reset();
+			while (true) {
+				int n = content.readNBytes(buf, 0, chunkSize);
+				if (n == 0) break;
 
-			while (n >= 0) {
-				if (n > 0) {
-					size.set(size.get() + n);
-					md.update(buf, 0, n);
-					if (cacheContent) {
-						fos.write(buf, 0, n);
-					}
+				if (header == null) {
+					header = Arrays.copyOf(buf, Math.min(n, bufferSize));
+				}
+				ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+				while (bb.hasRemaining()) {
+					sink.write(bb);
+				}
+				engine.updateDigests(bb.flip());
+				size += n;
+				long written = (long) leaves.size() * TREE_LEAF_SIZE;
+				while (size - written >= TREE_LEAF_SIZE) {
+					leaves.add(leaf(sink, written, TREE_LEAF_SIZE));
+					written += TREE_LEAF_SIZE;
 				}
-				n = content.read(buf);
 			}
-
-			hash.set(toHex(md.digest()));
-			return hash.get();
-
+			long written = (long) leaves.size() * TREE_LEAF_SIZE;
+			if (size > written) {
+				leaves.add(leaf(sink, written, size - written));
+			}
+			return new Session(root(leaves, size), size, header, engine.finishDigests(), cached);
 		} catch (Exception e) {
-			throw new RuntimeException("Error computing hash", e);
+			leaves.forEach(l -> l.cancel(false));
+			throw new RuntimeException("Error computing " + algorithm + " hash", e);
+		} finally {
+			release(engine);
 		}
 	}
 
-	@Override
-	public Optional<String> hash() {
-		if (size.get() == 0 || hash.get() == null) {
-			return Optional.empty();
-		}
-		return Optional.of(hash.get());
+	// the mapping outlives the channel, a leaf does not depend on who closes it
+	private ForkJoinTask<byte[]> leaf(FileChannel content, long pos, long length) {
+		return treePool.submit(() -> {
+			Engine e = borrowLeaf();
+			try {
+				e.update(content.map(FileChannel.MapMode.READ_ONLY, pos, length));
+				byte[] d = new byte[DIGEST_SIZE];
+				e.digest(d, 0);
+				return d;
+			} finally {
+				releaseLeaf(e);
+			}
+		});
 	}
 
-	@Override
-	public Optional<Long> size() {
-		if (size.get() < 0) {
-			return Optional.empty();
+	private String root(List<ForkJoinTask<byte[]>> leaves, long size) {
+		Engine root = borrowLeaf();
+		try {
+			for (ForkJoinTask<byte[]> leaf : leaves) {
+				byte[] d = leaf.join();
+				root.update(d, 0, d.length);
+			}
+			byte[] len = new byte[8];
+			ByteBuffer.wrap(len).order(ByteOrder.LITTLE_ENDIAN).putLong(size);
+			root.update(len, 0, len.length);
+			return root.digest();
+		} finally {
+			releaseLeaf(root);
 		}
-		return Optional.of(size.get());
 	}
 
-	@Override
-	public Optional<InputStream> getInputStream(boolean deleteOnClose) {
-		if (!cacheContent.get() || tempPath.get() == null || !Files.exists(tempPath.get())) {
-			return Optional.empty();
+	private byte[] head(ByteBuffer b) {
+		byte[] h = new byte[Math.min(b.remaining(), bufferSize)];
+		b.get(b.position(), h);
+		return h;
+	}
+
+	private HashingSession remember(HashingSession s) {
+		HashingSession previous = last.get();
+		last.set(s);
+		if (previous != null) {
+			// ensure any prior cached temp file in this thread does not leak across calls
+			previous.close();
 		}
-		try {
-			return Optional.of(deleteOnClose
-					? Files.newInputStream(tempPath.get(), StandardOpenOption.DELETE_ON_CLOSE)
-					: Files.newInputStream(tempPath.get()));
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to create an InputStream", e);
+		return s;
+	}
+
+	// ----------------------------
+	// Hashing state pool
+	// ----------------------------
+
+	private Engine borrow() {
+		Engine e = idle.poll();
+		if (e == null) {
+			e = newEngine();
 		}
+		e.fit(chunkSize);
+		e.reset();
+		return e;
 	}
 
-	@Override
-	public Optional<byte[]> header() {
-		byte[] h = header.get();
-		if (h == null) {
-			return Optional.empty();
+	private void release(Engine e) {
+		if (!idle.offer(e)) {
+			e.free();
 		}
-		return Optional.of(h);
 	}
 
-	public void setBufferSize(int bs) {
-		bs = bs < BUFFER_SIZE ? BUFFER_SIZE : bs;
-		bufferSize.set(bs);
+	private Engine borrowLeaf() {
+		Engine e = idleLeaves.poll();
+		if (e == null) {
+			e = newXxh3Engine(BUFFER_SIZE);
+		}
+		e.reset();
+		return e;
 	}
 
-	public int getBufferSize() {
-		return bufferSize.get();
+	private void releaseLeaf(Engine e) {
+		if (!idleLeaves.offer(e)) {
+			e.free();
+		}
 	}
 
-	
-	
-	// ----------------------------
-	// Temp file helpers
-	// ----------------------------
+	private Engine newXxh3Engine(int size) {
+		return nativeXXH3 ? new Xxh3Engine(size) : new JavaXxh3Engine(size);
+	}
 
-	@Override
-	public String getAlgorithm() {
-		return algorithm.get();
+	private Engine newEngine() {
+		Engine e;
+		if (isTree) {
+			e = new TreeEngine(chunkSize, newXxh3Engine(chunkSize), newXxh3Engine(BUFFER_SIZE));
+		} else if (isXXH3) {
+			e = newXxh3Engine(chunkSize);
+		} else {
+			e = new DigestEngine(messageDigest(digestAlgorithm), chunkSize);
+		}
+		if (digestNames.isEmpty()) {
+			return e;
+		}
+		MessageDigest[] mds = new MessageDigest[digestNames.size()];
+		for (int i = 0; i < mds.length; i++) {
+			mds[i] = messageDigest(digestNames.get(i));
+		}
+		return new MultiEngine(e, digestAlgorithms, mds);
 	}
 
-	private void prepareTempFile() {
+	private static MessageDigest messageDigest(String name) {
 		try {
-			cleanupTempIfPresent();
-			tempPath.set(Files.createTempFile(UUID.randomUUID().toString(), "content"));
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to buffer content", e);
+			return MessageDigest.getInstance(name);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
 	}
 
-	private void cleanupTempIfPresent() {
+	private static boolean nativeAvailable() {
 		try {
-			Path p = tempPath.get();
-			if (p != null && Files.exists(p) && Files.isRegularFile(p)) {
-				Files.delete(p);
+			XXH3State probe = XXHash.XXH3_createState();
+			if (probe == null) {
+				LOGGER.warn("XXH3_createState() returned null, hashing XXH3 in Java");
+				return false;
 			}
+			XXHash.XXH3_freeState(probe);
+			return true;
+		} catch (LinkageError | RuntimeException e) {
+			LOGGER.warn("LWJGL xxHash natives not available, hashing XXH3 in Java: {}", e.toString());
+			return false;
+		}
+	}
+
+	private static void deleteQuietly(Path p) {
+		try {
+			Files.deleteIfExists(p);
 		} catch (IOException ignore) {
 			// best-effort cleanup
 		}
@@ -345,6 +672,533 @@ public class DefaultHashingService implements HashingService {
 		return sb.toString();
 	}
 
+	// ----------------------------
+	// Sessions and hashers
+	// ----------------------------
+
+	private static final class Session implements HashingSession {
+
+		private final String hash;
+		private final long size;
+		private final byte[] header;
+		private final Map<String, String> digests;
+		private Path cached;
+
+		Session(String hash, long size, byte[] header, Map<String, String> digests, Path cached) {
+			this.hash = hash;
+			this.size = size;
+			this.header = header;
+			this.digests = digests;
+			this.cached = cached;
+		}
+
+		@Override
+		public String hash() {
+			return hash;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public Optional<byte[]> header() {
+			return Optional.ofNullable(header);
+		}
+
+		@Override
+		public Map<String, String> digests() {
+			return digests;
+		}
+
+		@Override
+		public synchronized Optional<InputStream> getInputStream(boolean deleteOnClose) {
+			if (cached == null || !Files.exists(cached)) {
+				return Optional.empty();
+			}
+			try {
+				if (!deleteOnClose) {
+					return Optional.of(Files.newInputStream(cached));
+				}
+				InputStream is = Files.newInputStream(cached, StandardOpenOption.DELETE_ON_CLOSE);
+				// the stream owns the file now
+				cached = null;
+				return Optional.of(is);
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to create an InputStream", e);
+			}
+		}
+
+		@Override
+		public synchronized void close() {
+			if (cached != null) {
+				deleteQuietly(cached);
+				cached = null;
+			}
+		}
+	}
+
+	private static final class EngineHasher implements Hasher {
+
+		private final byte[] head = new byte[BUFFER_SIZE];
+		private Engine engine;
+		private long size;
+		private boolean digested;
+
+		EngineHasher(Engine engine) {
+			this.engine = engine;
+			engine.reset();
+		}
+
+		@Override
+		public void update(byte[] b, int off, int len) {
+			Objects.checkFromIndexSize(off, len, b.length);
+			if (digested || engine == null) {
+				throw new IllegalStateException("Hasher already digested or closed");
+			}
+			if (size < head.length) {
+				System.arraycopy(b, off, head, (int) size, (int) Math.min(len, head.length - size));
+			}
+			size += len;
+			engine.update(b, off, len);
+		}
+
+		@Override
+		public void update(ByteBuffer b) {
+			if (digested || engine == null) {
+				throw new IllegalStateException("Hasher already digested or closed");
+			}
+			if (size < head.length) {
+				int n = (int) Math.min(b.remaining(), head.length - size);
+				b.get(b.position(), head, (int) size, n);
+			}
+			size += b.remaining();
+			engine.update(b);
+		}
+
+		@Override
+		public String digest() {
+			if (digested || engine == null) {
+				throw new IllegalStateException("Hasher already digested or closed");
+			}
+			digested = true;
+			return engine.digest();
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public Optional<byte[]> header() {
+			return size == 0 ? Optional.empty() : Optional.of(Arrays.copyOf(head, (int) Math.min(size, head.length)));
+		}
+
+		@Override
+		public Map<String, String> digests() {
+			if (!digested || engine == null) {
+				throw new IllegalStateException("Hasher not digested or closed");
+			}
+			return engine.digests();
+		}
+
+		@Override
+		public void close() {
+			if (engine != null) {
+				engine.free();
+				engine = null;
+			}
+		}
+	}
+
+	// hashing state plus the buffers that go with it, reset before every use
+	private abstract static class Engine {
+
+		byte[] buffer;
+		// chunks read from channels, and the scratch of native updates
+		ByteBuffer direct;
+
+		Engine(int chunkSize) {
+			this.buffer = new byte[chunkSize];
+			this.direct = ByteBuffer.allocateDirect(chunkSize);
+		}
+
+		// grow the buffers to the chunk size
+		void fit(int chunkSize) {
+			if (buffer.length < chunkSize) {
+				buffer = new byte[chunkSize];
+			}
+			if (direct.capacity() < chunkSize) {
+				direct = ByteBuffer.allocateDirect(chunkSize);
+			}
+		}
+
+		abstract void reset();
+
+		abstract void update(byte[] b, int off, int len);
+
+		// consumes the remaining bytes of b
+		abstract void update(ByteBuffer b);
+
+		abstract String digest();
+
+		// the raw 128 bit digest, high64 then low64 big-endian; XXH3 only
+		void digest(byte[] out, int off) {
+			throw new UnsupportedOperationException("No raw digest for " + getClass().getSimpleName());
+		}
+
+		// the secondary digests of what digest() last covered
+		Map<String, String> digests() {
+			return Map.of();
+		}
+
+		// secondary digests only, for content whose hash is computed elsewhere; consumes nothing
+		void updateDigests(ByteBuffer b) {
+			// none by default
+		}
+
+		// the secondary digests of what updateDigests() covered
+		Map<String, String> finishDigests() {
+			return Map.of();
+		}
+
+		void free() {
+			// nothing native by default
+		}
+	}
+
+	// an engine plus secondary digests fed the same bytes; shares the buffers of the engine
+	private static final class MultiEngine extends Engine {
+
+		private final Engine primary;
+		private final List<String> algorithms;
+		private final MessageDigest[] mds;
+		private Map<String, String> last = Map.of();
+
+		MultiEngine(Engine primary, List<String> algorithms, MessageDigest[] mds) {
+			super(0);
+			this.primary = primary;
+			this.algorithms = algorithms;
+			this.mds = mds;
+			this.buffer = primary.buffer;
+			this.direct = primary.direct;
+		}
+
+		@Override
+		void fit(int chunkSize) {
+			primary.fit(chunkSize);
+			buffer = primary.buffer;
+			direct = primary.direct;
+		}
+
+		@Override
+		void reset() {
+			primary.reset();
+			for (MessageDigest md : mds) {
+				md.reset();
+			}
+			last = Map.of();
+		}
+
+		@Override
+		void update(byte[] b, int off, int len) {
+			primary.update(b, off, len);
+			for (MessageDigest md : mds) {
+				md.update(b, off, len);
+			}
+		}
+
+		@Override
+		void update(ByteBuffer b) {
+			updateDigests(b);
+			primary.update(b);
+		}
+
+		@Override
+		String digest() {
+			last = finishDigests();
+			return primary.digest();
+		}
+
+		@Override
+		Map<String, String> digests() {
+			return last;
+		}
+
+		@Override
+		void updateDigests(ByteBuffer b) {
+			int from = b.position();
+			for (MessageDigest md : mds) {
+				md.update(b);
+				b.position(from);
+			}
+		}
+
+		@Override
+		Map<String, String> finishDigests() {
+			Map<String, String> out = new LinkedHashMap<>();
+			for (int i = 0; i < mds.length; i++) {
+				out.put(algorithms.get(i), toHex(mds[i].digest()));
+			}
+			return out;
+		}
+
+		@Override
+		void free() {
+			primary.free();
+		}
+	}
+
+	// XXH3-TREE hashed leaf after leaf, for content that is not in a file
+	private static final class TreeEngine extends Engine {
+
+		private final Engine leaf;
+		private final Engine root;
+		private final byte[] node = new byte[DIGEST_SIZE];
+		private long size;
+		private int leafFill;
+
+		TreeEngine(int chunkSize, Engine leaf, Engine root) {
+			super(chunkSize);
+			this.leaf = leaf;
+			this.root = root;
+		}
+
+		@Override
+		void fit(int chunkSize) {
+			super.fit(chunkSize);
+			leaf.fit(chunkSize);
+		}
+
+		@Override
+		void reset() {
+			leaf.reset();
+			root.reset();
+			size = 0;
+			leafFill = 0;
+		}
+
+		@Override
+		void update(byte[] b, int off, int len) {
+			while (len > 0) {
+				int n = Math.min(len, TREE_LEAF_SIZE - leafFill);
+				leaf.update(b, off, n);
+				advance(n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		void update(ByteBuffer b) {
+			int limit = b.limit();
+			while (b.hasRemaining()) {
+				int n = Math.min(b.remaining(), TREE_LEAF_SIZE - leafFill);
+				b.limit(b.position() + n);
+				leaf.update(b);
+				b.limit(limit);
+				advance(n);
+			}
+		}
+
+		@Override
+		String digest() {
+			if (leafFill > 0) {
+				closeLeaf();
+			}
+			byte[] len = new byte[8];
+			ByteBuffer.wrap(len).order(ByteOrder.LITTLE_ENDIAN).putLong(size);
+			root.update(len, 0, len.length);
+			return root.digest();
+		}
+
+		@Override
+		void free() {
+			leaf.free();
+			root.free();
+		}
+
+		private void advance(int n) {
+			size += n;
+			leafFill += n;
+			if (leafFill == TREE_LEAF_SIZE) {
+				closeLeaf();
+			}
+		}
+
+		private void closeLeaf() {
+			leaf.digest(node, 0);
+			root.update(node, 0, node.length);
+			leaf.reset();
+			leafFill = 0;
+		}
+	}
+
+	// a native XXH3 state, freed explicitly
+	private static final class Xxh3Engine extends Engine {
+
+		private XXH3State state;
+		// uses BufferUtils internally (direct buffer); result struct is re-used
+		private final XXH128Hash out = XXH128Hash.create();
+
+		Xxh3Engine(int chunkSize) {
+			super(chunkSize);
+			this.state = XXHash.XXH3_createState();
+			if (state == null) {
+				throw new IllegalStateException("XXH3_createState() returned null; LWJGL natives may be missing.");
+			}
+		}
+
+		@Override
+		void reset() {
+			int rc = XXHash.XXH3_128bits_reset(state);
+			if (rc != XXHash.XXH_OK) {
+				throw new RuntimeException("XXH3_128bits_reset failed (rc=" + rc + ")");
+			}
+		}
+
+		@Override
+		void update(byte[] b, int off, int len) {
+			while (len > 0) {
+				// copy into direct scratch and update hash state
+				int n = Math.min(len, direct.capacity());
+				direct.clear();
+				direct.put(b, off, n);
+				direct.flip();
+				update(direct);
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		void update(ByteBuffer b) {
+			if (b.hasArray()) {
+				update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+				b.position(b.limit());
+				return;
+			}
+			if (!b.isDirect()) {
+				// read-only heap buffer
+				while (b.hasRemaining()) {
+					int n = Math.min(b.remaining(), direct.capacity());
+					direct.clear();
+					direct.put(direct.position(), b, b.position(), n);
+					direct.limit(n);
+					b.position(b.position() + n);
+					update(direct);
+				}
+				return;
+			}
+			// hashed in place, the native call reads position..limit
+			int rc = XXHash.XXH3_128bits_update(state, b);
+			if (rc != XXHash.XXH_OK) {
+				throw new RuntimeException("XXH3_128bits_update failed (rc=" + rc + ")");
+			}
+			b.position(b.limit());
+		}
+
+		@Override
+		String digest() {
+			XXHash.XXH3_128bits_digest(state, out);
+			// stable 128-bit hex: high||low (32 hex chars)
+			return toHex128(out.high64(), out.low64());
+		}
+
+		@Override
+		void digest(byte[] b, int off) {
+			XXHash.XXH3_128bits_digest(state, out);
+			ByteBuffer.wrap(b, off, DIGEST_SIZE).putLong(out.high64()).putLong(out.low64());
+		}
+
+		@Override
+		void free() {
+			if (state != null) {
+				XXHash.XXH3_freeState(state);
+				state = null;
+			}
+		}
+	}
+
+	// XXH3 in plain Java, nothing to free
+	private static final class JavaXxh3Engine extends Engine {
+
+		private final Xxh3Java state = new Xxh3Java();
+
+		JavaXxh3Engine(int chunkSize) {
+			super(chunkSize);
+		}
+
+		@Override
+		void reset() {
+			state.reset();
+		}
+
+		@Override
+		void update(byte[] b, int off, int len) {
+			state.update(b, off, len);
+		}
+
+		@Override
+		void update(ByteBuffer b) {
+			if (b.hasArray()) {
+				state.update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+				b.position(b.limit());
+				return;
+			}
+			// direct buffers are copied through the heap buffer, it is not in use while they are hashed
+			while (b.hasRemaining()) {
+				int n = Math.min(b.remaining(), buffer.length);
+				b.get(buffer, 0, n);
+				state.update(buffer, 0, n);
+			}
+		}
+
+		@Override
+		String digest() {
+			state.digest();
+			return toHex128(state.high64(), state.low64());
+		}
+
+		@Override
+		void digest(byte[] b, int off) {
+			state.digest();
+			ByteBuffer.wrap(b, off, DIGEST_SIZE).putLong(state.high64()).putLong(state.low64());
+		}
+	}
+
+	private static final class DigestEngine extends Engine {
+
+		private final MessageDigest md;
+
+		DigestEngine(MessageDigest md, int chunkSize) {
+			super(chunkSize);
+			this.md = md;
+		}
+
+		@Override
+		void reset() {
+			md.reset();
+		}
+
+		@Override
+		void update(byte[] b, int off, int len) {
+			md.update(b, off, len);
+		}
+
+		@Override
+		void update(ByteBuffer b) {
+			md.update(b);
+		}
+
+		@Override
+		String digest() {
+			return toHex(md.digest());
+		}
+	}
+
 	/**
 	 * 128-bit output as 32 lowercase hex chars.
 	 * Encoded as high||low (two 64-bit words), fixed width.
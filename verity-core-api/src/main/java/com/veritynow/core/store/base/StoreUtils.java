@@ -1,5 +1,10 @@
 package com.veritynow.core.store.base;
 
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import com.veritynow.util.StringUtils;
 
 public class StoreUtils {
@@ -16,4 +21,64 @@ public class StoreUtils {
 	public static void enforceRequired(String s, String argName) {
 		if (StringUtils.isEmpty(s)) throw new IllegalArgumentException(argName + " must not be blank");
 	}
+	
+	public static void enforceRange(long offset, long length) {
+		if (offset < 0 || length < 0) throw new IllegalArgumentException("Invalid range offset=" + offset + " length=" + length);
+	}
+	
+	/**
+	 * Skip offset bytes of in and stop after length more bytes. Closing the slice closes in.
+	 */
+	public static InputStream slice(InputStream in, long offset, long length) throws IOException {
+		enforceRange(offset, length);
+		try {
+			in.skipNBytes(offset);
+		} catch (EOFException e) {
+			// range starts past the end, nothing to read
+			length = 0;
+		}
+		return limit(in, length);
+	}
+	
+	/**
+	 * Stop reading in after length bytes. Closing the returned stream closes in.
+	 */
+	public static InputStream limit(InputStream in, long length) {
+		return new FilterInputStream(in) {
+			private long remaining = length;
+
+			@Override
+			public int read() throws IOException {
+				if (remaining <= 0) return -1;
+				int b = super.read();
+				if (b >= 0) remaining--;
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining <= 0) return -1;
+				int n = super.read(b, off, (int) Math.min(len, remaining));
+				if (n > 0) remaining -= n;
+				return n;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(Math.min(n, remaining));
+				remaining -= skipped;
+				return skipped;
+			}
+
+			@Override
+			public int available() throws IOException {
+				return (int) Math.min(super.available(), remaining);
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
 }
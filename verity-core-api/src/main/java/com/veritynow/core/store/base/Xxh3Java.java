@@ -0,0 +1,331 @@
+package com.veritynow.core.store.base;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.HexFormat;
+
+/**
+ * Streaming XXH3 128-bit (seed 0, default secret) in plain Java, for hosts without the LWJGL xxHash natives.
+ *
+ * Follows the reference streaming implementation (xxhash.h 0.8.x) step by step, so it produces the same
+ * hash as XXH3_128bits_reset/update/digest for any split of the content into updates:
+ *  - up to 256 bytes are buffered, inputs of at most 240 bytes in total are hashed by the short paths on digest
+ *  - longer content is accumulated 64 byte stripe at a time, the accumulators are scrambled every 16 stripes
+ *  - digest works on copies, the state can keep taking updates after it
+ *
+ * Notes:
+ *  - No allocation after construction, words are read little-endian through VarHandle views of the arrays.
+ *  - Not thread safe, one state per hash.
+ *  - zero-allocation-hashing (used by PathKeyCodec) has XXH3 128 as well, but one shot only.
+ */
+final class Xxh3Java {
+
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private static final long PRIME32_1 = 0x9E3779B1L;
+	private static final long PRIME32_2 = 0x85EBCA77L;
+	private static final long PRIME32_3 = 0xC2B2AE3DL;
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+	private static final long PRIME_MX1 = 0x165667919E3779F9L;
+	private static final long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+	private static final byte[] SECRET = HexFormat.of().parseHex(
+			"b8fe6c3923a44bbe7c01812cf721ad1cded46de9839097db7240a4a4b7b3671fcb79e64eccc0e578825ad07dccff7221b8084674f743248ee03590e6813a264c3c2852bb91c300cb88d0658b1b532ea371644897a20df94e3819ef46a9deacd8a8fa763fe39c343ff9dcbbc7c70b4f1d8a51e04bcdb45931c89f7ec9d9787364eac5ac8334d3ebc3c581a0fffa1363eb170ddd51b7f0da49d316552629d4689e2b16be587d47a1fc8ff8b8d17ad031ce45cb3a8f95160428afd7fbcabb4b407e");
+
+	private static final int SECRET_SIZE = 192;
+	private static final int STRIPE_LEN = 64;
+	private static final int SECRET_CONSUME_RATE = 8;
+	private static final int STRIPES_PER_BLOCK = (SECRET_SIZE - STRIPE_LEN) / SECRET_CONSUME_RATE;
+	private static final int SECRET_LIMIT = SECRET_SIZE - STRIPE_LEN;
+	private static final int SECRET_LASTACC_START = 7;
+	private static final int SECRET_MERGEACCS_START = 11;
+	private static final int MIDSIZE_MAX = 240;
+	private static final int MIDSIZE_STARTOFFSET = 3;
+	private static final int MIDSIZE_LASTOFFSET = 17;
+	private static final int SECRET_SIZE_MIN = 136;
+	private static final int INTERNAL_BUFFER_SIZE = 256;
+	private static final int INTERNAL_BUFFER_STRIPES = INTERNAL_BUFFER_SIZE / STRIPE_LEN;
+
+	private final long[] acc = new long[8];
+	private final long[] digestAcc = new long[8];
+	private final byte[] buffer = new byte[INTERNAL_BUFFER_SIZE];
+	private final byte[] lastStripe = new byte[STRIPE_LEN];
+	private long totalLen;
+	private int bufferedSize;
+	private int nbStripesSoFar;
+
+	// result of the last digest, also the accumulators of the short paths
+	private long low;
+	private long high;
+
+	Xxh3Java() {
+		reset();
+	}
+
+	void reset() {
+		acc[0] = PRIME32_3;
+		acc[1] = PRIME64_1;
+		acc[2] = PRIME64_2;
+		acc[3] = PRIME64_3;
+		acc[4] = PRIME64_4;
+		acc[5] = PRIME32_2;
+		acc[6] = PRIME64_5;
+		acc[7] = PRIME32_1;
+		totalLen = 0;
+		bufferedSize = 0;
+		nbStripesSoFar = 0;
+	}
+
+	void update(byte[] in, int off, int len) {
+		if (len == 0) {
+			return;
+		}
+		totalLen += len;
+		if (len <= INTERNAL_BUFFER_SIZE - bufferedSize) {
+			System.arraycopy(in, off, buffer, bufferedSize, len);
+			bufferedSize += len;
+			return;
+		}
+		int end = off + len;
+		if (bufferedSize > 0) {
+			int load = INTERNAL_BUFFER_SIZE - bufferedSize;
+			System.arraycopy(in, off, buffer, bufferedSize, load);
+			off += load;
+			nbStripesSoFar = consumeStripes(acc, buffer, 0, INTERNAL_BUFFER_STRIPES, nbStripesSoFar);
+			bufferedSize = 0;
+		}
+		if (end - off > INTERNAL_BUFFER_SIZE) {
+			// never the last byte, the last stripe is hashed by digest
+			int nbStripes = (end - 1 - off) / STRIPE_LEN;
+			nbStripesSoFar = consumeStripes(acc, in, off, nbStripes, nbStripesSoFar);
+			off += nbStripes * STRIPE_LEN;
+			// the stripe before the rest, digest needs it when less than a stripe is left
+			System.arraycopy(in, off - STRIPE_LEN, buffer, INTERNAL_BUFFER_SIZE - STRIPE_LEN, STRIPE_LEN);
+		}
+		System.arraycopy(in, off, buffer, 0, end - off);
+		bufferedSize = end - off;
+	}
+
+	void digest() {
+		if (totalLen > MIDSIZE_MAX) {
+			long[] a = digestAcc;
+			System.arraycopy(acc, 0, a, 0, acc.length);
+			if (bufferedSize >= STRIPE_LEN) {
+				int nbStripes = (bufferedSize - 1) / STRIPE_LEN;
+				consumeStripes(a, buffer, 0, nbStripes, nbStripesSoFar);
+				accumulate512(a, buffer, bufferedSize - STRIPE_LEN, SECRET_LIMIT - SECRET_LASTACC_START);
+			} else {
+				int catchup = STRIPE_LEN - bufferedSize;
+				System.arraycopy(buffer, INTERNAL_BUFFER_SIZE - catchup, lastStripe, 0, catchup);
+				System.arraycopy(buffer, 0, lastStripe, catchup, bufferedSize);
+				accumulate512(a, lastStripe, 0, SECRET_LIMIT - SECRET_LASTACC_START);
+			}
+			low = mergeAccs(a, SECRET_MERGEACCS_START, totalLen * PRIME64_1);
+			high = mergeAccs(a, SECRET_SIZE - 8 * a.length - SECRET_MERGEACCS_START, ~(totalLen * PRIME64_2));
+			return;
+		}
+		// everything is still in the buffer
+		int len = (int) totalLen;
+		if (len <= 16) {
+			hash0to16(buffer, len);
+		} else if (len <= 128) {
+			hash17to128(buffer, len);
+		} else {
+			hash129to240(buffer, len);
+		}
+	}
+
+	long low64() {
+		return low;
+	}
+
+	long high64() {
+		return high;
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static long readLong(byte[] b, int off) {
+		return (long) LONG.get(b, off);
+	}
+
+	private static long readInt(byte[] b, int off) {
+		return (int) INT.get(b, off) & 0xFFFFFFFFL;
+	}
+
+	// returns the new count of stripes in the current block, the input advances by nbStripes stripes
+	private static int consumeStripes(long[] acc, byte[] in, int off, int nbStripes, int soFar) {
+		int secretOff = soFar * SECRET_CONSUME_RATE;
+		if (nbStripes >= STRIPES_PER_BLOCK - soFar) {
+			int thisIter = STRIPES_PER_BLOCK - soFar;
+			do {
+				accumulate(acc, in, off, secretOff, thisIter);
+				scramble(acc, SECRET_LIMIT);
+				off += thisIter * STRIPE_LEN;
+				nbStripes -= thisIter;
+				thisIter = STRIPES_PER_BLOCK;
+				secretOff = 0;
+			} while (nbStripes >= STRIPES_PER_BLOCK);
+			soFar = 0;
+		}
+		if (nbStripes > 0) {
+			accumulate(acc, in, off, secretOff, nbStripes);
+			soFar += nbStripes;
+		}
+		return soFar;
+	}
+
+	private static void accumulate(long[] acc, byte[] in, int off, int secretOff, int nbStripes) {
+		for (int n = 0; n < nbStripes; n++) {
+			accumulate512(acc, in, off + n * STRIPE_LEN, secretOff + n * SECRET_CONSUME_RATE);
+		}
+	}
+
+	private static void accumulate512(long[] acc, byte[] in, int off, int secretOff) {
+		for (int i = 0; i < 8; i++) {
+			long data = readLong(in, off + 8 * i);
+			long key = data ^ readLong(SECRET, secretOff + 8 * i);
+			acc[i ^ 1] += data;
+			acc[i] += (key & 0xFFFFFFFFL) * (key >>> 32);
+		}
+	}
+
+	private static void scramble(long[] acc, int secretOff) {
+		for (int i = 0; i < 8; i++) {
+			long a = acc[i];
+			a ^= a >>> 47;
+			a ^= readLong(SECRET, secretOff + 8 * i);
+			acc[i] = a * PRIME32_1;
+		}
+	}
+
+	private static long mergeAccs(long[] acc, int secretOff, long start) {
+		long result = start;
+		for (int i = 0; i < 4; i++) {
+			result += mul128Fold64(acc[2 * i] ^ readLong(SECRET, secretOff + 16 * i),
+					acc[2 * i + 1] ^ readLong(SECRET, secretOff + 16 * i + 8));
+		}
+		return avalanche(result);
+	}
+
+	private static long mul128Fold64(long a, long b) {
+		return (a * b) ^ Math.unsignedMultiplyHigh(a, b);
+	}
+
+	private static long avalanche(long h) {
+		h ^= h >>> 37;
+		h *= PRIME_MX1;
+		return h ^ (h >>> 32);
+	}
+
+	private static long xxh64Avalanche(long h) {
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		return h ^ (h >>> 32);
+	}
+
+	private void hash0to16(byte[] in, int len) {
+		if (len > 8) {
+			long bitflipl = readLong(SECRET, 32) ^ readLong(SECRET, 40);
+			long bitfliph = readLong(SECRET, 48) ^ readLong(SECRET, 56);
+			long inLo = readLong(in, 0);
+			long inHi = readLong(in, len - 8);
+			long m = inLo ^ inHi ^ bitflipl;
+			long mlo = m * PRIME64_1;
+			long mhi = Math.unsignedMultiplyHigh(m, PRIME64_1);
+			mlo += (long) (len - 1) << 54;
+			inHi ^= bitfliph;
+			mhi += inHi + (inHi & 0xFFFFFFFFL) * (PRIME32_2 - 1);
+			mlo ^= Long.reverseBytes(mhi);
+			long hlo = mlo * PRIME64_2;
+			long hhi = Math.unsignedMultiplyHigh(mlo, PRIME64_2) + mhi * PRIME64_2;
+			low = avalanche(hlo);
+			high = avalanche(hhi);
+		} else if (len >= 4) {
+			long input64 = readInt(in, 0) + (readInt(in, len - 4) << 32);
+			long keyed = input64 ^ (readLong(SECRET, 16) ^ readLong(SECRET, 24));
+			long m = PRIME64_1 + ((long) len << 2);
+			long mlo = keyed * m;
+			long mhi = Math.unsignedMultiplyHigh(keyed, m);
+			mhi += mlo << 1;
+			mlo ^= mhi >>> 3;
+			mlo ^= mlo >>> 35;
+			mlo *= PRIME_MX2;
+			mlo ^= mlo >>> 28;
+			low = mlo;
+			high = avalanche(mhi);
+		} else if (len > 0) {
+			int c1 = in[0] & 0xFF;
+			int c2 = in[len >> 1] & 0xFF;
+			int c3 = in[len - 1] & 0xFF;
+			int combinedl = (c1 << 16) | (c2 << 24) | c3 | (len << 8);
+			int combinedh = Integer.rotateLeft(Integer.reverseBytes(combinedl), 13);
+			long bitflipl = readInt(SECRET, 0) ^ readInt(SECRET, 4);
+			long bitfliph = readInt(SECRET, 8) ^ readInt(SECRET, 12);
+			low = xxh64Avalanche((combinedl & 0xFFFFFFFFL) ^ bitflipl);
+			high = xxh64Avalanche((combinedh & 0xFFFFFFFFL) ^ bitfliph);
+		} else {
+			low = xxh64Avalanche(readLong(SECRET, 64) ^ readLong(SECRET, 72));
+			high = xxh64Avalanche(readLong(SECRET, 80) ^ readLong(SECRET, 88));
+		}
+	}
+
+	private void hash17to128(byte[] in, int len) {
+		low = len * PRIME64_1;
+		high = 0;
+		if (len > 32) {
+			if (len > 64) {
+				if (len > 96) {
+					mix32B(in, 48, len - 64, 96);
+				}
+				mix32B(in, 32, len - 48, 64);
+			}
+			mix32B(in, 16, len - 32, 32);
+		}
+		mix32B(in, 0, len - 16, 0);
+		finishMid(len);
+	}
+
+	private void hash129to240(byte[] in, int len) {
+		int nbRounds = len / 32;
+		low = len * PRIME64_1;
+		high = 0;
+		for (int i = 0; i < 4; i++) {
+			mix32B(in, 32 * i, 32 * i + 16, 32 * i);
+		}
+		low = avalanche(low);
+		high = avalanche(high);
+		for (int i = 4; i < nbRounds; i++) {
+			mix32B(in, 32 * i, 32 * i + 16, MIDSIZE_STARTOFFSET + 32 * (i - 4));
+		}
+		mix32B(in, len - 16, len - 32, SECRET_SIZE_MIN - MIDSIZE_LASTOFFSET - 16);
+		finishMid(len);
+	}
+
+	private void finishMid(int len) {
+		long h = low + high;
+		long hh = low * PRIME64_1 + high * PRIME64_4 + len * PRIME64_2;
+		low = avalanche(h);
+		high = -avalanche(hh);
+	}
+
+	private void mix32B(byte[] in, int off1, int off2, int secretOff) {
+		low += mix16B(in, off1, secretOff);
+		low ^= readLong(in, off2) + readLong(in, off2 + 8);
+		high += mix16B(in, off2, secretOff + 16);
+		high ^= readLong(in, off1) + readLong(in, off1 + 8);
+	}
+
+	private static long mix16B(byte[] in, int off, int secretOff) {
+		return mul128Fold64(readLong(in, off) ^ readLong(SECRET, secretOff),
+				readLong(in, off + 8) ^ readLong(SECRET, secretOff + 8));
+	}
+}
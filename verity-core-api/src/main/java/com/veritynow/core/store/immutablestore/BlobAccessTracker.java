@@ -0,0 +1,69 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded in-process record of blob reads, (last read, read count) per blob name.
+ *
+ * Holds the capacity most recently read blobs, a blob that is not tracked has not been read for a while
+ * (or not since start) and callers fall back to its modification time.
+ */
+public class BlobAccessTracker {
+
+	private static final class Access {
+		long lastRead;
+		int reads;
+	}
+
+	private final int capacity;
+	private final Map<String, Access> entries;
+
+	public BlobAccessTracker(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Access> eldest) {
+				return size() > BlobAccessTracker.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Record a read of name, returns the number of reads tracked for it so far.
+	 */
+	public int record(String name) {
+		synchronized (entries) {
+			Access a = entries.computeIfAbsent(name, k -> new Access());
+			a.lastRead = System.currentTimeMillis();
+			return ++a.reads;
+		}
+	}
+
+	public Optional<Instant> lastRead(String name) {
+		synchronized (entries) {
+			Access a = entries.get(name);
+			return a == null ? Optional.empty() : Optional.of(Instant.ofEpochMilli(a.lastRead));
+		}
+	}
+
+	// start counting again, after a blob changed tier
+	public void reset(String name) {
+		synchronized (entries) {
+			Access a = entries.get(name);
+			if (a != null) {
+				a.reads = 0;
+			}
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
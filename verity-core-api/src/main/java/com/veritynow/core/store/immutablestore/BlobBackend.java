@@ -0,0 +1,53 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Where the payload files of RAW blobs live.
+ *
+ * A blob is addressed by its file name (hash-algorithm), how names are laid out is up to the backend.
+ * Payloads are stored as given, possibly encoded (see {@link BlobCodec}), a backend never looks inside.
+ *
+ * Implementations must be safe for concurrent use. Publishing a name that exists replaces it,
+ * which is harmless since equal names hold equal bytes.
+ */
+public interface BlobBackend {
+
+	public record BlobEntry(String name, long size, Instant lastModified) {
+	}
+
+	// stable name of the backend, for logs and stats
+	String getName();
+
+	boolean exists(String name) throws IOException;
+
+	// stream the stored bytes from offset on, NoSuchFileException if name is not held
+	InputStream open(String name, long offset) throws IOException;
+
+	// open for maintenance (scrub, copy), not counted as a read by backends that track reads
+	default InputStream scan(String name) throws IOException {
+		return open(name, 0);
+	}
+
+	// the local file holding the stored bytes, empty if not held or not a local file; lets callers use zero-copy transfers
+	Optional<Path> locate(String name) throws IOException;
+
+	// move a staged file in under name; staged is consumed
+	void publish(Path staged, String name) throws IOException;
+
+	// create-exclusive publish: false, with staged left in place, if name is already held
+	boolean publishIfAbsent(Path staged, String name) throws IOException;
+
+	// copy the stored bytes of name held by source, forced to disk before it becomes visible
+	void copyFrom(BlobBackend source, String name) throws IOException;
+
+	boolean delete(String name) throws IOException;
+
+	// every blob held, in no particular order
+	void forEach(Consumer<BlobEntry> action) throws IOException;
+}
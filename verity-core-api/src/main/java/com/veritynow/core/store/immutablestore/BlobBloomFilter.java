@@ -0,0 +1,78 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over blob hashes.
+ *
+ * The keys are already uniformly distributed content hashes, so the two base hashes of the
+ * double hashing scheme are taken straight from the hex digest instead of being re-hashed.
+ */
+public class BlobBloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	public BlobBloomFilter(long expectedInsertions, double fpp) {
+		if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("Invalid bloom sizing n=" + expectedInsertions + " fpp=" + fpp);
+		}
+		double ln2 = Math.log(2);
+		long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2));
+		int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = (long) words * 64;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+	}
+
+	public void put(String hash) {
+		long h1 = base(hash, 0);
+		long h2 = base(hash, 16);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long prev;
+			do {
+				prev = bits.get(word);
+				if ((prev & mask) != 0) {
+					break;
+				}
+			} while (!bits.compareAndSet(word, prev, prev | mask));
+		}
+	}
+
+	public boolean mightContain(String hash) {
+		long h1 = base(hash, 0);
+		long h2 = base(hash, 16);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	// 64 bits of the hex digest starting at from, or a mixed String hash for short/non hex keys
+	private static long base(String hash, int from) {
+		if (hash.length() >= from + 16) {
+			try {
+				return Long.parseUnsignedLong(hash, from, from + 16, 16) | 1L;
+			} catch (NumberFormatException ignore) {
+			}
+		}
+		long h = hash.hashCode() * 0x9E3779B97F4A7C15L + from;
+		h ^= (h >>> 31);
+		return h | 1L;
+	}
+}
@@ -0,0 +1,232 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * Bounded in-process catalog of vn_blob rows keyed by (hash, algorithm), loaded lazily from {@link ImmutableRepository}.
+ *
+ * Blob rows never change once written, with one exception: pack compaction moves packed payloads,
+ * and it calls {@link #invalidate(String, String)} for every row it repoints.
+ *
+ * Notes:
+ *  - LRU eviction once capacity entries are held. A capacity of 0 turns the catalog into a pass-through.
+ *  - Absence is never cached, a blob may be written by another node at any time.
+ *  - The optional Bloom filter answers "definitely absent" without a query. It is filled from vn_blob on first use
+ *    and on every insert made through this process, so it is only correct when this process is the single writer.
+ *  - Cached records are shared, callers must not modify them.
+ */
+public class BlobCatalog {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	public record CatalogStats(
+			long size,
+			long capacity,
+			long hits,
+			long misses,
+			long evictions,
+			long bloomNegatives,
+			boolean bloomEnabled
+	) {
+	}
+
+	private record Key(String hash, String algo) {
+	}
+
+	private final ImmutableRepository repo;
+	private final int capacity;
+	private final Map<Key, VnBlobRecord> entries;
+
+	// null when disabled
+	private final BlobBloomFilter bloom;
+	private final String bloomAlgo;
+	private volatile boolean bloomWarm = false;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder bloomNegatives = new LongAdder();
+
+	public BlobCatalog(ImmutableRepository repo, int capacity) {
+		this(repo, capacity, null, null);
+	}
+
+	public BlobCatalog(ImmutableRepository repo, int capacity, BlobBloomFilter bloom, String bloomAlgo) {
+		this.repo = Objects.requireNonNull(repo, "repo");
+		this.capacity = Math.max(0, capacity);
+		this.bloom = bloom;
+		this.bloomAlgo = bloomAlgo;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, VnBlobRecord> eldest) {
+				if (size() > BlobCatalog.this.capacity) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+		if (this.capacity > 0) {
+			LOGGER.info("Blob catalog started, capacity {} entries, bloom filter {}", this.capacity,
+					bloom == null ? "disabled" : bloom.getBitCount() + " bits/" + bloom.getHashCount() + " hashes");
+		}
+	}
+
+	/**
+	 * The vn_blob row of a blob, from memory when possible.
+	 */
+	public Optional<VnBlobRecord> find(String hash, String algo) {
+		Objects.requireNonNull(hash, "hash");
+		Objects.requireNonNull(algo, "algorithm");
+
+		Optional<VnBlobRecord> cached = peek(hash, algo);
+		if (cached.isPresent()) {
+			hits.increment();
+			return cached;
+		}
+		misses.increment();
+
+		if (definitelyAbsent(hash, algo)) {
+			bloomNegatives.increment();
+			return Optional.empty();
+		}
+
+		Optional<VnBlobRecord> br = repo.findByHashAndAlgo(hash, algo);
+		br.ifPresent(this::put);
+		return br;
+	}
+
+	public boolean exists(String hash, String algo) {
+		return find(hash, algo).isPresent();
+	}
+
+	/**
+	 * The vn_blob rows of many blobs keyed by hash, what is not in memory is loaded with a single query.
+	 * Hashes without a row are left out.
+	 */
+	public Map<String, VnBlobRecord> findAll(Collection<String> hashes, String algo) {
+		Objects.requireNonNull(hashes, "hashes");
+		Objects.requireNonNull(algo, "algorithm");
+
+		Map<String, VnBlobRecord> found = new HashMap<>();
+		List<String> unknown = new ArrayList<>();
+		for (String hash : new LinkedHashSet<>(hashes)) {
+			Optional<VnBlobRecord> cached = peek(hash, algo);
+			if (cached.isPresent()) {
+				hits.increment();
+				found.put(hash, cached.get());
+				continue;
+			}
+			misses.increment();
+			if (definitelyAbsent(hash, algo)) {
+				bloomNegatives.increment();
+			} else {
+				unknown.add(hash);
+			}
+		}
+		Map<String, VnBlobRecord> loaded = repo.findByHashes(unknown, algo);
+		loaded.values().forEach(this::put);
+		found.putAll(loaded);
+		return found;
+	}
+
+	/**
+	 * The cached row only, never goes to the database and does not count as a hit or miss.
+	 */
+	public Optional<VnBlobRecord> peek(String hash, String algo) {
+		if (capacity == 0) {
+			return Optional.empty();
+		}
+		synchronized (entries) {
+			return Optional.ofNullable(entries.get(new Key(hash, algo)));
+		}
+	}
+
+	public void put(VnBlobRecord br) {
+		if (capacity == 0) {
+			return;
+		}
+		synchronized (entries) {
+			entries.put(new Key(br.getHash(), br.getHashAlgorithm()), br);
+		}
+	}
+
+	/**
+	 * Record that a blob is about to be inserted, before the insert so a concurrent reader never sees a false negative.
+	 */
+	public void added(String hash, String algo) {
+		if (bloom != null && algo.equals(bloomAlgo)) {
+			bloom.put(hash);
+		}
+	}
+
+	public void invalidate(String hash, String algo) {
+		if (capacity == 0) {
+			return;
+		}
+		synchronized (entries) {
+			entries.remove(new Key(hash, algo));
+		}
+	}
+
+	/**
+	 * Drop any cached row and load the current one.
+	 */
+	public Optional<VnBlobRecord> reload(String hash, String algo) {
+		invalidate(hash, algo);
+		return find(hash, algo);
+	}
+
+	public CatalogStats stats() {
+		long size;
+		synchronized (entries) {
+			size = entries.size();
+		}
+		return new CatalogStats(size, capacity, hits.sum(), misses.sum(), evictions.sum(), bloomNegatives.sum(),
+				bloom != null);
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private boolean definitelyAbsent(String hash, String algo) {
+		if (bloom == null || !algo.equals(bloomAlgo)) {
+			return false;
+		}
+		warmBloom();
+		return !bloom.mightContain(hash);
+	}
+
+	private void warmBloom() {
+		if (bloomWarm) {
+			return;
+		}
+		synchronized (bloom) {
+			if (bloomWarm) {
+				return;
+			}
+			LongAdder n = new LongAdder();
+			repo.forEachHash(bloomAlgo, h -> {
+				bloom.put(h);
+				n.increment();
+			});
+			bloomWarm = true;
+			LOGGER.info("Blob bloom filter warmed with {} hashes", n.sum());
+		}
+	}
+}
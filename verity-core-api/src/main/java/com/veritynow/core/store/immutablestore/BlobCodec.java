@@ -0,0 +1,18 @@
+package com.veritynow.core.store.immutablestore;
+
+/**
+ * Encoding of the stored bytes of a RAW or PACKED blob, recorded in vn_blob.codec.
+ * A null codec is treated as NONE, the codec of every blob written before compression existed.
+ * The blob hash and size always describe the decoded content.
+ */
+public enum BlobCodec {
+	NONE,
+	// zlib framed deflate (java.util.zip), the adler32 trailer is verified on read
+	DEFLATE,
+	// a BlobDeltaEncoder delta against the content of the blob in vn_blob.delta_base
+	DELTA;
+
+	public static BlobCodec of(String codec) {
+		return codec == null ? NONE : BlobCodec.valueOf(codec);
+	}
+}
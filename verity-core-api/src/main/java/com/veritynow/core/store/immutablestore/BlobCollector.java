@@ -0,0 +1,233 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * Incremental garbage collection of blobs no version references anymore.
+ *
+ * A blob is garbage when no vn_node_version row with its (hash, algorithm) exists, other than rolled back ones.
+ * In-flight versions count as references.
+ *
+ * Each pass:
+ *  1. Sweep: candidates marked by an earlier pass at least grace ago are deleted, one at a time under the
+ *     blob's hash lock, with the reference check and the last_seen check repeated by the DELETE itself.
+ *     The storage is released in the same transaction, see {@link ImmutableFSBackingStore#purge(VnBlobRecord)};
+ *     an ingest that inserts the row again afterwards publishes its own bytes.
+ *  2. Mark: unreferenced blobs last seen more than grace ago are remembered as candidates, walking vn_blob
+ *     with a keyset cursor so one pass picks up where the previous one stopped.
+ *  3. Staged uploads abandoned by dead writers and old collided copies are deleted. One shard per pass is also
+ *     swept of manifests whose row is gone, of chunks no manifest references, and of safeWrite temp files left
+ *     by older releases in the blob directory.
+ *
+ * Notes:
+ *  - Work is done in batches of batchSize with a pause between batches, and at most maxPerPass blobs are
+ *    marked per pass, so a large backlog is drained over several passes instead of saturating the database and disk.
+ *  - Candidates are kept in memory only, after a restart they are marked again and wait another grace period.
+ *  - last_seen is bumped whenever an ingest deduplicates against a blob and whenever a client relies on
+ *    a stored hash (content/exists, declared hashes, versions created from content), see
+ *    {@link ImmutableRepository#touch}. A touched blob is only deleted if it is still unreferenced grace
+ *    after its last use, so grace must be well above the time between an upload, or a hash check, and the
+ *    commit of the version that uses it.
+ *  - Runs on its own single thread, so passes never overlap.
+ */
+public class BlobCollector implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	public record CollectorStats(
+			long passes,
+			long pending,
+			long blobsDeleted,
+			long bytesFreed,
+			long chunksDeleted,
+			long filesDeleted,
+			long lastPassMillis
+	) {
+	}
+
+	private record Key(String hash, String algo) {
+	}
+
+	private final ImmutableFSBackingStore store;
+	private final ImmutableRepository repo;
+	private final BlobCatalog catalog;
+	private final Duration grace;
+	private final Duration collidedRetention;
+	private final int batchSize;
+	private final long batchPauseMillis;
+	private final int maxPerPass;
+	private final ScheduledExecutorService scheduler;
+
+	// confined to the collector thread, candidate -> when it was marked
+	private final Map<Key, Instant> pending = new LinkedHashMap<>();
+	private VnBlobRecord cursor;
+	// blob shard scanned for leftover files this pass, one of 256 per pass
+	private int shard;
+
+	private final LongAdder passes = new LongAdder();
+	private final LongAdder blobsDeleted = new LongAdder();
+	private final LongAdder bytesFreed = new LongAdder();
+	private final LongAdder chunksDeleted = new LongAdder();
+	private final LongAdder filesDeleted = new LongAdder();
+	private volatile long lastPassMillis;
+	private volatile int pendingCount;
+
+	public BlobCollector(ImmutableFSBackingStore store, ImmutableRepository repo, BlobCatalog catalog, Duration grace,
+			Duration collidedRetention, int batchSize, long batchPauseMillis, int maxPerPass, long intervalSeconds) {
+		if (batchSize <= 0 || maxPerPass <= 0 || grace.isNegative()) {
+			throw new IllegalArgumentException("Invalid collector settings batchSize=" + batchSize + " maxPerPass="
+					+ maxPerPass + " grace=" + grace);
+		}
+		this.store = store;
+		this.repo = repo;
+		this.catalog = catalog;
+		this.grace = grace;
+		this.collidedRetention = collidedRetention;
+		this.batchSize = batchSize;
+		this.batchPauseMillis = batchPauseMillis;
+		this.maxPerPass = maxPerPass;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "vn-blob-collector");
+			t.setDaemon(true);
+			return t;
+		});
+		if (intervalSeconds > 0) {
+			scheduler.scheduleWithFixedDelay(this::runSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+			LOGGER.info("Blob collection scheduled every {}s, grace {}, batches of {} paused {}ms", intervalSeconds,
+					grace, batchSize, batchPauseMillis);
+		}
+	}
+
+	/**
+	 * Run one pass on the collector thread and wait for it, returns the number of blobs deleted.
+	 */
+	public long collectNow() throws Exception {
+		return scheduler.submit(this::collect).get();
+	}
+
+	public CollectorStats stats() {
+		return new CollectorStats(passes.sum(), pendingCount, blobsDeleted.sum(), bytesFreed.sum(), chunksDeleted.sum(),
+				filesDeleted.sum(), lastPassMillis);
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private long collect() throws Exception {
+		long start = System.currentTimeMillis();
+		Instant now = Instant.now();
+
+		long deleted = sweep(now.minus(grace));
+		mark(now);
+
+		long chunks = store.sweepChunks(now.minus(grace), shard);
+		chunksDeleted.add(chunks);
+		filesDeleted.add(store.purgeStaleFiles(now.minus(grace), now.minus(collidedRetention), shard));
+		shard = (shard + 1) & 0xff;
+
+		pendingCount = pending.size();
+		lastPassMillis = System.currentTimeMillis() - start;
+		passes.increment();
+		if (deleted > 0 || chunks > 0) {
+			LOGGER.info("Blob collection deleted {} blobs and {} chunks in {}ms, {} candidates pending", deleted, chunks,
+					lastPassMillis, pendingCount);
+		}
+		return deleted;
+	}
+
+	private long sweep(Instant markedBefore) throws Exception {
+		// a candidate used since its mark is kept, the DELETE checks last_seen again
+		OffsetDateTime seenBefore = markedBefore.atOffset(ZoneOffset.UTC);
+		long deleted = 0;
+		int inBatch = 0;
+		Iterator<Map.Entry<Key, Instant>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, Instant> e = it.next();
+			// marked in insertion order, everything after this one is younger still
+			if (!e.getValue().isBefore(markedBefore)) {
+				break;
+			}
+			it.remove();
+			Key k = e.getKey();
+
+			// storage is released before the delete commits, an ingest inserting the row again waits
+			// for the commit and then replaces whatever is left under the name
+			long freed = repo.withHashLockTx(k.hash(), k.algo(), dsl -> {
+				Optional<VnBlobRecord> gone = repo.deleteIfUnreferenced(dsl, k.hash(), k.algo(), seenBefore);
+				if (gone.isEmpty()) {
+					return -1L;
+				}
+				catalog.invalidate(k.hash(), k.algo());
+				return store.purge(gone.get());
+			});
+			if (freed >= 0) {
+				bytesFreed.add(freed);
+				blobsDeleted.increment();
+				deleted++;
+			}
+
+			if (++inBatch == batchSize) {
+				inBatch = 0;
+				pause();
+			}
+		}
+		return deleted;
+	}
+
+	private void mark(Instant now) throws InterruptedException {
+		OffsetDateTime seenBefore = now.minus(grace).atOffset(ZoneOffset.UTC);
+		int marked = 0;
+		while (marked < maxPerPass) {
+			List<VnBlobRecord> batch = repo.findUnreferenced(seenBefore, cursor,
+					Math.min(batchSize, maxPerPass - marked));
+			if (batch.isEmpty()) {
+				// reached the end, the next pass starts over from the oldest blob
+				cursor = null;
+				return;
+			}
+			for (VnBlobRecord br : batch) {
+				pending.putIfAbsent(new Key(br.getHash(), br.getHashAlgorithm()), now);
+			}
+			cursor = batch.get(batch.size() - 1);
+			marked += batch.size();
+			pause();
+		}
+	}
+
+	private void pause() throws InterruptedException {
+		if (batchPauseMillis > 0) {
+			Thread.sleep(batchPauseMillis);
+		}
+	}
+
+	private void runSafely() {
+		try {
+			collect();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			LOGGER.error("Blob collection failed", e);
+		}
+	}
+}
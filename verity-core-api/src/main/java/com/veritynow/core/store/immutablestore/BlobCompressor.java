@@ -0,0 +1,144 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Picks and applies the codec of a RAW blob.
+ *
+ * A blob is compressed when:
+ *  - its detected mime type is not a known already-compressed format (images, video, archives ...)
+ *  - it is at least minSize bytes
+ *  - a trial deflate of its first TRIAL_SIZE bytes shrinks them to at most maxRatio of their size
+ *
+ * The final compressed size is checked again, a blob that does not shrink is stored as is.
+ */
+public class BlobCompressor {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	static final int TRIAL_SIZE = 64 * 1024;
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+	// formats that carry their own compression, deflating them again only burns CPU
+	private static final List<String> INCOMPRESSIBLE_PREFIXES = List.of(
+			"image/", "video/", "audio/",
+			"application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+			"application/x-xz", "application/zstd", "application/x-7z-compressed", "application/x-rar-compressed",
+			"application/vnd.openxmlformats-officedocument", "application/vnd.oasis.opendocument",
+			"application/java-archive", "application/x-tika-ooxml", "application/epub+zip");
+
+	private final int level;
+	private final double maxRatio;
+	private final long minSize;
+
+	public BlobCompressor(int level, double maxRatio, long minSize) {
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid deflate level " + level);
+		}
+		this.level = level;
+		this.maxRatio = maxRatio;
+		this.minSize = minSize;
+		LOGGER.info("Blob compression enabled, deflate level={} maxRatio={} minSize={}", level, maxRatio, minSize);
+	}
+
+	/**
+	 * Choose the codec for the content of the given file.
+	 */
+	public BlobCodec choose(String detectedMimeType, long size, Path content) throws IOException {
+		if (size < minSize || isIncompressible(detectedMimeType)) {
+			return BlobCodec.NONE;
+		}
+
+		byte[] sample;
+		try (InputStream is = Files.newInputStream(content)) {
+			sample = is.readNBytes(TRIAL_SIZE);
+		}
+		if (sample.length == 0) {
+			return BlobCodec.NONE;
+		}
+
+		Deflater d = new Deflater(level);
+		try {
+			d.setInput(sample);
+			d.finish();
+			byte[] out = new byte[sample.length];
+			long compressed = 0;
+			while (!d.finished()) {
+				int n = d.deflate(out);
+				compressed += n;
+				// already larger than acceptable, no need to finish
+				if (compressed > sample.length * maxRatio) {
+					return BlobCodec.NONE;
+				}
+			}
+			return BlobCodec.DEFLATE;
+		} finally {
+			d.end();
+		}
+	}
+
+	/**
+	 * Write src encoded with codec into dst (dst must not exist).
+	 * Returns the number of bytes written to dst.
+	 */
+	public long encode(BlobCodec codec, Path src, Path dst) throws IOException {
+		if (codec == BlobCodec.NONE) {
+			throw new IllegalArgumentException("Nothing to encode for codec " + codec);
+		}
+		Deflater d = new Deflater(level);
+		try (InputStream is = Files.newInputStream(src);
+			 OutputStream os = new DeflaterOutputStream(
+					 Files.newOutputStream(dst, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), d, IO_BUFFER_SIZE)) {
+			is.transferTo(os);
+		} finally {
+			d.end();
+		}
+		return Files.size(dst);
+	}
+
+	/**
+	 * Whether the encoded size is worth keeping over the original.
+	 */
+	public boolean worthIt(long size, long storedSize) {
+		return storedSize <= size * maxRatio;
+	}
+
+	/**
+	 * Wrap the stored bytes so the caller reads the original content.
+	 */
+	public static InputStream decode(BlobCodec codec, InputStream stored) {
+		return switch (codec) {
+			case NONE -> stored;
+			// default constructor owns its Inflater and releases it on close
+			case DEFLATE -> new InflaterInputStream(new BufferedInputStream(stored, IO_BUFFER_SIZE));
+			case DELTA -> throw new IllegalArgumentException("A delta is decoded against its base, not on its own");
+		};
+	}
+
+	private static boolean isIncompressible(String mimeType) {
+		if (mimeType == null) {
+			return false;
+		}
+		String m = mimeType.toLowerCase(Locale.ROOT);
+		for (String p : INCOMPRESSIBLE_PREFIXES) {
+			if (m.startsWith(p)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
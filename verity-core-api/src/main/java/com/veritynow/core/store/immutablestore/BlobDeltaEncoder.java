@@ -0,0 +1,273 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Encodes a blob as a delta against the content of a previous version of it, for {@link BlobCodec#DELTA}.
+ *
+ * The delta is a COPY/ADD instruction stream in the spirit of VCDIFF/xdelta:
+ *  - header: base size, target size (unsigned LEB128)
+ *  - COPY (0x01) offset, length: length bytes of the base starting at offset
+ *  - ADD (0x02) length, bytes: literal bytes
+ *
+ * Matches are found by indexing every BLOCK_SIZE aligned block of the base under a rolling hash, then sliding
+ * that hash over the target one byte at a time; a match is extended both ways before it is emitted.
+ *
+ * Notes:
+ *  - Base and target are held in memory, only blobs up to maxSize are delta encoded.
+ *  - A delta of a delta is allowed up to maxChain levels, the next version is stored whole (a snapshot),
+ *    so a read never applies more than maxChain deltas.
+ *  - A delta is kept only if it is at most maxRatio of the target size.
+ */
+public class BlobDeltaEncoder {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	static final int BLOCK_SIZE = 16;
+	private static final int PRIME = 0x01000193;
+	private static final int COPY = 0x01;
+	private static final int ADD = 0x02;
+
+	public record DeltaStats(
+			long attempts,
+			long stored,
+			long rejected,
+			long snapshots,
+			long contentBytes,
+			long deltaBytes,
+			int maxChain,
+			long maxSize
+	) {
+	}
+
+	private final int maxChain;
+	private final long maxSize;
+	private final double maxRatio;
+
+	private final LongAdder attempts = new LongAdder();
+	private final LongAdder stored = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder snapshots = new LongAdder();
+	private final LongAdder contentBytes = new LongAdder();
+	private final LongAdder deltaBytes = new LongAdder();
+
+	public BlobDeltaEncoder(int maxChain, long maxSize, double maxRatio) {
+		if (maxChain < 1 || maxSize < BLOCK_SIZE || maxSize > Integer.MAX_VALUE - 8 || maxRatio <= 0) {
+			throw new IllegalArgumentException("Invalid delta settings maxChain=" + maxChain + " maxSize=" + maxSize
+					+ " maxRatio=" + maxRatio);
+		}
+		this.maxChain = maxChain;
+		this.maxSize = maxSize;
+		this.maxRatio = maxRatio;
+		LOGGER.info("Blob delta encoding enabled, maxChain={} maxSize={} maxRatio={}", maxChain, maxSize, maxRatio);
+	}
+
+	/**
+	 * Whether content of the given size may be delta encoded, or serve as a base.
+	 */
+	public boolean accepts(long size) {
+		return size <= maxSize;
+	}
+
+	/**
+	 * Whether a delta may be taken against a base at depth baseDepth (0 for a blob stored whole),
+	 * false when the chain is full and the version has to be stored whole.
+	 */
+	public boolean extendsChain(int baseDepth) {
+		if (baseDepth < maxChain) {
+			return true;
+		}
+		snapshots.increment();
+		return false;
+	}
+
+	/**
+	 * The delta that rebuilds target from base, or null if it does not shrink target enough.
+	 */
+	public byte[] encode(byte[] base, byte[] target) {
+		attempts.increment();
+		long limit = (long) (target.length * maxRatio);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(target.length, 64 * 1024));
+		writeVarLong(out, base.length);
+		writeVarLong(out, target.length);
+
+		int[] index = index(base);
+		int mask = index.length - 1;
+		int pow = pow();
+
+		int pending = 0;
+		int i = 0;
+		int h = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+		while (i + BLOCK_SIZE <= target.length) {
+			int candidate = index[h & mask] - 1;
+			if (candidate >= 0
+					&& Arrays.equals(base, candidate, candidate + BLOCK_SIZE, target, i, i + BLOCK_SIZE)) {
+				// grow the match backwards into the pending literals and forwards as far as it goes
+				int from = i;
+				int baseFrom = candidate;
+				while (from > pending && baseFrom > 0 && base[baseFrom - 1] == target[from - 1]) {
+					from--;
+					baseFrom--;
+				}
+				int to = i + BLOCK_SIZE;
+				int baseTo = candidate + BLOCK_SIZE;
+				while (to < target.length && baseTo < base.length && base[baseTo] == target[to]) {
+					to++;
+					baseTo++;
+				}
+				writeAdd(out, target, pending, from);
+				writeCopy(out, baseFrom, to - from);
+				if (out.size() > limit) {
+					rejected.increment();
+					return null;
+				}
+				i = to;
+				pending = to;
+				if (i + BLOCK_SIZE <= target.length) {
+					h = hash(target, i);
+				}
+				continue;
+			}
+			if (i + BLOCK_SIZE < target.length) {
+				h = (h - (target[i] & 0xff) * pow) * PRIME + (target[i + BLOCK_SIZE] & 0xff);
+			}
+			i++;
+		}
+		writeAdd(out, target, pending, target.length);
+
+		if (out.size() > limit) {
+			rejected.increment();
+			return null;
+		}
+		stored.increment();
+		contentBytes.add(target.length);
+		deltaBytes.add(out.size());
+		return out.toByteArray();
+	}
+
+	/**
+	 * Rebuild the content a delta describes from the content of its base.
+	 */
+	public static byte[] apply(byte[] base, InputStream delta) throws IOException {
+		long baseSize = readVarLong(delta);
+		long size = readVarLong(delta);
+		if (baseSize != base.length) {
+			throw new IOException("Delta expects a base of " + baseSize + " bytes, got " + base.length);
+		}
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IOException("Invalid delta target size " + size);
+		}
+		byte[] out = new byte[(int) size];
+		int pos = 0;
+		int op;
+		while ((op = delta.read()) >= 0) {
+			switch (op) {
+				case COPY -> {
+					long offset = readVarLong(delta);
+					int length = (int) readVarLong(delta);
+					if (offset + length > base.length || pos + length > out.length) {
+						throw new IOException("Delta copy out of bounds at " + pos);
+					}
+					System.arraycopy(base, (int) offset, out, pos, length);
+					pos += length;
+				}
+				case ADD -> {
+					int length = (int) readVarLong(delta);
+					if (pos + length > out.length || delta.readNBytes(out, pos, length) != length) {
+						throw new IOException("Delta add out of bounds or truncated at " + pos);
+					}
+					pos += length;
+				}
+				default -> throw new IOException("Invalid delta instruction " + op + " at " + pos);
+			}
+		}
+		if (pos != out.length) {
+			throw new IOException("Delta rebuilt " + pos + " bytes, expected " + out.length);
+		}
+		return out;
+	}
+
+	public int getMaxChain() {
+		return maxChain;
+	}
+
+	public DeltaStats stats() {
+		return new DeltaStats(attempts.sum(), stored.sum(), rejected.sum(), snapshots.sum(), contentBytes.sum(),
+				deltaBytes.sum(), maxChain, maxSize);
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	// offset + 1 of an aligned base block per hash bucket, 0 for none; the last block of a bucket wins
+	private static int[] index(byte[] base) {
+		int blocks = base.length / BLOCK_SIZE;
+		int[] index = new int[Integer.highestOneBit(Math.max(1, blocks) * 2 - 1) << 1];
+		int mask = index.length - 1;
+		for (int off = 0; off + BLOCK_SIZE <= base.length; off += BLOCK_SIZE) {
+			index[hash(base, off) & mask] = off + 1;
+		}
+		return index;
+	}
+
+	private static int hash(byte[] b, int off) {
+		int h = 0;
+		for (int i = off; i < off + BLOCK_SIZE; i++) {
+			h = h * PRIME + (b[i] & 0xff);
+		}
+		return h;
+	}
+
+	// weight of the byte leaving the rolling window
+	private static int pow() {
+		int p = 1;
+		for (int i = 1; i < BLOCK_SIZE; i++) {
+			p *= PRIME;
+		}
+		return p;
+	}
+
+	private static void writeAdd(ByteArrayOutputStream out, byte[] target, int from, int to) {
+		if (to > from) {
+			out.write(ADD);
+			writeVarLong(out, to - from);
+			out.write(target, from, to - from);
+		}
+	}
+
+	private static void writeCopy(ByteArrayOutputStream out, int offset, int length) {
+		out.write(COPY);
+		writeVarLong(out, offset);
+		writeVarLong(out, length);
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long v) {
+		while ((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated delta");
+			}
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Invalid delta varint");
+	}
+}
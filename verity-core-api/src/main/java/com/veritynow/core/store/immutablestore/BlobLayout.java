@@ -0,0 +1,18 @@
+package com.veritynow.core.store.immutablestore;
+
+/**
+ * How the bytes of a blob are laid out on disk, recorded in vn_blob.layout.
+ * A null layout is treated as RAW, the layout of every blob written before chunking existed.
+ */
+public enum BlobLayout {
+	// the whole content in a single file under Blobs/<shard>/<hash>-<algo>
+	RAW,
+	// a manifest under Manifests/<shard>/<hash>-<algo> listing content-defined chunks stored under Chunks/
+	CHUNKED,
+	// a slice of a pack segment under Packs/, located by vn_blob.pack_segment and pack_offset
+	PACKED;
+
+	public static BlobLayout of(String layout) {
+		return layout == null ? RAW : BlobLayout.valueOf(layout);
+	}
+}
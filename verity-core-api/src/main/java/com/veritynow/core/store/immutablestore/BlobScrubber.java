@@ -0,0 +1,387 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.veritynow.core.store.HashingService;
+import com.veritynow.core.store.HashingSession;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+import com.veritynow.util.FSUtil;
+import com.veritynow.util.JSON;
+
+/**
+ * Background integrity check of stored blobs: every vn_blob row is read back, decoded and re-hashed,
+ * a blob whose bytes are missing, unreadable or do not match its recorded size and hash is quarantined.
+ *
+ * Each pass walks vn_blob of the store's hash algorithm in hash order, batchSize rows at a time,
+ * and re-hashes a batch in parallel on its own pool with the store's {@link HashingService}.
+ *
+ * Notes:
+ *  - Reads are capped at bytesPerSecond across all workers (0 for no cap), so a pass does not starve ingest.
+ *  - pause() stops the scrub between two reads, resume() continues where it stopped.
+ *  - The cursor (last hash of the last finished batch) is persisted under stateDirectory, a restart
+ *    resumes the pass instead of starting over.
+ *  - The quarantine list is persisted next to it. A quarantined blob is left in place, it is only reported;
+ *    it leaves the list once a later pass finds it sound again.
+ *  - Scrub reads bypass the catalog and do not count as reads for tiering.
+ */
+public class BlobScrubber implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	public record QuarantineEntry(
+			String hash,
+			String algorithm,
+			String layout,
+			long expectedSize,
+			long actualSize,
+			String actualHash,
+			String reason,
+			long detectedAt
+	) {
+	}
+
+	public record ScrubStats(
+			boolean running,
+			boolean paused,
+			long passes,
+			long scanned,
+			long scannedBytes,
+			long bad,
+			long quarantined,
+			String cursor,
+			long lastPassMillis,
+			long bytesPerSecond
+	) {
+	}
+
+	private final ImmutableFSBackingStore store;
+	private final ImmutableRepository repo;
+	private final HashingService hs;
+	private final String algo;
+	private final Path cursorFile;
+	private final Path quarantineFile;
+	private final int batchSize;
+	private final Bandwidth bandwidth;
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService workers;
+
+	// hash -> entry
+	private final Map<String, QuarantineEntry> quarantine = new ConcurrentHashMap<>();
+	private final Object pauseLock = new Object();
+	private volatile boolean paused;
+	private volatile boolean running;
+	private volatile String cursor;
+
+	private final LongAdder passes = new LongAdder();
+	private final LongAdder scanned = new LongAdder();
+	private final LongAdder scannedBytes = new LongAdder();
+	private final LongAdder bad = new LongAdder();
+	private volatile long lastPassMillis;
+
+	public BlobScrubber(ImmutableFSBackingStore store, ImmutableRepository repo, HashingService hs, Path stateDirectory,
+			int parallelism, int batchSize, long bytesPerSecond, long intervalSeconds) {
+		if (batchSize <= 0 || bytesPerSecond < 0) {
+			throw new IllegalArgumentException("Invalid scrubber settings batchSize=" + batchSize + " bytesPerSecond="
+					+ bytesPerSecond);
+		}
+		this.store = store;
+		this.repo = repo;
+		this.hs = hs;
+		this.algo = hs.getAlgorithm();
+		this.cursorFile = stateDirectory.resolve("cursor");
+		this.quarantineFile = stateDirectory.resolve("quarantine.json");
+		this.batchSize = batchSize;
+		this.bandwidth = new Bandwidth(bytesPerSecond, System.nanoTime());
+		try {
+			Files.createDirectories(stateDirectory);
+			load();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load scrubber state from " + stateDirectory, e);
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "vn-blob-scrubber");
+			t.setDaemon(true);
+			return t;
+		});
+		AtomicInteger n = new AtomicInteger();
+		int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		this.workers = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "vn-blob-scrubber-" + n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		if (intervalSeconds > 0) {
+			// an interrupted pass is picked up again shortly after start
+			long initialDelay = cursor == null ? intervalSeconds : Math.min(intervalSeconds, 60);
+			scheduler.scheduleWithFixedDelay(this::runSafely, initialDelay, intervalSeconds, TimeUnit.SECONDS);
+			LOGGER.info("Blob scrub scheduled every {}s, {} threads, capped at {} bytes/s, resuming after {}",
+					intervalSeconds, threads, bytesPerSecond, cursor);
+		}
+	}
+
+	public void pause() {
+		paused = true;
+		LOGGER.info("Blob scrub paused at {}", cursor);
+	}
+
+	public void resume() {
+		synchronized (pauseLock) {
+			paused = false;
+			pauseLock.notifyAll();
+		}
+		LOGGER.info("Blob scrub resumed at {}", cursor);
+	}
+
+	public List<QuarantineEntry> quarantined() {
+		List<QuarantineEntry> out = new ArrayList<>(quarantine.values());
+		out.sort(Comparator.comparingLong(QuarantineEntry::detectedAt));
+		return out;
+	}
+
+	public ScrubStats stats() {
+		return new ScrubStats(running, paused, passes.sum(), scanned.sum(), scannedBytes.sum(), bad.sum(),
+				quarantine.size(), cursor, lastPassMillis, bandwidth.rate);
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		workers.shutdownNow();
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private void runSafely() {
+		try {
+			scrub();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			LOGGER.error("Blob scrub failed", e);
+		} finally {
+			running = false;
+		}
+	}
+
+	// one pass from the persisted cursor to the last blob
+	private void scrub() throws Exception {
+		running = true;
+		long start = System.currentTimeMillis();
+		long badBefore = bad.sum();
+		while (true) {
+			awaitResume();
+			List<VnBlobRecord> batch = repo.findPage(algo, cursor, batchSize);
+			if (batch.isEmpty()) {
+				break;
+			}
+			List<Future<?>> futures = new ArrayList<>(batch.size());
+			for (VnBlobRecord br : batch) {
+				futures.add(workers.submit(() -> {
+					verify(br);
+					return null;
+				}));
+			}
+			for (Future<?> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					LOGGER.error("Blob scrub of a blob failed", e.getCause());
+				}
+			}
+			saveCursor(batch.get(batch.size() - 1).getHash());
+		}
+		// pass complete, the next one starts over
+		saveCursor(null);
+		passes.increment();
+		lastPassMillis = System.currentTimeMillis() - start;
+		LOGGER.info("Blob scrub pass done in {}ms, {} bad blobs found, {} quarantined", lastPassMillis,
+				bad.sum() - badBefore, quarantine.size());
+	}
+
+	private void verify(VnBlobRecord br) throws IOException {
+		String hash = br.getHash();
+		long size = 0;
+		String actual = null;
+		String reason = null;
+		try {
+			Optional<InputStream> in = store.scan(br);
+			if (in.isEmpty()) {
+				// the page is stale by now: the blob may have been collected, or its pack segment compacted
+				Optional<VnBlobRecord> current = repo.findByHashAndAlgo(hash, br.getHashAlgorithm());
+				if (current.isEmpty()) {
+					if (quarantine.remove(hash) != null) {
+						saveQuarantine();
+					}
+					return;
+				}
+				br = current.get();
+				in = store.scan(br);
+			}
+			if (in.isEmpty()) {
+				reason = "missing";
+			} else {
+				try (InputStream is = new Throttled(in.get()); HashingSession hx = hs.session(is, false)) {
+					actual = hx.hash();
+					size = hx.size();
+				}
+				if (size != br.getSize()) {
+					reason = "size mismatch";
+				} else if (!hash.equals(actual)) {
+					reason = "hash mismatch";
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// the hashing service wraps read failures, an interrupt is not a bad blob
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Blob scrub interrupted");
+			}
+			reason = "unreadable: " + e.getMessage();
+		}
+		scanned.increment();
+		scannedBytes.add(size);
+
+		if (reason == null) {
+			if (quarantine.remove(hash) != null) {
+				saveQuarantine();
+				LOGGER.info("Blob {} is sound again, released from quarantine", hash);
+			}
+			return;
+		}
+		bad.increment();
+		quarantine.put(hash, new QuarantineEntry(hash, br.getHashAlgorithm(), br.getLayout(), br.getSize(), size, actual,
+				reason, System.currentTimeMillis()));
+		saveQuarantine();
+		LOGGER.error("Blob {} failed its scrub, {} (expected size {}, read {} bytes hashing to {})", hash, reason,
+				br.getSize(), size, actual);
+	}
+
+	private void awaitResume() throws InterruptedIOException {
+		if (!paused) {
+			return;
+		}
+		synchronized (pauseLock) {
+			while (paused) {
+				try {
+					pauseLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Blob scrub interrupted");
+				}
+			}
+		}
+	}
+
+	private void load() throws IOException {
+		if (Files.exists(cursorFile)) {
+			String c = Files.readString(cursorFile, StandardCharsets.UTF_8).trim();
+			cursor = c.isEmpty() ? null : c;
+		}
+		if (Files.exists(quarantineFile)) {
+			List<QuarantineEntry> entries = JSON.readValue(quarantineFile.toFile(), new TypeReference<List<QuarantineEntry>>() {
+			});
+			entries.forEach(e -> quarantine.put(e.hash(), e));
+		}
+	}
+
+	private void saveCursor(String c) throws IOException {
+		cursor = c;
+		FSUtil.safeWrite(cursorFile, c == null ? "" : c);
+	}
+
+	private synchronized void saveQuarantine() throws IOException {
+		FSUtil.safeWrite(quarantineFile, JSON.writeValueAsBytes(quarantined()));
+	}
+
+	// token bucket shared by the workers, a caller that overdraws sleeps off the debt
+	static final class Bandwidth {
+		final long rate;
+		long available;
+		long refilledAt;
+
+		Bandwidth(long rate, long now) {
+			this.rate = rate;
+			this.available = rate;
+			this.refilledAt = now;
+		}
+
+		void acquire(int bytes) throws InterruptedIOException {
+			if (rate <= 0) {
+				return;
+			}
+			long sleepNanos = reserve(bytes, System.nanoTime());
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Blob scrub interrupted");
+				}
+			}
+		}
+
+		/**
+		 * Takes bytes off the budget at now, returns how long to wait for it to be covered.
+		 */
+		synchronized long reserve(int bytes, long now) {
+			// the budget never holds more than a second, a longer idle gap (the hours between passes) would
+			// overflow elapsed * rate
+			long elapsed = Math.min(Math.max(now - refilledAt, 0), 1_000_000_000L);
+			available = Math.min(rate, available + elapsed * rate / 1_000_000_000L);
+			refilledAt = now;
+			available -= bytes;
+			return available >= 0 ? 0 : -available * 1_000_000_000L / rate;
+		}
+	}
+
+	// content read under the bandwidth cap, holding still while paused
+	private final class Throttled extends FilterInputStream {
+
+		Throttled(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			awaitResume();
+			int b = super.read();
+			if (b >= 0) {
+				bandwidth.acquire(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			awaitResume();
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				bandwidth.acquire(n);
+			}
+			return n;
+		}
+	}
+}
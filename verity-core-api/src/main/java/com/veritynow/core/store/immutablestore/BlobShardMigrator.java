@@ -0,0 +1,156 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Online re-shard of blob files: moves every blob still under the previous {@link ShardLayout} of a
+ * {@link FileSystemBlobBackend} to its current layout, while the store keeps serving.
+ *
+ * Readers fall back across both layouts and new blobs are published under the current one, so the
+ * migration needs no lock and can be stopped and restarted at any point; a rerun only finds what is left.
+ * Moves are renames within the backend directory, they run in parallel on their own pool with at most
+ * 2 * parallelism of them queued.
+ */
+public class BlobShardMigrator implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	public record MigrationStats(
+			boolean running,
+			long runs,
+			long scanned,
+			long moved,
+			long failed,
+			long lastRunMillis
+	) {
+	}
+
+	private final List<FileSystemBlobBackend> backends;
+	private final int parallelism;
+	private final ExecutorService coordinator;
+	private final ExecutorService workers;
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private final LongAdder runs = new LongAdder();
+	private final LongAdder scanned = new LongAdder();
+	private final LongAdder moved = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private volatile long lastRunMillis;
+
+	/**
+	 * backend is a {@link FileSystemBlobBackend} or a {@link TieredBlobBackend} over them, both tiers are migrated.
+	 */
+	public BlobShardMigrator(BlobBackend backend, int parallelism) {
+		this.backends = fileSystems(backend);
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		this.coordinator = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "vn-blob-reshard");
+			t.setDaemon(true);
+			return t;
+		});
+		AtomicInteger n = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(this.parallelism, r -> {
+			Thread t = new Thread(r, "vn-blob-reshard-" + n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Start a migration run in the background, false if one is already running.
+	 */
+	public boolean start() {
+		if (!running.compareAndSet(false, true)) {
+			return false;
+		}
+		coordinator.submit(this::runSafely);
+		return true;
+	}
+
+	public MigrationStats stats() {
+		return new MigrationStats(running.get(), runs.sum(), scanned.sum(), moved.sum(), failed.sum(), lastRunMillis);
+	}
+
+	@Override
+	public void close() {
+		coordinator.shutdownNow();
+		workers.shutdownNow();
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static List<FileSystemBlobBackend> fileSystems(BlobBackend backend) {
+		List<FileSystemBlobBackend> out = new ArrayList<>();
+		if (backend instanceof TieredBlobBackend t) {
+			out.addAll(fileSystems(t.getHot()));
+			out.addAll(fileSystems(t.getCold()));
+		} else if (backend instanceof FileSystemBlobBackend fs) {
+			out.add(fs);
+		}
+		return out;
+	}
+
+	private void runSafely() {
+		long start = System.currentTimeMillis();
+		long movedBefore = moved.sum();
+		try {
+			for (FileSystemBlobBackend backend : backends) {
+				if (backend.getPrevious().isPresent()) {
+					migrate(backend);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			LOGGER.error("Blob re-shard failed", e);
+		} finally {
+			lastRunMillis = System.currentTimeMillis() - start;
+			runs.increment();
+			running.set(false);
+			LOGGER.info("Blob re-shard moved {} blobs in {}ms", moved.sum() - movedBefore, lastRunMillis);
+		}
+	}
+
+	private void migrate(FileSystemBlobBackend backend) throws Exception {
+		LOGGER.info("Re-sharding blobs of {} from {} to {}", backend, backend.getPrevious().get(), backend.getLayout());
+		int inFlight = 2 * parallelism;
+		Semaphore permits = new Semaphore(inFlight);
+		try {
+			backend.forEachMisplaced(e -> {
+				scanned.increment();
+				try {
+					permits.acquire();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Blob re-shard interrupted", ie);
+				}
+				workers.execute(() -> {
+					try {
+						if (backend.relocate(e.name())) {
+							moved.increment();
+						}
+					} catch (Throwable t) {
+						failed.increment();
+						LOGGER.warn("Unable to relocate blob {}", e.name(), t);
+					} finally {
+						permits.release();
+					}
+				});
+			});
+		} finally {
+			// wait for the moves still queued
+			permits.acquire(inFlight);
+			permits.release(inFlight);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.core.store.immutablestore.BlobBackend.BlobEntry;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * Background mover of {@link TieredBlobBackend}.
+ *
+ * Each pass promotes the cold blobs queued by reads, then walks vn_blob from where the previous pass stopped
+ * and demotes the RAW blobs of the hot tier not read for demoteAfter. A pass looks at maxBlobsPerPass rows and
+ * moves maxBytesPerPass bytes at most, so a large store or backlog is spread over several passes.
+ *
+ * Every move runs under the hash lock of the blob, as {@link BlobCollector} deletes do, after reading its row
+ * again: a blob collected meanwhile is not moved, and a collection never misses a copy in flight.
+ *
+ * Runs on its own single thread, so passes never overlap.
+ */
+public class BlobTierMover implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private static final int PAGE_SIZE = 1000;
+
+	private final TieredBlobBackend tiers;
+	private final ImmutableRepository repo;
+	private final String algo;
+	private final Duration demoteAfter;
+	private final long maxBytesPerPass;
+	private final int maxBlobsPerPass;
+	private final ScheduledExecutorService scheduler;
+
+	// last hash looked at, the next pass carries on after it; null to start over
+	private String cursor;
+
+	public BlobTierMover(TieredBlobBackend tiers, ImmutableRepository repo, String algo, Duration demoteAfter,
+			long maxBytesPerPass, int maxBlobsPerPass, long intervalSeconds) {
+		this.tiers = tiers;
+		this.repo = repo;
+		this.algo = algo;
+		this.demoteAfter = demoteAfter;
+		this.maxBytesPerPass = maxBytesPerPass;
+		this.maxBlobsPerPass = Math.max(1, maxBlobsPerPass);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "vn-blob-tier-mover");
+			t.setDaemon(true);
+			return t;
+		});
+		if (intervalSeconds > 0) {
+			scheduler.scheduleWithFixedDelay(this::runSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+			LOGGER.info("Blob tier mover scheduled every {}s, blobs unread for {} are demoted, {} blobs and {} bytes per pass",
+					intervalSeconds, demoteAfter, this.maxBlobsPerPass, maxBytesPerPass);
+		}
+	}
+
+	/**
+	 * One pass, returns the number of blobs demoted.
+	 */
+	public long move() throws IOException {
+		long promoted = 0;
+		for (String name : tiers.takePromotions()) {
+			if (promote(name)) {
+				promoted++;
+			}
+		}
+
+		Instant cutoff = Instant.now().minus(demoteAfter);
+		long demoted = 0;
+		long bytes = 0;
+		int looked = 0;
+		pass:
+		while (looked < maxBlobsPerPass) {
+			List<VnBlobRecord> page = repo.findPage(algo, cursor, Math.min(PAGE_SIZE, maxBlobsPerPass - looked));
+			if (page.isEmpty()) {
+				// reached the end, the next pass starts over from the first hash
+				cursor = null;
+				break;
+			}
+			for (VnBlobRecord br : page) {
+				if (BlobLayout.of(br.getLayout()) == BlobLayout.RAW) {
+					Optional<BlobEntry> e = hotEntry(blobName(br.getHash()));
+					if (e.isPresent() && tiers.lastRead(e.get()).isBefore(cutoff)) {
+						if (bytes + e.get().size() > maxBytesPerPass && demoted > 0) {
+							// cursor stays before it, the next pass starts with it
+							break pass;
+						}
+						if (demote(br.getHash(), e.get(), cutoff)) {
+							demoted++;
+							bytes += e.get().size();
+						}
+					}
+				}
+				cursor = br.getHash();
+				looked++;
+			}
+		}
+		if (promoted > 0 || demoted > 0) {
+			LOGGER.info("Blob tier pass promoted {} and demoted {} blobs ({} bytes)", promoted, demoted, bytes);
+		}
+		return demoted;
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private boolean demote(String hash, BlobEntry e, Instant cutoff) {
+		try {
+			return repo.withHashLockTx(hash, algo, tx -> {
+				// collected since the page was read, or read since the walk
+				if (repo.findByHashAndAlgo(tx, hash, algo).isEmpty() || !tiers.lastRead(e).isBefore(cutoff)) {
+					return false;
+				}
+				tiers.demote(e);
+				return true;
+			});
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Unable to demote blob {}", e.name(), ex);
+			return false;
+		}
+	}
+
+	private boolean promote(String name) {
+		String suffix = "-" + algo;
+		if (!name.endsWith(suffix)) {
+			return false;
+		}
+		String hash = name.substring(0, name.length() - suffix.length());
+		try {
+			return repo.withHashLockTx(hash, algo, tx -> {
+				// collected since it was queued, its file goes with the row
+				if (repo.findByHashAndAlgo(tx, hash, algo).isEmpty()) {
+					return false;
+				}
+				return tiers.promote(name);
+			});
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Unable to promote blob {}", name, ex);
+			return false;
+		}
+	}
+
+	private Optional<BlobEntry> hotEntry(String name) throws IOException {
+		Optional<Path> p = tiers.getHot().locate(name);
+		if (p.isEmpty()) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(new BlobEntry(name, Files.size(p.get()), Files.getLastModifiedTime(p.get()).toInstant()));
+		} catch (NoSuchFileException e) {
+			// collected or promoted meanwhile
+			return Optional.empty();
+		}
+	}
+
+	private String blobName(String hash) {
+		return hash + "-" + algo;
+	}
+
+	private void runSafely() {
+		try {
+			move();
+		} catch (Throwable e) {
+			LOGGER.error("Blob tier pass failed", e);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.util.List;
+
+/**
+ * Ordered list of the chunks that make up a CHUNKED blob.
+ * Concatenating the chunks in order yields the original content.
+ */
+public record ChunkManifest(
+		String hashAlgorithm,
+		String hash,
+		long size,
+		List<Chunk> chunks
+) {
+
+	public record Chunk(String hash, int size) {
+	}
+}
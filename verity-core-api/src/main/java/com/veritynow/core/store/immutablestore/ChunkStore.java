@@ -0,0 +1,444 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.core.store.HashingService;
+import com.veritynow.core.store.HashingSession;
+import com.veritynow.core.store.base.StoreUtils;
+import com.veritynow.util.FSUtil;
+import com.veritynow.util.FileSync;
+import com.veritynow.util.JSON;
+
+/**
+ * Content-defined chunk storage for large blobs.
+ *
+ * Layout under the store root:
+ *  - Chunks/<shard>/<chunkHash>-<algo>     chunk bytes, written once and shared by every blob that contains them
+ *  - Manifests/<shard>/<hash>-<algo>       JSON {@link ChunkManifest} of a blob
+ *
+ * Notes:
+ *  - Chunks are content addressed, so a chunk that already exists is never written again.
+ *    Concurrent writers of the same chunk both rename identical bytes onto the same name.
+ *  - Chunks are hashed in sessions of their own, the chunk hasher may be the blob HashingService.
+ *  - A reused chunk has its modification time refreshed, so {@link #sweepChunks(Instant, int, Function)} treats it
+ *    as young until the manifest that references it is written.
+ *  - New chunks of a blob are synced as one group before they are renamed in, and their directories after,
+ *    so a chunk name never holds bytes that a crash may lose; the manifest follows the same order.
+ */
+public class ChunkStore {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	// manifests looked up in vn_blob per query
+	private static final int ORPHAN_BATCH = 1000;
+
+	private final Path chunkDirectory;
+	private final Path manifestDirectory;
+	private final Path stagingDirectory;
+	private final String algo;
+	private final HashingService chunkHasher;
+	private final FastCdcChunker chunker;
+	private final long minBlobSize;
+	private final FileSync sync;
+
+	// since start counters
+	private final LongAdder ingestedBytes = new LongAdder();
+	private final LongAdder writtenBytes = new LongAdder();
+	private final LongAdder chunksWritten = new LongAdder();
+	private final LongAdder chunksReused = new LongAdder();
+
+	public ChunkStore(Path rootDirectory, HashingService chunkHasher, FastCdcChunker chunker, long minBlobSize) {
+		this(rootDirectory, chunkHasher, chunker, minBlobSize, FileSync.NONE);
+	}
+
+	public ChunkStore(Path rootDirectory, HashingService chunkHasher, FastCdcChunker chunker, long minBlobSize,
+			FileSync sync) {
+		this.chunkDirectory = rootDirectory.resolve("Chunks");
+		this.manifestDirectory = rootDirectory.resolve("Manifests");
+		this.stagingDirectory = chunkDirectory.resolve("incoming");
+		this.chunkHasher = Objects.requireNonNull(chunkHasher, "chunkHasher");
+		this.algo = chunkHasher.getAlgorithm();
+		this.chunker = Objects.requireNonNull(chunker, "chunker");
+		this.minBlobSize = minBlobSize;
+		this.sync = sync;
+		try {
+			Files.createDirectories(stagingDirectory);
+			Files.createDirectories(manifestDirectory);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to create chunk directories under " + rootDirectory, e);
+		}
+		LOGGER.info("Chunk store({}) started. chunk sizes min={} avg={} max={}, blobs >= {} bytes are chunked",
+				algo, chunker.getMinSize(), chunker.getAvgSize(), chunker.getMaxSize(), minBlobSize);
+	}
+
+	/**
+	 * Whether a blob of this size should be stored CHUNKED.
+	 */
+	public boolean accepts(long size) {
+		return size >= minBlobSize;
+	}
+
+	/**
+	 * Chunk the content of the given file, store the chunks that are not yet known and
+	 * write the manifest of the blob identified by hash.
+	 */
+	public ChunkManifest write(String hash, long size, Path content) throws IOException {
+		Objects.requireNonNull(hash, "hash");
+		Objects.requireNonNull(content, "content");
+
+		List<ChunkManifest.Chunk> chunks = new ArrayList<>();
+		// new chunks of this blob, final path -> staged copy
+		Map<Path, Path> fresh = new LinkedHashMap<>();
+		try {
+			try (InputStream is = Files.newInputStream(content)) {
+				chunker.split(is, (buf, off, len) -> {
+					String chash;
+					try (HashingSession hx = chunkHasher.session(new ByteArrayInputStream(buf, off, len), false)) {
+						chash = hx.hash();
+					}
+					Path chunkPath = getChunkPath(chash, true);
+					if (fresh.containsKey(chunkPath) || touch(chunkPath)) {
+						chunksReused.increment();
+					} else {
+						Path staged = FSUtil.stagingPath(stagingDirectory);
+						fresh.put(chunkPath, staged);
+						try (OutputStream os = Files.newOutputStream(staged, StandardOpenOption.CREATE_NEW,
+								StandardOpenOption.WRITE)) {
+							os.write(buf, off, len);
+						}
+						chunksWritten.increment();
+						writtenBytes.add(len);
+					}
+					chunks.add(new ChunkManifest.Chunk(chash, len));
+				});
+			}
+			publish(fresh);
+		} finally {
+			for (Path staged : fresh.values()) {
+				Files.deleteIfExists(staged);
+			}
+		}
+		ingestedBytes.add(size);
+
+		ChunkManifest manifest = new ChunkManifest(algo, hash, size, List.copyOf(chunks));
+		FSUtil.safeWrite(getManifestPath(hash, true), JSON.writeValueAsBytes(manifest), sync);
+		LOGGER.debug("Chunked blob {} into {} chunks", hash, chunks.size());
+		return manifest;
+	}
+
+	public boolean exists(String hash) {
+		return Files.exists(manifestPath(hash));
+	}
+
+	public ChunkManifest getManifest(String hash) throws IOException {
+		Objects.requireNonNull(hash, "hash");
+		return JSON.readValue(manifestPath(hash).toFile(), ChunkManifest.class);
+	}
+
+	/**
+	 * Stream the original content of a CHUNKED blob.
+	 * Chunk files are opened one at a time, as the previous one is exhausted.
+	 */
+	public InputStream open(String hash) throws IOException {
+		return open(hash, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Stream a byte range of a CHUNKED blob.
+	 * Chunks entirely before offset are never opened, the first chunk is entered by seeking.
+	 */
+	public InputStream open(String hash, long offset, long length) throws IOException {
+		ChunkManifest manifest = getManifest(hash);
+		List<ChunkManifest.Chunk> chunks = manifest.chunks();
+
+		int first = 0;
+		long skip = offset;
+		while (first < chunks.size() && skip >= chunks.get(first).size()) {
+			skip -= chunks.get(first).size();
+			first++;
+		}
+		final long firstSkip = skip;
+		Iterator<ChunkManifest.Chunk> it = chunks.subList(first, chunks.size()).iterator();
+
+		InputStream all = new SequenceInputStream(new Enumeration<InputStream>() {
+			private boolean entered = false;
+
+			@Override
+			public boolean hasMoreElements() {
+				return it.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				ChunkManifest.Chunk c = it.next();
+				try {
+					if (!entered) {
+						entered = true;
+						FileChannel ch = FileChannel.open(chunkPath(c.hash()), StandardOpenOption.READ);
+						return Channels.newInputStream(ch.position(firstSkip));
+					}
+					return Files.newInputStream(chunkPath(c.hash()));
+				} catch (IOException e) {
+					throw new UncheckedIOException("Missing chunk " + c.hash() + " of blob " + hash, e);
+				}
+			}
+		});
+		return length == Long.MAX_VALUE ? all : StoreUtils.limit(all, length);
+	}
+
+	/**
+	 * Drop the manifest of a blob whose vn_blob row is gone, its chunks are left to {@link #sweepChunks(Instant, int, Function)}.
+	 */
+	public boolean deleteManifest(String hash) throws IOException {
+		Objects.requireNonNull(hash, "hash");
+		return Files.deleteIfExists(manifestPath(hash));
+	}
+
+	/**
+	 * One pass of chunk collection over the shard numbered shard (0-255), returns the number of chunks deleted.
+	 *
+	 * Manifests of the shard last modified before olderThan whose blob has no vn_blob row anymore are dropped,
+	 * stored returns the subset of the given blob hashes that still have one. Chunk files of the shard referenced
+	 * by no manifest and last modified before olderThan are then deleted. Only the references into the shard are
+	 * held in memory, so a full sweep takes 256 passes, and the chunks of a dropped manifest may wait for the next one.
+	 */
+	public long sweepChunks(Instant olderThan, int shard, Function<Collection<String>, Set<String>> stored)
+			throws IOException {
+		String prefix = String.format("%02x", shard & 0xff);
+		long manifests = dropOrphanManifests(manifestDirectory.resolve(prefix), olderThan, stored);
+
+		Set<String> referenced = new HashSet<>();
+		try (Stream<Path> s = Files.walk(manifestDirectory)) {
+			for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+				if (isTemporary(p)) {
+					continue;
+				}
+				ChunkManifest m;
+				try {
+					m = JSON.readValue(p.toFile(), ChunkManifest.class);
+				} catch (NoSuchFileException e) {
+					// purged meanwhile
+					continue;
+				}
+				for (ChunkManifest.Chunk c : m.chunks()) {
+					if (c.hash().startsWith(prefix)) {
+						referenced.add(c.hash() + "-" + algo);
+					}
+				}
+			}
+		}
+
+		long deleted = 0;
+		Path shardDir = chunkDirectory.resolve(prefix);
+		if (Files.isDirectory(shardDir)) {
+			try (Stream<Path> s = Files.list(shardDir)) {
+				for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+					if (referenced.contains(p.getFileName().toString())) {
+						continue;
+					}
+					if (FSUtil.olderThan(p, olderThan) && Files.deleteIfExists(p)) {
+						deleted++;
+					}
+				}
+			}
+		}
+		if (deleted > 0 || manifests > 0) {
+			LOGGER.info("Swept {} unreferenced chunks and {} orphan manifests of shard {}", deleted, manifests, prefix);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete staged chunk files and half written manifests left behind by writers that died, returns the number deleted.
+	 */
+	public long purgeStaleFiles(Instant olderThan) throws IOException {
+		long deleted = FSUtil.deleteOlderThan(stagingDirectory, olderThan, p -> true);
+		deleted += FSUtil.deleteOlderThan(manifestDirectory, olderThan, this::isTemporary);
+		return deleted;
+	}
+
+	/**
+	 * Walk every manifest and chunk on disk and compute the dedup ratio
+	 * (logical bytes referenced by manifests / physical bytes of the chunk files).
+	 */
+	public DedupReport report() throws IOException {
+		long blobs = 0;
+		long logicalBytes = 0;
+		long chunkRefs = 0;
+
+		try (Stream<Path> s = Files.walk(manifestDirectory)) {
+			for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+				if (isTemporary(p)) {
+					continue;
+				}
+				ChunkManifest m = JSON.readValue(p.toFile(), ChunkManifest.class);
+				blobs++;
+				logicalBytes += m.size();
+				chunkRefs += m.chunks().size();
+			}
+		}
+
+		long uniqueChunks = 0;
+		long physicalBytes = 0;
+		try (Stream<Path> s = Files.walk(chunkDirectory)) {
+			for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+				if (p.startsWith(stagingDirectory)) {
+					continue;
+				}
+				uniqueChunks++;
+				physicalBytes += Files.size(p);
+			}
+		}
+
+		double ratio = physicalBytes == 0 ? 1.0 : (double) logicalBytes / physicalBytes;
+		return new DedupReport(blobs, logicalBytes, chunkRefs, uniqueChunks, physicalBytes, ratio,
+				ingestedBytes.sum(), writtenBytes.sum(), chunksWritten.sum(), chunksReused.sum());
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	// sync the staged chunks, rename them in and sync the directories that got a new name
+	private void publish(Map<Path, Path> fresh) throws IOException {
+		if (fresh.isEmpty()) {
+			return;
+		}
+		sync.sync(fresh.values());
+		Set<Path> directories = new HashSet<>();
+		for (Map.Entry<Path, Path> e : fresh.entrySet()) {
+			FSUtil.moveAtomic(e.getValue(), e.getKey());
+			directories.add(e.getKey().getParent());
+		}
+		sync.syncDirectories(directories);
+	}
+
+	// manifests of a shard whose vn_blob row is gone, in batches of one query
+	private long dropOrphanManifests(Path shardDir, Instant olderThan, Function<Collection<String>, Set<String>> stored)
+			throws IOException {
+		if (!Files.isDirectory(shardDir)) {
+			return 0;
+		}
+		Map<String, Path> batch = new LinkedHashMap<>();
+		long dropped = 0;
+		try (Stream<Path> s = Files.list(shardDir)) {
+			for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+				if (isTemporary(p) || !FSUtil.olderThan(p, olderThan)) {
+					continue;
+				}
+				String name = p.getFileName().toString();
+				batch.put(name.substring(0, name.length() - algo.length() - 1), p);
+				if (batch.size() == ORPHAN_BATCH) {
+					dropped += dropOrphans(batch, stored);
+					batch.clear();
+				}
+			}
+		}
+		return dropped + dropOrphans(batch, stored);
+	}
+
+	private long dropOrphans(Map<String, Path> manifests, Function<Collection<String>, Set<String>> stored)
+			throws IOException {
+		if (manifests.isEmpty()) {
+			return 0;
+		}
+		Map<String, Path> orphans = new LinkedHashMap<>(manifests);
+		orphans.keySet().removeAll(stored.apply(manifests.keySet()));
+		if (orphans.isEmpty()) {
+			return 0;
+		}
+
+		// an ingest of the same blob writes its manifest before inserting the row, and writes it again after the
+		// insert if it is missing: the manifests are moved aside before the rows are looked up a second time, so
+		// whatever the order, a row that appears keeps a manifest
+		Map<String, Path> aside = new LinkedHashMap<>();
+		for (Map.Entry<String, Path> e : orphans.entrySet()) {
+			Path tmp = e.getValue().resolveSibling(e.getValue().getFileName() + "." + UUID.randomUUID());
+			try {
+				Files.move(e.getValue(), tmp, StandardCopyOption.ATOMIC_MOVE);
+				aside.put(e.getKey(), tmp);
+			} catch (NoSuchFileException ignore) {
+				// purged meanwhile
+			}
+		}
+		Set<String> revived = stored.apply(aside.keySet());
+		long dropped = 0;
+		for (Map.Entry<String, Path> e : aside.entrySet()) {
+			if (revived.contains(e.getKey())) {
+				// manifests are deterministic, the one put back is the one the ingest would write
+				FSUtil.moveAtomic(e.getValue(), orphans.get(e.getKey()));
+			} else if (Files.deleteIfExists(e.getValue())) {
+				dropped++;
+			}
+		}
+		return dropped;
+	}
+
+	private Path getChunkPath(String chash, boolean createParentDir) throws IOException {
+		Path p = chunkPath(chash);
+		if (createParentDir && !Files.exists(p.getParent())) {
+			Files.createDirectories(p.getParent());
+		}
+		return p;
+	}
+
+	private Path getManifestPath(String hash, boolean createParentDir) throws IOException {
+		Path p = manifestPath(hash);
+		if (createParentDir && !Files.exists(p.getParent())) {
+			Files.createDirectories(p.getParent());
+		}
+		return p;
+	}
+
+	private Path chunkPath(String chash) {
+		return chunkDirectory.resolve(chash.substring(0, 2)).resolve(chash + "-" + algo);
+	}
+
+	private Path manifestPath(String hash) {
+		return manifestDirectory.resolve(hash.substring(0, 2)).resolve(hash + "-" + algo);
+	}
+
+	// refresh the modification time of an existing chunk, false if there is none
+	private boolean touch(Path chunkPath) throws IOException {
+		try {
+			Files.setLastModifiedTime(chunkPath, FileTime.from(Instant.now()));
+			return true;
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+	}
+
+	// safeWrite leaves <name>.<uuid> behind if it dies before the rename
+	private boolean isTemporary(Path p) {
+		return !p.getFileName().toString().endsWith("-" + algo);
+	}
+}
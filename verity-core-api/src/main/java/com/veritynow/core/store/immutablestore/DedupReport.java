@@ -0,0 +1,21 @@
+package com.veritynow.core.store.immutablestore;
+
+/**
+ * Chunk level deduplication figures.
+ *
+ * blobs, logicalBytes, chunkRefs, uniqueChunks and physicalBytes describe what is on disk.
+ * The ingested and written counters only cover what went through this process since it started.
+ */
+public record DedupReport(
+		long blobs,
+		long logicalBytes,
+		long chunkRefs,
+		long uniqueChunks,
+		long physicalBytes,
+		double dedupRatio,
+		long ingestedBytes,
+		long writtenBytes,
+		long chunksWritten,
+		long chunksReused
+) {
+}
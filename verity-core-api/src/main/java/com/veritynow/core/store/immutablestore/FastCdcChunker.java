@@ -0,0 +1,140 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * FastCDC style content-defined chunker.
+ *
+ * Boundaries are picked with a gear rolling hash so that an edit only moves the
+ * boundaries next to it, every other chunk of a revised document keeps its hash.
+ *
+ * Notes:
+ *  - Normalized chunking: a stricter mask before the average size and a looser one after it,
+ *    which keeps chunk sizes close to the average.
+ *  - The first minSize bytes of a chunk are never tested (cut point skipping).
+ *  - The gear table is derived from a fixed seed, it must never change or existing chunks stop deduplicating.
+ */
+public class FastCdcChunker {
+
+	@FunctionalInterface
+	public interface ChunkConsumer {
+		void accept(byte[] buf, int off, int len) throws IOException;
+	}
+
+	private static final long[] GEAR = new long[256];
+
+	static {
+		SplittableRandom r = new SplittableRandom(0x5645524954594e4fL);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = r.nextLong();
+		}
+	}
+
+	private final int minSize;
+	private final int avgSize;
+	private final int maxSize;
+	private final long maskS;
+	private final long maskL;
+
+	public FastCdcChunker(int minSize, int avgSize, int maxSize) {
+		if (minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+			throw new IllegalArgumentException(
+					"Invalid chunk sizes min=" + minSize + " avg=" + avgSize + " max=" + maxSize);
+		}
+		this.minSize = minSize;
+		this.avgSize = avgSize;
+		this.maxSize = maxSize;
+
+		int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+		// masks on the high bits: the fingerprint shifts left once per byte, so its low bits only hold the last
+		// few bytes while its high bits depend on the whole 64 byte window
+		this.maskS = highBits(bits + 1);
+		this.maskL = highBits(bits - 1);
+	}
+
+	/**
+	 * Split the content into chunks, the consumer is called once per chunk in content order.
+	 * The buffer passed to the consumer is reused, copy what needs to outlive the call.
+	 */
+	public void split(InputStream content, ChunkConsumer consumer) throws IOException {
+		byte[] buf = new byte[maxSize * 2];
+		int start = 0;
+		int end = 0;
+		boolean eof = false;
+
+		while (true) {
+			// keep at least maxSize bytes in the window unless the stream is drained
+			if (!eof && end - start < maxSize) {
+				if (start > 0) {
+					System.arraycopy(buf, start, buf, 0, end - start);
+					end -= start;
+					start = 0;
+				}
+				while (end < buf.length) {
+					int n = content.read(buf, end, buf.length - end);
+					if (n < 0) {
+						eof = true;
+						break;
+					}
+					end += n;
+				}
+			}
+
+			int available = end - start;
+			if (available == 0) {
+				return;
+			}
+
+			int len = cut(buf, start, available);
+			consumer.accept(buf, start, len);
+			start += len;
+		}
+	}
+
+	/**
+	 * Length of the next chunk starting at off.
+	 */
+	int cut(byte[] buf, int off, int n) {
+		if (n <= minSize) {
+			return n;
+		}
+		if (n > maxSize) {
+			n = maxSize;
+		}
+		int normal = Math.min(avgSize, n);
+
+		long fp = 0;
+		int i = minSize;
+		for (; i < normal; i++) {
+			fp = (fp << 1) + GEAR[buf[off + i] & 0xFF];
+			if ((fp & maskS) == 0) {
+				return i + 1;
+			}
+		}
+		for (; i < n; i++) {
+			fp = (fp << 1) + GEAR[buf[off + i] & 0xFF];
+			if ((fp & maskL) == 0) {
+				return i + 1;
+			}
+		}
+		return n;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getAvgSize() {
+		return avgSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	private static long highBits(int count) {
+		return count <= 0 ? 0 : -1L << (64 - count);
+	}
+}
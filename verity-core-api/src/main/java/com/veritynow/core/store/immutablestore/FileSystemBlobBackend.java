@@ -0,0 +1,281 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.util.FSUtil;
+import com.veritynow.util.FileSync;
+
+/**
+ * {@link BlobBackend} on a local directory (or mount), git-like sharded by a {@link ShardLayout}:
+ * <directory>/<ab>/<name> by default, <directory>/<ab>/<cd>/<name> with a 2x2 layout.
+ *
+ * While blobs are re-sharded a previous layout can be given: new blobs go to the current layout, reads and
+ * deletes fall back to the previous one, and {@link BlobShardMigrator} moves the rest over with {@link #relocate(String)}.
+ *
+ * Copies from another backend are staged under <directory>/incoming, so the final publish is a rename
+ * on the same filesystem.
+ *
+ * Publishes are made durable through the given {@link FileSync}: the payload is synced before the rename,
+ * the shard directory after it.
+ */
+public class FileSystemBlobBackend implements BlobBackend {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	// blob names are <hash>-<algo>, temp files carry a '.', collided copies a -collided suffix
+	private static final Pattern NAME = Pattern.compile("[0-9a-f]+-[^.]+");
+
+	private final String name;
+	private final Path directory;
+	private final Path stagingDirectory;
+	private final FileSync sync;
+	private final ShardLayout layout;
+	// null once every blob is under layout
+	private final ShardLayout previous;
+
+	public FileSystemBlobBackend(String name, Path directory) {
+		this(name, directory, FileSync.NONE);
+	}
+
+	public FileSystemBlobBackend(String name, Path directory, FileSync sync) {
+		this(name, directory, ShardLayout.DEFAULT, null, sync);
+	}
+
+	public FileSystemBlobBackend(String name, Path directory, ShardLayout layout, ShardLayout previous, FileSync sync) {
+		this.name = name;
+		this.directory = directory;
+		this.stagingDirectory = directory.resolve("incoming");
+		this.sync = sync;
+		this.layout = layout;
+		this.previous = layout.equals(previous) ? null : previous;
+		try {
+			Files.createDirectories(stagingDirectory);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to create blob directory " + directory, e);
+		}
+		LOGGER.info("Blob backend {} at {}, shard layout {}{}", name, directory, layout,
+				this.previous == null ? "" : ", falling back to " + this.previous);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean exists(String name) throws IOException {
+		return Files.exists(path(name)) || (previous != null && Files.exists(previousPath(name)));
+	}
+
+	@Override
+	public InputStream open(String name, long offset) throws IOException {
+		try {
+			return open(path(name), offset);
+		} catch (NoSuchFileException e) {
+			if (previous == null) {
+				throw e;
+			}
+			try {
+				return open(previousPath(name), offset);
+			} catch (NoSuchFileException e2) {
+				// relocated between the two attempts
+				return open(path(name), offset);
+			}
+		}
+	}
+
+	@Override
+	public Optional<Path> locate(String name) throws IOException {
+		Path p = path(name);
+		if (Files.exists(p)) {
+			return Optional.of(p);
+		}
+		if (previous != null && Files.exists(previousPath(name))) {
+			return Optional.of(previousPath(name));
+		}
+		// relocated between the two checks
+		return previous != null && Files.exists(p) ? Optional.of(p) : Optional.empty();
+	}
+
+	@Override
+	public void publish(Path staged, String name) throws IOException {
+		FSUtil.moveAtomic(staged, shardedPath(name), sync);
+	}
+
+	@Override
+	public boolean publishIfAbsent(Path staged, String name) throws IOException {
+		if (previous != null && Files.exists(previousPath(name))) {
+			return false;
+		}
+		Path target = shardedPath(name);
+		sync.sync(staged);
+		try {
+			// link(2) fails if the name exists, the create-exclusive counterpart of a rename
+			Files.createLink(target, staged);
+		} catch (FileAlreadyExistsException e) {
+			return false;
+		} catch (UnsupportedOperationException | FileSystemException e) {
+			// no hard links on this filesystem, check then rename
+			if (Files.exists(target)) {
+				return false;
+			}
+			FSUtil.moveAtomic(staged, target);
+			sync.syncDirectory(target.getParent());
+			return true;
+		}
+		Files.delete(staged);
+		sync.syncDirectory(target.getParent());
+		return true;
+	}
+
+	@Override
+	public void copyFrom(BlobBackend source, String name) throws IOException {
+		Path staged = FSUtil.stagingPath(stagingDirectory);
+		try {
+			try (InputStream in = source.open(name, 0);
+					FileChannel out = FileChannel.open(staged, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				in.transferTo(Channels.newOutputStream(out));
+				out.force(true);
+			}
+			Path target = shardedPath(name);
+			FSUtil.moveAtomic(staged, target);
+			sync.syncDirectory(target.getParent());
+		} finally {
+			Files.deleteIfExists(staged);
+		}
+	}
+
+	@Override
+	public boolean delete(String name) throws IOException {
+		boolean deleted = Files.deleteIfExists(path(name));
+		if (previous != null) {
+			// the second look at the current layout catches a relocation racing with the first two
+			deleted |= Files.deleteIfExists(previousPath(name));
+			deleted |= Files.deleteIfExists(path(name));
+		}
+		return deleted;
+	}
+
+	@Override
+	public void forEach(Consumer<BlobEntry> action) throws IOException {
+		walk(directory, layout, 0, action);
+		if (previous != null) {
+			walk(directory, previous, 0, action);
+		}
+	}
+
+	/**
+	 * Every blob still under the previous layout, none if there is no previous layout.
+	 */
+	public void forEachMisplaced(Consumer<BlobEntry> action) throws IOException {
+		if (previous != null) {
+			walk(directory, previous, 0, action);
+		}
+	}
+
+	/**
+	 * Move a blob from the previous layout to the current one, false if it is not under the previous layout.
+	 * Safe against concurrent readers, which fall back across both layouts, and concurrent publishes of the same bytes.
+	 */
+	public boolean relocate(String name) throws IOException {
+		if (previous == null) {
+			return false;
+		}
+		Path from = previousPath(name);
+		if (!Files.exists(from)) {
+			return false;
+		}
+		Path to = shardedPath(name);
+		try {
+			FSUtil.moveAtomic(from, to);
+		} catch (NoSuchFileException e) {
+			// deleted or relocated meanwhile
+			return false;
+		}
+		sync.syncDirectory(to.getParent());
+		return true;
+	}
+
+	public ShardLayout getLayout() {
+		return layout;
+	}
+
+	public Optional<ShardLayout> getPrevious() {
+		return Optional.ofNullable(previous);
+	}
+
+	@Override
+	public String toString() {
+		return name + "(" + directory + ")";
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static boolean isBlob(Path p) {
+		String n = p.getFileName().toString();
+		return NAME.matcher(n).matches() && !n.endsWith("-collided");
+	}
+
+	private static InputStream open(Path p, long offset) throws IOException {
+		FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+		return Channels.newInputStream(offset > 0 ? ch.position(offset) : ch);
+	}
+
+	private Path path(String name) {
+		return layout.resolve(directory, name);
+	}
+
+	private Path previousPath(String name) {
+		return previous.resolve(directory, name);
+	}
+
+	// the blobs at the leaves of l, level by level through the directories named after l
+	private static void walk(Path dir, ShardLayout l, int level, Consumer<BlobEntry> action) throws IOException {
+		Pattern shard = l.shardPattern();
+		try (Stream<Path> s = Files.list(dir)) {
+			for (Path p : (Iterable<Path>) s::iterator) {
+				if (level < l.depth()) {
+					if (shard.matcher(p.getFileName().toString()).matches() && Files.isDirectory(p)) {
+						walk(p, l, level + 1, action);
+					}
+				} else if (isBlob(p)) {
+					try {
+						BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+						if (a.isRegularFile()) {
+							action.accept(new BlobEntry(p.getFileName().toString(), a.size(), a.lastModifiedTime().toInstant()));
+						}
+					} catch (NoSuchFileException gone) {
+						// moved or deleted meanwhile
+					}
+				}
+			}
+		} catch (NoSuchFileException gone) {
+			// shard removed meanwhile
+		}
+	}
+
+	private Path shardedPath(String name) throws IOException {
+		Path p = path(name);
+		if (!Files.exists(p.getParent())) {
+			Files.createDirectories(p.getParent());
+		}
+		return p;
+	}
+}
@@ -0,0 +1,234 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.util.FSUtil;
+import com.veritynow.util.FileSync;
+
+/**
+ * Group commit for file writes: concurrent writers hand their fsyncs to a few sync threads and wait,
+ * each sync thread takes every request queued so far as one batch.
+ *
+ * Within a batch a path is forced once, however many writers asked for it, so appends to the same pack
+ * segment or renames into the same shard directory share one fsync. While a batch is being forced the
+ * next one builds up, the cost per write stays bounded by roughly one fsync latency under any ingest rate.
+ *
+ * Notes:
+ *  - maxDelayMicros lets a sync thread wait for more requests before forcing a batch (like commit_delay),
+ *    0 forces as soon as a thread is free, batching then comes from the requests queued meanwhile.
+ *  - A failed fsync fails every request of the batch that named the path, the others complete.
+ */
+public class GroupFileSync implements FileSync, AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	public record SyncStats(
+			long requests,
+			long batches,
+			long fsyncs,
+			long failures,
+			double avgBatchSize,
+			long maxBatchSize,
+			double avgFsyncMicros,
+			long maxFsyncMicros,
+			double avgWaitMicros,
+			long maxWaitMicros
+	) {
+	}
+
+	private static final class Request {
+		final Collection<Path> paths;
+		final boolean directories;
+		final long enqueued = System.nanoTime();
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Request(Collection<Path> paths, boolean directories) {
+			this.paths = paths;
+			this.directories = directories;
+		}
+	}
+
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+	private final int maxBatch;
+	private final long maxDelayNanos;
+	private final List<Thread> syncThreads = new ArrayList<>();
+	private volatile boolean closed;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder fsyncs = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder fsyncNanos = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxBatchSize = new AtomicLong();
+	private final AtomicLong maxFsyncNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public GroupFileSync(int threads, int maxBatch, long maxDelayMicros) {
+		if (threads <= 0 || maxBatch <= 0 || maxDelayMicros < 0) {
+			throw new IllegalArgumentException("Invalid file sync settings threads=" + threads + " maxBatch=" + maxBatch
+					+ " maxDelayMicros=" + maxDelayMicros);
+		}
+		this.maxBatch = maxBatch;
+		this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(this::syncLoop, "vn-blob-fsync-" + i);
+			t.setDaemon(true);
+			syncThreads.add(t);
+			t.start();
+		}
+		LOGGER.info("Durable writes with group fsync, {} threads, batches of up to {} waiting {}us", threads, maxBatch,
+				maxDelayMicros);
+	}
+
+	@Override
+	public void sync(Collection<Path> files) throws IOException {
+		submit(files, false);
+	}
+
+	@Override
+	public void syncDirectories(Collection<Path> directories) throws IOException {
+		submit(directories, true);
+	}
+
+	public SyncStats stats() {
+		long b = batches.sum();
+		long f = fsyncs.sum();
+		long r = requests.sum();
+		return new SyncStats(r, b, f, failures.sum(), b == 0 ? 0 : (double) r / b, maxBatchSize.get(),
+				f == 0 ? 0 : fsyncNanos.sum() / 1000.0 / f, maxFsyncNanos.get() / 1000,
+				r == 0 ? 0 : waitNanos.sum() / 1000.0 / r, maxWaitNanos.get() / 1000);
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		syncThreads.forEach(Thread::interrupt);
+		List<Request> left = new ArrayList<>();
+		queue.drainTo(left);
+		left.forEach(r -> r.done.completeExceptionally(new IOException("File sync closed")));
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private void submit(Collection<Path> paths, boolean directories) throws IOException {
+		if (paths.isEmpty()) {
+			return;
+		}
+		if (closed) {
+			throw new IOException("File sync closed");
+		}
+		Request r = new Request(paths, directories);
+		queue.add(r);
+		try {
+			r.done.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for fsync");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io) {
+				throw io;
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void syncLoop() {
+		List<Request> batch = new ArrayList<>();
+		while (!closed) {
+			try {
+				batch.add(queue.take());
+				if (maxDelayNanos > 0) {
+					long deadline = System.nanoTime() + maxDelayNanos;
+					long left;
+					while (batch.size() < maxBatch && (left = deadline - System.nanoTime()) > 0) {
+						Request r = queue.poll(left, TimeUnit.NANOSECONDS);
+						if (r == null) {
+							break;
+						}
+						batch.add(r);
+					}
+				}
+				queue.drainTo(batch, maxBatch - batch.size());
+				force(batch);
+			} catch (InterruptedException e) {
+				batch.forEach(r -> r.done.completeExceptionally(new IOException("File sync closed")));
+				return;
+			} catch (Throwable e) {
+				LOGGER.error("File sync batch failed", e);
+				batch.forEach(r -> r.done.completeExceptionally(e));
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void force(List<Request> batch) {
+		// every path once, files before directories
+		Set<Path> files = new LinkedHashSet<>();
+		Set<Path> directories = new LinkedHashSet<>();
+		for (Request r : batch) {
+			(r.directories ? directories : files).addAll(r.paths);
+		}
+		Map<Path, IOException> failed = new HashMap<>();
+		force(files, false, failed);
+		force(directories, true, failed);
+
+		long now = System.nanoTime();
+		for (Request r : batch) {
+			IOException error = null;
+			for (Path p : r.paths) {
+				if ((error = failed.get(p)) != null) {
+					break;
+				}
+			}
+			if (error != null) {
+				r.done.completeExceptionally(error);
+			} else {
+				r.done.complete(null);
+			}
+			long wait = now - r.enqueued;
+			waitNanos.add(wait);
+			maxWaitNanos.accumulateAndGet(wait, Math::max);
+		}
+		requests.add(batch.size());
+		batches.increment();
+		maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+	}
+
+	private void force(Set<Path> paths, boolean directories, Map<Path, IOException> failed) {
+		for (Path p : paths) {
+			long start = System.nanoTime();
+			try {
+				FSUtil.force(p, directories);
+			} catch (IOException e) {
+				failures.increment();
+				failed.put(p, e);
+				LOGGER.error("Unable to fsync {}", p, e);
+			}
+			long took = System.nanoTime() - start;
+			fsyncs.increment();
+			fsyncNanos.add(took);
+			maxFsyncNanos.accumulateAndGet(took, Math::max);
+		}
+	}
+}
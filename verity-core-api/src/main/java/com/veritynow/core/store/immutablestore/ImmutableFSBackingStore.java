@@ -1,40 +1,126 @@
 package com.veritynow.core.store.immutablestore;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tika.Tika;
 
 import com.veritynow.core.store.HashingService;
+import com.veritynow.core.store.HashingSession;
 import com.veritynow.core.store.ImmutableStore;
 import com.veritynow.core.store.base.AbstractStore;
+import com.veritynow.core.store.base.StoreUtils;
 import com.veritynow.core.store.meta.BlobMeta;
 import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
 import com.veritynow.util.FSUtil;
 import com.veritynow.util.JSON;
 
 public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, BlobMeta>
-		implements ImmutableStore<String, BlobMeta, BlobMeta> {
+		implements ImmutableStore<String, BlobMeta, BlobMeta>, AutoCloseable {
 
 	private final Path blobDirectory;
+	// where RAW blob files live
+	private final BlobBackend blobs;
+	private final Path stagingDirectory;
+	private final Path collidedDirectory;
 	private final String algo;
 	private static final Logger LOGGER = LogManager.getLogger();
+	// <name>.<uuid> left behind by FSUtil.safeWrite when it dies before the rename
+	private static final Pattern SAFE_WRITE_TEMP = Pattern.compile(".+\\.[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
 	private final ImmutableRepository repo;
+	// null when chunked storage is disabled
+	private final ChunkStore chunkStore;
+	// null when blob compression is disabled
+	private final BlobCompressor compressor;
+	// null when small blob packing is disabled
+	private final PackStore packStore;
+	// null when delta encoding of successive versions is disabled
+	private final BlobDeltaEncoder deltaEncoder;
+	// read side cache of vn_blob rows
+	private final BlobCatalog catalog;
+	// bulkCreate: worker count and blobs committed per transaction
+	private final int bulkParallelism;
+	private final int bulkBatchSize;
+	// created on first bulkCreate
+	private ExecutorService ingestPool;
 
 	Tika tika = new Tika();
 
 	public ImmutableFSBackingStore(Path rootDirectory, ImmutableRepository repo, HashingService hs) {
+		this(rootDirectory, repo, hs, null, null, null, null);
+	}
+
+	public ImmutableFSBackingStore(Path rootDirectory, ImmutableRepository repo, HashingService hs, ChunkStore chunkStore,
+			BlobCompressor compressor, PackStore packStore, BlobCatalog catalog) {
+		this(rootDirectory, repo, hs, chunkStore, compressor, packStore, catalog, null,
+				Runtime.getRuntime().availableProcessors(), 256);
+	}
+
+	/**
+	 * blobBackend holds the RAW blob files, null for the Blobs directory under rootDirectory.
+	 * A custom backend must be able to publish files staged under rootDirectory/Blobs/incoming.
+	 */
+	public ImmutableFSBackingStore(Path rootDirectory, ImmutableRepository repo, HashingService hs, ChunkStore chunkStore,
+			BlobCompressor compressor, PackStore packStore, BlobCatalog catalog, BlobBackend blobBackend,
+			int bulkParallelism, int bulkBatchSize) {
+		this(rootDirectory, repo, hs, chunkStore, compressor, packStore, catalog, blobBackend, bulkParallelism,
+				bulkBatchSize, null);
+	}
+
+	/**
+	 * deltaEncoder stores the content given to {@link #save(String, String, InputStream, String)} as a delta
+	 * against its base when that pays off, null to always store content whole.
+	 */
+	public ImmutableFSBackingStore(Path rootDirectory, ImmutableRepository repo, HashingService hs, ChunkStore chunkStore,
+			BlobCompressor compressor, PackStore packStore, BlobCatalog catalog, BlobBackend blobBackend,
+			int bulkParallelism, int bulkBatchSize, BlobDeltaEncoder deltaEncoder) {
 		super(hs);
+		this.deltaEncoder = deltaEncoder;
+		this.bulkParallelism = bulkParallelism > 0 ? bulkParallelism : Runtime.getRuntime().availableProcessors();
+		this.bulkBatchSize = Math.max(1, bulkBatchSize);
+		this.catalog = catalog != null ? catalog : new BlobCatalog(repo, 0);
+		this.chunkStore = chunkStore;
+		this.compressor = compressor;
+		this.packStore = packStore;
 		this.blobDirectory = rootDirectory.resolve("Blobs");
+		this.stagingDirectory = blobDirectory.resolve("incoming");
+		this.collidedDirectory = blobDirectory.resolve("collided");
+		this.blobs = blobBackend != null ? blobBackend : new FileSystemBlobBackend("local", blobDirectory);
 		this.repo = repo;
 		this.algo = hs.getAlgorithm();
+		try {
+			Files.createDirectories(stagingDirectory);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to create staging directory " + stagingDirectory, e);
+		}
 		LOGGER.info("Immutable Filesystem({}) backed Store started.	Root Directory at {}", algo, blobDirectory);
 	}
 
@@ -42,7 +128,25 @@ public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, Blo
 	public boolean exists(String hash) throws IOException {
 		Objects.requireNonNull(hash, "hash");
 		Objects.requireNonNull(algo, "algorithm");
-		return repo.exists(hash, algo);
+		return catalog.exists(hash, algo);
+	}
+
+	// the client skips the upload of what is found here, so the blobs are touched to outlive it
+	@Override
+	public Set<String> existing(Collection<String> hashes) throws IOException {
+		Objects.requireNonNull(hashes, "hashes");
+		Set<String> unique = new LinkedHashSet<>(hashes);
+		unique.retainAll(repo.touchAll(unique, algo).keySet());
+		return unique;
+	}
+
+	// a version is about to reference the blob, touched so the collector leaves it alone meanwhile
+	@Override
+	public Optional<BlobMeta> touch(String hash) throws IOException {
+		Objects.requireNonNull(hash, "hash");
+		Optional<VnBlobRecord> br = repo.touch(hash, algo);
+		br.ifPresent(catalog::put);
+		return br.map(this::toBlobMeta);
 	}
 
 	@Override
@@ -50,100 +154,140 @@ public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, Blo
 		return create(null, new BlobMeta(name, mimetype), is);
 	}
 
+	@Override
+	public Optional<BlobMeta> save(String name, String mimetype, InputStream is, String base) throws IOException {
+		return create(new BlobMeta(name, mimetype), is, base);
+	}
+
 	// ----------------------------
 	// CREATE
 	//
 	// ----------------------------
 	@Override
 	public Optional<BlobMeta> create(String key, BlobMeta meta, InputStream content) throws IOException {
+		return create(meta, content, null);
+	}
+
+	// base, when not null, is the hash of a previous version of the content to delta encode against
+	private Optional<BlobMeta> create(BlobMeta meta, InputStream content, String base) throws IOException {
 
 		Objects.requireNonNull(content, "content");
 
 		
 		// Get all derivable truth, The store is the authority for these attributes
 
+		// Stage the content inside the blob tree, so the final publish is a rename on the same filesystem
+		Path staged = FSUtil.stagingPath(stagingDirectory);
 		try {
 
-			// Compute hash and cache the contents
-			// Since we are already reading the content, we migh as well cache it
-			String hash = getHashingService().hash(content, true);
-
-			// Get the actual size of the content
-			long size = getHashingService().size().orElseThrow(() -> {
-				return new IOException("Zero content size");
-			});
+			// Compute hash and write the content in a single pass, the results are the session's
+			try (HashingSession hx = getHashingService().session(content, staged)) {
+				return ingest(meta, staged, hx.hash(), hx.size(), hx.header(), hx.digests(), base);
+			}
+		} finally {
+			// a no-op once the staged file has been renamed
+			Files.deleteIfExists(staged);
+		}
+	}
 
-			// Returns a sharded path with hash as the filename
-			// Set createParentDir to true
-			Path blobPath = getBlobPath(hash, true);
-			
-			Optional<BlobMeta> result = repo.withHashLockTx(hash, algo, (dsl) ->  {
-		
-				
-				Optional<VnBlobRecord> metaRepo = repo.findByHashAndAlgo(dsl, hash, algo);
-				// just return the stored meta if it exist
-				//but first check for collision
-				if (metaRepo.isPresent()) {
-					BlobMeta bm = toBlobMeta(metaRepo.get());
-					// check if there is a hash collsion
-					if (bm.size() != size || !(hash.equals(bm.hash()) && algo.equals(bm.hashAlgorithm()))) {
-						try (InputStream is = getHashingService().getInputStream(true).get()) {
-							// store the blob for forensic analysis
-							FSUtil.safeWrite(blobPath.getParent().resolve(hash + "-collided"), is);
-						} catch (Throwable e) {
-						}
-						;
-						LOGGER.error("Collission detected computed[hash({}) size({})],  current[stored {}]", hash, size,
-								JSON.writeValueAsString(bm));
-						throw new IOException("Collission detected");
-					}
-					// no collison
-					return Optional.of(bm);
-				}
+	/**
+	 * Same as {@link #save(BlobMeta, InputStream)}, for content hashed by the caller with the store's
+	 * {@link HashingService}, e.g. assembled by {@link UploadSessions}. The file is moved into the staging area,
+	 * it is not read again unless it gets encoded. It is gone once this returns.
+	 */
+	@Override
+	public Optional<BlobMeta> adopt(BlobMeta meta, Path content, String hash) throws IOException {
+		return adopt(meta, content, hash, Map.of());
+	}
 
-				// get a store ID and timestamp
-				String storeId = UUID.randomUUID().toString();
+	@Override
+	public Optional<BlobMeta> adopt(BlobMeta meta, Path content, String hash, Map<String, String> digests)
+			throws IOException {
+		Objects.requireNonNull(content, "content");
+		Objects.requireNonNull(hash, "hash");
+		Path staged = FSUtil.stagingPath(stagingDirectory);
+		try {
+			FSUtil.moveAtomic(content, staged);
+			long size = Files.size(staged);
+			if (size == 0) {
+				throw new IOException("Zero content size");
+			}
+			Optional<byte[]> header;
+			try (InputStream is = Files.newInputStream(staged)) {
+				header = Optional.of(is.readNBytes(getHashingService().getBufferSize()));
+			}
+			return ingest(meta, staged, hash, size, header, digests, null);
+		} finally {
+			Files.deleteIfExists(content);
+			Files.deleteIfExists(staged);
+		}
+	}
 
-				// Overridable attributes
-				// Set attributes that was passed in meta
-				// If not provided use sane defaults
+	// staged holds content of the given hash, size, header and secondary digests; the caller deletes it afterwards
+	private Optional<BlobMeta> ingest(BlobMeta meta, Path staged, String hash, long size, Optional<byte[]> header,
+			Map<String, String> digests, String base) throws IOException {
+		BlobLayout layout = layoutFor(size);
+		
+		// Already known blob with the same size, nothing to write.
+		// Every dedup hit touches the row, the collector spares it until a version references it
+		Optional<VnBlobRecord> known = catalog.peek(hash, algo);
+		if (known.isPresent() && known.get().getSize() == size && repo.touch(hash, algo).isPresent()) {
+			backfill(known.get(), digests);
+			return Optional.of(toBlobMeta(known.get()));
+		}
 
-				Optional<byte[]> header = getHashingService().header();
-				String mimeType = meta.mimeType() != null ? meta.mimeType()
-						: header.isPresent() ? tika.detect(header.get()) : "application/octet-stream";
-				String name = meta.name() != null ? meta.name() : storeId;
+		// just return the stored meta if it exist, but first check for collision
+		Optional<VnBlobRecord> metaRepo = repo.touch(hash, algo);
+		if (metaRepo.isPresent()) {
+			BlobMeta bm = existing(metaRepo.get(), staged, hash, size);
+			backfill(metaRepo.get(), digests);
+			return Optional.of(bm);
+		}
 
-				// all ready to create a new versions meta
-				BlobMeta blobMeta = new BlobMeta(algo, hash, name, mimeType, size);
-				VnBlobRecord br = toVnBlobRecord(blobMeta);
+		// all ready to create a new versions meta
+		BlobMeta blobMeta = newBlobMeta(meta, hash, size, header);
+		VnBlobRecord br = toVnBlobRecord(blobMeta, layout);
+		br.setDigests(tags(digests));
 
-				// save the actual payload
-				// get the cached content, set delete on close
-				Optional<InputStream> isOpt = getHashingService().getInputStream(true);
-				if (isOpt.isEmpty()) {
-					throw new IOException("Unable to read content");
+		// 1. the bytes first, no connection nor lock is held while writing
+		Encoded enc = null;
+		try {
+			boolean published;
+			if (layout == BlobLayout.CHUNKED) {
+				// only the chunks not already in the store are written, the staged copy is dropped below
+				chunkStore.write(hash, size, staged);
+				published = true;
+			} else {
+				enc = base != null ? delta(br, base, staged, size) : null;
+				if (enc != null) {
+					// the delta is what gets stored, it is packed when small enough
+					layout = packStore != null && packStore.accepts(enc.storedSize()) ? BlobLayout.PACKED
+							: BlobLayout.RAW;
+					br.setLayout(layout.name());
+				} else {
+					enc = encode(staged, size, header);
 				}
-				
-				
-				try (InputStream is = isOpt.get()) {
-					FSUtil.safeWrite(blobPath, is);
-					// only publish if write succeeds
-					repo.insert(dsl, br);
-				} 
-				
-				return Optional.of(blobMeta);
-			 
-			});
-			return result;
-			
-		} finally {
-			// delete the cache
-			Optional<InputStream> isOpt = getHashingService().getInputStream(true);
-			if (isOpt.isPresent())
-				try (@SuppressWarnings("unused")
-				InputStream is = isOpt.get()) {
-				} catch (Exception e) {
+				published = publish(br, layout, enc);
+			}
+
+			// 2. then the row, the first insert wins; the catalog learns of it first so it never answers a false negative
+			catalog.added(hash, algo);
+			if (repo.insertIgnore(br) == 0) {
+				metaRepo = repo.touch(hash, algo);
+				if (metaRepo.isEmpty()) {
+					throw new IOException("Blob " + hash + " was collected while being ingested, retry");
 				}
+				return Optional.of(existing(metaRepo.get(), staged, hash, size));
+			}
+
+			// 3. the row is ours, the stored bytes must be the ones it describes
+			claim(br, layout, enc, published, staged);
+			return Optional.of(blobMeta);
+		} finally {
+			release(br);
+			if (enc != null) {
+				enc.discard();
+			}
 		}
 	}
 
@@ -153,6 +297,41 @@ public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, Blo
 		return create(key, blob, in);
 	}
 
+	// ----------------------------
+	// BULK CREATE
+	//
+	// ----------------------------
+
+	/**
+	 * Parallel ingest, in batches of bulkBatchSize:
+	 *  1. every blob is staged and hashed on the ingest pool
+	 *  2. blobs already stored are resolved with a single query
+	 *  3. new blobs are chunked or encoded on the ingest pool
+	 *  4. their payloads are published on the ingest pool, create-exclusive
+	 *  5. their rows are inserted in a single statement, ON CONFLICT DO NOTHING; blobs whose row was
+	 *     inserted by someone else meanwhile resolve to that row
+	 *
+	 * No lock is taken and no connection is held while writing, see {@link #create(String, BlobMeta, InputStream)}.
+	 *
+	 * As with the default implementation, a blob that fails is left out of the result.
+	 */
+	@Override
+	public List<BlobMeta> bulkCreate(Map<String, KV<BlobMeta>> mis) throws IOException {
+		Objects.requireNonNull(mis, "mis");
+		List<KV<BlobMeta>> all = new ArrayList<>(mis.values());
+		List<BlobMeta> out = new ArrayList<>(all.size());
+		for (int from = 0; from < all.size(); from += bulkBatchSize) {
+			out.addAll(bulkCreateBatch(all.subList(from, Math.min(all.size(), from + bulkBatchSize))));
+		}
+		return out;
+	}
+
+	@Override
+	public List<BlobMeta> bulkCreate(Map<String, KV<BlobMeta>> mis, List<String> ids) throws IOException {
+		// ignore given IDs
+		return bulkCreate(mis);
+	}
+
 	@Override
 	public Optional<BlobMeta> update(String hash, InputStream content) throws IOException {
 		Objects.requireNonNull(hash, "hash");
@@ -166,6 +345,76 @@ public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, Blo
 		return retrieve(hash);
 	}
 
+	@Override
+	public Optional<InputStream> read(String hash, long offset, long length) throws IOException {
+		Objects.requireNonNull(hash, "hash");
+		StoreUtils.enforceRange(offset, length);
+
+		Optional<VnBlobRecord> br = catalog.find(hash, algo);
+		if (br.isEmpty())
+			return Optional.empty();
+
+		// stored bytes are the content bytes, seek straight to the range
+		if (BlobCodec.of(br.get().getCodec()) == BlobCodec.NONE) {
+			switch (BlobLayout.of(br.get().getLayout())) {
+				case RAW -> {
+					Optional<InputStream> in = openRaw(hash, offset);
+					return in.map(is -> StoreUtils.limit(is, length));
+				}
+				case PACKED -> {
+					if (packStore != null) {
+						long size = br.get().getSize();
+						long from = Math.min(offset, size);
+						return Optional.of(openPacked(br.get(), from, Math.min(length, size - from)));
+					}
+				}
+				case CHUNKED -> {
+					if (chunkStore != null && chunkStore.exists(hash)) {
+						return Optional.of(chunkStore.open(hash, offset, length));
+					}
+				}
+			}
+		}
+
+		// encoded content has to be decoded from its first byte
+		return super.read(hash, offset, length);
+	}
+
+	/**
+	 * Same as the default, content of unknown hashes left out, but the rows of all hashes are resolved
+	 * with a single catalog lookup instead of one per hash.
+	 */
+	@Override
+	public List<InputStream> bulkRead(List<String> hashes) throws IOException {
+		Objects.requireNonNull(hashes, "hashes");
+		Map<String, VnBlobRecord> rows = catalog.findAll(hashes, algo);
+		List<InputStream> out = new ArrayList<>(hashes.size());
+		for (String hash : hashes) {
+			VnBlobRecord br = rows.get(hash);
+			if (br == null) {
+				continue;
+			}
+			try {
+				open(br, false).ifPresent(out::add);
+			} catch (IOException e) {
+				LOGGER.error("Unable to open blob {}", hash, e);
+			}
+		}
+		return out;
+	}
+
+	@Override
+	public Optional<Path> locate(String hash) throws IOException {
+		Objects.requireNonNull(hash, "hash");
+		Optional<VnBlobRecord> br = catalog.find(hash, algo);
+		if (br.isEmpty()
+				|| BlobLayout.of(br.get().getLayout()) != BlobLayout.RAW
+				|| BlobCodec.of(br.get().getCodec()) != BlobCodec.NONE)
+			return Optional.empty();
+
+		return blobs.locate(blobName(hash));
+	}
+
 	@Override
 	public Optional<BlobMeta> delete(String hash) throws IOException {
 		Objects.requireNonNull(hash, "hash");
@@ -191,50 +440,493 @@ public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, Blo
 
 	@Override
 	public Optional<InputStream> retrieve(String hash) throws IOException {
-		if (repo.exists(hash, algo)) {
-			InputStream b = getBlob(hash, algo);
-			if (b != null)
-				return Optional.of(b);
+		Optional<VnBlobRecord> br = catalog.find(hash, algo);
+		if (br.isEmpty())
+			return Optional.empty();
+		return open(br.get(), false);
+	}
+
+	/**
+	 * The content of a blob row, for maintenance: bypasses the catalog and is not counted as a read by tiering.
+	 */
+	public Optional<InputStream> scan(VnBlobRecord br) throws IOException {
+		Objects.requireNonNull(br, "blob");
+		return open(br, true);
+	}
+
+	/**
+	 * Release the storage of a blob whose vn_blob row has been deleted.
+	 * Packed payloads become dead space for {@link PackCompactor}, chunks are left to {@link #sweepChunks(Instant, int)}.
+	 * Returns the number of bytes released right away.
+	 */
+	public long purge(VnBlobRecord br) throws IOException {
+		Objects.requireNonNull(br, "blob");
+		switch (BlobLayout.of(br.getLayout())) {
+			case RAW -> {
+				long stored = br.getStoredSize() != null ? br.getStoredSize() : br.getSize();
+				return blobs.delete(blobName(br.getHash())) ? stored : 0;
+			}
+			case CHUNKED -> {
+				if (chunkStore != null) {
+					chunkStore.deleteManifest(br.getHash());
+				}
+				return 0;
+			}
+			default -> {
+				return 0;
+			}
 		}
-		return Optional.empty();
+	}
+
+	/**
+	 * Delete staged uploads abandoned before stagedBefore, and collided copies kept since before collidedBefore.
+	 * The blob shard numbered shard (0-255) is also scanned for leftovers of older releases, which wrote
+	 * blobs through FSUtil.safeWrite (name.uuid temp files) and kept collided copies next to the blob.
+	 * Returns the number of files deleted.
+	 */
+	public long purgeStaleFiles(Instant stagedBefore, Instant collidedBefore, int shard) throws IOException {
+		long deleted = FSUtil.deleteOlderThan(stagingDirectory, stagedBefore, p -> true);
+		deleted += FSUtil.deleteOlderThan(collidedDirectory, collidedBefore, p -> true);
+
+		Path shardDir = blobDirectory.resolve(String.format("%02x", shard & 0xff));
+		deleted += FSUtil.deleteOlderThan(shardDir, stagedBefore, p -> SAFE_WRITE_TEMP.matcher(p.getFileName().toString()).matches());
+		deleted += FSUtil.deleteOlderThan(shardDir, collidedBefore, p -> p.getFileName().toString().endsWith("-collided"));
+		if (chunkStore != null) {
+			deleted += chunkStore.purgeStaleFiles(stagedBefore);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete the manifests of the chunk shard numbered shard (0-255) whose vn_blob row is gone, then the chunks of
+	 * the shard no manifest references anymore. Returns the number of chunks deleted, 0 when chunked storage is disabled.
+	 */
+	public long sweepChunks(Instant olderThan, int shard) throws IOException {
+		return chunkStore == null ? 0 : chunkStore.sweepChunks(olderThan, shard, hashes -> repo.existsAll(hashes, algo));
 	}
 
 	/** HELPERS DOWN HERE **/
 
-	private Path getBlobPath(String hash, boolean createParentDir) throws IOException {
-		// git-like sharding: /ab/<hash>
-		String shard = hash.substring(0, 2);
-		Path shardDir = blobDirectory.resolve(shard);
-		if (createParentDir && !Files.exists(shardDir)) {
-			Files.createDirectories(shardDir);
+	// stored form of a non chunked blob, encoded is the temp file holding the encoded bytes, or null
+	private record Encoded(BlobCodec codec, long storedSize, Path payload, Path encoded) {
+		void discard() throws IOException {
+			if (encoded != null) {
+				Files.deleteIfExists(encoded);
+			}
 		}
-		return shardDir.resolve(hash + "-" + algo);
 	}
 
-	
+	// one blob of a bulkCreate batch, result stays null if it failed
+	private static final class Ingest {
+		final KV<BlobMeta> kv;
+		final Path staged;
+		String hash;
+		long size;
+		Optional<byte[]> header;
+		Map<String, String> digests;
+		BlobLayout layout;
+		Encoded encoded;
+		VnBlobRecord row;
+		boolean published;
+		BlobMeta result;
+
+		Ingest(KV<BlobMeta> kv, Path staged) {
+			this.kv = kv;
+			this.staged = staged;
+		}
+	}
 
-	private InputStream getBlob(String hash, String algo) throws IOException {
-		if (repo.exists(hash, algo)) {
-			Path p = getBlobPath(hash, false);
-			if (!Files.exists(p))
+	private List<BlobMeta> bulkCreateBatch(List<KV<BlobMeta>> batch) throws IOException {
+		List<Ingest> ingests = new ArrayList<>(batch.size());
+		for (KV<BlobMeta> kv : batch) {
+			ingests.add(new Ingest(kv, FSUtil.stagingPath(stagingDirectory)));
+		}
+		try {
+			// 1. stage and hash, each in a hashing session of its own
+			List<Ingest> hashed = parallel(ingests, in -> {
+				try (HashingSession hx = getHashingService().session(in.kv.inputStream(), in.staged)) {
+					in.hash = hx.hash();
+					in.size = hx.size();
+					in.header = hx.header();
+					in.digests = hx.digests();
+				}
+				in.layout = layoutFor(in.size);
+			});
+
+			// 2. already stored, touched in one statement so that the collector spares them
+			Map<String, Ingest> fresh = new LinkedHashMap<>();
+			Map<String, VnBlobRecord> stored = repo.touchAll(hashed.stream().map(in -> in.hash).toList(), algo);
+			for (Ingest in : hashed) {
+				resolve(in, stored.get(in.hash), fresh);
+			}
+
+			// 3. chunk or encode, chunks are content addressed so they can be written before the row exists
+			List<Ingest> prepared = parallel(new ArrayList<>(fresh.values()), in -> {
+				if (in.layout == BlobLayout.CHUNKED) {
+					chunkStore.write(in.hash, in.size, in.staged);
+				} else {
+					in.encoded = encode(in.staged, in.size, in.header);
+				}
+			});
+
+			// 4. publish the payloads, in parallel so that durable writes of the batch share their fsyncs
+			List<Ingest> written = parallel(prepared, in -> {
+				in.row = toVnBlobRecord(newBlobMeta(in.kv.meta(), in.hash, in.size, in.header), in.layout);
+				in.row.setDigests(tags(in.digests));
+				in.published = in.layout == BlobLayout.CHUNKED || publish(in.row, in.layout, in.encoded);
+			});
+
+			// 5. register them in one statement, rows written by someone else meanwhile win
+			if (!written.isEmpty()) {
+				for (Ingest in : written) {
+					catalog.added(in.hash, algo);
+				}
+				Set<String> inserted = repo.insertAllIgnore(written.stream().map(in -> in.row).toList());
+				List<Ingest> won = new ArrayList<>(inserted.size());
+				List<String> lost = new ArrayList<>();
+				for (Ingest in : written) {
+					if (inserted.contains(in.hash)) {
+						won.add(in);
+					} else {
+						lost.add(in.hash);
+					}
+				}
+				for (Ingest in : parallel(won, in -> claim(in.row, in.layout, in.encoded, in.published, in.staged))) {
+					in.result = toBlobMeta(in.row);
+				}
+				Map<String, VnBlobRecord> raced = repo.touchAll(lost, algo);
+				for (Ingest in : written) {
+					VnBlobRecord winner = raced.get(in.hash);
+					if (winner != null) {
+						resolve(in, winner, null);
+					}
+				}
+			}
+		} finally {
+			for (Ingest in : ingests) {
+				release(in.row);
+				if (in.encoded != null) {
+					in.encoded.discard();
+				}
+				// a no-op once the staged file has been renamed
+				Files.deleteIfExists(in.staged);
+			}
+		}
+
+		// duplicates within the batch share the result of the first occurrence
+		Map<String, BlobMeta> byHash = new HashMap<>();
+		for (Ingest in : ingests) {
+			if (in.hash != null && in.result != null) {
+				byHash.putIfAbsent(in.hash, in.result);
+			}
+		}
+		List<BlobMeta> out = new ArrayList<>(ingests.size());
+		for (Ingest in : ingests) {
+			BlobMeta bm = in.hash == null ? null : in.result != null ? in.result : byHash.get(in.hash);
+			if (bm != null) {
+				out.add(bm);
+			}
+		}
+		return out;
+	}
+
+	// stored is the existing row or null, new blobs are collected into fresh (first occurrence of a hash only)
+	private void resolve(Ingest in, VnBlobRecord stored, Map<String, Ingest> fresh) {
+		if (stored == null) {
+			fresh.putIfAbsent(in.hash, in);
+			return;
+		}
+		BlobMeta bm = toBlobMeta(stored);
+		if (bm.size() != in.size) {
+			try {
+				collision(in.staged, in.hash, in.size, bm);
+			} catch (IOException ignore) {
+			}
+			return;
+		}
+		catalog.put(stored);
+		in.result = bm;
+	}
+
+	// run work for every item on the ingest pool, returns the items it succeeded for, in order
+	private List<Ingest> parallel(List<Ingest> items, IngestStep work) throws IOException {
+		List<Future<?>> futures = new ArrayList<>(items.size());
+		ExecutorService pool = ingestPool();
+		for (Ingest in : items) {
+			futures.add(pool.submit(() -> {
+				work.apply(in);
 				return null;
-			return Files.newInputStream(p);
+			}));
+		}
+		List<Ingest> done = new ArrayList<>(items.size());
+		for (int i = 0; i < items.size(); i++) {
+			try {
+				futures.get(i).get();
+				done.add(items.get(i));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				futures.forEach(f -> f.cancel(true));
+				throw new InterruptedIOException("Bulk ingest interrupted");
+			} catch (ExecutionException e) {
+				LOGGER.error("Bulk ingest of a blob failed", e.getCause());
+			}
+		}
+		return done;
+	}
+
+	@FunctionalInterface
+	private interface IngestStep {
+		void apply(Ingest in) throws Exception;
+	}
+
+	private synchronized ExecutorService ingestPool() {
+		if (ingestPool == null) {
+			AtomicInteger n = new AtomicInteger();
+			ingestPool = Executors.newFixedThreadPool(bulkParallelism, r -> {
+				Thread t = new Thread(r, "vn-blob-ingest-" + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return ingestPool;
+	}
+
+	private BlobMeta newBlobMeta(BlobMeta meta, String hash, long size, Optional<byte[]> header) {
+		// Overridable attributes
+		// Set attributes that was passed in meta
+		// If not provided use sane defaults
+		String mimeType = meta != null && meta.mimeType() != null ? meta.mimeType()
+				: header.isPresent() ? tika.detect(header.get()) : "application/octet-stream";
+		String name = meta != null && meta.name() != null ? meta.name() : UUID.randomUUID().toString();
+		return new BlobMeta(algo, hash, name, mimeType, size);
+	}
+
+	private BlobLayout layoutFor(long size) {
+		// Large blobs are stored as content-defined chunks so revisions share their unchanged bytes,
+		// small ones are appended to a pack segment instead of costing a file each
+		return chunkStore != null && chunkStore.accepts(size) ? BlobLayout.CHUNKED
+				: packStore != null && packStore.accepts(size) ? BlobLayout.PACKED : BlobLayout.RAW;
+	}
+
+	private Encoded encode(Path staged, long size, Optional<byte[]> header) throws IOException {
+		// the codec is decided on what the bytes are, not on what the caller claims they are
+		BlobCodec codec = compressor == null ? BlobCodec.NONE
+				: compressor.choose(header.isPresent() ? tika.detect(header.get()) : null, size, staged);
+		if (codec == BlobCodec.NONE) {
+			return new Encoded(BlobCodec.NONE, size, staged, null);
+		}
+		Path encoded = FSUtil.stagingPath(stagingDirectory);
+		long storedSize = compressor.encode(codec, staged, encoded);
+		if (compressor.worthIt(size, storedSize)) {
+			return new Encoded(codec, storedSize, encoded, encoded);
+		}
+		return new Encoded(BlobCodec.NONE, size, staged, encoded);
+	}
+
+	// the content as a delta against the blob base when that pays off, null to store it whole
+	private Encoded delta(VnBlobRecord br, String base, Path staged, long size) throws IOException {
+		if (deltaEncoder == null || !deltaEncoder.accepts(size) || base.equals(br.getHash())) {
+			return null;
+		}
+		Optional<VnBlobRecord> baseRow = catalog.find(base, algo);
+		if (baseRow.isEmpty() || !deltaEncoder.accepts(baseRow.get().getSize())) {
+			return null;
+		}
+		int baseDepth = baseRow.get().getDeltaDepth() != null ? baseRow.get().getDeltaDepth() : 0;
+		if (!deltaEncoder.extendsChain(baseDepth)) {
+			return null;
+		}
+		Optional<InputStream> baseContent = open(baseRow.get(), false);
+		if (baseContent.isEmpty()) {
+			return null;
+		}
+		byte[] delta;
+		try (InputStream in = baseContent.get()) {
+			delta = deltaEncoder.encode(in.readAllBytes(), Files.readAllBytes(staged));
+		}
+		if (delta == null) {
+			return null;
+		}
+		Path encoded = FSUtil.stagingPath(stagingDirectory);
+		Files.write(encoded, delta, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		br.setDeltaBase(base);
+		br.setDeltaDepth(baseDepth + 1);
+		return new Encoded(BlobCodec.DELTA, delta.length, encoded, encoded);
+	}
+
+	// write the encoded payload at its final location before br is inserted,
+	// false if a RAW payload was already held under the name, the staged payload is then kept for claim()
+	private boolean publish(VnBlobRecord br, BlobLayout layout, Encoded enc) throws IOException {
+		br.setCodec(enc.codec().name());
+		br.setStoredSize(enc.storedSize());
+		if (layout == BlobLayout.PACKED) {
+			// a writer that loses the insert leaves dead space, reclaimed by compaction,
+			// the segment stays in flight until release(br)
+			PackStore.PackLocation loc = packStore.append(enc.payload());
+			br.setPackSegment(loc.segment());
+			br.setPackOffset(loc.offset());
+			return true;
+		}
+		// create-exclusive under its content address, never over the payload of a row that exists
+		return blobs.publishIfAbsent(enc.payload(), blobName(br.getHash()));
+	}
+
+	// the row published into a pack segment has been inserted or dropped, the segment may be compacted again
+	private void release(VnBlobRecord br) {
+		if (br != null && br.getPackSegment() != null) {
+			packStore.release(br.getPackSegment());
+		}
+	}
+
+	// br has just been inserted by this writer: make the stored bytes the ones it describes.
+	// Whatever was under the name before belonged to no row, a failed ingest or a blob collected meanwhile.
+	// If that fails the row is withdrawn again, it must never point at bytes that are not there.
+	private void claim(VnBlobRecord br, BlobLayout layout, Encoded enc, boolean published, Path staged) throws IOException {
+		try {
+			// a delta is of no use without its base, which may have been collected before the row went in
+			if (br.getDeltaBase() != null && repo.findByHashAndAlgo(br.getDeltaBase(), algo).isEmpty()) {
+				throw new IOException("Delta base " + br.getDeltaBase() + " of blob " + br.getHash()
+						+ " was collected while being ingested, retry");
+			}
+			if (layout == BlobLayout.CHUNKED) {
+				if (!chunkStore.exists(br.getHash())) {
+					chunkStore.write(br.getHash(), br.getSize(), staged);
+				}
+			} else if (!published) {
+				blobs.publish(enc.payload(), blobName(br.getHash()));
+			}
+		} catch (IOException | RuntimeException e) {
+			try {
+				repo.deleteIfUnreferenced(br.getHash(), br.getHashAlgorithm());
+			} catch (RuntimeException ignore) {
+			}
+			throw e;
+		}
+	}
+
+	// an ingest found the row of its hash, the stored meta unless it is a collision
+	private BlobMeta existing(VnBlobRecord stored, Path staged, String hash, long size) throws IOException {
+		BlobMeta bm = toBlobMeta(stored);
+		// check if there is a hash collsion
+		if (bm.size() != size || !(hash.equals(bm.hash()) && algo.equals(bm.hashAlgorithm()))) {
+			throw collision(staged, hash, size, bm);
+		}
+		// no collison, the staged copy is dropped by the caller
+		catalog.put(stored);
+		return bm;
+	}
+
+	private IOException collision(Path staged, String hash, long size, BlobMeta stored) throws IOException {
+		try {
+			// keep the blob for forensic analysis
+			Files.createDirectories(collidedDirectory);
+			FSUtil.moveAtomic(staged, collidedDirectory.resolve(hash + "-" + algo + "-collided"));
+		} catch (Throwable e) {
+		}
+		LOGGER.error("Collission detected computed[hash({}) size({})],  current[stored {}]", hash, size,
+				JSON.writeValueAsString(stored));
+		return new IOException("Collission detected");
+	}
+
+	// from and length are relative to the stored payload
+	private InputStream openPacked(VnBlobRecord br, long from, long length) throws IOException {
+		try {
+			return packStore.open(br.getPackSegment(), br.getPackOffset() + from, length);
+		} catch (NoSuchFileException e) {
+			// the segment was compacted away after the row was read, the row now has the new location
+			VnBlobRecord moved = catalog.reload(br.getHash(), br.getHashAlgorithm())
+					.orElseThrow(() -> e);
+			return packStore.open(moved.getPackSegment(), moved.getPackOffset() + from, length);
+		}
+	}
+
+	private String blobName(String hash) {
+		return hash + "-" + algo;
+	}
+
+	// the content of a row, scan reads are not tracked by the blob backend
+	private Optional<InputStream> open(VnBlobRecord br, boolean scan) throws IOException {
+		String hash = br.getHash();
+		BlobLayout layout = BlobLayout.of(br.getLayout());
+		if (layout == BlobLayout.PACKED) {
+			if (packStore == null) {
+				LOGGER.error("Packed blob {} cannot be read, pack store disabled", hash);
+				return Optional.empty();
+			}
+			return Optional.of(decode(br, openPacked(br, 0, br.getStoredSize()), scan));
+		}
+
+		if (layout == BlobLayout.CHUNKED) {
+			if (chunkStore == null || !chunkStore.exists(hash)) {
+				LOGGER.error("Chunked blob {} cannot be read, chunk store disabled or manifest missing", hash);
+				return Optional.empty();
+			}
+			return Optional.of(chunkStore.open(hash));
+		}
+
+		Optional<InputStream> in = scan ? scanRaw(hash) : openRaw(hash, 0);
+		if (in.isEmpty())
+			return Optional.empty();
+		// hand back the original bytes whatever the stored encoding is
+		return Optional.of(decode(br, in.get(), scan));
+	}
+
+	// the original bytes of a stored payload, a delta is applied to the content of its base
+	private InputStream decode(VnBlobRecord br, InputStream stored, boolean scan) throws IOException {
+		BlobCodec codec = BlobCodec.of(br.getCodec());
+		if (codec != BlobCodec.DELTA) {
+			return BlobCompressor.decode(codec, stored);
+		}
+		try (stored) {
+			String base = br.getDeltaBase();
+			Optional<VnBlobRecord> baseRow = scan ? repo.findByHashAndAlgo(base, algo) : catalog.find(base, algo);
+			if (baseRow.isEmpty()) {
+				throw new IOException("Delta base " + base + " of blob " + br.getHash() + " is missing");
+			}
+			Optional<InputStream> baseContent = open(baseRow.get(), scan);
+			if (baseContent.isEmpty()) {
+				throw new IOException("Delta base " + base + " of blob " + br.getHash() + " cannot be read");
+			}
+			byte[] baseBytes;
+			try (InputStream in = baseContent.get()) {
+				baseBytes = in.readAllBytes();
+			}
+			return new ByteArrayInputStream(BlobDeltaEncoder.apply(baseBytes, new BufferedInputStream(stored)));
+		}
+	}
+
+	private Optional<InputStream> openRaw(String hash, long offset) throws IOException {
+		try {
+			return Optional.of(blobs.open(blobName(hash), offset));
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		}
+	}
+
+	private Optional<InputStream> scanRaw(String hash) throws IOException {
+		try {
+			return Optional.of(blobs.scan(blobName(hash)));
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
 		}
-		return null;
 	}
 
+	
+
 	// A no write operation but returns a sensible Meta
 	private Optional<BlobMeta> readOnly(String hash, InputStream content) throws IOException {
 
 		// Get all derivable truth, The store is the authority for these attributes
 		if (content != null) {
-			hash = getHashingService().hash(content, false);
+			try (HashingSession hx = getHashingService().session(content, false)) {
+				hash = hx.hash();
+			}
 		}
 
 		if (hash == null)
 			return Optional.empty();
 		
-		Optional<VnBlobRecord> br = repo.findByHashAndAlgo(hash, algo);
+		Optional<VnBlobRecord> br = catalog.find(hash, algo);
 
 		if (br.isPresent()) return Optional.of(toBlobMeta(br.get()));
 
@@ -243,22 +935,85 @@ public class ImmutableFSBackingStore extends AbstractStore<String, BlobMeta, Blo
 		return Optional.empty();
 	}
 
+	/**
+	 * Blobs stored under the store's algorithm are found by hash; any other algorithm must be one of the
+	 * secondary digests of the hashing service, recorded with the blobs hashed since it was configured.
+	 */
+	@Override
+	public Optional<BlobMeta> getMetaByDigest(String algorithm, String digest) throws IOException {
+		Objects.requireNonNull(algorithm, "algorithm");
+		Objects.requireNonNull(digest, "digest");
+		String a = algorithm.toLowerCase(Locale.ROOT).trim();
+		if (a.equals(algo.toLowerCase(Locale.ROOT))) {
+			return readOnly(digest, null);
+		}
+		if (!getHashingService().getDigestAlgorithms().contains(a)) {
+			return Optional.empty();
+		}
+		return repo.findByDigest(tag(a, digest.toLowerCase(Locale.ROOT)), algo).map(this::toBlobMeta);
+	}
+
+	// a blob stored before its secondary digests were configured gets them when its content comes by again
+	private void backfill(VnBlobRecord br, Map<String, String> digests) {
+		if (br.getDigests() == null && digests != null && !digests.isEmpty()) {
+			repo.updateDigestsIfMissing(br.getHash(), algo, tags(digests));
+		}
+	}
+
+	// vn_blob.digests, one "algorithm:hex" tag per secondary digest; null when there are none
+	private static String[] tags(Map<String, String> digests) {
+		if (digests == null || digests.isEmpty()) {
+			return null;
+		}
+		return digests.entrySet().stream().map(e -> tag(e.getKey(), e.getValue())).toArray(String[]::new);
+	}
+
+	private static String tag(String algorithm, String digest) {
+		return algorithm + ":" + digest;
+	}
+
 	private BlobMeta toBlobMeta(VnBlobRecord br) {
 		return new BlobMeta(br.getHashAlgorithm(), br.getHash(), br.getName(), br.getMimeType(), br.getSize());
 	}
 
-	private VnBlobRecord toVnBlobRecord(BlobMeta bm) {
+	private VnBlobRecord toVnBlobRecord(BlobMeta bm, BlobLayout layout) {
 		VnBlobRecord vr = new VnBlobRecord();
 		vr.setHash(bm.hash());
 		vr.setHashAlgorithm(bm.hashAlgorithm());
 		vr.setMimeType(bm.mimeType());
 		vr.setName(bm.name());
 		vr.setSize(bm.size());
+		vr.setLayout(layout.name());
 		return vr;
 	}
 
+	public BlobBackend getBlobBackend() {
+		return blobs;
+	}
+
 	@Override
 	public Optional<BlobMeta> getMeta(String key) throws IOException {
 		return readOnly(key, null);
 	}
+
+	@Override
+	public Map<String, BlobMeta> getMetas(Collection<String> hashes) throws IOException {
+		Objects.requireNonNull(hashes, "hashes");
+		Map<String, VnBlobRecord> rows = catalog.findAll(hashes, algo);
+		Map<String, BlobMeta> out = new LinkedHashMap<>();
+		for (String hash : hashes) {
+			VnBlobRecord br = rows.get(hash);
+			if (br != null) {
+				out.put(hash, toBlobMeta(br));
+			}
+		}
+		return out;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (ingestPool != null) {
+			ingestPool.shutdownNow();
+		}
+	}
 }
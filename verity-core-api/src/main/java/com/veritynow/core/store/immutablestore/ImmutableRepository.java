@@ -1,13 +1,27 @@
 package com.veritynow.core.store.immutablestore;
 
 import static com.veritynow.core.store.persistence.jooq.Tables.VN_BLOB;
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_NODE_VERSION;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import org.jooq.Condition;
 import org.jooq.DSLContext;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
 
+import com.veritynow.core.store.persistence.jooq.tables.VnBlob;
 import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+import com.veritynow.core.store.txn.TransactionResult;
 
 public class ImmutableRepository {
 
@@ -46,6 +60,69 @@ public class ImmutableRepository {
 	  }
   
 
+  /**
+   * Blob of an algorithm by one of its secondary digests, a tag "digestAlgorithm:hex" (ix_blob_digests).
+   * Several blobs only share a tag on a digest collision, the oldest wins.
+   */
+  public Optional<VnBlobRecord> findByDigest(String tag, String algo) {
+    Objects.requireNonNull(tag, "tag");
+    Objects.requireNonNull(algo, "algorithm");
+
+    return dsl.selectFrom(VN_BLOB)
+      .where(VN_BLOB.DIGESTS.contains(new String[] { tag }).and(VN_BLOB.HASH_ALGORITHM.eq(algo)))
+      .orderBy(VN_BLOB.CREATED_AT)
+      .limit(1)
+      .fetchOptional();
+  }
+
+  /**
+   * Record the secondary digests of a blob stored before they were configured; rows that have some keep them.
+   * Returns rows updated (0 or 1).
+   */
+  public int updateDigestsIfMissing(String hash, String algo, String[] digests) {
+    Objects.requireNonNull(hash, "hash");
+    Objects.requireNonNull(algo, "algorithm");
+
+    return dsl.update(VN_BLOB)
+      .set(VN_BLOB.DIGESTS, digests)
+      .where(VN_BLOB.HASH.eq(hash).and(VN_BLOB.HASH_ALGORITHM.eq(algo)).and(VN_BLOB.DIGESTS.isNull()))
+      .execute();
+  }
+
+  /**
+   * The blob is about to be referenced: bump last_seen so the collector leaves it alone meanwhile.
+   * Returns the row, empty if it does not exist (anymore). A concurrent collector DELETE either waits
+   * for this update and then sees the new last_seen, or wins and this finds no row.
+   */
+  public Optional<VnBlobRecord> touch(String hash, String algo) {
+    Objects.requireNonNull(hash, "hash");
+    Objects.requireNonNull(algo, "algorithm");
+
+    return dsl.update(VN_BLOB)
+      .set(VN_BLOB.LAST_SEEN, DSL.currentOffsetDateTime())
+      .where(VN_BLOB.HASH.eq(hash).and(VN_BLOB.HASH_ALGORITHM.eq(algo)))
+      .returning()
+      .fetchOptional();
+  }
+
+  /**
+   * Same as touch for several hashes in one statement, the rows that exist keyed by hash.
+   */
+  public Map<String, VnBlobRecord> touchAll(Collection<String> hashes, String algo) {
+    Objects.requireNonNull(hashes, "hashes");
+    Objects.requireNonNull(algo, "algorithm");
+    if (hashes.isEmpty()) {
+      return Map.of();
+    }
+
+    return dsl.update(VN_BLOB)
+      .set(VN_BLOB.LAST_SEEN, DSL.currentOffsetDateTime())
+      .where(VN_BLOB.HASH_ALGORITHM.eq(algo).and(anyHash(hashes)))
+      .returning()
+      .fetch()
+      .intoMap(VN_BLOB.HASH);
+  }
+
   /**
    * Correct EXISTS: fetchExists() compiles to SELECT EXISTS(...)
    */
@@ -75,6 +152,14 @@ public class ImmutableRepository {
       .set(VN_BLOB.SIZE, blobRecord.getSize())
       .set(VN_BLOB.MIME_TYPE, blobRecord.getMimeType())
       .set(VN_BLOB.NAME, blobRecord.getName())
+      .set(VN_BLOB.LAYOUT, blobRecord.getLayout())
+      .set(VN_BLOB.CODEC, blobRecord.getCodec())
+      .set(VN_BLOB.STORED_SIZE, blobRecord.getStoredSize())
+      .set(VN_BLOB.PACK_SEGMENT, blobRecord.getPackSegment())
+      .set(VN_BLOB.PACK_OFFSET, blobRecord.getPackOffset())
+      .set(VN_BLOB.DELTA_BASE, blobRecord.getDeltaBase())
+      .set(VN_BLOB.DELTA_DEPTH, blobRecord.getDeltaDepth())
+      .set(VN_BLOB.DIGESTS, blobRecord.getDigests())
       .execute();
   }
   
@@ -93,6 +178,14 @@ public class ImmutableRepository {
       .set(VN_BLOB.SIZE, blobRecord.getSize())
       .set(VN_BLOB.MIME_TYPE, blobRecord.getMimeType())
       .set(VN_BLOB.NAME, blobRecord.getName())
+      .set(VN_BLOB.LAYOUT, blobRecord.getLayout())
+      .set(VN_BLOB.CODEC, blobRecord.getCodec())
+      .set(VN_BLOB.STORED_SIZE, blobRecord.getStoredSize())
+      .set(VN_BLOB.PACK_SEGMENT, blobRecord.getPackSegment())
+      .set(VN_BLOB.PACK_OFFSET, blobRecord.getPackOffset())
+      .set(VN_BLOB.DELTA_BASE, blobRecord.getDeltaBase())
+      .set(VN_BLOB.DELTA_DEPTH, blobRecord.getDeltaDepth())
+      .set(VN_BLOB.DIGESTS, blobRecord.getDigests())
       .execute();
   }
 
@@ -111,6 +204,14 @@ public class ImmutableRepository {
       .set(VN_BLOB.SIZE, blobRecord.getSize())
       .set(VN_BLOB.MIME_TYPE, blobRecord.getMimeType())
       .set(VN_BLOB.NAME, blobRecord.getName())
+      .set(VN_BLOB.LAYOUT, blobRecord.getLayout())
+      .set(VN_BLOB.CODEC, blobRecord.getCodec())
+      .set(VN_BLOB.STORED_SIZE, blobRecord.getStoredSize())
+      .set(VN_BLOB.PACK_SEGMENT, blobRecord.getPackSegment())
+      .set(VN_BLOB.PACK_OFFSET, blobRecord.getPackOffset())
+      .set(VN_BLOB.DELTA_BASE, blobRecord.getDeltaBase())
+      .set(VN_BLOB.DELTA_DEPTH, blobRecord.getDeltaDepth())
+      .set(VN_BLOB.DIGESTS, blobRecord.getDigests())
       .onConflict(VN_BLOB.HASH, VN_BLOB.HASH_ALGORITHM)
       .doNothing()
       .execute();
@@ -118,7 +219,8 @@ public class ImmutableRepository {
 
   /**
    * Cross-process mutex for (hash,algo) using Postgres advisory tx locks.
-   * IMPORTANT: call this around: recheck -> write bytes -> insert meta.
+   * Ingest does not take it, it relies on create-exclusive publish and insertIgnore instead;
+   * the collector runs its delete and storage release of a blob under it, the tier mover its moves.
    *
    * Uses hashtextextended() to generate a stable bigint lock key from text.
    * Lock is released automatically at transaction end.
@@ -143,4 +245,215 @@ public class ImmutableRepository {
 	      }
 	    });
 	  }
+
+  /**
+   * Rows of the given hashes that exist, keyed by hash.
+   * One statement whatever the number of hashes: hash = ANY(?) binds a single array,
+   * where IN (...) would bind one parameter per hash and defeat statement caching.
+   */
+  public Map<String, VnBlobRecord> findByHashes(Collection<String> hashes, String algo) {
+    Objects.requireNonNull(hashes, "hashes");
+    Objects.requireNonNull(algo, "algorithm");
+    if (hashes.isEmpty()) {
+      return Map.of();
+    }
+
+    return dsl.selectFrom(VN_BLOB)
+      .where(VN_BLOB.HASH_ALGORITHM.eq(algo).and(anyHash(hashes)))
+      .fetchMap(VN_BLOB.HASH);
+  }
+
+  /**
+   * The subset of the given hashes that exist, same single statement as findByHashes but only the key is read.
+   */
+  public Set<String> existsAll(Collection<String> hashes, String algo) {
+    Objects.requireNonNull(hashes, "hashes");
+    Objects.requireNonNull(algo, "algorithm");
+    if (hashes.isEmpty()) {
+      return Set.of();
+    }
+
+    return new HashSet<>(dsl.select(VN_BLOB.HASH)
+      .from(VN_BLOB)
+      .where(VN_BLOB.HASH_ALGORITHM.eq(algo).and(anyHash(hashes)))
+      .fetch(VN_BLOB.HASH));
+  }
+
+  /**
+   * Multi-row insert, rows whose PK already exists are skipped (Postgres ON CONFLICT DO NOTHING).
+   * Returns the hashes of the rows inserted.
+   */
+  public Set<String> insertAllIgnore(Collection<VnBlobRecord> blobRecords) {
+    Objects.requireNonNull(blobRecords, "blobRecords");
+    if (blobRecords.isEmpty()) {
+      return Set.of();
+    }
+
+    var insert = dsl.insertInto(VN_BLOB,
+        VN_BLOB.HASH, VN_BLOB.HASH_ALGORITHM, VN_BLOB.SIZE, VN_BLOB.MIME_TYPE, VN_BLOB.NAME,
+        VN_BLOB.LAYOUT, VN_BLOB.CODEC, VN_BLOB.STORED_SIZE, VN_BLOB.PACK_SEGMENT, VN_BLOB.PACK_OFFSET,
+        VN_BLOB.DELTA_BASE, VN_BLOB.DELTA_DEPTH, VN_BLOB.DIGESTS);
+    for (VnBlobRecord br : blobRecords) {
+      Objects.requireNonNull(br.getHash(), "hash");
+      Objects.requireNonNull(br.getHashAlgorithm(), "algorithm");
+      insert = insert.values(br.getHash(), br.getHashAlgorithm(), br.getSize(), br.getMimeType(), br.getName(),
+          br.getLayout(), br.getCodec(), br.getStoredSize(), br.getPackSegment(), br.getPackOffset(),
+          br.getDeltaBase(), br.getDeltaDepth(), br.getDigests());
+    }
+    return new HashSet<>(insert
+      .onConflict(VN_BLOB.HASH, VN_BLOB.HASH_ALGORITHM)
+      .doNothing()
+      .returningResult(VN_BLOB.HASH)
+      .fetch(VN_BLOB.HASH));
+  }
+
+  /**
+   * Live (referenced) stored bytes per pack segment.
+   */
+  public Map<Integer, Long> packLiveBytes() {
+    return dsl.select(VN_BLOB.PACK_SEGMENT, DSL.sum(VN_BLOB.STORED_SIZE))
+      .from(VN_BLOB)
+      .where(VN_BLOB.PACK_SEGMENT.isNotNull())
+      .groupBy(VN_BLOB.PACK_SEGMENT)
+      .fetchMap(r -> r.value1(), r -> r.value2() == null ? 0L : r.value2().longValue());
+  }
+
+  public List<VnBlobRecord> findByPackSegment(int segment) {
+    return dsl.selectFrom(VN_BLOB)
+      .where(VN_BLOB.PACK_SEGMENT.eq(segment))
+      .orderBy(VN_BLOB.PACK_OFFSET)
+      .fetch();
+  }
+
+  /**
+   * Point a packed blob at its new location, only if it still is where the caller found it.
+   * Returns rows updated (0 or 1).
+   */
+  public int updatePackLocation(VnBlobRecord blobRecord, int segment, long offset) {
+    Objects.requireNonNull(blobRecord, "blobRecord");
+
+    return dsl.update(VN_BLOB)
+      .set(VN_BLOB.PACK_SEGMENT, segment)
+      .set(VN_BLOB.PACK_OFFSET, offset)
+      .where(VN_BLOB.HASH.eq(blobRecord.getHash())
+        .and(VN_BLOB.HASH_ALGORITHM.eq(blobRecord.getHashAlgorithm()))
+        .and(VN_BLOB.PACK_SEGMENT.eq(blobRecord.getPackSegment()))
+        .and(VN_BLOB.PACK_OFFSET.eq(blobRecord.getPackOffset())))
+      .execute();
+  }
+
+  /**
+   * Stream every blob hash of an algorithm, without materializing the table.
+   */
+  public void forEachHash(String algo, Consumer<String> consumer) {
+    Objects.requireNonNull(algo, "algorithm");
+    Objects.requireNonNull(consumer, "consumer");
+
+    // the postgres driver only honours fetchSize (cursor) outside autocommit
+    dsl.transaction(cfg -> {
+      try (Stream<String> s = cfg.dsl().select(VN_BLOB.HASH)
+        .from(VN_BLOB)
+        .where(VN_BLOB.HASH_ALGORITHM.eq(algo))
+        .fetchSize(10_000)
+        .fetchStream()
+        .map(r -> r.value1())) {
+        s.forEach(consumer);
+      }
+    });
+  }
+
+  /**
+   * Blobs last seen before the cutoff that no version references, in (created_at, hash, algorithm) order,
+   * strictly after the given cursor row (null to start from the beginning).
+   * The walk follows ix_blob_created_at, last_seen is only filtered on: it has no index so touches stay HOT updates.
+   */
+  public List<VnBlobRecord> findUnreferenced(OffsetDateTime seenBefore, VnBlobRecord after, int limit) {
+    Objects.requireNonNull(seenBefore, "seenBefore");
+
+    Condition c = VN_BLOB.LAST_SEEN.lt(seenBefore).andNotExists(referencingVersions());
+    if (after != null) {
+      c = c.and(DSL.row(VN_BLOB.CREATED_AT, VN_BLOB.HASH, VN_BLOB.HASH_ALGORITHM)
+        .gt(after.getCreatedAt(), after.getHash(), after.getHashAlgorithm()));
+    }
+
+    return dsl.selectFrom(VN_BLOB)
+      .where(c)
+      .orderBy(VN_BLOB.CREATED_AT, VN_BLOB.HASH, VN_BLOB.HASH_ALGORITHM)
+      .limit(limit)
+      .fetch();
+  }
+
+  /**
+   * Blobs of one algorithm in hash order, the page after afterHash or from the first blob if afterHash is null.
+   */
+  public List<VnBlobRecord> findPage(String algo, String afterHash, int limit) {
+    Objects.requireNonNull(algo, "algorithm");
+
+    Condition c = VN_BLOB.HASH_ALGORITHM.eq(algo);
+    if (afterHash != null) {
+      c = c.and(VN_BLOB.HASH.gt(afterHash));
+    }
+
+    return dsl.selectFrom(VN_BLOB)
+      .where(c)
+      .orderBy(VN_BLOB.HASH)
+      .limit(limit)
+      .fetch();
+  }
+
+  /**
+   * Delete the blob row only if no version references it (re-checked at delete time).
+   * Used by an ingest to withdraw the row it has just inserted.
+   */
+  public Optional<VnBlobRecord> deleteIfUnreferenced(String hash, String algo) {
+    Objects.requireNonNull(hash, "hash");
+    Objects.requireNonNull(algo, "algorithm");
+
+    return deleteIfUnreferenced(dsl, VN_BLOB.HASH.eq(hash).and(VN_BLOB.HASH_ALGORITHM.eq(algo)));
+  }
+
+  /**
+   * Same as {@link #deleteIfUnreferenced(String, String)} on the given transaction, for a blob not seen
+   * since seenBefore: one an ingest or a declared hash just {@link #touch touched} is kept.
+   * Ingest takes no lock, one that inserts the row again after this delete publishes its own bytes,
+   * so the storage of the deleted row can be released before the transaction commits.
+   */
+  public Optional<VnBlobRecord> deleteIfUnreferenced(DSLContext dsl, String hash, String algo,
+      OffsetDateTime seenBefore) {
+    Objects.requireNonNull(hash, "hash");
+    Objects.requireNonNull(algo, "algorithm");
+    Objects.requireNonNull(seenBefore, "seenBefore");
+
+    return deleteIfUnreferenced(dsl, VN_BLOB.HASH.eq(hash).and(VN_BLOB.HASH_ALGORITHM.eq(algo))
+      .and(VN_BLOB.LAST_SEEN.lt(seenBefore)));
+  }
+
+  private Optional<VnBlobRecord> deleteIfUnreferenced(DSLContext dsl, Condition row) {
+    return Optional.ofNullable(
+      dsl.deleteFrom(VN_BLOB)
+         .where(row)
+         .andNotExists(referencingVersions())
+         .returning()
+         .fetchOne()
+    );
+  }
+
+  // any version that is not rolled back keeps its blob alive, including in-flight ones,
+  // and so does any blob stored as a delta against it
+  private Select<?> referencingVersions() {
+    VnBlob dependent = VN_BLOB.as("dependent");
+    return DSL.selectOne()
+      .from(VN_NODE_VERSION)
+      .where(VN_NODE_VERSION.HASH.eq(VN_BLOB.HASH)
+        .and(VN_NODE_VERSION.HASH_ALGORITHM.eq(VN_BLOB.HASH_ALGORITHM))
+        .and(VN_NODE_VERSION.TRANSACTION_RESULT.isDistinctFrom(TransactionResult.ROLLED_BACK)))
+      .unionAll(DSL.selectOne()
+        .from(dependent)
+        .where(dependent.DELTA_BASE.eq(VN_BLOB.HASH)
+          .and(dependent.HASH_ALGORITHM.eq(VN_BLOB.HASH_ALGORITHM))));
+  }
+
+  private static Condition anyHash(Collection<String> hashes) {
+    return VN_BLOB.HASH.eq(DSL.any(hashes.stream().distinct().toArray(String[]::new)));
+  }
 }
@@ -0,0 +1,118 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.core.store.immutablestore.PackStore.PackLocation;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * Reclaims dead space in sealed pack segments.
+ *
+ * A sealed segment whose live bytes (per vn_blob) fall below minLiveRatio of its size has its
+ * live payloads copied into the active segment, their rows repointed, and is then removed.
+ * A sealed segment with no live bytes at all is removed right away.
+ *
+ * Only segments sealed for at least the grace period and without appends in flight (see {@link PackStore#release})
+ * are considered, a writer may still be between its append and its vn_blob insert. The rows are listed again
+ * right before the removal, a segment that still has rows pointing into it is left for the next pass.
+ *
+ * Runs on its own single thread, so passes never overlap.
+ */
+public class PackCompactor implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private final PackStore packStore;
+	private final ImmutableRepository repo;
+	private final BlobCatalog catalog;
+	private final double minLiveRatio;
+	private final Duration grace;
+	private final ScheduledExecutorService scheduler;
+
+	public PackCompactor(PackStore packStore, ImmutableRepository repo, BlobCatalog catalog, double minLiveRatio,
+			long intervalSeconds, long graceSeconds) {
+		this.packStore = packStore;
+		this.repo = repo;
+		this.catalog = catalog;
+		this.minLiveRatio = minLiveRatio;
+		this.grace = Duration.ofSeconds(graceSeconds);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "vn-pack-compactor");
+			t.setDaemon(true);
+			return t;
+		});
+		if (intervalSeconds > 0) {
+			scheduler.scheduleWithFixedDelay(this::runSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+			LOGGER.info("Pack compaction scheduled every {}s, segments below {} live are rewritten", intervalSeconds,
+					minLiveRatio);
+		}
+	}
+
+	/**
+	 * One compaction pass, returns the number of segments removed.
+	 */
+	public int compact() throws Exception {
+		// segments removed by the previous pass have had a full interval to drain their readers
+		packStore.closeRetired();
+
+		Map<Integer, Long> live = repo.packLiveBytes();
+		int removed = 0;
+
+		for (int segment : packStore.compactableSegments(grace)) {
+			long size = packStore.segmentSize(segment);
+			long liveBytes = live.getOrDefault(segment, 0L);
+
+			if (liveBytes > 0 && liveBytes >= size * minLiveRatio) {
+				continue;
+			}
+
+			List<VnBlobRecord> blobs = repo.findByPackSegment(segment);
+			for (VnBlobRecord br : blobs) {
+				PackLocation loc = packStore.copy(segment, br.getPackOffset(), br.getStoredSize());
+				int updated = repo.updatePackLocation(br, loc.segment(), loc.offset());
+				// cached rows still point at the old location
+				catalog.invalidate(br.getHash(), br.getHashAlgorithm());
+				if (updated == 0) {
+					// the row went away or moved meanwhile, the copy is dead space in the active segment
+					LOGGER.warn("Blob {} changed during compaction of segment {}", br.getHash(), segment);
+				}
+			}
+
+			// anything still pointing into the segment was inserted after the listing above
+			List<VnBlobRecord> left = repo.findByPackSegment(segment);
+			if (!left.isEmpty()) {
+				LOGGER.warn("Pack segment {} kept, {} blobs were added during compaction", segment, left.size());
+				continue;
+			}
+			if (!packStore.remove(segment)) {
+				LOGGER.warn("Pack segment {} kept, an append into it is still in flight", segment);
+				continue;
+			}
+			removed++;
+			LOGGER.info("Compacted pack segment {} ({} live of {} bytes, {} blobs moved)", segment, liveBytes, size,
+					blobs.size());
+		}
+		return removed;
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	private void runSafely() {
+		try {
+			compact();
+		} catch (Throwable e) {
+			LOGGER.error("Pack compaction failed", e);
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.util.FileSync;
+
+/**
+ * Append-only pack segments for small blobs.
+ *
+ * Layout under the store root:
+ *  - Packs/pack-<segment>.pack   concatenated blob payloads, as stored (possibly encoded, see {@link BlobCodec})
+ *
+ * The offset index lives in vn_blob (pack_segment, pack_offset, stored_size), there is no sidecar file.
+ *
+ * Notes:
+ *  - Only the highest numbered segment is appended to, it rolls over once it reaches segmentSize.
+ *  - Appends are synced before returning, so a vn_blob row never points at bytes that may be lost.
+ *    The sync runs outside the segment lock, with a {@link GroupFileSync} concurrent appends share one fsync.
+ *  - Bytes appended by a writer that dies before its vn_blob insert are dead space, reclaimed by {@link PackCompactor}.
+ *  - Every append holds its segment in flight until the caller {@link #release releases} it, once the vn_blob
+ *    row is inserted or dropped. Segments with appends in flight are never compacted or removed.
+ *  - Reads are positioned reads on a per-segment channel that stays open, no open/lookup per blob.
+ */
+public class PackStore implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("pack-(\\d{8})\\.pack");
+
+	public record PackLocation(int segment, long offset, long length) {
+	}
+
+	private final Path packDirectory;
+	private final long maxBlobSize;
+	private final long segmentSize;
+	private final FileSync sync;
+
+	// guarded by this
+	private int activeSegment;
+	private FileChannel writer;
+	private final Map<Integer, Integer> inFlight = new HashMap<>();
+
+	private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+	// channels of removed segments, kept open for readers that resolved their location before the removal
+	private final List<FileChannel> retired = new ArrayList<>();
+
+	public PackStore(Path rootDirectory, long maxBlobSize, long segmentSize) {
+		this(rootDirectory, maxBlobSize, segmentSize, FileSync.IMMEDIATE);
+	}
+
+	public PackStore(Path rootDirectory, long maxBlobSize, long segmentSize, FileSync sync) {
+		if (maxBlobSize > Integer.MAX_VALUE || maxBlobSize > segmentSize) {
+			throw new IllegalArgumentException("Invalid pack sizes maxBlobSize=" + maxBlobSize + " segmentSize=" + segmentSize);
+		}
+		this.packDirectory = rootDirectory.resolve("Packs");
+		this.maxBlobSize = maxBlobSize;
+		this.segmentSize = segmentSize;
+		this.sync = sync;
+		try {
+			Files.createDirectories(packDirectory);
+			List<Integer> existing = segments();
+			this.activeSegment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+			this.writer = openWriter(activeSegment);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open pack directory " + packDirectory, e);
+		}
+		LOGGER.info("Pack store started at {}, blobs <= {} bytes are packed, active segment {}", packDirectory,
+				maxBlobSize, activeSegment);
+	}
+
+	/**
+	 * Whether a blob with this stored size should be PACKED.
+	 */
+	public boolean accepts(long storedSize) {
+		return storedSize <= maxBlobSize;
+	}
+
+	/**
+	 * Append the content of payload to the active segment.
+	 * The segment stays in flight until {@link #release(int)} is called for the returned location,
+	 * the caller must release it once the vn_blob row pointing at it is inserted or dropped.
+	 */
+	public PackLocation append(Path payload) throws IOException {
+		PackLocation loc;
+		try (FileChannel in = FileChannel.open(payload, StandardOpenOption.READ)) {
+			synchronized (this) {
+				loc = append(in, 0, in.size());
+				inFlight.merge(loc.segment(), 1, Integer::sum);
+			}
+		}
+		try {
+			sync.sync(segmentPath(loc.segment()));
+		} catch (IOException | RuntimeException e) {
+			release(loc.segment());
+			throw e;
+		}
+		return loc;
+	}
+
+	/**
+	 * Release an append taken by {@link #append(Path)}.
+	 */
+	public synchronized void release(int segment) {
+		inFlight.computeIfPresent(segment, (s, n) -> n > 1 ? n - 1 : null);
+	}
+
+	/**
+	 * Copy a stored payload into the active segment, used by compaction.
+	 */
+	public PackLocation copy(int segment, long offset, long length) throws IOException {
+		PackLocation loc;
+		synchronized (this) {
+			loc = append(reader(segment), offset, length);
+		}
+		sync.sync(segmentPath(loc.segment()));
+		return loc;
+	}
+
+	/**
+	 * Stream the stored bytes at the given location.
+	 */
+	public InputStream open(int segment, long offset, long length) throws IOException {
+		if (length > maxBlobSize) {
+			throw new IOException("Packed payload too large " + length);
+		}
+		FileChannel ch = reader(segment);
+		ByteBuffer buf = ByteBuffer.allocate((int) length);
+		long pos = offset;
+		while (buf.hasRemaining()) {
+			int n = ch.read(buf, pos);
+			if (n < 0) {
+				throw new IOException("Truncated pack segment " + segment + " at " + pos);
+			}
+			pos += n;
+		}
+		return new ByteArrayInputStream(buf.array());
+	}
+
+	/**
+	 * Segments that are no longer appended to, oldest first.
+	 */
+	public synchronized List<Integer> sealedSegments() throws IOException {
+		List<Integer> sealed = new ArrayList<>(segments());
+		sealed.remove(Integer.valueOf(activeSegment));
+		return sealed;
+	}
+
+	/**
+	 * Sealed segments that may be compacted, oldest first: no append in flight and sealed for at least grace.
+	 * A sealed segment is never written again, so its modification time is when it was sealed.
+	 */
+	public synchronized List<Integer> compactableSegments(Duration grace) throws IOException {
+		Instant cutoff = Instant.now().minus(grace);
+		List<Integer> compactable = new ArrayList<>();
+		for (int segment : sealedSegments()) {
+			if (!inFlight.containsKey(segment)
+					&& Files.getLastModifiedTime(segmentPath(segment)).toInstant().isBefore(cutoff)) {
+				compactable.add(segment);
+			}
+		}
+		return compactable;
+	}
+
+	public long segmentSize(int segment) throws IOException {
+		return Files.size(segmentPath(segment));
+	}
+
+	/**
+	 * Delete a sealed segment once nothing in vn_blob points into it anymore.
+	 * Returns false, leaving the segment in place, if an append into it is still in flight.
+	 */
+	public synchronized boolean remove(int segment) throws IOException {
+		if (segment == activeSegment) {
+			throw new IllegalArgumentException("Cannot remove the active segment " + segment);
+		}
+		if (inFlight.containsKey(segment)) {
+			return false;
+		}
+		FileChannel ch = readers.remove(segment);
+		if (ch != null) {
+			retired.add(ch);
+		}
+		Files.deleteIfExists(segmentPath(segment));
+		LOGGER.info("Removed pack segment {}", segment);
+		return true;
+	}
+
+	/**
+	 * Close the channels of segments removed before the previous call.
+	 */
+	public synchronized void closeRetired() {
+		for (FileChannel ch : retired) {
+			try {
+				ch.close();
+			} catch (IOException ignore) {
+			}
+		}
+		retired.clear();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closeRetired();
+		for (FileChannel ch : readers.values()) {
+			ch.close();
+		}
+		readers.clear();
+		writer.close();
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	// caller holds the monitor and syncs the segment once it is released
+	private PackLocation append(FileChannel in, long from, long length) throws IOException {
+		if (writer.size() > 0 && writer.size() + length > segmentSize) {
+			roll();
+		}
+		long offset = writer.size();
+		long pos = from;
+		long end = from + length;
+		while (pos < end) {
+			long n = writer.transferFrom(in.position(pos), offset + (pos - from), end - pos);
+			if (n <= 0) {
+				throw new IOException("Short transfer into pack segment " + activeSegment);
+			}
+			pos += n;
+		}
+		return new PackLocation(activeSegment, offset, length);
+	}
+
+	private void roll() throws IOException {
+		writer.close();
+		activeSegment++;
+		writer = openWriter(activeSegment);
+		sync.syncDirectory(packDirectory);
+		LOGGER.info("Rolled over to pack segment {}", activeSegment);
+	}
+
+	private FileChannel openWriter(int segment) throws IOException {
+		return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private FileChannel reader(int segment) throws IOException {
+		try {
+			return readers.computeIfAbsent(segment, s -> {
+				try {
+					return FileChannel.open(segmentPath(s), StandardOpenOption.READ);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IOException io) {
+				throw io;
+			}
+			throw e;
+		}
+	}
+
+	private List<Integer> segments() throws IOException {
+		try (Stream<Path> s = Files.list(packDirectory)) {
+			return s.map(p -> SEGMENT_NAME.matcher(p.getFileName().toString()))
+					.filter(Matcher::matches)
+					.map(m -> Integer.valueOf(m.group(1)))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private Path segmentPath(int segment) {
+		return packDirectory.resolve(String.format("pack-%08d.pack", segment));
+	}
+}
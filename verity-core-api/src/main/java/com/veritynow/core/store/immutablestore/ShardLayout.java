@@ -0,0 +1,55 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * How content addressed files are spread over directories: depth levels of width hex characters
+ * taken from the start of the name, e.g. depth 2 width 2 puts abcdef-SHA-256 under ab/cd/.
+ *
+ * Each level fans out to 16^width directories, depth 1 width 2 (256 directories) is the historical layout.
+ */
+public record ShardLayout(int depth, int width) {
+
+	public static final ShardLayout DEFAULT = new ShardLayout(1, 2);
+
+	public ShardLayout {
+		if (depth < 1 || width < 1 || depth * width > 16) {
+			throw new IllegalArgumentException("Invalid shard layout depth=" + depth + " width=" + width);
+		}
+	}
+
+	/**
+	 * Parse "<depth>x<width>", e.g. "2x2".
+	 */
+	public static ShardLayout parse(String spec) {
+		String[] p = spec.trim().toLowerCase().split("x");
+		if (p.length != 2) {
+			throw new IllegalArgumentException("Invalid shard layout " + spec + ", expected <depth>x<width>");
+		}
+		return new ShardLayout(Integer.parseInt(p[0].trim()), Integer.parseInt(p[1].trim()));
+	}
+
+	public Path resolve(Path directory, String name) {
+		Path p = directory;
+		for (int i = 0; i < depth; i++) {
+			p = p.resolve(name.substring(i * width, (i + 1) * width));
+		}
+		return p.resolve(name);
+	}
+
+	// directories at each level are named by exactly width hex characters
+	public Pattern shardPattern() {
+		return Pattern.compile("[0-9a-f]{" + width + "}");
+	}
+
+	// number of leaf directories
+	public long fanOut() {
+		return 1L << (4 * width * depth);
+	}
+
+	@Override
+	public String toString() {
+		return depth + "x" + width;
+	}
+}
@@ -0,0 +1,224 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Hot/cold {@link BlobBackend}: new blobs are published to the hot tier (fast local disk),
+ * {@link BlobTierMover} demotes the ones not read for a while to the cold tier (capacity disk)
+ * and promotes cold blobs that are read again.
+ *
+ * A blob is in exactly one tier at rest, there is no location index: reads try hot then cold.
+ * A move copies first and deletes the source after, so a reader that misses in one tier finds
+ * the blob in the other, and a stream already open on the source keeps working. The mover runs
+ * each move under the hash lock of the blob, a blob the collector deletes is never copied back.
+ */
+public class TieredBlobBackend implements BlobBackend {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	public record TierStats(
+			long hotReads,
+			long coldReads,
+			long promoted,
+			long promotedBytes,
+			long demoted,
+			long demotedBytes,
+			long pendingPromotions,
+			long tracked
+	) {
+	}
+
+	private final BlobBackend hot;
+	private final BlobBackend cold;
+	private final BlobAccessTracker tracker;
+	private final int promoteAfterReads;
+
+	// cold blobs read often enough, moved up by the mover
+	private final Set<String> promotions = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder hotReads = new LongAdder();
+	private final LongAdder coldReads = new LongAdder();
+	private final LongAdder promoted = new LongAdder();
+	private final LongAdder promotedBytes = new LongAdder();
+	private final LongAdder demoted = new LongAdder();
+	private final LongAdder demotedBytes = new LongAdder();
+
+	public TieredBlobBackend(BlobBackend hot, BlobBackend cold, BlobAccessTracker tracker, int promoteAfterReads) {
+		this.hot = hot;
+		this.cold = cold;
+		this.tracker = tracker;
+		this.promoteAfterReads = Math.max(1, promoteAfterReads);
+		LOGGER.info("Tiered blob storage, hot {} cold {}, promoted after {} cold reads", hot, cold, this.promoteAfterReads);
+	}
+
+	@Override
+	public String getName() {
+		return hot.getName() + "+" + cold.getName();
+	}
+
+	@Override
+	public boolean exists(String name) throws IOException {
+		return hot.exists(name) || cold.exists(name);
+	}
+
+	@Override
+	public InputStream open(String name, long offset) throws IOException {
+		int reads = tracker.record(name);
+		try {
+			InputStream in = hot.open(name, offset);
+			hotReads.increment();
+			return in;
+		} catch (NoSuchFileException e) {
+			try {
+				InputStream in = cold.open(name, offset);
+				coldReads.increment();
+				if (reads >= promoteAfterReads) {
+					promotions.add(name);
+				}
+				return in;
+			} catch (NoSuchFileException e2) {
+				// promoted between the two attempts
+				return hot.open(name, offset);
+			}
+		}
+	}
+
+	@Override
+	public InputStream scan(String name) throws IOException {
+		try {
+			return hot.scan(name);
+		} catch (NoSuchFileException e) {
+			try {
+				return cold.scan(name);
+			} catch (NoSuchFileException e2) {
+				return hot.scan(name);
+			}
+		}
+	}
+
+	@Override
+	public Optional<Path> locate(String name) throws IOException {
+		Optional<Path> p = hot.locate(name);
+		if (p.isPresent()) {
+			tracker.record(name);
+			hotReads.increment();
+			return p;
+		}
+		p = cold.locate(name);
+		if (p.isPresent()) {
+			if (tracker.record(name) >= promoteAfterReads) {
+				promotions.add(name);
+			}
+			coldReads.increment();
+		}
+		return p;
+	}
+
+	@Override
+	public void publish(Path staged, String name) throws IOException {
+		hot.publish(staged, name);
+	}
+
+	@Override
+	public boolean publishIfAbsent(Path staged, String name) throws IOException {
+		return !cold.exists(name) && hot.publishIfAbsent(staged, name);
+	}
+
+	@Override
+	public void copyFrom(BlobBackend source, String name) throws IOException {
+		hot.copyFrom(source, name);
+	}
+
+	@Override
+	public boolean delete(String name) throws IOException {
+		boolean h = hot.delete(name);
+		boolean c = cold.delete(name);
+		promotions.remove(name);
+		return h || c;
+	}
+
+	@Override
+	public void forEach(Consumer<BlobEntry> action) throws IOException {
+		hot.forEach(action);
+		cold.forEach(action);
+	}
+
+	/**
+	 * Move a blob from the hot to the cold tier.
+	 */
+	public void demote(BlobEntry e) throws IOException {
+		move(hot, cold, e.name());
+		demoted.increment();
+		demotedBytes.add(e.size());
+	}
+
+	/**
+	 * Names of the cold blobs queued for promotion, taken off the queue.
+	 */
+	public List<String> takePromotions() {
+		List<String> names = new ArrayList<>();
+		for (String name : promotions) {
+			if (promotions.remove(name)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Move a blob from the cold to the hot tier, false if it is not in the cold tier (anymore).
+	 */
+	public boolean promote(String name) throws IOException {
+		Optional<Path> p = cold.locate(name);
+		if (p.isEmpty()) {
+			return false;
+		}
+		long size = Files.size(p.get());
+		move(cold, hot, name);
+		promoted.increment();
+		promotedBytes.add(size);
+		return true;
+	}
+
+	// when the blob was read last, its modification time if not read since start
+	public Instant lastRead(BlobEntry e) {
+		return tracker.lastRead(e.name()).orElse(e.lastModified());
+	}
+
+	public BlobBackend getHot() {
+		return hot;
+	}
+
+	public BlobBackend getCold() {
+		return cold;
+	}
+
+	public TierStats stats() {
+		return new TierStats(hotReads.sum(), coldReads.sum(), promoted.sum(), promotedBytes.sum(), demoted.sum(),
+				demotedBytes.sum(), promotions.size(), tracker.size());
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private void move(BlobBackend from, BlobBackend to, String name) throws IOException {
+		to.copyFrom(from, name);
+		from.delete(name);
+		tracker.reset(name);
+		LOGGER.debug("Moved blob {} from {} to {}", name, from.getName(), to.getName());
+	}
+}
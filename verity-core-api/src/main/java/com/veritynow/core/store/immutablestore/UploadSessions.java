@@ -0,0 +1,478 @@
+package com.veritynow.core.store.immutablestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.veritynow.core.store.HashingService;
+
+/**
+ * Resumable uploads of large blobs: a session is created, its numbered parts are sent in any order, in parallel
+ * and again after a failure, then the session is completed and the assembled content handed to the store
+ * (see {@link ImmutableFSBackingStore#adopt}).
+ *
+ * The content size is given when the session is created, so every part has a known size: partSize bytes,
+ * the last one the rest. Part n is written straight at offset n * partSize of the session file and completing
+ * a session copies nothing. Parts are hashed with a
+ * {@link HashingService.Hasher} as soon as they are contiguous, while the following ones are still arriving;
+ * completing only digests, the content is not read again.
+ *
+ * Notes:
+ *  - Parts are numbered from 0, a part of any other size than its own is rejected. A session completes once
+ *    every part up to the last is in, a missing short last part cannot go unnoticed.
+ *  - A part is kept once it has been received whole, sending it again is a conflict. A part whose upload
+ *    failed half way is simply sent again.
+ *  - Sessions live in memory, a restart drops them and their files.
+ *  - A session not touched for ttl is aborted by the sweeper.
+ */
+public class UploadSessions implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+	// part numbers are below this, it also bounds an upload to MAX_PARTS * maxPartSize bytes
+	public static final int MAX_PARTS = 10000;
+
+	public record UploadStatus(
+			String id,
+			String path,
+			String operation,
+			long partSize,
+			long size,
+			List<Integer> received,
+			int hashedParts,
+			long hashedBytes,
+			int lastPart,
+			long createdAt,
+			long touchedAt
+	) {
+	}
+
+	public record UploadStats(
+			int active,
+			long created,
+			long completed,
+			long aborted,
+			long expired,
+			long partsReceived,
+			long bytesReceived,
+			long ttlSeconds
+	) {
+	}
+
+	/**
+	 * A completed session, content holds the assembled bytes hashing to hash, with the secondary digests of the
+	 * hashing service; the caller owns the file.
+	 */
+	public record Upload(String id, String path, String operation, String name, String mimeType, Path content,
+			String hash, Map<String, String> digests, long size) {
+	}
+
+	private final Path directory;
+	private final HashingService hs;
+	private final long defaultPartSize;
+	private final long minPartSize;
+	private final long maxPartSize;
+	private final int maxSessions;
+	private final Duration ttl;
+	private final ScheduledExecutorService sweeper;
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	private final LongAdder created = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder aborted = new LongAdder();
+	private final LongAdder expired = new LongAdder();
+	private final LongAdder partsReceived = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+
+	public UploadSessions(Path directory, HashingService hs, long defaultPartSize, long minPartSize, long maxPartSize,
+			int maxSessions, Duration ttl, long sweepIntervalSeconds) {
+		if (minPartSize <= 0 || maxPartSize < minPartSize || defaultPartSize < minPartSize
+				|| defaultPartSize > maxPartSize || maxSessions <= 0 || ttl.isNegative() || ttl.isZero()) {
+			throw new IllegalArgumentException("Invalid upload settings partSize=" + defaultPartSize + " minPartSize="
+					+ minPartSize + " maxPartSize=" + maxPartSize + " maxSessions=" + maxSessions + " ttl=" + ttl);
+		}
+		this.directory = directory;
+		this.hs = hs;
+		this.defaultPartSize = defaultPartSize;
+		this.minPartSize = minPartSize;
+		this.maxPartSize = maxPartSize;
+		this.maxSessions = maxSessions;
+		this.ttl = ttl;
+		try {
+			Files.createDirectories(directory);
+			purgeLeftovers();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to prepare upload directory " + directory, e);
+		}
+		this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "vn-upload-sweeper");
+			t.setDaemon(true);
+			return t;
+		});
+		long interval = Math.max(1, Math.min(sweepIntervalSeconds, ttl.toSeconds()));
+		sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.SECONDS);
+		LOGGER.info("Upload sessions under {}, parts of {} bytes by default, abandoned after {}", directory,
+				defaultPartSize, ttl);
+	}
+
+	/**
+	 * Open a session for size bytes of content that will be applied with operation to path once completed,
+	 * partSize 0 for the default one.
+	 */
+	public UploadStatus create(String path, String operation, String name, String mimeType, long partSize, long size)
+			throws IOException {
+		long ps = partSize > 0 ? partSize : defaultPartSize;
+		if (ps < minPartSize || ps > maxPartSize) {
+			throw new IllegalArgumentException("Part size " + ps + " outside [" + minPartSize + ", " + maxPartSize + "]");
+		}
+		if (size <= 0 || (size - 1) / ps >= MAX_PARTS) {
+			throw new IllegalArgumentException("Upload size " + size + " outside [1, " + MAX_PARTS + " parts of " + ps
+					+ "]");
+		}
+		if (sessions.size() >= maxSessions) {
+			throw new IllegalStateException("Too many upload sessions, " + maxSessions + " are open");
+		}
+		String id = UUID.randomUUID().toString();
+		Path file = directory.resolve(id);
+		Files.createFile(file);
+		Session s = new Session(id, path, operation, name, mimeType, ps, size, file, hs.newHasher());
+		sessions.put(id, s);
+		created.increment();
+		LOGGER.debug("Upload session {} opened for {} {}", id, operation, path);
+		return s.status();
+	}
+
+	public Optional<UploadStatus> status(String id) {
+		return Optional.ofNullable(sessions.get(id)).map(Session::status);
+	}
+
+	/**
+	 * Receive one part, it is hashed right away when every part before it has been.
+	 *
+	 * @throws NoSuchElementException   for an unknown (completed, aborted, expired) session
+	 * @throws IllegalArgumentException for a part number past the last part, or a part not of its size
+	 * @throws IllegalStateException    for a part already received or being received
+	 */
+	public UploadStatus putPart(String id, int part, InputStream content) throws IOException {
+		Session s = session(id);
+		if (part < 0 || part >= MAX_PARTS) {
+			throw new IllegalArgumentException("Part number " + part + " outside [0, " + MAX_PARTS + ")");
+		}
+		synchronized (s) {
+			if (s.sealed) {
+				throw new IllegalStateException("Upload " + id + " is being completed");
+			}
+			if (part > s.lastPart) {
+				throw new IllegalArgumentException("Part " + part + " is past the last part " + s.lastPart);
+			}
+			if (s.received.containsKey(part)) {
+				throw new IllegalStateException("Part " + part + " of upload " + id + " already received");
+			}
+			if (!s.writing.add(part)) {
+				throw new IllegalStateException("Part " + part + " of upload " + id + " is being received");
+			}
+		}
+		s.touch();
+		long size;
+		try {
+			size = write(s, part, content);
+		} catch (IOException | RuntimeException e) {
+			s.writing.remove(part);
+			throw e;
+		}
+		synchronized (s) {
+			s.writing.remove(part);
+			if (size != s.partSize(part)) {
+				throw new IllegalArgumentException("Part " + part + " holds " + size + " bytes, not "
+						+ s.partSize(part));
+			}
+			s.received.put(part, size);
+		}
+		s.touch();
+		partsReceived.increment();
+		bytesReceived.add(size);
+		advance(s);
+		return s.status();
+	}
+
+	/**
+	 * Seal a session whose parts are all in, up to the last one, the session ends and the assembled content of the
+	 * size given at creation is handed over. A session with parts missing stays open.
+	 */
+	public Upload complete(String id) throws IOException {
+		Session s = session(id);
+		synchronized (s) {
+			if (s.sealed) {
+				throw new IllegalStateException("Upload " + id + " is being completed");
+			}
+			if (!s.writing.isEmpty()) {
+				throw new IllegalStateException("Upload " + id + " still receives parts " + s.writing);
+			}
+			s.sealed = true;
+		}
+		String hash;
+		Map<String, String> digests;
+		s.hashing.lock();
+		try {
+			// normally a no-op, parts are hashed as they arrive
+			hashContiguous(s);
+			if (s.hashedParts != s.lastPart + 1) {
+				throw new IllegalStateException("Upload " + id + " misses parts " + missing(s));
+			}
+			hash = s.hasher.digest();
+			digests = s.hasher.digests();
+			s.hasher.close();
+		} catch (IOException | RuntimeException e) {
+			s.sealed = false;
+			throw e;
+		} finally {
+			s.hashing.unlock();
+		}
+		if (!sessions.remove(id, s)) {
+			// aborted or expired meanwhile, the file is gone
+			throw new NoSuchElementException("Unknown upload session " + id);
+		}
+		completed.increment();
+		LOGGER.info("Upload {} completed, {} parts, {} bytes hashing to {}", id, s.hashedParts, s.hashedBytes, hash);
+		return new Upload(id, s.path, s.operation, s.name, s.mimeType, s.file, hash, digests, s.hashedBytes);
+	}
+
+	public boolean abort(String id) throws IOException {
+		Session s = sessions.remove(id);
+		if (s == null) {
+			return false;
+		}
+		drop(s);
+		aborted.increment();
+		LOGGER.debug("Upload session {} aborted", id);
+		return true;
+	}
+
+	public UploadStats stats() {
+		return new UploadStats(sessions.size(), created.sum(), completed.sum(), aborted.sum(), expired.sum(),
+				partsReceived.sum(), bytesReceived.sum(), ttl.toSeconds());
+	}
+
+	@Override
+	public void close() {
+		sweeper.shutdownNow();
+		for (String id : List.copyOf(sessions.keySet())) {
+			try {
+				abort(id);
+			} catch (IOException e) {
+				LOGGER.warn("Unable to drop upload session {}", id, e);
+			}
+		}
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private Session session(String id) {
+		Session s = sessions.get(id);
+		if (s == null) {
+			throw new NoSuchElementException("Unknown upload session " + id);
+		}
+		return s;
+	}
+
+	// the first gaps, at most 100 of them
+	private static List<Integer> missing(Session s) {
+		List<Integer> missing = new ArrayList<>();
+		for (int p = 0; p <= s.lastPart && missing.size() < 100; p++) {
+			if (!s.received.containsKey(p)) {
+				missing.add(p);
+			}
+		}
+		return missing;
+	}
+
+	// the part goes straight to its offset, nothing past it is ever written
+	private long write(Session s, int part, InputStream content) throws IOException {
+		long start = part * s.partSize;
+		long end = start + s.partSize(part);
+		long pos = start;
+		byte[] buf = new byte[COPY_BUFFER_SIZE];
+		try (FileChannel ch = FileChannel.open(s.file, StandardOpenOption.WRITE)) {
+			while (pos < end) {
+				int n = content.read(buf, 0, (int) Math.min(buf.length, end - pos));
+				if (n < 0) {
+					break;
+				}
+				ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+				while (bb.hasRemaining()) {
+					pos += ch.write(bb, pos);
+				}
+			}
+		}
+		if (pos == end && content.read() >= 0) {
+			throw new IllegalArgumentException("Part " + part + " is larger than its " + s.partSize(part) + " bytes");
+		}
+		return pos - start;
+	}
+
+	// whoever gets the lock hashes every contiguous part, the others leave it the parts they received
+	private void advance(Session s) throws IOException {
+		while (s.hashable() && s.hashing.tryLock()) {
+			try {
+				hashContiguous(s);
+			} finally {
+				s.hashing.unlock();
+			}
+		}
+	}
+
+	// under s.hashing
+	private void hashContiguous(Session s) throws IOException {
+		if (s.broken != null) {
+			throw new IOException("Upload " + s.id + " cannot be hashed, abort it", s.broken);
+		}
+		Long size;
+		while (!s.dropped && (size = s.received.get(s.hashedParts)) != null) {
+			try (FileChannel ch = FileChannel.open(s.file, StandardOpenOption.READ)) {
+				long pos = s.hashedParts * s.partSize;
+				if (ch.size() < pos + size) {
+					throw new IOException("Upload file " + s.file + " truncated at " + ch.size());
+				}
+				// the part was just written, it is hashed where the page cache holds it
+				s.hasher.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, size));
+			} catch (IOException | RuntimeException e) {
+				// the hasher may hold part of the part, nothing can be hashed after it
+				s.broken = e;
+				throw e;
+			}
+			s.hashedBytes += size;
+			s.hashedParts++;
+		}
+	}
+
+	private void drop(Session s) throws IOException {
+		s.sealed = true;
+		s.hashing.lock();
+		try {
+			s.dropped = true;
+			s.hasher.close();
+		} finally {
+			s.hashing.unlock();
+		}
+		Files.deleteIfExists(s.file);
+	}
+
+	private void sweep() {
+		long cutoff = System.currentTimeMillis() - ttl.toMillis();
+		for (Session s : sessions.values()) {
+			if (s.touchedAt < cutoff && s.writing.isEmpty() && sessions.remove(s.id, s)) {
+				try {
+					drop(s);
+					expired.increment();
+					LOGGER.info("Upload session {} for {} expired after {} idle", s.id, s.path, ttl);
+				} catch (Throwable e) {
+					LOGGER.warn("Unable to drop expired upload session {}", s.id, e);
+				}
+			}
+		}
+	}
+
+	// files of sessions from a previous run, they cannot be resumed
+	private void purgeLeftovers() throws IOException {
+		long n = 0;
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+			for (Path p : ds) {
+				if (Files.isRegularFile(p)) {
+					Files.deleteIfExists(p);
+					n++;
+				}
+			}
+		}
+		if (n > 0) {
+			LOGGER.info("Dropped {} upload files left over under {}", n, directory);
+		}
+	}
+
+	private static final class Session {
+		final String id;
+		final String path;
+		final String operation;
+		final String name;
+		final String mimeType;
+		final long partSize;
+		final long size;
+		// the last part holds the rest, partSize bytes at most
+		final int lastPart;
+		final Path file;
+		final HashingService.Hasher hasher;
+		final long createdAt = System.currentTimeMillis();
+		volatile long touchedAt = createdAt;
+
+		// part -> size, of the parts received whole
+		final Map<Integer, Long> received = new ConcurrentHashMap<>();
+		final Set<Integer> writing = ConcurrentHashMap.newKeySet();
+		// held while feeding parts to the hasher
+		final ReentrantLock hashing = new ReentrantLock();
+		// parts [0, hashedParts) are hashed
+		volatile int hashedParts;
+		volatile long hashedBytes;
+		// no more parts are taken
+		volatile boolean sealed;
+		// aborted or expired, the hasher is closed
+		volatile boolean dropped;
+		volatile Exception broken;
+
+		Session(String id, String path, String operation, String name, String mimeType, long partSize, long size,
+				Path file, HashingService.Hasher hasher) {
+			this.id = id;
+			this.path = path;
+			this.operation = operation;
+			this.name = name;
+			this.mimeType = mimeType;
+			this.partSize = partSize;
+			this.size = size;
+			this.lastPart = (int) ((size - 1) / partSize);
+			this.file = file;
+			this.hasher = hasher;
+		}
+
+		long partSize(int part) {
+			return part < lastPart ? partSize : size - lastPart * partSize;
+		}
+
+		void touch() {
+			touchedAt = System.currentTimeMillis();
+		}
+
+		boolean hashable() {
+			return !dropped && broken == null && received.containsKey(hashedParts);
+		}
+
+		UploadStatus status() {
+			List<Integer> parts = new ArrayList<>(received.keySet());
+			Collections.sort(parts);
+			return new UploadStatus(id, path, operation, partSize, size, parts, hashedParts, hashedBytes, lastPart,
+					createdAt, touchedAt);
+		}
+	}
+}
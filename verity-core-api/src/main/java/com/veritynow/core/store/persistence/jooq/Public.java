@@ -15,7 +15,6 @@ import org.jooq.impl.SchemaImpl;
 import com.veritynow.core.store.persistence.jooq.tables.VnBlob;
 import com.veritynow.core.store.persistence.jooq.tables.VnDirEntry;
 import com.veritynow.core.store.persistence.jooq.tables.VnInode;
-import com.veritynow.core.store.persistence.jooq.tables.VnInodePathSegment;
 import com.veritynow.core.store.persistence.jooq.tables.VnNodeHead;
 import com.veritynow.core.store.persistence.jooq.tables.VnNodeVersion;
 
@@ -48,11 +47,6 @@ public class Public extends SchemaImpl {
      */
     public final VnInode VN_INODE = VnInode.VN_INODE;
 
-    /**
-     * The table <code>public.vn_inode_path_segment</code>.
-     */
-    public final VnInodePathSegment VN_INODE_PATH_SEGMENT = VnInodePathSegment.VN_INODE_PATH_SEGMENT;
-
     /**
      * The table <code>public.vn_node_head</code>.
      */
@@ -82,7 +76,6 @@ public class Public extends SchemaImpl {
             VnBlob.VN_BLOB,
             VnDirEntry.VN_DIR_ENTRY,
             VnInode.VN_INODE,
-            VnInodePathSegment.VN_INODE_PATH_SEGMENT,
             VnNodeHead.VN_NODE_HEAD,
             VnNodeVersion.VN_NODE_VERSION
         );
@@ -5,8 +5,10 @@ package com.veritynow.core.store.persistence.jooq;
 
 
 import org.jooq.Configuration;
+import org.jooq.Field;
 
 import com.veritynow.core.store.persistence.jooq.routines.VnLockInodeAncestorsNowait;
+import com.veritynow.core.store.persistence.jooq.routines.VnResolveOrCreateInode;
 
 
 /**
@@ -27,4 +29,48 @@ public class Routines {
 
         p.execute(configuration);
     }
+
+    /**
+     * Call <code>public.vn_resolve_or_create_inode</code>
+     */
+    public static Long vnResolveOrCreateInode(
+          Configuration configuration
+        , String[] pNames
+        , String[] pScopeKeys
+    ) {
+        VnResolveOrCreateInode f = new VnResolveOrCreateInode();
+        f.setPNames(pNames);
+        f.setPScopeKeys(pScopeKeys);
+
+        f.execute(configuration);
+        return f.getReturnValue();
+    }
+
+    /**
+     * Get <code>public.vn_resolve_or_create_inode</code> as a field.
+     */
+    public static Field<Long> vnResolveOrCreateInode(
+          String[] pNames
+        , String[] pScopeKeys
+    ) {
+        VnResolveOrCreateInode f = new VnResolveOrCreateInode();
+        f.setPNames(pNames);
+        f.setPScopeKeys(pScopeKeys);
+
+        return f.asField();
+    }
+
+    /**
+     * Get <code>public.vn_resolve_or_create_inode</code> as a field.
+     */
+    public static Field<Long> vnResolveOrCreateInode(
+          Field<String[]> pNames
+        , Field<String[]> pScopeKeys
+    ) {
+        VnResolveOrCreateInode f = new VnResolveOrCreateInode();
+        f.setPNames(pNames);
+        f.setPScopeKeys(pScopeKeys);
+
+        return f.asField();
+    }
 }
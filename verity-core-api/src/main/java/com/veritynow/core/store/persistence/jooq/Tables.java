@@ -7,7 +7,6 @@ package com.veritynow.core.store.persistence.jooq;
 import com.veritynow.core.store.persistence.jooq.tables.VnBlob;
 import com.veritynow.core.store.persistence.jooq.tables.VnDirEntry;
 import com.veritynow.core.store.persistence.jooq.tables.VnInode;
-import com.veritynow.core.store.persistence.jooq.tables.VnInodePathSegment;
 import com.veritynow.core.store.persistence.jooq.tables.VnNodeHead;
 import com.veritynow.core.store.persistence.jooq.tables.VnNodeVersion;
 
@@ -33,11 +32,6 @@ public class Tables {
      */
     public static final VnInode VN_INODE = VnInode.VN_INODE;
 
-    /**
-     * The table <code>public.vn_inode_path_segment</code>.
-     */
-    public static final VnInodePathSegment VN_INODE_PATH_SEGMENT = VnInodePathSegment.VN_INODE_PATH_SEGMENT;
-
     /**
      * The table <code>public.vn_node_head</code>.
      */
@@ -4,14 +4,19 @@
 package com.veritynow.core.store.persistence.jooq.tables;
 
 
+import com.veritynow.core.store.persistence.jooq.Indexes;
 import com.veritynow.core.store.persistence.jooq.Keys;
 import com.veritynow.core.store.persistence.jooq.Public;
 import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
 
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.jooq.Condition;
 import org.jooq.Field;
+import org.jooq.Index;
 import org.jooq.Name;
 import org.jooq.PlainSQL;
 import org.jooq.QueryPart;
@@ -74,6 +79,56 @@ public class VnBlob extends TableImpl<VnBlobRecord> {
      */
     public final TableField<VnBlobRecord, String> NAME = createField(DSL.name("name"), SQLDataType.VARCHAR(255), this, "");
 
+    /**
+     * The column <code>public.vn_blob.layout</code>.
+     */
+    public final TableField<VnBlobRecord, String> LAYOUT = createField(DSL.name("layout"), SQLDataType.VARCHAR(32), this, "");
+
+    /**
+     * The column <code>public.vn_blob.codec</code>.
+     */
+    public final TableField<VnBlobRecord, String> CODEC = createField(DSL.name("codec"), SQLDataType.VARCHAR(32), this, "");
+
+    /**
+     * The column <code>public.vn_blob.stored_size</code>.
+     */
+    public final TableField<VnBlobRecord, Long> STORED_SIZE = createField(DSL.name("stored_size"), SQLDataType.BIGINT, this, "");
+
+    /**
+     * The column <code>public.vn_blob.pack_segment</code>.
+     */
+    public final TableField<VnBlobRecord, Integer> PACK_SEGMENT = createField(DSL.name("pack_segment"), SQLDataType.INTEGER, this, "");
+
+    /**
+     * The column <code>public.vn_blob.pack_offset</code>.
+     */
+    public final TableField<VnBlobRecord, Long> PACK_OFFSET = createField(DSL.name("pack_offset"), SQLDataType.BIGINT, this, "");
+
+    /**
+     * The column <code>public.vn_blob.created_at</code>.
+     */
+    public final TableField<VnBlobRecord, OffsetDateTime> CREATED_AT = createField(DSL.name("created_at"), SQLDataType.TIMESTAMPWITHTIMEZONE(6).nullable(false).defaultValue(DSL.field(DSL.raw("now()"), SQLDataType.TIMESTAMPWITHTIMEZONE)), this, "");
+
+    /**
+     * The column <code>public.vn_blob.delta_base</code>.
+     */
+    public final TableField<VnBlobRecord, String> DELTA_BASE = createField(DSL.name("delta_base"), SQLDataType.VARCHAR(255), this, "");
+
+    /**
+     * The column <code>public.vn_blob.delta_depth</code>.
+     */
+    public final TableField<VnBlobRecord, Integer> DELTA_DEPTH = createField(DSL.name("delta_depth"), SQLDataType.INTEGER, this, "");
+
+    /**
+     * The column <code>public.vn_blob.digests</code>.
+     */
+    public final TableField<VnBlobRecord, String[]> DIGESTS = createField(DSL.name("digests"), SQLDataType.CLOB.array(), this, "");
+
+    /**
+     * The column <code>public.vn_blob.last_seen</code>.
+     */
+    public final TableField<VnBlobRecord, OffsetDateTime> LAST_SEEN = createField(DSL.name("last_seen"), SQLDataType.TIMESTAMPWITHTIMEZONE(6).nullable(false).defaultValue(DSL.field(DSL.raw("now()"), SQLDataType.TIMESTAMPWITHTIMEZONE)), this, "");
+
     private VnBlob(Name alias, Table<VnBlobRecord> aliased) {
         this(alias, aliased, (Field<?>[]) null, null);
     }
@@ -108,6 +163,11 @@ public class VnBlob extends TableImpl<VnBlobRecord> {
         return aliased() ? null : Public.PUBLIC;
     }
 
+    @Override
+    public List<Index> getIndexes() {
+        return Arrays.asList(Indexes.IX_BLOB_CREATED_AT, Indexes.IX_BLOB_DELTA_BASE, Indexes.IX_BLOB_PACK_SEGMENT);
+    }
+
     @Override
     public UniqueKey<VnBlobRecord> getPrimaryKey() {
         return Keys.VN_BLOB_PKEY;
@@ -8,7 +8,6 @@ import com.veritynow.core.store.persistence.jooq.Indexes;
 import com.veritynow.core.store.persistence.jooq.Keys;
 import com.veritynow.core.store.persistence.jooq.Public;
 import com.veritynow.core.store.persistence.jooq.tables.VnInode.VnInodePath;
-import com.veritynow.core.store.persistence.jooq.tables.VnInodePathSegment.VnInodePathSegmentPath;
 import com.veritynow.core.store.persistence.jooq.tables.records.VnDirEntryRecord;
 
 import java.time.OffsetDateTime;
@@ -204,19 +203,6 @@ public class VnDirEntry extends TableImpl<VnDirEntryRecord> {
         return _vnDirEntryParentIdFk;
     }
 
-    private transient VnInodePathSegmentPath _vnInodePathSegment;
-
-    /**
-     * Get the implicit to-many join path to the
-     * <code>public.vn_inode_path_segment</code> table
-     */
-    public VnInodePathSegmentPath vnInodePathSegment() {
-        if (_vnInodePathSegment == null)
-            _vnInodePathSegment = new VnInodePathSegmentPath(this, null, Keys.VN_INODE_PATH_SEGMENT__VN_INODE_PATH_SEGMENT_DIR_ENTRY_ID_FK.getInverseKey());
-
-        return _vnInodePathSegment;
-    }
-
     @Override
     public VnDirEntry as(String alias) {
         return new VnDirEntry(DSL.name(alias), this);
@@ -8,7 +8,6 @@ import com.veritynow.core.store.persistence.jooq.Indexes;
 import com.veritynow.core.store.persistence.jooq.Keys;
 import com.veritynow.core.store.persistence.jooq.Public;
 import com.veritynow.core.store.persistence.jooq.tables.VnDirEntry.VnDirEntryPath;
-import com.veritynow.core.store.persistence.jooq.tables.VnInodePathSegment.VnInodePathSegmentPath;
 import com.veritynow.core.store.persistence.jooq.tables.VnNodeHead.VnNodeHeadPath;
 import com.veritynow.core.store.persistence.jooq.tables.VnNodeVersion.VnNodeVersionPath;
 import com.veritynow.core.store.persistence.jooq.tables.records.VnInodeRecord;
@@ -81,6 +80,11 @@ public class VnInode extends TableImpl<VnInodeRecord> {
      */
     public final TableField<VnInodeRecord, Ltree> SCOPE_KEY = createField(DSL.name("scope_key"), DefaultDataType.getDefaultDataType("\"public\".\"ltree\""), this, "", new LtreeBinding());
 
+    /**
+     * The column <code>public.vn_inode.path</code>.
+     */
+    public final TableField<VnInodeRecord, String> PATH = createField(DSL.name("path"), SQLDataType.CLOB.nullable(false), this, "");
+
     private VnInode(Name alias, Table<VnInodeRecord> aliased) {
         this(alias, aliased, (Field<?>[]) null, null);
     }
@@ -150,7 +154,7 @@ public class VnInode extends TableImpl<VnInodeRecord> {
 
     @Override
     public List<Index> getIndexes() {
-        return Arrays.asList(Indexes.IX_VN_INODE_SCOPE_KEY_GIST);
+        return Arrays.asList(Indexes.IX_VN_INODE_PATH, Indexes.IX_VN_INODE_SCOPE_KEY_GIST);
     }
 
     @Override
@@ -196,19 +200,6 @@ public class VnInode extends TableImpl<VnInodeRecord> {
         return _vnDirEntryParentIdFk;
     }
 
-    private transient VnInodePathSegmentPath _vnInodePathSegment;
-
-    /**
-     * Get the implicit to-many join path to the
-     * <code>public.vn_inode_path_segment</code> table
-     */
-    public VnInodePathSegmentPath vnInodePathSegment() {
-        if (_vnInodePathSegment == null)
-            _vnInodePathSegment = new VnInodePathSegmentPath(this, null, Keys.VN_INODE_PATH_SEGMENT__VN_INODE_PATH_SEGMENT_INODE_ID_FK.getInverseKey());
-
-        return _vnInodePathSegment;
-    }
-
     private transient VnNodeHeadPath _vnNodeHead;
 
     /**
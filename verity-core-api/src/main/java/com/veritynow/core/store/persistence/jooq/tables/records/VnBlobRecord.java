@@ -6,6 +6,8 @@ package com.veritynow.core.store.persistence.jooq.tables.records;
 
 import com.veritynow.core.store.persistence.jooq.tables.VnBlob;
 
+import java.time.OffsetDateTime;
+
 import org.jooq.Record2;
 import org.jooq.impl.UpdatableRecordImpl;
 
@@ -88,6 +90,146 @@ public class VnBlobRecord extends UpdatableRecordImpl<VnBlobRecord> {
         return (String) get(4);
     }
 
+    /**
+     * Setter for <code>public.vn_blob.layout</code>.
+     */
+    public void setLayout(String value) {
+        set(5, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.layout</code>.
+     */
+    public String getLayout() {
+        return (String) get(5);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.codec</code>.
+     */
+    public void setCodec(String value) {
+        set(6, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.codec</code>.
+     */
+    public String getCodec() {
+        return (String) get(6);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.stored_size</code>.
+     */
+    public void setStoredSize(Long value) {
+        set(7, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.stored_size</code>.
+     */
+    public Long getStoredSize() {
+        return (Long) get(7);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.pack_segment</code>.
+     */
+    public void setPackSegment(Integer value) {
+        set(8, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.pack_segment</code>.
+     */
+    public Integer getPackSegment() {
+        return (Integer) get(8);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.pack_offset</code>.
+     */
+    public void setPackOffset(Long value) {
+        set(9, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.pack_offset</code>.
+     */
+    public Long getPackOffset() {
+        return (Long) get(9);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.created_at</code>.
+     */
+    public void setCreatedAt(OffsetDateTime value) {
+        set(10, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.created_at</code>.
+     */
+    public OffsetDateTime getCreatedAt() {
+        return (OffsetDateTime) get(10);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.delta_base</code>.
+     */
+    public void setDeltaBase(String value) {
+        set(11, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.delta_base</code>.
+     */
+    public String getDeltaBase() {
+        return (String) get(11);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.delta_depth</code>.
+     */
+    public void setDeltaDepth(Integer value) {
+        set(12, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.delta_depth</code>.
+     */
+    public Integer getDeltaDepth() {
+        return (Integer) get(12);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.last_seen</code>.
+     */
+    public void setLastSeen(OffsetDateTime value) {
+        set(14, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.last_seen</code>.
+     */
+    public OffsetDateTime getLastSeen() {
+        return (OffsetDateTime) get(14);
+    }
+
+    /**
+     * Setter for <code>public.vn_blob.digests</code>.
+     */
+    public void setDigests(String[] value) {
+        set(13, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_blob.digests</code>.
+     */
+    public String[] getDigests() {
+        return (String[]) get(13);
+    }
+
     // -------------------------------------------------------------------------
     // Primary key information
     // -------------------------------------------------------------------------
@@ -111,7 +253,7 @@ public class VnBlobRecord extends UpdatableRecordImpl<VnBlobRecord> {
     /**
      * Create a detached, initialised VnBlobRecord
      */
-    public VnBlobRecord(String hash, String hashAlgorithm, Long size, String mimeType, String name) {
+    public VnBlobRecord(String hash, String hashAlgorithm, Long size, String mimeType, String name, String layout, String codec, Long storedSize, Integer packSegment, Long packOffset, OffsetDateTime createdAt, String deltaBase, Integer deltaDepth, String[] digests, OffsetDateTime lastSeen) {
         super(VnBlob.VN_BLOB);
 
         setHash(hash);
@@ -119,6 +261,16 @@ public class VnBlobRecord extends UpdatableRecordImpl<VnBlobRecord> {
         setSize(size);
         setMimeType(mimeType);
         setName(name);
+        setLayout(layout);
+        setCodec(codec);
+        setStoredSize(storedSize);
+        setPackSegment(packSegment);
+        setPackOffset(packOffset);
+        setCreatedAt(createdAt);
+        setDeltaBase(deltaBase);
+        setDeltaDepth(deltaDepth);
+        setDigests(digests);
+        setLastSeen(lastSeen);
         resetTouchedOnNotNull();
     }
 }
@@ -63,6 +63,20 @@ public class VnInodeRecord extends UpdatableRecordImpl<VnInodeRecord> {
         return (Ltree) get(2);
     }
 
+    /**
+     * Setter for <code>public.vn_inode.path</code>.
+     */
+    public void setPath(String value) {
+        set(3, value);
+    }
+
+    /**
+     * Getter for <code>public.vn_inode.path</code>.
+     */
+    public String getPath() {
+        return (String) get(3);
+    }
+
     // -------------------------------------------------------------------------
     // Primary key information
     // -------------------------------------------------------------------------
@@ -86,12 +100,13 @@ public class VnInodeRecord extends UpdatableRecordImpl<VnInodeRecord> {
     /**
      * Create a detached, initialised VnInodeRecord
      */
-    public VnInodeRecord(OffsetDateTime createdAt, Long id, Ltree scopeKey) {
+    public VnInodeRecord(OffsetDateTime createdAt, Long id, Ltree scopeKey, String path) {
         super(VnInode.VN_INODE);
 
         setCreatedAt(createdAt);
         setId(id);
         setScopeKey(scopeKey);
+        setPath(path);
         resetTouchedOnNotNull();
     }
 }
@@ -2,6 +2,9 @@ package com.veritynow.core.store.spring;
 
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 
 import javax.sql.DataSource;
 
@@ -12,6 +15,7 @@ import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,9 +26,29 @@ import com.veritynow.core.store.HashingService;
 import com.veritynow.core.store.ImmutableStore;
 import com.veritynow.core.store.TransactionAndLockingAware;
 import com.veritynow.core.store.base.DefaultHashingService;
+import com.veritynow.core.store.base.DefaultHashingService.Xxh3Backend;
 import com.veritynow.core.store.base.PK;
+import com.veritynow.core.store.immutablestore.BlobAccessTracker;
+import com.veritynow.core.store.immutablestore.BlobBackend;
+import com.veritynow.core.store.immutablestore.BlobBloomFilter;
+import com.veritynow.core.store.immutablestore.BlobCatalog;
+import com.veritynow.core.store.immutablestore.BlobCollector;
+import com.veritynow.core.store.immutablestore.BlobCompressor;
+import com.veritynow.core.store.immutablestore.BlobDeltaEncoder;
+import com.veritynow.core.store.immutablestore.BlobScrubber;
+import com.veritynow.core.store.immutablestore.BlobShardMigrator;
+import com.veritynow.core.store.immutablestore.BlobTierMover;
+import com.veritynow.core.store.immutablestore.ChunkStore;
+import com.veritynow.core.store.immutablestore.FastCdcChunker;
+import com.veritynow.core.store.immutablestore.FileSystemBlobBackend;
+import com.veritynow.core.store.immutablestore.GroupFileSync;
 import com.veritynow.core.store.immutablestore.ImmutableFSBackingStore;
 import com.veritynow.core.store.immutablestore.ImmutableRepository;
+import com.veritynow.core.store.immutablestore.PackCompactor;
+import com.veritynow.core.store.immutablestore.PackStore;
+import com.veritynow.core.store.immutablestore.ShardLayout;
+import com.veritynow.core.store.immutablestore.TieredBlobBackend;
+import com.veritynow.core.store.immutablestore.UploadSessions;
 import com.veritynow.core.store.lock.LockingService;
 import com.veritynow.core.store.lock.postgres.PgLockingService;
 import com.veritynow.core.store.meta.BlobMeta;
@@ -39,6 +63,7 @@ import com.veritynow.core.store.versionstore.DBVersionStore;
 import com.veritynow.core.store.versionstore.repo.InodeRepository;
 import com.veritynow.core.store.versionstore.repo.RepositoryManager;
 import com.veritynow.core.store.versionstore.repo.VersionMetaRepository;
+import com.veritynow.util.FileSync;
 
 @Configuration
 public class VersionStoreConfig {
@@ -52,14 +77,32 @@ public class VersionStoreConfig {
 	
 	
 	@Bean 
-	HashingService hashingService(@Value("${verity.store.hash.algo:SHA-1}") String algo) throws NoSuchAlgorithmException {
-		return new DefaultHashingService(algo);
+	HashingService hashingService(@Value("${verity.store.hash.algo:SHA-1}") String algo,
+			@Value("${verity.store.hash.pool-size:0}") int poolSize,
+			@Value("${verity.store.hash.chunk-size:131072}") int chunkSize,
+			@Value("${verity.store.hash.xxh3-backend:auto}") String xxh3Backend,
+			@Value("${verity.store.hash.tree.parallelism:0}") int treeParallelism,
+			@Value("${verity.store.hash.digests:}") List<String> digests) throws NoSuchAlgorithmException {
+		return new DefaultHashingService(algo, poolSize, chunkSize, Xxh3Backend.of(xxh3Backend), treeParallelism,
+				digests);
 	}
 	
 	@Bean ImmutableRepository immutableRepository(DSLContext dsl) {
 		return new ImmutableRepository(dsl);
 	}
 	
+	// Read side cache of vn_blob rows, the bloom filter is only safe with a single writing node
+	@Bean
+	BlobCatalog blobCatalog(
+			ImmutableRepository repo, HashingService hs,
+			@Value("${verity.immutable.blobs.catalog.capacity:100000}") int capacity,
+			@Value("${verity.immutable.blobs.catalog.bloom.expected-blobs:0}") long expectedBlobs,
+			@Value("${verity.immutable.blobs.catalog.bloom.fpp:0.01}") double fpp
+	) {
+		BlobBloomFilter bloom = expectedBlobs > 0 ? new BlobBloomFilter(expectedBlobs, fpp) : null;
+		return new BlobCatalog(repo, capacity, bloom, hs.getAlgorithm());
+	}
+	
 	@Bean 
 	TransactionFinalizer transactionFinalizer() {
 		return new JooqTransactionFinalizer();
@@ -83,14 +126,207 @@ public class VersionStoreConfig {
 		return new ContextAwareTransactionManager(txnService);
 	}
 	
+	// Durable writes: blob, chunk and pack files are fsynced before their vn_blob row is committed,
+	// batched across concurrent writers
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.durable.enabled", havingValue = "true")
+	GroupFileSync groupFileSync(
+			@Value("${verity.immutable.blobs.durable.sync-threads:2}") int threads,
+			@Value("${verity.immutable.blobs.durable.max-batch:256}") int maxBatch,
+			@Value("${verity.immutable.blobs.durable.max-delay-micros:0}") long maxDelayMicros
+	) {
+		return new GroupFileSync(threads, maxBatch, maxDelayMicros);
+	}
+	
+	// Content-defined chunking of large blobs, chunks live next to the blobs under the same root
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.chunking.enabled", havingValue = "true")
+	ChunkStore chunkStore(
+			@Value("${verity.immutable.blobs.fs-root:./data}") String rootDir,
+			@Value("${verity.store.hash.algo:SHA-1}") String algo,
+			@Value("${verity.immutable.blobs.chunking.min-blob-size:1048576}") long minBlobSize,
+			@Value("${verity.immutable.blobs.chunking.min-chunk-size:16384}") int minChunkSize,
+			@Value("${verity.immutable.blobs.chunking.avg-chunk-size:65536}") int avgChunkSize,
+			@Value("${verity.immutable.blobs.chunking.max-chunk-size:262144}") int maxChunkSize,
+			@Value("${verity.store.hash.xxh3-backend:auto}") String xxh3Backend,
+			HashingService hs,
+			Optional<GroupFileSync> fsync
+	) throws NoSuchAlgorithmException {
+		Path root = Path.of(rootDir).toAbsolutePath().normalize();
+		// chunk names need no secondary digests, they are not worth computing for every chunk
+		HashingService chunkHasher = hs.getDigestAlgorithms().isEmpty() ? hs
+				: new DefaultHashingService(algo, 0, DefaultHashingService.DEFAULT_CHUNK_SIZE, Xxh3Backend.of(xxh3Backend));
+		return new ChunkStore(root, chunkHasher, new FastCdcChunker(minChunkSize, avgChunkSize, maxChunkSize), minBlobSize,
+				fsync.<FileSync>map(f -> f).orElse(FileSync.NONE));
+	}
+	
+	// Transparent deflate of compressible RAW blobs, the hash stays on the uncompressed bytes
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.compression.enabled", havingValue = "true")
+	BlobCompressor blobCompressor(
+			@Value("${verity.immutable.blobs.compression.level:6}") int level,
+			@Value("${verity.immutable.blobs.compression.max-ratio:0.9}") double maxRatio,
+			@Value("${verity.immutable.blobs.compression.min-size:512}") long minSize
+	) {
+		return new BlobCompressor(level, maxRatio, minSize);
+	}
+	
+	// Updated versions of a path stored as a delta against the previous version, the hash stays on the full bytes
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.delta.enabled", havingValue = "true")
+	BlobDeltaEncoder blobDeltaEncoder(
+			@Value("${verity.immutable.blobs.delta.max-chain:16}") int maxChain,
+			@Value("${verity.immutable.blobs.delta.max-size:1048576}") long maxSize,
+			@Value("${verity.immutable.blobs.delta.max-ratio:0.5}") double maxRatio
+	) {
+		return new BlobDeltaEncoder(maxChain, maxSize, maxRatio);
+	}
+	
+	// Append-only pack segments for small blobs, instead of one file per blob
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.pack.enabled", havingValue = "true")
+	PackStore packStore(
+			@Value("${verity.immutable.blobs.fs-root:./data}") String rootDir,
+			@Value("${verity.immutable.blobs.pack.max-blob-size:65536}") long maxBlobSize,
+			@Value("${verity.immutable.blobs.pack.segment-size:268435456}") long segmentSize,
+			Optional<GroupFileSync> fsync
+	) {
+		Path root = Path.of(rootDir).toAbsolutePath().normalize();
+		// appends were always forced, durable mode only batches the fsyncs
+		return new PackStore(root, maxBlobSize, segmentSize, fsync.<FileSync>map(f -> f).orElse(FileSync.IMMEDIATE));
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.pack.enabled", havingValue = "true")
+	PackCompactor packCompactor(
+			PackStore packStore, ImmutableRepository repo, BlobCatalog catalog,
+			@Value("${verity.immutable.blobs.pack.compaction.min-live-ratio:0.5}") double minLiveRatio,
+			@Value("${verity.immutable.blobs.pack.compaction.interval-seconds:600}") long intervalSeconds,
+			@Value("${verity.immutable.blobs.pack.compaction.grace-seconds:300}") long graceSeconds
+	) {
+		return new PackCompactor(packStore, repo, catalog, minLiveRatio, intervalSeconds, graceSeconds);
+	}
+	
+	// Hot/cold tiering of RAW blob files, the hot tier is the Blobs directory under fs-root
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.tier.enabled", havingValue = "true")
+	TieredBlobBackend tieredBlobBackend(
+			@Value("${verity.immutable.blobs.fs-root:./data}") String rootDir,
+			@Value("${verity.immutable.blobs.tier.cold-root}") String coldDir,
+			@Value("${verity.immutable.blobs.tier.promote-after-reads:2}") int promoteAfterReads,
+			@Value("${verity.immutable.blobs.tier.tracker-capacity:100000}") int trackerCapacity,
+			@Value("${verity.immutable.blobs.shard.layout:1x2}") String layout,
+			@Value("${verity.immutable.blobs.shard.previous-layout:}") String previousLayout,
+			Optional<GroupFileSync> fsync
+	) {
+		Path hot = Path.of(rootDir).toAbsolutePath().normalize().resolve("Blobs");
+		Path cold = Path.of(coldDir).toAbsolutePath().normalize();
+		FileSync sync = fsync.<FileSync>map(f -> f).orElse(FileSync.NONE);
+		ShardLayout current = ShardLayout.parse(layout);
+		ShardLayout previous = previousLayout.isBlank() ? null : ShardLayout.parse(previousLayout);
+		return new TieredBlobBackend(new FileSystemBlobBackend("hot", hot, current, previous, sync),
+				new FileSystemBlobBackend("cold", cold, current, previous, sync),
+				new BlobAccessTracker(trackerCapacity), promoteAfterReads);
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name = "verity.immutable.blobs.tier.enabled", havingValue = "true")
+	BlobTierMover blobTierMover(
+			TieredBlobBackend tiers,
+			ImmutableRepository repo,
+			HashingService hs,
+			@Value("${verity.immutable.blobs.tier.demote-after-days:30}") long demoteAfterDays,
+			@Value("${verity.immutable.blobs.tier.max-bytes-per-pass:10737418240}") long maxBytesPerPass,
+			@Value("${verity.immutable.blobs.tier.max-blobs-per-pass:100000}") int maxBlobsPerPass,
+			@Value("${verity.immutable.blobs.tier.interval-seconds:3600}") long intervalSeconds
+	) {
+		return new BlobTierMover(tiers, repo, hs.getAlgorithm(), Duration.ofDays(demoteAfterDays), maxBytesPerPass,
+				maxBlobsPerPass, intervalSeconds);
+	}
+	
 	// Root directory for filesystem blobs, configurable via application.properties/yaml
     @Bean
-    public ImmutableStore<String, BlobMeta, BlobMeta> immutableBackingStore(
+    public ImmutableFSBackingStore immutableBackingStore(
             @Value("${verity.immutable.blobs.fs-root:./data}") String rootDir,
-            HashingService hs, ImmutableRepository repo
+            HashingService hs, ImmutableRepository repo, Optional<ChunkStore> chunkStore,
+            Optional<BlobCompressor> compressor, Optional<PackStore> packStore, BlobCatalog catalog,
+            Optional<TieredBlobBackend> tiers, Optional<GroupFileSync> fsync, Optional<BlobDeltaEncoder> deltaEncoder,
+            @Value("${verity.immutable.blobs.bulk.parallelism:0}") int bulkParallelism,
+            @Value("${verity.immutable.blobs.bulk.batch-size:256}") int bulkBatchSize,
+            @Value("${verity.immutable.blobs.shard.layout:1x2}") String layout,
+            @Value("${verity.immutable.blobs.shard.previous-layout:}") String previousLayout
     ) {
         Path root = Path.of(rootDir).toAbsolutePath().normalize();
-        return new ImmutableFSBackingStore(root, repo, hs);
+        BlobBackend blobs = tiers.<BlobBackend>map(t -> t).orElseGet(() -> new FileSystemBlobBackend("local",
+        		root.resolve("Blobs"), ShardLayout.parse(layout),
+        		previousLayout.isBlank() ? null : ShardLayout.parse(previousLayout),
+        		fsync.<FileSync>map(f -> f).orElse(FileSync.NONE)));
+        return new ImmutableFSBackingStore(root, repo, hs, chunkStore.orElse(null), compressor.orElse(null),
+        		packStore.orElse(null), catalog, blobs, bulkParallelism, bulkBatchSize, deltaEncoder.orElse(null));
+    }
+    
+    // Resumable chunked uploads, parts are staged and hashed under fs-root/Uploads until the session completes
+    @Bean
+    UploadSessions uploadSessions(
+    		@Value("${verity.immutable.blobs.fs-root:./data}") String rootDir,
+    		HashingService hs,
+    		@Value("${verity.immutable.blobs.upload.part-size:67108864}") long partSize,
+    		@Value("${verity.immutable.blobs.upload.min-part-size:1048576}") long minPartSize,
+    		@Value("${verity.immutable.blobs.upload.max-part-size:536870912}") long maxPartSize,
+    		@Value("${verity.immutable.blobs.upload.max-sessions:1000}") int maxSessions,
+    		@Value("${verity.immutable.blobs.upload.ttl-seconds:86400}") long ttlSeconds,
+    		@Value("${verity.immutable.blobs.upload.sweep-interval-seconds:600}") long sweepIntervalSeconds
+    ) {
+    	Path root = Path.of(rootDir).toAbsolutePath().normalize();
+    	return new UploadSessions(root.resolve("Uploads"), hs, partSize, minPartSize, maxPartSize, maxSessions,
+    			Duration.ofSeconds(ttlSeconds), sweepIntervalSeconds);
+    }
+    
+    // Moves blobs from the previous shard layout to the current one, only while a previous layout is configured
+    @Bean
+    @ConditionalOnProperty(name = "verity.immutable.blobs.shard.previous-layout")
+    BlobShardMigrator blobShardMigrator(
+    		ImmutableFSBackingStore store,
+    		@Value("${verity.immutable.blobs.shard.migration.parallelism:4}") int parallelism,
+    		@Value("${verity.immutable.blobs.shard.migration.on-start:false}") boolean onStart
+    ) {
+    	BlobShardMigrator migrator = new BlobShardMigrator(store.getBlobBackend(), parallelism);
+    	if (onStart) {
+    		migrator.start();
+    	}
+    	return migrator;
+    }
+    
+    // Re-reads and re-hashes every stored blob in the background, quarantining the ones that no longer match
+    @Bean
+    @ConditionalOnProperty(name = "verity.immutable.blobs.scrub.enabled", havingValue = "true")
+    BlobScrubber blobScrubber(
+    		@Value("${verity.immutable.blobs.fs-root:./data}") String rootDir,
+    		ImmutableFSBackingStore store, ImmutableRepository repo, HashingService hs,
+    		@Value("${verity.immutable.blobs.scrub.parallelism:2}") int parallelism,
+    		@Value("${verity.immutable.blobs.scrub.batch-size:500}") int batchSize,
+    		@Value("${verity.immutable.blobs.scrub.max-bytes-per-second:52428800}") long bytesPerSecond,
+    		@Value("${verity.immutable.blobs.scrub.interval-seconds:86400}") long intervalSeconds
+    ) {
+    	Path root = Path.of(rootDir).toAbsolutePath().normalize();
+    	return new BlobScrubber(store, repo, hs, root.resolve("Scrub"), parallelism, batchSize, bytesPerSecond,
+    			intervalSeconds);
+    }
+    
+    // Incremental collection of blobs no version references, off by default since it deletes content
+    @Bean
+    @ConditionalOnProperty(name = "verity.immutable.blobs.gc.enabled", havingValue = "true")
+    BlobCollector blobCollector(
+    		ImmutableFSBackingStore store, ImmutableRepository repo, BlobCatalog catalog,
+    		@Value("${verity.immutable.blobs.gc.grace-seconds:86400}") long graceSeconds,
+    		@Value("${verity.immutable.blobs.gc.collided-retention-days:30}") long collidedRetentionDays,
+    		@Value("${verity.immutable.blobs.gc.batch-size:100}") int batchSize,
+    		@Value("${verity.immutable.blobs.gc.batch-pause-ms:200}") long batchPauseMillis,
+    		@Value("${verity.immutable.blobs.gc.max-per-pass:10000}") int maxPerPass,
+    		@Value("${verity.immutable.blobs.gc.interval-seconds:3600}") long intervalSeconds
+    ) {
+    	return new BlobCollector(store, repo, catalog, Duration.ofSeconds(graceSeconds),
+    			Duration.ofDays(collidedRetentionDays), batchSize, batchPauseMillis, maxPerPass, intervalSeconds);
     }
     
     @Bean
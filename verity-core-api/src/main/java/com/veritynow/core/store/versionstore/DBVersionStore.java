@@ -5,9 +5,14 @@ import static com.veritynow.core.store.txn.TransactionResult.IN_FLIGHT;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.logging.log4j.LogManager;
@@ -170,6 +175,31 @@ public class DBVersionStore extends AbstractStore<PK, BlobMeta, VersionMeta> imp
         }
     }
 	
+	@Override
+    public Optional<InputStream> getContent(PK key, long offset, long length) throws IOException {
+    	Objects.requireNonNull(key, "key");
+    	Objects.requireNonNull(key.hash(), "hash");
+    	try {
+    		return backingStore.read(key.hash(), offset, length);
+        } catch (IOException e) {
+        	 LOGGER.error("Unable to retrieve content range hash={} offset={} length={}", key.hash(), offset, length, e);
+        	 throw new IOException("Unable to retrieve content range hash=" + key.hash(), e);
+        }
+    }
+	
+	@Override
+    public Optional<Path> getContentPath(PK key) throws IOException {
+    	Objects.requireNonNull(key, "key");
+    	Objects.requireNonNull(key.hash(), "hash");
+    	return backingStore.locate(key.hash());
+    }
+	
+	@Override
+	public Set<String> findExistingContent(Collection<String> hashes) throws IOException {
+		Objects.requireNonNull(hashes, "hashes");
+		return backingStore.existing(hashes);
+	}
+
 	@Override
 	public Optional<BlobMeta> getContentMeta(PK key) throws IOException {
 		Objects.requireNonNull(key, "key");
@@ -182,6 +212,48 @@ public class DBVersionStore extends AbstractStore<PK, BlobMeta, VersionMeta> imp
         }
 	}
 
+	@Override
+	public Map<String, BlobMeta> getContentMetas(Collection<String> hashes) throws IOException {
+		Objects.requireNonNull(hashes, "hashes");
+		try {
+			return backingStore.getMetas(hashes);
+		} catch (IOException e) {
+			LOGGER.error("Unable to retrieve content meta of {} hashes", hashes.size(), e);
+			throw new IOException("Unable to retrieve content meta of " + hashes.size() + " hashes", e);
+		}
+	}
+
+	@Override
+	public Optional<BlobMeta> putContent(BlobMeta meta, InputStream content) throws IOException {
+		Objects.requireNonNull(content, "content");
+		return backingStore.save(meta, content);
+	}
+
+	@Override
+	public Optional<BlobMeta> putContent(BlobMeta meta, Path content, String hash) throws IOException {
+		return putContent(meta, content, hash, Map.of());
+	}
+
+	@Override
+	public Optional<BlobMeta> putContent(BlobMeta meta, Path content, String hash, Map<String, String> digests)
+			throws IOException {
+		Objects.requireNonNull(content, "content");
+		Objects.requireNonNull(hash, "hash");
+		return backingStore.adopt(meta, content, hash, digests);
+	}
+
+	@Override
+	public Optional<BlobMeta> getContentMetaByDigest(String algorithm, String digest) throws IOException {
+		Objects.requireNonNull(algorithm, "algorithm");
+		Objects.requireNonNull(digest, "digest");
+		try {
+			return backingStore.getMetaByDigest(algorithm, digest);
+		} catch (IOException e) {
+			LOGGER.error("Unable to retrieve content meta {}={}", algorithm, digest, e);
+			throw new IOException("Unable to retrieve content meta " + algorithm + "=" + digest, e);
+		}
+	}
+
     @Override
     public boolean exists(PK key) throws IOException {
         Objects.requireNonNull(key, "key");
@@ -220,6 +292,45 @@ public class DBVersionStore extends AbstractStore<PK, BlobMeta, VersionMeta> imp
         return createNewVersion(key, meta, content, StoreOperation.Created, id);
 	}
 
+    // ----------------------------
+ 	// CREATE - same as create, the content is a blob the store already holds, given by key.hash
+ 	//
+    @Override
+    public Optional<VersionMeta> createFromContent(PK key, String id) throws IOException {
+    	Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(key.path(), "path");
+        Objects.requireNonNull(key.hash(), "hash");
+
+        Optional<BlobMeta> blobMeta = backingStore.touch(key.hash());
+        if (blobMeta.isEmpty()) {
+        	LOGGER.warn("Cannot create {} from unknown content {}", key.path(), key.hash());
+        	return Optional.empty();
+        }
+        String path = PathUtils.normalizePath(key.path()) + "/"
+        		+ ((id != null && !id.isBlank()) ? id : UUID.randomUUID().toString());
+        return Optional.of(persistAndPublish(path, blobMeta.get(), StoreOperation.Created));
+    }
+
+    @Override
+    public Optional<VersionMeta> updateFromContent(PK key) throws IOException {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(key.path(), "key.path");
+        Objects.requireNonNull(key.hash(), "key.hash");
+
+        String path = PathUtils.normalizePath(key.path());
+        Optional<VersionMeta> opt = getLatestVersion(PK.path(path));
+        if (opt.isEmpty() || isDeleted(opt.get())) {
+        	LOGGER.warn("Cannot update a non-exisitent or deleted path {}", path);
+        	return Optional.empty();
+        }
+        Optional<BlobMeta> blobMeta = backingStore.touch(key.hash());
+        if (blobMeta.isEmpty()) {
+        	LOGGER.warn("Cannot update {} from unknown content {}", path, key.hash());
+        	return Optional.empty();
+        }
+        return Optional.of(persistAndPublish(path, blobMeta.get(), StoreOperation.Updated));
+    }
+
 	@Override
     public Optional<VersionMeta> update(PK key, InputStream content) throws IOException {
         Objects.requireNonNull(key, "key");
@@ -240,6 +351,28 @@ public class DBVersionStore extends AbstractStore<PK, BlobMeta, VersionMeta> imp
         return appendVersion(content, StoreOperation.Updated, mx, key);
     }
 
+    // latest versions of all paths in one query, then the content of all of them in one backing store call
+    @Override
+    public List<InputStream> bulkRead(List<PK> keys) throws IOException {
+        Objects.requireNonNull(keys, "keys");
+        List<String> paths = new ArrayList<>(keys.size());
+        for (PK key : keys) {
+            Objects.requireNonNull(key.path(), "key.path");
+            paths.add(PathUtils.normalizePath(key.path()));
+        }
+        Map<String, VersionMeta> latest = repositoryManager.getLatestVersions(paths);
+        List<String> hashes = new ArrayList<>(keys.size());
+        for (String path : paths) {
+            VersionMeta vm = latest.get(path);
+            if (vm != null && !isDeleted(vm)) {
+                hashes.add(vm.hash());
+            } else {
+                LOGGER.warn("No readable version of blob exists at path {}", path);
+            }
+        }
+        return backingStore.bulkRead(hashes);
+    }
+
     @Override
     public Optional<InputStream> read(PK key) throws IOException {
         Objects.requireNonNull(key, "key");
@@ -403,7 +536,8 @@ public class DBVersionStore extends AbstractStore<PK, BlobMeta, VersionMeta> imp
 
         switch (operation) {
             case Updated:
-                blobMeta = backingStore.save(current.name(), current.mimeType() , content).orElseThrow();
+                // the previous version is handed over as a delta base, the store decides whether to use it
+                blobMeta = backingStore.save(current.name(), current.mimeType() , content, current.hash()).orElseThrow();
                 break;
             case Deleted:
             case Undeleted:
@@ -3,12 +3,13 @@ package com.veritynow.core.store.versionstore.model;
 import java.time.Instant;
 
 
-public record Inode(Long id, Instant createdAt,String scopeKey )
+// path is the materialized path of the inode, "/" for the root
+public record Inode(Long id, Instant createdAt, String scopeKey, String path)
 
 {
 
-	public Inode(String childScopeKey) {
-		this(null, null, childScopeKey);
+	public Inode(String childScopeKey, String path) {
+		this(null, null, childScopeKey, path);
 	} 
 
     
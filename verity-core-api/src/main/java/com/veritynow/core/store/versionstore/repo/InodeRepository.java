@@ -2,35 +2,30 @@ package com.veritynow.core.store.versionstore.repo;
 
 import static com.veritynow.core.store.persistence.jooq.Tables.VN_DIR_ENTRY;
 import static com.veritynow.core.store.persistence.jooq.Tables.VN_INODE;
-import static com.veritynow.core.store.persistence.jooq.Tables.VN_INODE_PATH_SEGMENT;
 import static org.jooq.impl.DSL.condition;
 
 import java.sql.Connection;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Param;
 import org.jooq.Record;
 import org.jooq.Record1;
-import org.jooq.Result;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 import org.jooq.postgres.extensions.types.Ltree;
 
 import com.veritynow.core.context.Context;
+import com.veritynow.core.store.persistence.jooq.Routines;
 import com.veritynow.core.store.persistence.jooq.tables.VnInode;
 import com.veritynow.core.store.persistence.jooq.tables.records.VnInodeRecord;
 import com.veritynow.core.store.txn.TransactionContext;
 import com.veritynow.core.store.versionstore.PathUtils;
 import com.veritynow.core.store.versionstore.model.DirEntry;
 import com.veritynow.core.store.versionstore.model.Inode;
-import com.veritynow.core.store.versionstore.model.InodePathSegment;
 
 /**
  * jOOQ-only replacement for the JPA.
@@ -39,7 +34,6 @@ import com.veritynow.core.store.versionstore.model.InodePathSegment;
 public final class InodeRepository {
 
     private final DSLContext defaultDSL;
-    private static final Logger LOGGER = LogManager.getLogger();
     
     public InodeRepository(DSLContext dsl) {
         this.defaultDSL = dsl;
@@ -136,7 +130,8 @@ public final class InodeRepository {
         VnInodeRecord inserted = dsl
             .insertInto(VN_INODE)
             .set(VN_INODE.SCOPE_KEY, scope)
-            .returning(VN_INODE.ID, VN_INODE.CREATED_AT, VN_INODE.SCOPE_KEY)
+            .set(VN_INODE.PATH, Objects.requireNonNull(entity.path(), "entity.path"))
+            .returning(VN_INODE.ID, VN_INODE.CREATED_AT, VN_INODE.SCOPE_KEY, VN_INODE.PATH)
             .fetchOneInto(VnInodeRecord.class);
 
         if (inserted == null || inserted.getId() == null) {
@@ -170,62 +165,6 @@ public final class InodeRepository {
     );
     }
 
-    public List<InodePathSegment> findAllByInodeIdOrderByOrdAsc(Long inodeId) {
-        Objects.requireNonNull(inodeId, "inodeId");
-
-        DSLContext dsl = ensureDSL();
-        
-        var I = VN_INODE.as("i"); // owning inode of the segment
-        var P = VN_INODE.as("p"); // parent inode for dir entry
-        var C = VN_INODE.as("c"); // child inode for dir entry
-
-        Result<Record> rows = dsl
-            .select(VN_INODE_PATH_SEGMENT.fields())
-            .select(VN_DIR_ENTRY.fields())
-            .select(I.fields())
-            .select(P.fields())
-            .select(C.fields())
-            .from(VN_INODE_PATH_SEGMENT)
-            .join(VN_DIR_ENTRY).on(VN_DIR_ENTRY.ID.eq(VN_INODE_PATH_SEGMENT.DIR_ENTRY_ID))
-            .join(I).on(I.ID.eq(VN_INODE_PATH_SEGMENT.INODE_ID))
-            .join(P).on(P.ID.eq(VN_DIR_ENTRY.PARENT_ID))
-            .join(C).on(C.ID.eq(VN_DIR_ENTRY.CHILD_ID))
-            .where(VN_INODE_PATH_SEGMENT.INODE_ID.eq(inodeId))
-            .orderBy(VN_INODE_PATH_SEGMENT.ORD.asc())
-            .fetch();
-
-        List<InodePathSegment> out = new ArrayList<>(rows.size());
-        for (Record r : rows) {
-            out.add(toInodePathSegment(r, I, P, C));
-        }
-        return out;
-    }
-
-    public List<InodePathSegment> saveAll(Iterable<InodePathSegment> entities) {
-        Objects.requireNonNull(entities, "entities");
-
-        DSLContext dsl = ensureDSL();
-        
-        List<InodePathSegment> list = new ArrayList<>();
-        for (InodePathSegment e : entities) {
-            Objects.requireNonNull(e, "entity");
-            Objects.requireNonNull(e.inode(), "entity.inode");
-            Objects.requireNonNull(e.inode().id(), "entity.inode.id");
-            Objects.requireNonNull(e.dirEntry(), "entity.dirEntry");
-            Objects.requireNonNull(e.dirEntry().id(), "entity.dirEntry.id");
-
-            dsl.insertInto(VN_INODE_PATH_SEGMENT)
-                .set(VN_INODE_PATH_SEGMENT.INODE_ID, e.inode().id())
-                .set(VN_INODE_PATH_SEGMENT.ORD, e.ord())
-                .set(VN_INODE_PATH_SEGMENT.DIR_ENTRY_ID, e.dirEntry().id())
-                .execute();
-
-            list.add(e);
-        }
-
-        return list;
-    }
-
     public Optional<DirEntry> findByParentIdAndName(Long parentInodeId, String name) {
         Objects.requireNonNull(parentInodeId, "parentInodeId");
         Objects.requireNonNull(name, "name");
@@ -308,8 +247,8 @@ public final class InodeRepository {
         String pScope = r.get(P.SCOPE_KEY) == null ? null : r.get(P.SCOPE_KEY).toString();
         String cScope = r.get(C.SCOPE_KEY) == null ? null : r.get(C.SCOPE_KEY).toString();
 
-        Inode parent = new Inode(r.get(P.ID), r.get(P.CREATED_AT).toInstant(), pScope);
-        Inode child  = new Inode(r.get(C.ID), r.get(C.CREATED_AT).toInstant(), cScope);
+        Inode parent = new Inode(r.get(P.ID), r.get(P.CREATED_AT).toInstant(), pScope, r.get(P.PATH));
+        Inode child  = new Inode(r.get(C.ID), r.get(C.CREATED_AT).toInstant(), cScope, r.get(C.PATH));
 
         return new DirEntry(
             r.get(VN_DIR_ENTRY.ID),
@@ -324,39 +263,6 @@ public final class InodeRepository {
     
 
     
-    private InodePathSegment toInodePathSegment(
-        Record r,
-        VnInode I,
-        VnInode P,
-        VnInode C
-    ) {
-
-     	
-        String iScope = r.get(I.SCOPE_KEY) == null ? null : r.get(I.SCOPE_KEY).toString();
-        String pScope = r.get(P.SCOPE_KEY) == null ? null : r.get(P.SCOPE_KEY).toString();
-        String cScope = r.get(C.SCOPE_KEY) == null ? null : r.get(C.SCOPE_KEY).toString();
-
-        Inode inode = new Inode(r.get(I.ID), r.get(I.CREATED_AT).toInstant(), iScope);
-        Inode parent = new Inode(r.get(P.ID), r.get(P.CREATED_AT).toInstant(), pScope);
-        Inode child  = new Inode(r.get(C.ID), r.get(C.CREATED_AT).toInstant(), cScope);
-
-        DirEntry dirEntry = new DirEntry(
-            r.get(VN_DIR_ENTRY.ID),
-            r.get(VN_DIR_ENTRY.NAME),
-            parent,
-            child,
-            r.get(VN_DIR_ENTRY.CREATED_AT).toInstant()
-        );
-
-        return new InodePathSegment(
-            r.get(VN_INODE_PATH_SEGMENT.ID),
-            inode,
-            r.get(VN_INODE_PATH_SEGMENT.ORD),
-            dirEntry,
-            r.get(VN_INODE_PATH_SEGMENT.CREATED_AT).toInstant()
-        );
-    }
-    
     public Inode rootInode() {
   	  Long rootId = findIdByScopeKey(PathKeyCodec.ROOT_LABEL)
   	      .orElseThrow(() -> new IllegalStateException("Root inode missing for scope_key=" + PathKeyCodec.ROOT_LABEL));
@@ -368,138 +274,50 @@ public final class InodeRepository {
        
         DSLContext dsl = ensureDSL();
 
-        boolean exists = dsl.fetchExists(
-            dsl.selectOne()
-               .from(VN_INODE)
-               .where(VN_INODE.SCOPE_KEY.eq(Ltree.ltree(PathKeyCodec.ROOT_LABEL)))
-        );
-
-        if (!exists) {
-            dsl.insertInto(VN_INODE)
-               .set(VN_INODE.SCOPE_KEY, Ltree.ltree(PathKeyCodec.ROOT_LABEL))
-               .execute();
-        }
+        // a concurrent creator of the root wins, this one is a no-op
+        dsl.insertInto(VN_INODE)
+           .set(VN_INODE.SCOPE_KEY, Ltree.ltree(PathKeyCodec.ROOT_LABEL))
+           .set(VN_INODE.PATH, "/")
+           .onConflict(VN_INODE.SCOPE_KEY)
+           .doNothing()
+           .execute();
     }
     
     
+    /**
+     * Inode of the path, created along with whatever else of the path is missing, root included.
+     *
+     * One round trip whatever the depth: public.vn_resolve_or_create_inode creates the missing inodes,
+     * with their materialized path, and dir entries with one ON CONFLICT DO NOTHING insert each, so concurrent creators
+     * of overlapping paths converge on the same inodes without locks or retries.
+     * The created_at of the inode is not read back.
+     */
     public Inode resolveOrCreateInode(String nodePath) {
-    Objects.requireNonNull(nodePath, "nodePath");
-
-    // Normalize for consistent semantics (callers sometimes pass trailing slash, etc.)
-    nodePath = PathUtils.normalizePath(nodePath);
-
-    // Ensure the root exists (scope_key = ROOT_LABEL)
-    ensureRootInode();
+        Objects.requireNonNull(nodePath, "nodePath");
 
-    List<String> segs = PathUtils.splitSegments(nodePath);
-    Inode root = rootInode();
+        // Normalize for consistent semantics (callers sometimes pass trailing slash, etc.)
+        nodePath = PathUtils.normalizePath(nodePath);
+        String[] names = PathUtils.splitSegments(nodePath).toArray(String[]::new);
 
-    // Fast path: root
-    if (segs.isEmpty()) {
-        return root;
-    }
-
-    // Compute the full scope key for the target path, and keep prefix scope keys so we can
-    // map the nearest existing inode back to a segment index.
-    String curScope = root.scopeKey();
-    List<String> prefixScopeKeys = new ArrayList<>(segs.size());
-    for (String seg : segs) {
-        curScope = PathKeyCodec.appendSegLabel(curScope, PathKeyCodec.label(seg));
-        prefixScopeKeys.add(curScope);
-    }
-    String targetScopeKey = prefixScopeKeys.get(prefixScopeKeys.size() - 1);
-
-    // Find the deepest existing ancestor (or self) by scope_key.
-    // If none is found, fall back to root (should not happen if root exists).
-    Inode cur = root;
-    List<InodePathSegment> curSegs = List.of();
-
-    Optional<Long> nearestIdOpt = findNearestExistingInodeIdByScopeKey(targetScopeKey);
-    if (nearestIdOpt.isPresent()) {
-        Inode nearest = findById(nearestIdOpt.get()).orElse(root);
-        cur = nearest;
-
-        // Determine how many segments are already present in this nearest inode.
-        // This lets us avoid re-walking/reading the graph for the prefix we already have.
-        int existingDepth = 0;
-        String nearestScope = nearest.scopeKey();
-
-        if (nearestScope != null && nearestScope.equals(root.scopeKey())) {
-            existingDepth = 0;
-        } else {
-            int idx = prefixScopeKeys.indexOf(nearestScope);
-            existingDepth = (idx >= 0) ? (idx + 1) : 0;
+        // the scope key of the root, then of the path down to each segment
+        String[] scopeKeys = new String[names.length + 1];
+        scopeKeys[0] = PathKeyCodec.ROOT_LABEL;
+        for (int i = 0; i < names.length; i++) {
+            scopeKeys[i + 1] = PathKeyCodec.appendSegLabel(scopeKeys[i], PathKeyCodec.label(names[i]));
         }
 
-        // Materialized path segments for the current inode; reused/extended as we create new nodes.
-        curSegs = (cur.id() != null) ? findAllByInodeIdOrderByOrdAsc(cur.id()) : List.of();
-
-        // Create remaining suffix starting from the nearest existing depth.
-        for (int i = existingDepth; i < segs.size(); i++) {
-            String seg = segs.get(i);
-
-            // If the child edge already exists under this inode, follow it.
-            Optional<DirEntry> e = findByParentIdAndName(cur.id(), seg);
-            if (e.isPresent()) {
-                cur = e.get().child();
-                curSegs = findAllByInodeIdOrderByOrdAsc(cur.id());
-                continue;
-            }
-
-            String childScopeKey = prefixScopeKeys.get(i);
-            Inode child = save(new Inode(childScopeKey));
-
-            DirEntry entry = save(new DirEntry(cur, seg, child));
-
-            // Build the child's materialized path segments by copying the parent's segments
-            // and appending the new edge at the next ordinal.
-            List<InodePathSegment> childSegs = new ArrayList<>(curSegs.size() + 1);
-            for (InodePathSegment ps : curSegs) {
-                childSegs.add(new InodePathSegment(child, ps.ord(), ps.dirEntry()));
-            }
-            childSegs.add(new InodePathSegment(child, curSegs.size(), entry));
-            saveAll(childSegs);
-
-            cur = child;
-            curSegs = childSegs;
+        Long id = ensureDSL()
+            .select(Routines.vnResolveOrCreateInode(names, scopeKeys))
+            .fetchOne(0, Long.class);
+        if (id == null) {
+            throw new IllegalStateException("vn_resolve_or_create_inode did not return an id for " + nodePath);
         }
-
-        return cur;
+        return new Inode(id, null, scopeKeys[names.length], nodePath);
     }
 
-    // Conservative fallback: old behavior (walk from root via dir entries).
-    // This should be rare if scope_key is kept coherent.
-    LOGGER.error("Scope key is not coherent");
-    cur = root;
-    for (String seg : segs) {
-        Optional<DirEntry> e = findByParentIdAndName(cur.id(), seg);
-        if (e.isPresent()) {
-            cur = e.get().child();
-            continue;
-        }
-
-        String childScopeKey = PathKeyCodec.appendSegLabel(cur.scopeKey(), PathKeyCodec.label(seg));
-        Inode child = save(new Inode(childScopeKey));
-        DirEntry entry = save(new DirEntry(cur, seg, child));
-
-        List<InodePathSegment> parentSegs = findAllByInodeIdOrderByOrdAsc(cur.id());
-        List<InodePathSegment> childSegs = new ArrayList<>(parentSegs.size() + 1);
-        for (InodePathSegment ps : parentSegs) {
-            childSegs.add(new InodePathSegment(child, ps.ord(), ps.dirEntry()));
-        }
-        childSegs.add(new InodePathSegment(child, parentSegs.size(), entry));
-        saveAll(childSegs);
-
-        cur = child;
-    }
-    return cur;
-}
- 
-  
-    
    private static Inode toInode(VnInodeRecord r) {
         
         String scopeKey = r.getScopeKey() == null ? null : r.getScopeKey().toString();
-        return new Inode(r.getId(), r.getCreatedAt().toInstant(), scopeKey);
+        return new Inode(r.getId(), r.getCreatedAt().toInstant(), scopeKey, r.getPath());
     }
 }
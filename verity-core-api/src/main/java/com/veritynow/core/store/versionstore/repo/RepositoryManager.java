@@ -1,7 +1,9 @@
 package com.veritynow.core.store.versionstore.repo;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -64,6 +66,14 @@ public class RepositoryManager {
         return verRepo.findLatestVersionByInodeId(inodeId, nodePath);
     }
 
+    /**
+     * Latest version of each path in one query, keyed by normalized path; unknown paths are absent.
+     */
+    public Map<String, VersionMeta> getLatestVersions(Collection<String> nodePaths) {
+        Objects.requireNonNull(nodePaths, "nodePaths");
+        return verRepo.findLatestVersionsByPaths(nodePaths.stream().map(PathUtils::normalizePath).toList());
+    }
+
     public boolean pathExists(String path) {
         Objects.requireNonNull(path, "path");
         return inodeRepo.pathExists(path);
@@ -1,8 +1,6 @@
 package com.veritynow.core.store.versionstore.repo;
 
-import static com.veritynow.core.store.persistence.jooq.Tables.VN_DIR_ENTRY;
 import static com.veritynow.core.store.persistence.jooq.Tables.VN_INODE;
-import static com.veritynow.core.store.persistence.jooq.Tables.VN_INODE_PATH_SEGMENT;
 import static com.veritynow.core.store.persistence.jooq.Tables.VN_NODE_HEAD;
 import static com.veritynow.core.store.persistence.jooq.Tables.VN_NODE_VERSION;
 import static org.jooq.impl.DSL.condition;
@@ -31,7 +29,6 @@ import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.InsertSetMoreStep;
 import org.jooq.Record;
-import org.jooq.Record2;
 import org.jooq.SQLDialect;
 import org.jooq.Table;
 import org.jooq.impl.DSL;
@@ -472,6 +469,32 @@ public final class VersionMetaRepository {
 
 		return mapHeadRecords(rows);
 	}
+
+	/**
+	 * Latest versions of many paths in one statement: vn_inode.path = ANY(?) joined to vn_node_head.
+	 * Keyed by path, paths without an inode or a head are absent.
+	 */
+	public Map<String, VersionMeta> findLatestVersionsByPaths(Collection<String> paths) {
+		Objects.requireNonNull(paths, "paths");
+
+		if (paths.isEmpty())
+			return Map.of();
+		DSLContext dsl = ensureDSL();
+
+		List<Record> rows = dsl.select(VN_NODE_VERSION.fields()).select(VN_INODE.PATH)
+				.from(VN_INODE)
+				.join(VN_NODE_HEAD).on(VN_NODE_HEAD.INODE_ID.eq(VN_INODE.ID))
+				.join(VN_NODE_VERSION).on(VN_NODE_VERSION.ID.eq(VN_NODE_HEAD.VERSION_ID))
+				.where(VN_INODE.PATH.eq(DSL.any(paths.stream().distinct().toArray(String[]::new))))
+				.fetch();
+
+		Map<String, VersionMeta> out = new HashMap<>(rows.size() * 2);
+		for (Record r : rows) {
+			String path = r.get(VN_INODE.PATH);
+			out.put(path, fromHeadVersiontoVersionMeta(r, path));
+		}
+		return out;
+	}
 	
 	// -------------------------
 	// New: ltree-powered traversal via scope_key
@@ -512,47 +535,23 @@ public final class VersionMetaRepository {
      *
      * IMPORTANT: This assumes a single-path model (no hardlinks / multiple parents).
      *
-     * Derivation strategy:
-     *  - vn_inode_path_segment provides the ordered list of segments (ORD ASC)
-     *  - vn_dir_entry.name is the human-readable segment for each step
-     *
-     * For the root inode (no segments), returns "/".
+     * The path is vn_inode.path, written when the inode is created ("/" for the root),
+     * so this is a single column read by primary key.
      *
      * PERF: For queries that return many versions (or many inodes), always use the
      * batch form to avoid N+1 path reconstruction queries.
      */
-    @SuppressWarnings("unused")
 	private Map<Long, String> materializePaths(Collection<Long> inodeIds) {
         Objects.requireNonNull(inodeIds, "inodeIds");
         if (inodeIds.isEmpty()) return Map.of();
 
         DSLContext dsl = ensureDSL();
 
-        List<Record2<Long, String>> rows = dsl
-            .select(VN_INODE_PATH_SEGMENT.INODE_ID, VN_DIR_ENTRY.NAME)
-            .from(VN_INODE_PATH_SEGMENT)
-            .join(VN_DIR_ENTRY).on(VN_DIR_ENTRY.ID.eq(VN_INODE_PATH_SEGMENT.DIR_ENTRY_ID))
-            .where(VN_INODE_PATH_SEGMENT.INODE_ID.in(inodeIds))
-            .orderBy(VN_INODE_PATH_SEGMENT.INODE_ID.asc(), VN_INODE_PATH_SEGMENT.ORD.asc())
-            .fetch();
-
-        Map<Long, List<String>> segsByInode = new HashMap<>();
-        for (Record2<Long, String> row : rows) {
-            Long inodeId = row.value1();
-            String name = row.value2();
-            segsByInode.computeIfAbsent(inodeId, _k -> new ArrayList<>()).add(name);
-        }
-
-        Map<Long, String> out = new HashMap<>();
-        for (Long inodeId : inodeIds) {
-            List<String> segs = segsByInode.get(inodeId);
-            if (segs == null || segs.isEmpty()) {
-                out.put(inodeId, "/");
-            } else {
-                out.put(inodeId, "/" + String.join("/", segs));
-            }
-        }
-        return out;
+        return dsl
+            .select(VN_INODE.ID, VN_INODE.PATH)
+            .from(VN_INODE)
+            .where(VN_INODE.ID.in(inodeIds))
+            .fetchMap(VN_INODE.ID, VN_INODE.PATH);
     }
 
     private String materializePath(Long inodeId) {
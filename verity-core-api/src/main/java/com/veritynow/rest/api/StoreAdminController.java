@@ -0,0 +1,266 @@
+package com.veritynow.rest.api;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.veritynow.core.store.immutablestore.BlobCatalog;
+import com.veritynow.core.store.immutablestore.BlobCatalog.CatalogStats;
+import com.veritynow.core.store.immutablestore.BlobCollector;
+import com.veritynow.core.store.immutablestore.BlobCollector.CollectorStats;
+import com.veritynow.core.store.immutablestore.BlobDeltaEncoder;
+import com.veritynow.core.store.immutablestore.BlobDeltaEncoder.DeltaStats;
+import com.veritynow.core.store.immutablestore.BlobScrubber;
+import com.veritynow.core.store.immutablestore.BlobScrubber.QuarantineEntry;
+import com.veritynow.core.store.immutablestore.BlobScrubber.ScrubStats;
+import com.veritynow.core.store.immutablestore.BlobShardMigrator;
+import com.veritynow.core.store.immutablestore.BlobShardMigrator.MigrationStats;
+import com.veritynow.core.store.immutablestore.ChunkStore;
+import com.veritynow.core.store.immutablestore.DedupReport;
+import com.veritynow.core.store.immutablestore.GroupFileSync;
+import com.veritynow.core.store.immutablestore.GroupFileSync.SyncStats;
+import com.veritynow.core.store.immutablestore.TieredBlobBackend;
+import com.veritynow.core.store.immutablestore.TieredBlobBackend.TierStats;
+import com.veritynow.core.store.immutablestore.UploadSessions;
+import com.veritynow.core.store.immutablestore.UploadSessions.UploadStats;
+
+@RestController
+public class StoreAdminController {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private final Optional<ChunkStore> chunkStore;
+	private final BlobCatalog catalog;
+	private final Optional<BlobCollector> collector;
+	private final Optional<TieredBlobBackend> tiers;
+	private final Optional<GroupFileSync> fsync;
+	private final Optional<BlobShardMigrator> migrator;
+	private final Optional<BlobScrubber> scrubber;
+	private final Optional<BlobDeltaEncoder> deltaEncoder;
+	private final UploadSessions uploads;
+
+	public StoreAdminController(Optional<ChunkStore> chunkStore, BlobCatalog catalog, Optional<BlobCollector> collector,
+			Optional<TieredBlobBackend> tiers, Optional<GroupFileSync> fsync, Optional<BlobShardMigrator> migrator,
+			Optional<BlobScrubber> scrubber, Optional<BlobDeltaEncoder> deltaEncoder, UploadSessions uploads) {
+		this.chunkStore = chunkStore;
+		this.catalog = catalog;
+		this.collector = collector;
+		this.tiers = tiers;
+		this.fsync = fsync;
+		this.migrator = migrator;
+		this.scrubber = scrubber;
+		this.deltaEncoder = deltaEncoder;
+		this.uploads = uploads;
+	}
+
+	/**
+	 * How much delta encoding of successive versions saves.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link DeltaStats}.</li>
+	 *   <li><b>404</b> if delta encoding is disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/delta")
+	public ResponseEntity<DeltaStats> getDeltaStats() {
+		return deltaEncoder.map(d -> ResponseEntity.ok(d.stats())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Progress and findings of the integrity scrub.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link ScrubStats}.</li>
+	 *   <li><b>404</b> if scrubbing is disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/scrub")
+	public ResponseEntity<ScrubStats> getScrubStats() {
+		return scrubber.map(s -> ResponseEntity.ok(s.stats())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Blobs that failed their scrub, oldest finding first.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link QuarantineEntry} list.</li>
+	 *   <li><b>404</b> if scrubbing is disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/scrub/quarantine")
+	public ResponseEntity<List<QuarantineEntry>> getQuarantine() {
+		return scrubber.map(s -> ResponseEntity.ok(s.quarantined())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Hold the scrub until resumed, reads in progress stop at their next buffer.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link ScrubStats}.</li>
+	 *   <li><b>404</b> if scrubbing is disabled.</li>
+	 * </ul>
+	 */
+	@PostMapping("/api/admin/blobs/scrub/pause")
+	public ResponseEntity<ScrubStats> pauseScrub() {
+		return scrubber.map(s -> {
+			s.pause();
+			return ResponseEntity.ok(s.stats());
+		}).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Continue a paused scrub where it stopped.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link ScrubStats}.</li>
+	 *   <li><b>404</b> if scrubbing is disabled.</li>
+	 * </ul>
+	 */
+	@PostMapping("/api/admin/blobs/scrub/resume")
+	public ResponseEntity<ScrubStats> resumeScrub() {
+		return scrubber.map(s -> {
+			s.resume();
+			return ResponseEntity.ok(s.stats());
+		}).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Progress of the blob re-shard.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link MigrationStats}.</li>
+	 *   <li><b>404</b> if no previous shard layout is configured.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/reshard")
+	public ResponseEntity<MigrationStats> getReshardStats() {
+		return migrator.map(m -> ResponseEntity.ok(m.stats())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Start moving blobs from the previous shard layout to the current one, in the background.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>202</b> with the {@link MigrationStats} once started.</li>
+	 *   <li><b>409</b> if a run is already in progress.</li>
+	 *   <li><b>404</b> if no previous shard layout is configured.</li>
+	 * </ul>
+	 */
+	@PostMapping("/api/admin/blobs/reshard")
+	public ResponseEntity<MigrationStats> reshard() {
+		if (migrator.isEmpty()) {
+			return ResponseEntity.notFound().build();
+		}
+		BlobShardMigrator m = migrator.get();
+		return ResponseEntity.status(m.start() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).body(m.stats());
+	}
+
+	/**
+	 * Batch size and fsync latency of durable writes.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link SyncStats}, latencies in microseconds.</li>
+	 *   <li><b>404</b> if durable writes are disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/fsync")
+	public ResponseEntity<SyncStats> getFsyncStats() {
+		return fsync.map(f -> ResponseEntity.ok(f.stats())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Read and move counters of hot/cold blob tiering.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link TierStats}.</li>
+	 *   <li><b>404</b> if tiering is disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/tiers")
+	public ResponseEntity<TierStats> getTierStats() {
+		return tiers.map(t -> ResponseEntity.ok(t.stats())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Counters of the blob garbage collector.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link CollectorStats}.</li>
+	 *   <li><b>404</b> if blob collection is disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/gc")
+	public ResponseEntity<CollectorStats> getCollectorStats() {
+		return collector.map(c -> ResponseEntity.ok(c.stats())).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * Run a collection pass now and wait for it, candidates still inside their grace period are not deleted.
+	 */
+	@PostMapping("/api/admin/blobs/gc")
+	public ResponseEntity<CollectorStats> collect() {
+		if (collector.isEmpty())
+			return ResponseEntity.notFound().build();
+		try {
+			collector.get().collectNow();
+			return ResponseEntity.ok(collector.get().stats());
+		} catch (Exception e) {
+			LOGGER.error("Blob collection failed", e);
+			return ResponseEntity.internalServerError().build();
+		}
+	}
+
+	/**
+	 * Size and hit/miss/eviction counters of the in-process blob catalog.
+	 */
+	@GetMapping("/api/admin/blobs/catalog")
+	public CatalogStats getCatalogStats() {
+		return catalog.stats();
+	}
+
+	/**
+	 * Open resumable upload sessions and what they received.
+	 */
+	@GetMapping("/api/admin/uploads")
+	public UploadStats getUploadStats() {
+		return uploads.stats();
+	}
+
+	/**
+	 * Chunk level dedup ratio of the blob store.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link DedupReport}.</li>
+	 *   <li><b>404</b> if chunked storage is disabled.</li>
+	 * </ul>
+	 */
+	@GetMapping("/api/admin/blobs/dedup")
+	public ResponseEntity<DedupReport> getDedupReport() {
+		if (chunkStore.isEmpty())
+			return ResponseEntity.notFound().build();
+		try {
+			return ResponseEntity.ok(chunkStore.get().report());
+		} catch (Exception e) {
+			LOGGER.error("Unable to compute dedup report", e);
+			return ResponseEntity.internalServerError().build();
+		}
+	}
+}
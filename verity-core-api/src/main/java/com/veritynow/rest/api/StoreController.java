@@ -1,40 +1,55 @@
 package com.veritynow.rest.api;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.veritynow.core.context.Context;
 import com.veritynow.core.context.ContextResolvers;
 import com.veritynow.core.context.ContextScope;
 import com.veritynow.core.context.ContextSnapshot;
+import com.veritynow.core.store.immutablestore.UploadSessions.UploadStatus;
 import com.veritynow.core.store.meta.BlobMeta;
 import com.veritynow.core.store.meta.PathMeta;
 import com.veritynow.core.store.meta.VersionMeta;
 import com.veritynow.core.store.versionstore.PathUtils;
 import com.veritynow.util.JSON;
+import com.veritynow.util.MultipartStream;
 import com.veritynow.util.StringUtils;
 
+import jakarta.servlet.http.HttpServletRequest;
+
 @RestController
 public class StoreController {
 	
@@ -43,9 +58,32 @@ public class StoreController {
 
 	private final String namespace;
 
-	public StoreController(StoreService consoleService, @Value("${verity.api.namespace:/vn}") String namespace) {
+	// Tomcat sendfile request attributes, see org.apache.coyote.Constants
+	private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	// hash of content the server already holds, sent instead of the content
+	private static final String CONTENT_HASH_HEADER = "X-Content-Hash";
+
+	private static final String CONTENT_HASH_ALGORITHM_HEADER = "X-Content-Hash-Algorithm";
+	// upper bound of hashes per /api/read/content/exists request
+	private static final int MAX_EXISTS_HASHES = 10000;
+	// upper bound of the intent/transactions JSON parts of a streamed upload
+	private static final int MAX_FIELD_SIZE = 1024 * 1024;
+	// operations a resumable upload can end with, the ones that take content
+	private static final Set<String> UPLOAD_OPERATIONS = Set.of("CREATE", "CREATE?exactPath", "UPSERT",
+			"UPSERT?exactPath", "UPDATE");
+
+	// upper bound of each streamed upload part, 0 for none
+	private final long maxPartSize;
+
+	public StoreController(StoreService consoleService, @Value("${verity.api.namespace:/vn}") String namespace,
+			@Value("${verity.api.multipart.max-part-size:0}") long maxPartSize) {
 		this.storeService = consoleService;
 		this.namespace = PathUtils.normalizeNamespace(namespace);
+		this.maxPartSize = maxPartSize;
 	}
 	
 	/**
@@ -60,32 +98,25 @@ public class StoreController {
 	 * <ul>
 	 *   <li><b>200</b> with the blob bytes (Content-Type derived from stored {@link BlobMeta} when available; otherwise
 	 *       {@code application/octet-stream}).</li>
+	 *   <li><b>206</b> with the requested bytes when a single {@code Range} is given
+	 *       (and {@code If-Range}, if present, matches the ETag).</li>
 	 *   <li><b>404</b> if the hash is unknown.</li>
+	 *   <li><b>416</b> if the range cannot be satisfied.</li>
 	 * </ul>
+	 *
+	 * <p>The ETag is the content hash. Plain uncompressed blobs are sent straight from their file
+	 * (sendfile when the container supports it).</p>
 	 */
 	@PostMapping(value = "/api/read/content", consumes = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<InputStreamResource> getContent(@RequestBody Map<String, String> request) {
+	public ResponseEntity<StreamingResponseBody> getContent(@RequestBody Map<String, String> request,
+			HttpServletRequest httpRequest) {
 
-		Optional<InputStream> opt;
 		String hash = null;
 		try {
 			hash  = request.get("hash");
 			Objects.requireNonNull(hash, "hash");
 			
-			opt = storeService.getContent(hash);
-			if (opt.isEmpty())
-				return ResponseEntity.notFound().build();
-
-			Optional<BlobMeta> bm = storeService.getContentMeta(hash);
-			 MediaType contentMimeType = MediaType.APPLICATION_OCTET_STREAM;
-			if (bm.isPresent()) {
-				String mt = bm.get().mimeType();
-				if (mt != null) contentMimeType = MediaType.parseMediaType(mt);
-			}
-
-			HttpHeaders h = new HttpHeaders();
-			h.setContentType(contentMimeType);
-			return ResponseEntity.ok().headers(h).body(new InputStreamResource(opt.get()));
+			return contentResponse(hash, httpRequest);
 			
 		} catch (Exception e) {
 			LOGGER.error("Failed to get content hash={}", hash,e);
@@ -130,6 +161,106 @@ public class StoreController {
 		
 	}
 	
+	/**
+ * Read stored {@link BlobMeta} by a digest of the content, e.g. its SHA-256, when the store is configured to keep
+ * that digest ({@code verity.store.hash.digests}). The store's own hash algorithm is accepted as well.
+ *
+ * <p>Request body:</p>
+ * <pre>{@code
+ * { "algorithm": "sha-256", "digest": "<hex-digest>" }
+ * }</pre>
+ *
+ * <p>Responses:</p>
+ * <ul>
+ *   <li><b>200</b> with {@link BlobMeta}, its {@code hash} is the one the store keys the content by.</li>
+ *   <li><b>400</b> if {@code algorithm} or {@code digest} is missing.</li>
+ *   <li><b>404</b> if no stored content has that digest.</li>
+ * </ul>
+ */
+	@PostMapping(value = "/api/read/content/digest",
+			consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<BlobMeta> getContentMetaByDigest(@RequestBody Map<String, String> request) {
+		String algorithm = request.get("algorithm");
+		String digest = request.get("digest");
+		if (StringUtils.isEmpty(algorithm) || StringUtils.isEmpty(digest))
+			return ResponseEntity.badRequest().build();
+		try {
+			Optional<BlobMeta> bm = storeService.getContentMetaByDigest(algorithm, digest);
+			if (bm.isPresent()) {
+				return ResponseEntity.ok(bm.get());
+			}
+			return ResponseEntity.notFound().build();
+		} catch (Exception e) {
+			LOGGER.error("Failed to get content {}={}", algorithm, digest, e);
+			return ResponseEntity.internalServerError().build();
+		}
+	}
+
+	/**
+ * Read stored {@link BlobMeta} of many content hashes in one call, e.g. the attachments of a listing.
+ *
+ * <p>Request body:</p>
+ * <pre>{@code
+ * { "hashes": ["<content-hash>", ...] }
+ * }</pre>
+ *
+ * <p>Responses:</p>
+ * <ul>
+ *   <li><b>200</b> with {@code {"<content-hash>": BlobMeta, ...}} in request order, unknown hashes left out.</li>
+ *   <li><b>400</b> if {@code hashes} is missing or holds more than 10000 entries.</li>
+ * </ul>
+ */
+	@PostMapping(value = "/api/read/content/metas",
+			consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Map<String, BlobMeta>> getContentMetas(@RequestBody Map<String, List<String>> request) {
+		try {
+			List<String> hashes = request.get("hashes");
+			if (hashes == null || hashes.size() > MAX_EXISTS_HASHES)
+				return ResponseEntity.badRequest().build();
+
+			return ResponseEntity.ok(storeService.getContentMetas(hashes));
+		} catch (Exception e) {
+			LOGGER.error("getContentMetas failed", e);
+			return ResponseEntity.internalServerError().build();
+		}
+	}
+
+	/**
+ * Tell which of the given content hashes the server already holds, so the client uploads only the rest.
+ *
+ * <p>Request body:</p>
+ * <pre>{@code
+ * { "hashes": ["<content-hash>", ...] }
+ * }</pre>
+ *
+ * <p>Responses:</p>
+ * <ul>
+ *   <li><b>200</b> with {@code {"have": [...], "missing": [...]}}, both in request order.</li>
+ *   <li><b>400</b> if {@code hashes} is missing or holds more than 10000 entries.</li>
+ * </ul>
+ */
+	@PostMapping(value = "/api/read/content/exists",
+			consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Map<String, List<String>>> getExistingContent(@RequestBody Map<String, List<String>> request) {
+		try {
+			List<String> hashes = request.get("hashes");
+			if (hashes == null || hashes.size() > MAX_EXISTS_HASHES)
+				return ResponseEntity.badRequest().build();
+
+			Set<String> have = storeService.getExistingContent(hashes);
+			Map<String, List<String>> out = new LinkedHashMap<>();
+			out.put("have", hashes.stream().filter(have::contains).distinct().toList());
+			out.put("missing", hashes.stream().filter(h -> !have.contains(h)).distinct().toList());
+			return ResponseEntity.ok(out);
+		} catch (Exception e) {
+			LOGGER.error("getExistingContent failed", e);
+			return ResponseEntity.internalServerError().build();
+		}
+	}
+
 	/**
  * Read the latest (HEAD) {@link VersionMeta} for each <em>direct</em> child of a path.
  *
@@ -283,13 +414,15 @@ public class StoreController {
  * <p>Responses (Optional semantics):</p>
  * <ul>
  *   <li><b>200</b> with the blob bytes for the latest version.</li>
+ *   <li><b>206</b> with the requested bytes for a single {@code Range}, as for {@code /api/read/content}.</li>
  *   <li><b>404</b> if the path does not exist, has no versions, or the underlying content hash is missing.</li>
  * </ul>
  */
 	@PostMapping(path="/api/read/blob/content/latest/version",
 			consumes = MediaType.APPLICATION_JSON_VALUE
 			 )
-	public ResponseEntity<InputStreamResource> getBlobContentLatestVersion(@RequestBody Map<String, String> request) {
+	public ResponseEntity<StreamingResponseBody> getBlobContentLatestVersion(@RequestBody Map<String, String> request,
+			HttpServletRequest httpRequest) {
 		try {
 		
 		String path = request.get("path");
@@ -300,20 +433,7 @@ public class StoreController {
 		Optional<VersionMeta> vmOpt = storeService.getLatestVersion(storePath);
 		if (vmOpt.isPresent()) {
 			VersionMeta vm = vmOpt.get();
-			Optional<InputStream> isOpt = storeService.getContent(vm.hash());
-			if (isOpt.isEmpty())
-				return ResponseEntity.notFound().build();
-
-			Optional<BlobMeta> bm = storeService.getContentMeta(vm.hash());
-			MediaType contentMimeType = MediaType.APPLICATION_OCTET_STREAM;
-			if (bm.isPresent()) {
-				String mt = bm.get().mimeType();
-				if (mt != null) contentMimeType = MediaType.parseMediaType(mt);
-			}
-
-			HttpHeaders h = new HttpHeaders();
-			h.setContentType(contentMimeType);
-			return ResponseEntity.ok().headers(h).body(new InputStreamResource(isOpt.get()));
+			return contentResponse(vm.hash(), httpRequest);
 		}
 		
 		return ResponseEntity.notFound().build();
@@ -383,10 +503,20 @@ public class StoreController {
 	 *
 	 * <p>Consumes {@code multipart/form-data} with:</p>
 	 * <ul>
-	 *   <li>{@code intent}: JSON map {@code {"path":"...","operation":"..."}}</li>
+	 *   <li>{@code intent}: JSON map {@code {"path":"...","operation":"...","hash":"..."}}</li>
 	 *   <li>{@code blob} or {@code file}: optional uploaded content (depends on operation)</li>
 	 * </ul>
 	 *
+	 * <p>The body is streamed: when {@code intent} comes first, the content is hashed and stored as it
+	 * arrives off the network, without being buffered first. Content sent ahead of the intent is stored
+	 * first and then referenced by its hash. Parts are bounded by {@code verity.api.multipart.max-part-size},
+	 * not by {@code spring.servlet.multipart}.</p>
+	 *
+	 * <p>Content the server already holds (see {@code /api/read/content/exists}) need not be uploaded:
+	 * without a {@code blob}/{@code file} part the intent {@code hash}, or the {@code X-Content-Hash} header,
+	 * names the content instead. It is a digest under the intent {@code hashAlgorithm}, or the
+	 * {@code X-Content-Hash-Algorithm} header, when given: any of {@code verity.store.hash.digests}.</p>
+	 *
 	 * <p>Context headers (optional) are parsed via {@link ContextResolvers}:
 	 * {@code X-Transaction-Id}, {@code X-Correlation-Id}, {@code X-Workflow-Id}, {@code X-Principal},
 	 * {@code X-Context-Name}.</p>
@@ -395,63 +525,47 @@ public class StoreController {
 	 * <ul>
 	 *   <li><b>200</b> with {@link VersionMeta} if the operation produced a version.</li>
 	 *   <li><b>404</b> if no version was produced (e.g., target not found).</li>
+	 *   <li><b>412</b> if the declared content hash is not stored, the content has to be uploaded.</li>
 	 * </ul>
 	 */
 	@PostMapping(path = "/api/processor", 
 			consumes = {MediaType.MULTIPART_FORM_DATA_VALUE},
 			produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<VersionMeta> processMultipart(
-			@RequestPart("intent") String intentJson,
-			@RequestPart(name = "blob", required=false) MultipartFile blob,
-			@RequestPart(name = "file", required=false) MultipartFile file,
-			MultipartHttpServletRequest request) throws Exception 
-	
-	 {
-		
-		Map<String, String> action = JSON.readValue(intentJson, new TypeReference<Map<String, String>>() {
-		});
-			 
-			String path = action.get("path");
-			String operation = action.get("operation");
-			
-			if (file == null) {
-				file = blob;
-			}
-			
-			Objects.requireNonNull(path);
-			Objects.requireNonNull(operation);
+	public ResponseEntity<VersionMeta> processMultipart(HttpServletRequest request) throws Exception {
 
-			path = PathUtils.normalizeAndApplyNamespace(path, namespace);
-			
-			final InputStream is;
-			String name = "blob";
-			String mimeType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-		
-			if (file != null) {
-				is = file.getInputStream();
-				name = file.getOriginalFilename() != null ?  file.getOriginalFilename() : name; 
-				mimeType = StringUtils.isEmpty(file.getContentType()) ? mimeType : file.getContentType();
-			} else {
-				is = null;
-			}
+		Optional<String> boundary = MultipartStream.boundary(request.getContentType());
+		if (boundary.isEmpty())
+			return ResponseEntity.badRequest().build();
 
-			
-			//get context from headers if any
-			//if transactionId was not provided use the provided UUID
-			ContextSnapshot ctx = ContextResolvers.fromHttpHeaders(
-					request.getRequestHeaders().toSingleValueMap(),
-					null
-			);
-			
-			try (is; @SuppressWarnings("unused")
-			ContextScope scope = Context.scope(ctx)) {
-				Optional<VersionMeta> vm = storeService.process(operation, path, new BlobMeta(name, mimeType) , is);
-				if (vm.isPresent())
-					return ResponseEntity.ok(APIUtils.toClientVersionMeta(vm.get(), namespace));
-			}	
-		    
-		
-		return ResponseEntity.notFound().build();
+		//get context from headers if any
+		//if transactionId was not provided use the provided UUID
+		ContextSnapshot ctx = ContextResolvers.fromHttpHeaders(headers(request), null);
+
+		try (MultipartStream parts = new MultipartStream(request.getInputStream(), boundary.get(), maxPartSize)) {
+			Map<String, String> action = null;
+			BlobMeta uploaded = null;
+			Optional<MultipartStream.Part> next;
+			while ((next = parts.next()).isPresent()) {
+				MultipartStream.Part part = next.get();
+				if ("intent".equals(part.name())) {
+					action = JSON.readValue(part.text(MAX_FIELD_SIZE), new TypeReference<Map<String, String>>() {
+					});
+				} else if (uploaded == null && ("file".equals(part.name()) || "blob".equals(part.name()))) {
+					BlobMeta bm = new BlobMeta(part.filename() != null ? part.filename() : "blob",
+							part.contentTypeOr(MediaType.APPLICATION_OCTET_STREAM_VALUE));
+					if (action != null) {
+						// intent known, the content goes through hashing and into the store as it arrives
+						return process(action, bm, part.content(), null, request, ctx);
+					}
+					// content ahead of the intent, stored first and referenced by its hash
+					uploaded = storeService.putContent(bm, part.content()).orElseThrow();
+				}
+			}
+			if (action == null)
+				return ResponseEntity.badRequest().build();
+			return process(action, new BlobMeta("blob", MediaType.APPLICATION_OCTET_STREAM_VALUE), null,
+					uploaded != null ? uploaded.hash() : null, request, ctx);
+		}
 	}
 
 	/**
@@ -467,10 +581,15 @@ public class StoreController {
  * <ul>
  *   <li>If a transaction references {@code blobRef}, the multipart request must include a part with that exact name,
  *       otherwise <b>400</b> is returned.</li>
+ *   <li>Unless the transaction declares {@link Transaction#blobHash()} of content the server already holds,
+ *       then the part can be left out. <b>412</b> lists the declared hashes that are not stored.</li>
  *   <li>All context headers are optional and parsed via {@link ContextResolvers}
  *       ({@code X-Transaction-Id}, {@code X-Correlation-Id}, {@code X-Workflow-Id}, {@code X-Principal}).</li>
  * </ul>
  *
+ * <p>The body is streamed: every file part is stored as it arrives off the network, without being buffered
+ * first, and the transactions then reference it by hash. {@code transactions} may come before or after them.</p>
+ *
  * <p>Response is a small JSON summary (debug-friendly) rather than a domain DTO.</p>
  *
  * @throws Exception on processing failures (mapped by Spring exception handling)
@@ -479,23 +598,46 @@ public class StoreController {
 	@PostMapping(path = "/api/txn/processor", 
 			consumes = MediaType.MULTIPART_FORM_DATA_VALUE, 
 			produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Map<String, Object>> processTransactionMultipart(@RequestPart("transactions") String transactionsJson,
-			MultipartHttpServletRequest request) throws Exception {
+	public ResponseEntity<Map<String, Object>> processTransactionMultipart(HttpServletRequest request) throws Exception {
 
-		List<Transaction> txns = JSON.readValue(transactionsJson, new TypeReference<List<Transaction>>() {
-		});
+		Optional<String> boundary = MultipartStream.boundary(request.getContentType());
+		if (boundary.isEmpty())
+			return ResponseEntity.badRequest().build();
 
-		// Exact multipart parts as uploaded: partName -> MultipartFile
-		Map<String, MultipartFile> fileMap = request.getFileMap(); // Map<String, MultipartFile>
+		List<Transaction> txns = null;
+		// uploaded content as stored: partName -> BlobMeta
+		Map<String, BlobMeta> metas = new LinkedHashMap<>();
+
+		try (MultipartStream parts = new MultipartStream(request.getInputStream(), boundary.get(), maxPartSize)) {
+			Optional<MultipartStream.Part> next;
+			while ((next = parts.next()).isPresent()) {
+				MultipartStream.Part part = next.get();
+				if ("transactions".equals(part.name())) {
+					txns = JSON.readValue(part.text(MAX_FIELD_SIZE), new TypeReference<List<Transaction>>() {
+					});
+				} else if (part.name() != null) {
+					String name = StringUtils.isEmpty(part.filename()) ? part.name() : part.filename();
+					BlobMeta bm = new BlobMeta(name, part.contentTypeOr(MediaType.APPLICATION_OCTET_STREAM_VALUE));
+					metas.put(part.name(), storeService.putContent(bm, part.content()).orElseThrow());
+				}
+			}
+		}
+		if (txns == null)
+			return ResponseEntity.badRequest().body(Map.of("error", "transactions part missing"));
 
 		// for your debugging response
-		List<String> available = new ArrayList<>(fileMap.keySet());
+		List<String> available = new ArrayList<>(metas.keySet());
 
-		// Verify blobRefs exist 
+		// Verify blobRefs exist, a declared blobHash stands in for a missing part
+		Set<String> declared = new LinkedHashSet<>();
 		for (Transaction t : txns) {
 			String ref = t.blobRef();
 			if (ref != null && !ref.isBlank()) {
-				if (!fileMap.containsKey(ref)) {
+				if (!metas.containsKey(ref)) {
+					if (!StringUtils.isEmpty(t.blobHash())) {
+						declared.add(t.blobHash());
+						continue;
+					}
 					return ResponseEntity.badRequest().body(
 							Map.of("blobRef", ref, "available", available, "error",
 							"Transaction.blobRef not found among uploaded blobs"));
@@ -503,52 +645,39 @@ public class StoreController {
 			}
 		}
 
-		// Build your APITransaction (InputStreams are per-file)
-		Map<String, InputStream> blobs = new LinkedHashMap<>();
-		Map<String, BlobMeta> metas = new LinkedHashMap<>();
-		
-		for (var e : fileMap.entrySet()) {
-			String blobRef = e.getKey();
-			MultipartFile f = e.getValue();
-			
-			blobs.put(blobRef, f.getInputStream());
-			
-			String ct = f.getContentType();
-			if (StringUtils.isEmpty(ct))   ct = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-			
-			String name = f.getOriginalFilename();
-			if (StringUtils.isEmpty(name)) name = blobRef;
-			
-			metas.put(blobRef, new BlobMeta(name, ct));
+		// declared content must be held already, otherwise the client has to upload it
+		if (!declared.isEmpty()) {
+			Set<String> missing = new LinkedHashSet<>(declared);
+			missing.removeAll(storeService.getExistingContent(declared));
+			if (!missing.isEmpty()) {
+				return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(
+						Map.of("missing", missing, "error", "Transaction.blobHash content not stored, upload it"));
+			}
 		}
-		
-		//apply namespace to paths
+
+		//apply namespace to paths, uploaded content is referenced by the hash it was stored under
 		List<Transaction> namespacetxns = new ArrayList<>();
 		for (Transaction t : txns) {
+			BlobMeta uploaded = t.blobRef() == null ? null : metas.get(t.blobRef());
 			namespacetxns.add(new Transaction(
 				PathUtils.normalizeAndApplyNamespace(t.path(), namespace),
 				t.blobRef(),
 				t.blobMimetype(),
-				t.operation()
+				t.operation(),
+				uploaded != null ? uploaded.hash() : t.blobHash()
 			));
 		}
 		
-		APITransaction apiTxn = new APITransaction(namespacetxns,  blobs);
+		APITransaction apiTxn = new APITransaction(namespacetxns, Map.of());
 
-		// ---- TEST HARNESS PLACEHOLDER ----
-		// Consume streams here (or pass MultipartFile instead).
-		// Example: just return a summary to prove wiring works.
 		Map<String, Object> summary = new LinkedHashMap<>();
 		summary.put("transactionCount", apiTxn.transactions().size());
-		summary.put("blobCount", apiTxn.blobs().size());
-		summary.put("blobs", apiTxn.blobs().keySet());
+		summary.put("blobCount", metas.size());
+		summary.put("blobs", metas.keySet());
 
 		//get context from headers if any
 		//if transactionId was not provided use the provided UUID
-		ContextSnapshot ctx = ContextResolvers.fromHttpHeaders(
-				request.getRequestHeaders().toSingleValueMap(),
-				UUID.randomUUID().toString()
-		);
+		ContextSnapshot ctx = ContextResolvers.fromHttpHeaders(headers(request), UUID.randomUUID().toString());
 		
 		try (ContextScope scope = Context.scope(ctx)) {
 		
@@ -566,19 +695,309 @@ public class StoreController {
 			}
 			
 			summary.put("after", after);
-			
-		} finally {
-			// Cleanup to avoid multipart stream leaks
-			for (InputStream is : apiTxn.blobs().values()) {
-				try (is) {
-				} catch (Exception ignored) {
+		}
+
+		return ResponseEntity.ok(summary);
+	}
+
+	/**
+	 * Open a resumable upload session, for content too large to be sent safely in one request.
+	 *
+	 * <p>Request body:</p>
+	 * <pre>{@code
+	 * { "path": "...", "operation": "CREATE|CREATE?exactPath|UPSERT|UPSERT?exactPath|UPDATE",
+	 *   "name": "...", "mimeType": "...", "size": "<bytes>", "partSize": "<bytes, optional>" }
+	 * }</pre>
+	 *
+	 * <p>The content is then sent with {@code PUT /api/upload/{id}/parts/{n}}, n counting from 0, in any order and
+	 * in parallel; every part but the last holds exactly {@code partSize} bytes, the last one the rest of
+	 * {@code size}, and a part that failed is simply sent again. {@code POST /api/upload/{id}/complete} applies the
+	 * operation once all parts up to the last are in. Parts are
+	 * hashed as they arrive, completing does not read the content again. A session untouched for
+	 * {@code verity.immutable.blobs.upload.ttl-seconds} is dropped.</p>
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link UploadStatus}, its {@code id} names the session.</li>
+	 *   <li><b>400</b> if path, operation or size is missing or invalid, or partSize is out of bounds.</li>
+	 *   <li><b>409</b> if too many sessions are open.</li>
+	 * </ul>
+	 */
+	@PostMapping(value = "/api/upload",
+			consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<UploadStatus> createUpload(@RequestBody Map<String, String> request) {
+		String path = request.get("path");
+		String operation = request.get("operation");
+		if (StringUtils.isEmpty(path) || !UPLOAD_OPERATIONS.contains(operation)
+				|| StringUtils.isEmpty(request.get("size")))
+			return ResponseEntity.badRequest().build();
+		try {
+			long size = Long.parseLong(request.get("size"));
+			long partSize = StringUtils.isEmpty(request.get("partSize")) ? 0 : Long.parseLong(request.get("partSize"));
+			UploadStatus status = storeService.createUpload(PathUtils.normalizeAndApplyNamespace(path, namespace),
+					operation, request.get("name"), request.get("mimeType"), partSize, size);
+			return ResponseEntity.ok(toClientUploadStatus(status));
+		} catch (Exception e) {
+			return uploadFailure(e, "Failed to open an upload session for " + path);
+		}
+	}
+
+	/**
+	 * Progress of a resumable upload session: the parts received, how many of them are hashed.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link UploadStatus}.</li>
+	 *   <li><b>404</b> if the session is unknown, completed or expired.</li>
+	 * </ul>
+	 */
+	@GetMapping(value = "/api/upload/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<UploadStatus> getUpload(@PathVariable("id") String id) {
+		return storeService.getUpload(id).map(s -> ResponseEntity.ok(toClientUploadStatus(s)))
+				.orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/**
+	 * One part of a resumable upload, the request body holds its bytes.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with the {@link UploadStatus}.</li>
+	 *   <li><b>400</b> if the part is past the last part, or not of its size (partSize, the rest for the last one).</li>
+	 *   <li><b>404</b> if the session is unknown, completed or expired.</li>
+	 *   <li><b>409</b> if the part was already received or is being received.</li>
+	 * </ul>
+	 */
+	@PutMapping(value = "/api/upload/{id}/parts/{part}", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<UploadStatus> putUploadPart(@PathVariable("id") String id, @PathVariable("part") int part,
+			HttpServletRequest request) {
+		try {
+			return ResponseEntity.ok(toClientUploadStatus(storeService.putUploadPart(id, part, request.getInputStream())));
+		} catch (Exception e) {
+			return uploadFailure(e, "Failed to receive part " + part + " of upload " + id);
+		}
+	}
+
+	/**
+	 * Complete a resumable upload: the content is stored and the operation given at creation applied to its path.
+	 *
+	 * <p>Context headers (optional) are parsed via {@link ContextResolvers}, as for {@code /api/processor}.</p>
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>200</b> with {@link VersionMeta} if the operation produced a version.</li>
+	 *   <li><b>404</b> if the session is unknown, or no version was produced (e.g., target not found).</li>
+	 *   <li><b>409</b> if parts are missing or still being received, the session stays open.</li>
+	 * </ul>
+	 */
+	@PostMapping(value = "/api/upload/{id}/complete", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<VersionMeta> completeUpload(@PathVariable("id") String id, HttpServletRequest request) {
+		ContextSnapshot ctx = ContextResolvers.fromHttpHeaders(headers(request), null);
+		try (@SuppressWarnings("unused")
+		ContextScope scope = Context.scope(ctx)) {
+			Optional<VersionMeta> vm = storeService.completeUpload(id);
+			if (vm.isPresent())
+				return ResponseEntity.ok(APIUtils.toClientVersionMeta(vm.get(), namespace));
+			return ResponseEntity.notFound().build();
+		} catch (Exception e) {
+			return uploadFailure(e, "Failed to complete upload " + id);
+		}
+	}
+
+	/**
+	 * Abort a resumable upload, its parts are dropped.
+	 *
+	 * <p>Responses:</p>
+	 * <ul>
+	 *   <li><b>204</b> once dropped.</li>
+	 *   <li><b>404</b> if the session is unknown, completed or expired.</li>
+	 * </ul>
+	 */
+	@DeleteMapping("/api/upload/{id}")
+	public ResponseEntity<Void> abortUpload(@PathVariable("id") String id) {
+		try {
+			return storeService.abortUpload(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+		} catch (Exception e) {
+			LOGGER.error("Failed to abort upload {}", id, e);
+			return ResponseEntity.internalServerError().build();
+		}
+	}
+
+	// one intent of /api/processor, content is null when the intent names content the store holds
+	private ResponseEntity<VersionMeta> process(Map<String, String> action, BlobMeta bm, InputStream content,
+			String contentHash, HttpServletRequest request, ContextSnapshot ctx) throws Exception {
+
+		String path = action.get("path");
+		String operation = action.get("operation");
+		Objects.requireNonNull(path);
+		Objects.requireNonNull(operation);
+
+		path = PathUtils.normalizeAndApplyNamespace(path, namespace);
+
+		// content declared by hash instead of uploaded
+		if (content == null && contentHash == null) {
+			contentHash = action.get("hash");
+			if (StringUtils.isEmpty(contentHash))
+				contentHash = request.getHeader(CONTENT_HASH_HEADER);
+			String hashAlgorithm = action.get("hashAlgorithm");
+			if (StringUtils.isEmpty(hashAlgorithm))
+				hashAlgorithm = request.getHeader(CONTENT_HASH_ALGORITHM_HEADER);
+			if (StringUtils.isEmpty(contentHash)) {
+				contentHash = null;
+			} else {
+				// a secondary digest names the content as well, the store's own hash is used from here on
+				Optional<BlobMeta> declared = StringUtils.isEmpty(hashAlgorithm)
+						? storeService.getContentMeta(contentHash)
+						: storeService.getContentMetaByDigest(hashAlgorithm, contentHash);
+				if (declared.isEmpty())
+					return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+				contentHash = declared.get().hash();
+			}
+		}
+
+		try (@SuppressWarnings("unused")
+		ContextScope scope = Context.scope(ctx)) {
+			Optional<VersionMeta> vm = storeService.process(operation, path, bm, content, contentHash);
+			if (vm.isPresent())
+				return ResponseEntity.ok(APIUtils.toClientVersionMeta(vm.get(), namespace));
+		}
+		return ResponseEntity.notFound().build();
+	}
+
+	private UploadStatus toClientUploadStatus(UploadStatus s) {
+		return new UploadStatus(s.id(), PathUtils.removeNamespace(s.path(), namespace), s.operation(), s.partSize(),
+				s.size(), s.received(), s.hashedParts(), s.hashedBytes(), s.lastPart(), s.createdAt(), s.touchedAt());
+	}
+
+	// session errors are the client's, see UploadSessions
+	private static <T> ResponseEntity<T> uploadFailure(Exception e, String message) {
+		if (e instanceof NoSuchElementException) {
+			return ResponseEntity.notFound().build();
+		}
+		if (e instanceof IllegalArgumentException) {
+			LOGGER.warn("{}: {}", message, e.getMessage());
+			return ResponseEntity.badRequest().build();
+		}
+		if (e instanceof IllegalStateException) {
+			LOGGER.warn("{}: {}", message, e.getMessage());
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		}
+		LOGGER.error(message, e);
+		return ResponseEntity.internalServerError().build();
+	}
+
+	private static Map<String, String> headers(HttpServletRequest request) {
+		Map<String, String> out = new LinkedCaseInsensitiveMap<>();
+		for (String name : Collections.list(request.getHeaderNames())) {
+			out.put(name, request.getHeader(name));
+		}
+		return out;
+	}
+
+	/**
+	 * Full or single range response for a blob, honouring Range and If-Range.
+	 * Multiple ranges are answered with the full content, which RFC 9110 allows.
+	 *
+	 * Bodies are written by the controller, never handed over as a Resource: Spring applies the request's Range
+	 * header to a 200 Resource body itself, which would undo a Range ignored here (stale If-Range, multiple ranges).
+	 */
+	private ResponseEntity<StreamingResponseBody> contentResponse(String hash, HttpServletRequest request) throws IOException {
+		Optional<BlobMeta> bm = storeService.getContentMeta(hash);
+		if (bm.isEmpty())
+			return ResponseEntity.notFound().build();
+
+		long size = bm.get().size();
+		MediaType contentMimeType = MediaType.APPLICATION_OCTET_STREAM;
+		String mt = bm.get().mimeType();
+		if (mt != null) contentMimeType = MediaType.parseMediaType(mt);
+
+		// content addressed, the hash is a strong validator
+		String etag = "\"" + hash + "\"";
+
+		HttpHeaders h = new HttpHeaders();
+		h.setContentType(contentMimeType);
+		h.setETag(etag);
+		h.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+		String range = request.getHeader(HttpHeaders.RANGE);
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+		// a stale If-Range means the client wants everything
+		if (range != null && (ifRange == null || etag.equals(ifRange.trim()))) {
+			List<HttpRange> ranges;
+			try {
+				ranges = HttpRange.parseRanges(range);
+			} catch (IllegalArgumentException e) {
+				return rangeNotSatisfiable(size);
+			}
+
+			if (ranges.size() == 1) {
+				long start;
+				long end;
+				try {
+					start = ranges.get(0).getRangeStart(size);
+					end = ranges.get(0).getRangeEnd(size);
+				} catch (IllegalArgumentException e) {
+					return rangeNotSatisfiable(size);
 				}
+				// e.g. any range of empty content, or a start past the end
+				if (start >= size || start > end)
+					return rangeNotSatisfiable(size);
+				long length = end - start + 1;
+				h.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+				h.setContentLength(length);
+
+				Optional<Path> p = storeService.getContentPath(hash);
+				if (p.isPresent() && sendfile(request, p.get(), start, length))
+					return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(h).build();
+
+				Optional<InputStream> in = storeService.getContent(hash, start, length);
+				if (in.isEmpty())
+					return ResponseEntity.notFound().build();
+				return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(h).body(body(in.get()));
 			}
 		}
 
-		
-		
-		return ResponseEntity.ok(summary);
+		h.setContentLength(size);
+
+		Optional<Path> p = storeService.getContentPath(hash);
+		if (p.isPresent()) {
+			if (sendfile(request, p.get(), 0, size))
+				return ResponseEntity.ok().headers(h).build();
+			return ResponseEntity.ok().headers(h).body(body(Files.newInputStream(p.get())));
+		}
+
+		Optional<InputStream> in = storeService.getContent(hash);
+		if (in.isEmpty())
+			return ResponseEntity.notFound().build();
+		return ResponseEntity.ok().headers(h).body(body(in.get()));
+	}
+
+	private static StreamingResponseBody body(InputStream in) {
+		return out -> {
+			try (in) {
+				in.transferTo(out);
+			}
+		};
+	}
+
+	private ResponseEntity<StreamingResponseBody> rangeNotSatisfiable(long size) {
+		return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+				.header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+				.build();
+	}
+
+	/**
+	 * Let the container stream the file region itself (zero-copy), when it supports it.
+	 */
+	private boolean sendfile(HttpServletRequest request, Path p, long start, long length) throws IOException {
+		if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED)))
+			return false;
+		request.setAttribute(SENDFILE_FILENAME, p.toRealPath().toString());
+		request.setAttribute(SENDFILE_START, start);
+		request.setAttribute(SENDFILE_END, start + length);
+		return true;
 	}
 
 }
@@ -2,7 +2,10 @@ package com.veritynow.rest.api;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -21,6 +24,7 @@ import com.veritynow.core.context.ContextScope;
 import com.veritynow.core.store.StoreOperation;
 import com.veritynow.core.store.TransactionAndLockingAware;
 import com.veritynow.core.store.base.PK;
+import com.veritynow.core.store.immutablestore.UploadSessions;
 import com.veritynow.core.store.meta.BlobMeta;
 import com.veritynow.core.store.meta.PathMeta;
 import com.veritynow.core.store.meta.VersionMeta;
@@ -32,11 +36,15 @@ public class StoreService {
 
 	private final TransactionAndLockingAware<PK, BlobMeta, VersionMeta, ContextScope, CloseableLockHandle> versionStore;
 
+	private final UploadSessions uploads;
+
 	private static final Logger LOGGER = LogManager.getLogger();
 
 	public StoreService(
-			TransactionAndLockingAware<PK, BlobMeta, VersionMeta, ContextScope, CloseableLockHandle> versionStore) {
+			TransactionAndLockingAware<PK, BlobMeta, VersionMeta, ContextScope, CloseableLockHandle> versionStore,
+			UploadSessions uploads) {
 		this.versionStore = versionStore;
+		this.uploads = uploads;
 		LOGGER.info("Store Service using " + versionStore.getClass().getName());
 	}
 
@@ -71,11 +79,73 @@ public class StoreService {
 		return versionStore.getContent(PK.hash(hash));
 	}
 
+	// interface to the hash keyed immutable store
+	public Optional<InputStream> getContent(String hash, long offset, long length) throws IOException {
+		return versionStore.getContent(PK.hash(hash), offset, length);
+	}
+
+	// interface to the hash keyed immutable store
+	public Optional<Path> getContentPath(String hash) throws IOException {
+		return versionStore.getContentPath(PK.hash(hash));
+	}
+
 	// interface to the hash keyed immutable store
 	public Optional<BlobMeta> getContentMeta(String hash) throws IOException {
 		return versionStore.getContentMeta(PK.hash(hash));
 	}
 
+	// interface to the hash keyed immutable store, by a secondary digest (or the hash) of the content
+	public Optional<BlobMeta> getContentMetaByDigest(String algorithm, String digest) throws IOException {
+		return versionStore.getContentMetaByDigest(algorithm, digest);
+	}
+
+	// interface to the hash keyed immutable store, content stored ahead of the version that will reference it
+	public Optional<BlobMeta> putContent(BlobMeta meta, InputStream is) throws IOException {
+		return versionStore.putContent(meta, is);
+	}
+
+	// interface to the hash keyed immutable store, one lookup for all the hashes
+	public Map<String, BlobMeta> getContentMetas(Collection<String> hashes) throws IOException {
+		return versionStore.getContentMetas(hashes);
+	}
+
+	// interface to the hash keyed immutable store, the hashes that need no upload
+	public Set<String> getExistingContent(Collection<String> hashes) throws IOException {
+		return versionStore.findExistingContent(hashes);
+	}
+
+	// resumable uploads, the content is applied to the path given at creation once all parts are in
+	public UploadSessions.UploadStatus createUpload(String path, String operation, String name, String mimeType,
+			long partSize, long size) throws IOException {
+		return uploads.create(path, operation, name, mimeType, partSize, size);
+	}
+
+	public Optional<UploadSessions.UploadStatus> getUpload(String id) {
+		return uploads.status(id);
+	}
+
+	public UploadSessions.UploadStatus putUploadPart(String id, int part, InputStream is) throws IOException {
+		return uploads.putPart(id, part, is);
+	}
+
+	public boolean abortUpload(String id) throws IOException {
+		return uploads.abort(id);
+	}
+
+	// the assembled content is adopted by the store as is, hashed already, then referenced by hash like stored content
+	public Optional<VersionMeta> completeUpload(String id) throws Exception {
+		UploadSessions.Upload up = uploads.complete(id);
+		BlobMeta stored;
+		try {
+			stored = versionStore
+					.putContent(new BlobMeta(up.name(), up.mimeType()), up.content(), up.hash(), up.digests())
+					.orElseThrow(() -> new IOException("Upload " + id + " content was not stored"));
+		} finally {
+			Files.deleteIfExists(up.content());
+		}
+		return process(up.operation(), up.path(), stored, null, stored.hash());
+	}
+
 	public Optional<VersionMeta> create(String path, InputStream is, String mimeType, String name) throws IOException {
 		return versionStore.create(PK.path(path), new BlobMeta(name, mimeType), is);
 	}
@@ -92,6 +162,17 @@ public class StoreService {
 		return versionStore.update(PK.path(path), is);
 	}
 
+	// same as createExactPath, with content the store already holds
+	public Optional<VersionMeta> createExactPathFromContent(String path, String contentHash) throws IOException {
+		String parent = path.substring(0, path.lastIndexOf("/"));
+		return versionStore.createFromContent(new PK(parent, contentHash), lastSegment(path));
+	}
+
+	// same as update, with content the store already holds
+	public Optional<VersionMeta> updateFromContent(String path, String contentHash) throws IOException {
+		return versionStore.updateFromContent(new PK(path, contentHash));
+	}
+
 	public Optional<VersionMeta> delete(String path, String reason) throws IOException {
 		return versionStore.delete(PK.path(path));
 	}
@@ -108,16 +189,25 @@ public class StoreService {
 		return versionStore.getChildrenPath(PK.path(path));
 	}
 
+	// hash is a digest under algo, the store's own algorithm or a secondary one; empty when no content has it
 	public Optional<VersionMeta> restore(String path, String hash, String algo) throws IOException {
-		// At the present parameter algo is ignored, the store's default algo is used
-		// instead
-		return restore(path, hash);
+		Optional<BlobMeta> bm = versionStore.getContentMetaByDigest(algo, hash);
+		if (bm.isEmpty()) {
+			return Optional.empty();
+		}
+		return restore(path, bm.get().hash());
 	}
 
 	public Optional<VersionMeta> process(String op, String path, BlobMeta bm , InputStream is) throws Exception {
+		return process(op, path, bm, is, null);
+	}
+
+	// contentHash stands in for is when the client declared content the store already holds
+	public Optional<VersionMeta> process(String op, String path, BlobMeta bm , InputStream is, String contentHash) throws Exception {
 		
 		String name = bm.name();
 		String mimeType = bm.mimeType();
+		boolean fromContent = is == null && contentHash != null;
 
 		
 			switch (op) {
@@ -125,20 +215,27 @@ public class StoreService {
 				// for create we make a new segment which is analogous to DB generated index
 				String lastSegment = UUID.randomUUID().toString();
 				String newPath = path + "/" + lastSegment;
+				if (fromContent)
+					return createExactPathFromContent(newPath, contentHash);
 				Objects.requireNonNull(is);
 				return createExactPath(newPath, is, mimeType, name);
 			case "CREATE?exactPath":
+				if (fromContent)
+					return createExactPathFromContent(path, contentHash);
 				Objects.requireNonNull(is);
 				return createExactPath(path, is, mimeType, name);
 			case "UPSERT":
 			case "UPSERT?exactPath":
-				Objects.requireNonNull(is);
+				if (!fromContent)
+					Objects.requireNonNull(is);
 				if (versionStore.exists(PK.path(path))) {
-					return update(path, is, mimeType, name);
+					return fromContent ? updateFromContent(path, contentHash) : update(path, is, mimeType, name);
 				} else {
-					return createExactPath(path, is, mimeType, name);
+					return fromContent ? createExactPathFromContent(path, contentHash) : createExactPath(path, is, mimeType, name);
 				}
 			case "UPDATE":
+				if (fromContent)
+					return updateFromContent(path, contentHash);
 				Objects.requireNonNull(is);
 				return update(path, is, mimeType, name);
 			case "DELETE":
@@ -158,8 +255,6 @@ public class StoreService {
 					String algo = p.get("algo");
 
 					if (hash != null && algo != null) {
-						// right now algo is ignored, store default is used
-						// will support multi-algo, in the future
 						return restore(path, hash, algo);
 						
 					} else if (hash != null) {
@@ -213,10 +308,11 @@ public class StoreService {
 					name = bm.name();
 				}
 
-				InputStream is = apiTxn.blobs().get(bref);
+				// uploaded bytes win over a declared hash
+				InputStream is = bref == null ? null : apiTxn.blobs().get(bref);
 				String path = txn.path();
 				try (is) {
-					Optional<VersionMeta> opt = process(op, path, new BlobMeta(name, mimeType), is);
+					Optional<VersionMeta> opt = process(op, path, new BlobMeta(name, mimeType), is, txn.blobHash());
 					if (opt.isPresent()) {
 						vms.add(opt.get());
 					}
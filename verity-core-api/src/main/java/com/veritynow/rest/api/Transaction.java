@@ -4,6 +4,8 @@ public record Transaction (
 	String path,
 	String blobRef,
 	String blobMimetype,
-	String operation
+	String operation,
+	// hash of content the server already holds, sent instead of the blobRef part
+	String blobHash
 ){
 }
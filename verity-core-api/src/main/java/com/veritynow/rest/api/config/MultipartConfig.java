@@ -0,0 +1,53 @@
+package com.veritynow.rest.api.config;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import com.veritynow.util.MultipartStream;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Multipart resolution that leaves the streaming upload endpoints alone.
+ *
+ * The standard resolver has the container buffer every part to disk (within spring.servlet.multipart limits)
+ * before the handler runs. The paths listed in verity.api.multipart.streaming-paths are not resolved at all,
+ * their handlers read the body themselves with {@link MultipartStream} as it arrives.
+ */
+@Configuration
+public class MultipartConfig {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	@Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+	public MultipartResolver multipartResolver(
+			@Value("${verity.api.multipart.streaming-paths:/api/processor,/api/txn/processor}") List<String> streamingPaths,
+			@Value("${spring.servlet.multipart.resolve-lazily:false}") boolean resolveLazily
+	) {
+		Set<String> streaming = Set.copyOf(streamingPaths);
+		LOGGER.info("Multipart bodies of {} are streamed to their handler", streaming);
+		StandardServletMultipartResolver resolver = new StandardServletMultipartResolver() {
+			@Override
+			public boolean isMultipart(HttpServletRequest request) {
+				return super.isMultipart(request) && !streaming.contains(pathOf(request));
+			}
+		};
+		resolver.setResolveLazily(resolveLazily);
+		return resolver;
+	}
+
+	private static String pathOf(HttpServletRequest request) {
+		String uri = request.getRequestURI();
+		String ctx = request.getContextPath();
+		return ctx != null && !ctx.isEmpty() && uri.startsWith(ctx) ? uri.substring(ctx.length()) : uri;
+	}
+}
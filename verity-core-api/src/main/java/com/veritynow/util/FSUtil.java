@@ -3,14 +3,21 @@ package com.veritynow.util;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.util.Comparator;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,6 +25,8 @@ import org.apache.logging.log4j.Logger;
 public class FSUtil {
 	private static final Logger LOGGER = LogManager.getLogger();
 	
+	private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+	
 	public static void safeWrite(Path dir, String name, byte[] bytes) throws IOException {
 		String uuid = UUID.randomUUID().toString();
 		
@@ -42,6 +51,14 @@ public class FSUtil {
 	        	b = is.readNBytes(1024);
 	        } 
         }
+        moveAtomic(tmp, out);
+	}
+	
+	/**
+	 * Rename tmp to out, atomically when the filesystem supports it.
+	 * tmp and out are expected to live on the same filesystem.
+	 */
+	public static void moveAtomic(Path tmp, Path out) throws IOException {
         try {
             Files.move(tmp, out, StandardCopyOption.ATOMIC_MOVE);
         } catch (AtomicMoveNotSupportedException e) {
@@ -50,6 +67,36 @@ public class FSUtil {
         }
 	}
 	
+	/**
+	 * moveAtomic made durable through sync: the data of tmp is synced before the rename,
+	 * the directory of out after it.
+	 */
+	public static void moveAtomic(Path tmp, Path out, FileSync sync) throws IOException {
+		sync.sync(tmp);
+		moveAtomic(tmp, out);
+		sync.syncDirectory(out.getParent());
+	}
+	
+	/**
+	 * Force the content (or entries, for a directory) of p to stable storage.
+	 * Directories cannot be opened on Windows, where NTFS journals renames itself, and are skipped there.
+	 */
+	public static void force(Path p, boolean directory) throws IOException {
+		if (directory && WINDOWS) {
+			return;
+		}
+		try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+			ch.force(true);
+		}
+	}
+	
+	/**
+	 * Reserve a unique, not yet existing, file name under dir.
+	 */
+	public static Path stagingPath(Path dir) {
+		return dir.resolve(UUID.randomUUID().toString() + ".tmp");
+	}
+	
 	public static void safeWrite(Path dir, String name, String s) throws IOException {
 		safeWrite(dir,name,s.getBytes(StandardCharsets.UTF_8));
 	}
@@ -62,10 +109,63 @@ public class FSUtil {
 		safeWrite(path.getParent(), path.getFileName().toString(),is);
 	}
 	
+	/**
+	 * safeWrite made durable through sync, the content is synced before the rename and the directory after it.
+	 */
+	public static void safeWrite(Path path, byte[] b, FileSync sync) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID());
+		try {
+			Files.write(tmp, b, StandardOpenOption.CREATE_NEW);
+			moveAtomic(tmp, path, sync);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+	
 	public static void safeWrite(Path path, String s) throws IOException {
 		safeWrite(path.getParent() ,path.getFileName().toString(),s.getBytes(StandardCharsets.UTF_8));
 	}
 	
+	/**
+	 * Whether p was last modified before instant, false if p no longer exists.
+	 */
+	public static boolean olderThan(Path p, Instant instant) throws IOException {
+		try {
+			return Files.getLastModifiedTime(p).toInstant().isBefore(instant);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Delete the regular files under dir accepted by filter and last modified before instant.
+	 * Returns the number of files deleted, 0 if dir does not exist.
+	 * Files renamed or deleted by someone else during the walk (a staged file being published) are skipped.
+	 */
+	public static long deleteOlderThan(Path dir, Instant instant, Predicate<Path> filter) throws IOException {
+		if (!Files.isDirectory(dir))
+			return 0;
+		long[] deleted = { 0 };
+		Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isRegularFile() && filter.test(p) && olderThan(p, instant) && Files.deleteIfExists(p)) {
+					deleted[0]++;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path p, IOException e) throws IOException {
+				if (e instanceof NoSuchFileException) {
+					return FileVisitResult.CONTINUE;
+				}
+				throw e;
+			}
+		});
+		return deleted[0];
+	}
+	
 	public static void deleteRecursively(Path root) {
 		LOGGER.info("Deleting dataDir {}", root);
 		try {
@@ -0,0 +1,55 @@
+package com.veritynow.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * How written files are made durable.
+ *
+ * Data must be synced before the rename that publishes it, the directory holding the new name after it.
+ * Both calls return once every given path is on stable storage.
+ */
+public interface FileSync {
+
+	// nothing is forced, a crash may lose the latest writes
+	FileSync NONE = new FileSync() {
+		@Override
+		public void sync(Collection<Path> files) {
+		}
+
+		@Override
+		public void syncDirectories(Collection<Path> directories) {
+		}
+	};
+
+	// every call forces its paths right away, one fsync per path
+	FileSync IMMEDIATE = new FileSync() {
+		@Override
+		public void sync(Collection<Path> files) throws IOException {
+			for (Path p : files) {
+				FSUtil.force(p, false);
+			}
+		}
+
+		@Override
+		public void syncDirectories(Collection<Path> directories) throws IOException {
+			for (Path p : directories) {
+				FSUtil.force(p, true);
+			}
+		}
+	};
+
+	void sync(Collection<Path> files) throws IOException;
+
+	void syncDirectories(Collection<Path> directories) throws IOException;
+
+	default void sync(Path file) throws IOException {
+		sync(List.of(file));
+	}
+
+	default void syncDirectory(Path directory) throws IOException {
+		syncDirectories(List.of(directory));
+	}
+}
@@ -0,0 +1,304 @@
+package com.veritynow.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.MediaType;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+/**
+ * Sequential reader of a multipart/form-data body (RFC 7578), straight off the request stream.
+ *
+ * Parts are handed out one at a time by {@link #next()}, the content of a part is read from the network
+ * as the caller consumes it and is never buffered beyond a small window; asking for the next part skips
+ * whatever is left of the current one.
+ *
+ * Notes:
+ *  - Not thread safe, a part must be consumed by the thread that iterates.
+ *  - maxPartSize bounds the content of each part (0 for no bound), exceeding it throws
+ *    {@link MaxUploadSizeExceededException}.
+ *  - Closing does not close the underlying stream, the servlet container owns it.
+ */
+public class MultipartStream implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+	public record Part(String name, String filename, String contentType, InputStream content) {
+
+		public String contentTypeOr(String defaultType) {
+			return StringUtils.isEmpty(contentType) ? defaultType : contentType;
+		}
+
+		// the whole content as text, for small form fields only
+		public String text(int maxBytes) throws IOException {
+			byte[] b = content.readNBytes(maxBytes + 1);
+			if (b.length > maxBytes) {
+				throw new MaxUploadSizeExceededException(maxBytes);
+			}
+			return new String(b, StandardCharsets.UTF_8);
+		}
+	}
+
+	private final InputStream in;
+	private final byte[] delimiter;
+	private final long maxPartSize;
+	private final byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private boolean eof;
+	private boolean done;
+	private PartInputStream current;
+	// buffer index the current part content is known to run to, and whether the delimiter starts there
+	private int contentEnd;
+	private boolean delimiterAtEnd;
+
+	public MultipartStream(InputStream in, String boundary, long maxPartSize) {
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.maxPartSize = maxPartSize;
+		if (delimiter.length * 2 > BUFFER_SIZE) {
+			throw new IllegalArgumentException("Multipart boundary too long");
+		}
+		// the first delimiter has no leading CRLF, pretend it has one
+		buf[0] = '\r';
+		buf[1] = '\n';
+		limit = 2;
+	}
+
+	/**
+	 * The boundary of a multipart content type.
+	 */
+	public static Optional<String> boundary(String contentType) {
+		if (StringUtils.isEmpty(contentType)) {
+			return Optional.empty();
+		}
+		try {
+			MediaType mt = MediaType.parseMediaType(contentType);
+			if (!"multipart".equalsIgnoreCase(mt.getType())) {
+				return Optional.empty();
+			}
+			return Optional.ofNullable(mt.getParameter("boundary")).map(b -> b.replace("\"", ""));
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * The next part, empty once the closing delimiter has been read.
+	 */
+	public Optional<Part> next() throws IOException {
+		if (done) {
+			return Optional.empty();
+		}
+		if (current != null) {
+			current.skipRest();
+		} else {
+			skipPreamble();
+		}
+		// positioned on a delimiter
+		pos += delimiter.length;
+		require(2);
+		if (buf[pos] == '-' && buf[pos + 1] == '-') {
+			done = true;
+			return Optional.empty();
+		}
+		skipLine();
+
+		String name = null;
+		String filename = null;
+		String contentType = null;
+		int headerBytes = 0;
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			headerBytes += line.length();
+			if (headerBytes > MAX_HEADER_SIZE) {
+				throw new IOException("Multipart part headers too large");
+			}
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				continue;
+			}
+			String header = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			if ("Content-Disposition".equalsIgnoreCase(header)) {
+				ContentDisposition cd = ContentDisposition.parse(value);
+				name = cd.getName();
+				filename = cd.getFilename();
+			} else if ("Content-Type".equalsIgnoreCase(header)) {
+				contentType = value;
+			}
+		}
+		contentEnd = pos;
+		delimiterAtEnd = false;
+		current = new PartInputStream();
+		return Optional.of(new Part(name, filename, contentType, current));
+	}
+
+	/**
+	 * Read and drop the rest of the body, so the connection can be reused.
+	 */
+	@Override
+	public void close() throws IOException {
+		while (next().isPresent()) {
+			// skipped by next()
+		}
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private void skipPreamble() throws IOException {
+		while (true) {
+			int at = indexOfDelimiter();
+			if (at >= 0) {
+				pos = at;
+				return;
+			}
+			// keep a tail that may hold the start of the delimiter
+			pos = Math.max(pos, limit - delimiter.length + 1);
+			if (!fill()) {
+				throw new EOFException("Multipart body without a boundary");
+			}
+		}
+	}
+
+	private int indexOfDelimiter() {
+		int last = limit - delimiter.length;
+		for (int i = pos; i <= last; i++) {
+			if (buf[i] == '\r' && Arrays.equals(buf, i, i + delimiter.length, delimiter, 0, delimiter.length)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// at least n unread bytes in the buffer
+	private void require(int n) throws IOException {
+		while (limit - pos < n) {
+			if (!fill()) {
+				throw new EOFException("Truncated multipart body");
+			}
+		}
+	}
+
+	// compact and read more, false at end of stream
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			contentEnd = Math.max(0, contentEnd - pos);
+			pos = 0;
+		}
+		int n = in.read(buf, limit, buf.length - limit);
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			require(2);
+			if (buf[pos] == '\r' && buf[pos + 1] == '\n') {
+				pos += 2;
+				return sb.toString();
+			}
+			sb.append((char) (buf[pos++] & 0xff));
+			if (sb.length() > MAX_HEADER_SIZE) {
+				throw new IOException("Multipart header line too long");
+			}
+		}
+	}
+
+	// rest of the delimiter line, transport padding included
+	private void skipLine() throws IOException {
+		readLine();
+	}
+
+	private final class PartInputStream extends InputStream {
+
+		private long read;
+		private boolean ended;
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			int n = read(one, 0, 1);
+			return n < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (ended || current != this) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int available = available();
+			while (available == 0 && !ended) {
+				if (!fill()) {
+					throw new EOFException("Truncated multipart body");
+				}
+				available = available();
+			}
+			if (ended) {
+				return -1;
+			}
+			int n = Math.min(len, available);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			read += n;
+			if (maxPartSize > 0 && read > maxPartSize) {
+				throw new MaxUploadSizeExceededException(maxPartSize);
+			}
+			return n;
+		}
+
+		// bytes that are surely content, sets ended when the delimiter is next;
+		// the buffer is only scanned past what an earlier call already found to be content
+		@Override
+		public int available() {
+			if (ended) {
+				return 0;
+			}
+			if (pos < contentEnd) {
+				return contentEnd - pos;
+			}
+			if (!delimiterAtEnd) {
+				int at = indexOfDelimiter();
+				delimiterAtEnd = at >= 0;
+				contentEnd = at >= 0 ? at : Math.max(pos, limit - delimiter.length + 1);
+			}
+			if (delimiterAtEnd && pos == contentEnd) {
+				ended = true;
+				return 0;
+			}
+			return contentEnd - pos;
+		}
+
+		void skipRest() throws IOException {
+			byte[] skip = new byte[BUFFER_SIZE];
+			while (read(skip, 0, skip.length) >= 0) {
+				// dropped
+			}
+		}
+
+		@Override
+		public void close() {
+			// the rest is skipped when the next part is asked for
+		}
+	}
+}
@@ -37,6 +37,16 @@ create table if not exists "public"."vn_blob" (
   "size" bigint not null,
   "mime_type" varchar(255),
   "name" varchar(255),
+  "layout" varchar(32),
+  "codec" varchar(32),
+  "stored_size" bigint,
+  "pack_segment" integer,
+  "pack_offset" bigint,
+  "delta_base" varchar(255),
+  "delta_depth" integer,
+  "digests" text[],
+  "created_at" timestamp(6) with time zone not null default now(),
+  "last_seen" timestamp(6) with time zone not null default now(),
   constraint "vn_blob_pkey" primary key ("hash", "hash_algorithm")
 );
 
@@ -54,20 +64,12 @@ create table if not exists "public"."vn_inode" (
   "created_at" timestamp(6) with time zone not null default now(),
   "id" bigint generated by default as identity not null,
   "scope_key" "public"."ltree",
+  -- materialized path ("/" for the root, "/a/b" below it), set when the inode is created
+  "path" text not null,
   constraint "vn_inode_pkey" primary key ("id"),
   constraint "uq_vn_inode_scope_key" unique ("scope_key")
 );
 
-create table if not exists "public"."vn_inode_path_segment" (
-  "ord" int not null,
-  "created_at" timestamp(6) with time zone not null default now(),
-  "dir_entry_id" bigint not null,
-  "id" bigint generated by default as identity not null,
-  "inode_id" bigint not null,
-  constraint "vn_inode_path_segment_pkey" primary key ("id"),
-  constraint "uq_inode_ord" unique ("inode_id", "ord")
-);
-
 create table if not exists "public"."vn_node_head" (
   "inode_id" bigint not null,
   "updated_at" timestamp(6) with time zone not null default now(),
@@ -100,6 +102,35 @@ create table if not exists "public"."vn_node_version" (
   constraint "vn_node_version_pkey" primary key ("id")
 );
 
+-- =========================
+-- Upgrades of existing databases
+-- =========================
+
+-- vn_inode.path replaces the vn_inode_path_segment rows (root to inode dir entries, ord 0 first)
+alter table "public"."vn_inode" add column if not exists "path" text;
+
+do $$
+begin
+  if to_regclass('public.vn_inode_path_segment') is not null then
+    update "public"."vn_inode" i
+    set "path" = s."path"
+    from (
+      select ps."inode_id", '/' || string_agg(d."name", '/' order by ps."ord") as "path"
+      from "public"."vn_inode_path_segment" ps
+      join "public"."vn_dir_entry" d on d."id" = ps."dir_entry_id"
+      group by ps."inode_id"
+    ) s
+    where i."id" = s."inode_id" and i."path" is null;
+  end if;
+  -- the root, the only inode without path segments
+  update "public"."vn_inode" set "path" = '/' where "path" is null;
+end;
+$$;
+
+alter table "public"."vn_inode" alter column "path" set not null;
+
+drop table if exists "public"."vn_inode_path_segment";
+
 -- =========================
 -- Indexes (baseline)
 -- =========================
@@ -108,9 +139,20 @@ create table if not exists "public"."vn_node_version" (
 create index if not exists "ix_dir_child" on "public"."vn_dir_entry"("child_id");
 create index if not exists "ix_dir_parent" on "public"."vn_dir_entry"("parent_id");
 
-create index if not exists "ix_inode_path_inode" on "public"."vn_inode_path_segment"("inode_id");
--- helpful for reverse traversal / maintenance and some joins
-create index if not exists "ix_inode_path_dir_entry" on "public"."vn_inode_path_segment"("dir_entry_id");
+-- blob indices
+create index if not exists "ix_blob_created_at"
+  on "public"."vn_blob"("created_at", "hash", "hash_algorithm");
+
+create index if not exists "ix_blob_pack_segment"
+  on "public"."vn_blob"("pack_segment") where "pack_segment" is not null;
+
+-- delta encoded blobs of a base, keeps the base alive
+create index if not exists "ix_blob_delta_base"
+  on "public"."vn_blob"("delta_base", "hash_algorithm") where "delta_base" is not null;
+
+-- secondary digests ("algorithm:hex") of a blob, looked up by containment
+create index if not exists "ix_blob_digests"
+  on "public"."vn_blob" using gin ("digests") where "digests" is not null;
 
 -- version indices
 create index if not exists "ix_ver_inode_timestamp"
@@ -131,6 +173,10 @@ create index if not exists "ix_ver_workflow"
 create index if not exists "ix_ver_hash_alg"
   on "public"."vn_node_version"("hash", "hash_algorithm");
 
+-- head lookups by path, e.g. bulk reads
+create index if not exists "ix_vn_inode_path"
+  on "public"."vn_inode"("path");
+
 -- Optional: accelerate scope prefix lookups (ltree)
 create index if not exists "ix_vn_inode_scope_key_gist"
   on "public"."vn_inode"
@@ -160,26 +206,6 @@ when duplicate_object then null;
 end;
 $$;
 
-do $$
-begin
-  alter table if exists "public"."vn_inode_path_segment"
-    add constraint "vn_inode_path_segment_dir_entry_id_fk"
-    foreign key ("dir_entry_id") references "public"."vn_dir_entry" ("id");
-exception when duplicate_table then null;
-when duplicate_object then null;
-end;
-$$;
-
-do $$
-begin
-  alter table if exists "public"."vn_inode_path_segment"
-    add constraint "vn_inode_path_segment_inode_id_fk"
-    foreign key ("inode_id") references "public"."vn_inode" ("id");
-exception when duplicate_table then null;
-when duplicate_object then null;
-end;
-$$;
-
 do $$
 begin
   alter table if exists "public"."vn_node_head"
@@ -210,6 +236,70 @@ when duplicate_object then null;
 end;
 $$;
 
+-- =========================
+-- PATH CREATION
+-- =========================
+-- vn_resolve_or_create_inode(names, scope keys) = inode id of the path, creating what is missing of it:
+--   - p_scope_keys[1] is the root, p_scope_keys[i + 1] the scope key of the path down to p_names[i]
+--   - one statement per table whatever the depth (inodes with their path, dir entries), parents first
+--   - ON CONFLICT DO NOTHING throughout: concurrent creators of overlapping paths wait for each other's
+--     conflicting rows, then skip them; every statement takes a fresh snapshot (READ COMMITTED), so rows a
+--     concurrent creator committed are read back by the next one. No locks taken, no retries.
+
+create or replace function public.vn_resolve_or_create_inode(p_names text[], p_scope_keys text[])
+returns bigint
+language plpgsql
+as $$
+declare
+  n int := coalesce(array_length(p_names, 1), 0);
+  depth int;
+  leaf bigint;
+begin
+  if coalesce(array_length(p_scope_keys, 1), 0) <> n + 1 then
+    raise exception 'Expected % scope keys for % names, got %',
+      n + 1, n, coalesce(array_length(p_scope_keys, 1), 0);
+  end if;
+
+  -- deepest existing level of the path, 0 is the root, null when even the root is missing
+  select k.ord - 1, i.id into depth, leaf
+  from unnest(p_scope_keys::ltree[]) with ordinality k(scope_key, ord)
+  join public.vn_inode i on i.scope_key = k.scope_key
+  order by k.ord desc
+  limit 1;
+
+  if depth = n then
+    return leaf;
+  end if;
+  depth := coalesce(depth, -1);
+
+  insert into public.vn_inode (scope_key, path)
+  select k.scope_key, '/' || array_to_string(p_names[1:(k.ord - 1)::int], '/')
+  from unnest(p_scope_keys::ltree[]) with ordinality k(scope_key, ord)
+  where k.ord > depth + 1
+  order by k.ord
+  on conflict (scope_key) do nothing;
+
+  with lvl as (
+    select k.ord, i.id
+    from unnest(p_scope_keys::ltree[]) with ordinality k(scope_key, ord)
+    join public.vn_inode i on i.scope_key = k.scope_key
+  )
+  insert into public.vn_dir_entry (parent_id, name, child_id)
+  select p.id, p_names[(c.ord - 1)::int], c.id
+  from lvl c
+  join lvl p on p.ord = c.ord - 1
+  where c.ord > depth + 1
+  order by c.ord
+  on conflict (parent_id, name) do nothing;
+
+  select id into leaf from public.vn_inode where scope_key = p_scope_keys[n + 1]::ltree;
+  if leaf is null then
+    raise exception 'Path % could not be created', p_names;
+  end if;
+  return leaf;
+end;
+$$;
+
 -- =========================
 -- STRICT ROW-LOCK ENFORCEMENT (trigger)
 -- =========================
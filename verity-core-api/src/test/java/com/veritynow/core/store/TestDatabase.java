@@ -0,0 +1,84 @@
+package com.veritynow.core.store;
+
+import java.io.InputStream;
+
+import javax.sql.DataSource;
+
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+import com.veritynow.core.store.tools.schema.SchemaManager;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * One embedded Postgres per test JVM, started on first use with schema/schema.sql applied, as the
+ * embedded-postgres profile does for the application. Tests start from {@link #clean()}.
+ */
+public final class TestDatabase {
+
+	private static final String SCHEMA = "/schema/schema.sql";
+
+	private static EmbeddedPostgres pg;
+	private static DataSource dataSource;
+	private static DSLContext dsl;
+
+	private TestDatabase() {
+	}
+
+	public static synchronized DSLContext dsl() throws Exception {
+		if (dsl == null) {
+			pg = EmbeddedPostgres.builder().start();
+			HikariConfig config = new HikariConfig();
+			config.setPoolName("testPostgresHikariCP");
+			config.setDataSource(pg.getPostgresDatabase());
+			config.setMaximumPoolSize(32);
+			dataSource = new HikariDataSource(config);
+			dsl = DSL.using(dataSource, SQLDialect.POSTGRES);
+			runScript(SCHEMA);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					((HikariDataSource) dataSource).close();
+					pg.close();
+				} catch (Exception ignore) {
+				}
+			}));
+		}
+		return dsl;
+	}
+
+	public static DataSource dataSource() throws Exception {
+		dsl();
+		return dataSource;
+	}
+
+	/**
+	 * Empty every table, identities start over.
+	 */
+	public static void clean() throws Exception {
+		dsl().execute("truncate table vn_blob, vn_node_version, vn_node_head, vn_dir_entry, vn_inode restart identity cascade");
+	}
+
+	/**
+	 * A new, empty database next to the shared one, for tests of the schema itself.
+	 */
+	public static synchronized DSLContext createDatabase(String name) throws Exception {
+		dsl().execute("create database " + name);
+		return DSL.using(pg.getDatabase("postgres", name), SQLDialect.POSTGRES);
+	}
+
+	public static void runScript(String resource) throws Exception {
+		runScript(dsl(), resource);
+	}
+
+	public static void runScript(DSLContext dsl, String resource) throws Exception {
+		try (InputStream is = TestDatabase.class.getResourceAsStream(resource)) {
+			if (!SchemaManager.executeScript(dsl, is)) {
+				throw new IllegalStateException("Unable to run " + resource);
+			}
+		}
+	}
+}
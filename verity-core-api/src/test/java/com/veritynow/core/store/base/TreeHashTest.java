@@ -0,0 +1,109 @@
+package com.veritynow.core.store.base;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.HashingService.Hasher;
+import com.veritynow.core.store.HashingSession;
+import com.veritynow.core.store.base.DefaultHashingService.Xxh3Backend;
+
+import net.openhft.hashing.LongTupleHashFunction;
+
+/**
+ * XXH3-TREE gives the same root whichever way the content reaches the hashing service (stream, file, channel,
+ * hasher), around the leaf boundaries, and that root is the one of the definition in {@link DefaultHashingService}.
+ */
+public class TreeHashTest {
+
+	private static final int LEAF = DefaultHashingService.TREE_LEAF_SIZE;
+
+	private static final long[] SIZES = { 1, 4096, LEAF - 1, LEAF, LEAF + 1, 2L * LEAF, 2L * LEAF + 12_345 };
+
+	private static DefaultHashingService hs;
+	private static byte[] content;
+
+	@TempDir
+	Path dir;
+
+	@BeforeAll
+	public static void setup() throws Exception {
+		// an odd chunk size, so reads straddle the leaf boundaries
+		hs = new DefaultHashingService(DefaultHashingService.TREE_ALGORITHM, 0, 100_000, Xxh3Backend.AUTO);
+		content = new byte[(int) SIZES[SIZES.length - 1]];
+		new SplittableRandom(42).nextBytes(content);
+	}
+
+	@Test
+	public void sameRootFromEveryPath() throws Exception {
+		for (long size : SIZES) {
+			int n = (int) size;
+			String expected = reference(n);
+
+			try (HashingSession s = hs.session(new ByteArrayInputStream(content, 0, n), false)) {
+				assertEquals(expected, s.hash(), "stream of " + n);
+				assertEquals(n, s.size());
+			}
+			try (HashingSession s = hs.session(new ByteArrayInputStream(content, 0, n), true)) {
+				assertEquals(expected, s.hash(), "cached stream of " + n);
+			}
+			Path target = dir.resolve("target-" + n);
+			try (HashingSession s = hs.session(new ByteArrayInputStream(content, 0, n), target)) {
+				assertEquals(expected, s.hash(), "stream to file of " + n);
+			}
+			try (HashingSession s = hs.session(target)) {
+				assertEquals(expected, s.hash(), "file of " + n);
+			}
+			try (HashingSession s = hs.session(Channels.newChannel(new ByteArrayInputStream(content, 0, n)))) {
+				assertEquals(expected, s.hash(), "channel of " + n);
+			}
+			assertEquals(expected, hasher(n, 65_537, false), "hasher of " + n);
+			assertEquals(expected, hasher(n, 1 << 20, true), "hasher of direct buffers of " + n);
+			Files.delete(target);
+		}
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static String hasher(int n, int piece, boolean direct) {
+		try (Hasher h = hs.newHasher()) {
+			for (int off = 0; off < n; off += piece) {
+				int len = Math.min(piece, n - off);
+				if (direct) {
+					ByteBuffer b = ByteBuffer.allocateDirect(len);
+					b.put(content, off, len).flip();
+					h.update(b);
+				} else {
+					h.update(content, off, len);
+				}
+			}
+			return h.digest();
+		}
+	}
+
+	// root = XXH3-128(leaf_0 || .. || leaf_n-1 || le64(size)), leaf_i the XXH3-128 of the i-th leaf (high64, low64 big-endian)
+	private static String reference(int size) {
+		LongTupleHashFunction xx128 = LongTupleHashFunction.xx128();
+		int leaves = (size + LEAF - 1) / LEAF;
+		ByteBuffer concat = ByteBuffer.allocate(leaves * 16 + 8);
+		for (int i = 0; i < leaves; i++) {
+			int off = i * LEAF;
+			long[] leaf = xx128.hashBytes(content, off, Math.min(LEAF, size - off));
+			concat.putLong(leaf[1]).putLong(leaf[0]);
+		}
+		concat.order(ByteOrder.LITTLE_ENDIAN).putLong(size);
+		long[] root = xx128.hashBytes(concat.array());
+		return HexFormat.of().formatHex(ByteBuffer.allocate(16).putLong(root[1]).putLong(root[0]).array());
+	}
+}
@@ -0,0 +1,94 @@
+package com.veritynow.core.store.base;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import net.openhft.hashing.LongTupleHashFunction;
+
+/**
+ * {@link Xxh3Java} against zero-allocation-hashing's one shot XXH3-128, an independent implementation,
+ * at the boundaries of every code path: the short paths (0-16, 17-128, 129-240), the internal buffer (256),
+ * a block of stripes (1024) and beyond, each hashed in one update and split into many.
+ */
+public class Xxh3JavaTest {
+
+	private static final LongTupleHashFunction REFERENCE = LongTupleHashFunction.xx128();
+
+	private static final int[] SIZES = { 0, 1, 3, 4, 8, 9, 16, 17, 128, 129, 240, 241, 255, 256, 257, 319, 320, 1023,
+			1024, 1025, 2048, 4096 + 7, 100_003 };
+
+	@Test
+	public void emptyInputKnownAnswer() {
+		Xxh3Java x = new Xxh3Java();
+		x.digest();
+		assertEquals(0x6001C324468D497FL, x.low64());
+		assertEquals(0x99AA06D3014798D8L, x.high64());
+	}
+
+	@Test
+	public void singleUpdateMatchesReference() {
+		for (int size : SIZES) {
+			byte[] content = content(size);
+			Xxh3Java x = new Xxh3Java();
+			x.update(content, 0, size);
+			assertMatches(content, x);
+		}
+	}
+
+	@Test
+	public void splitUpdatesMatchReference() {
+		SplittableRandom r = new SplittableRandom(7);
+		for (int size : SIZES) {
+			byte[] content = content(size);
+			for (int maxPiece : new int[] { 1, 15, 64, 255, 257, 1000 }) {
+				Xxh3Java x = new Xxh3Java();
+				int off = 0;
+				while (off < size) {
+					int n = Math.min(size - off, 1 + r.nextInt(maxPiece));
+					x.update(content, off, n);
+					off += n;
+				}
+				assertMatches(content, x);
+			}
+		}
+	}
+
+	@Test
+	public void digestLeavesTheStateUsable() {
+		byte[] content = content(5000);
+		Xxh3Java x = new Xxh3Java();
+		for (int off = 0; off < content.length; off += 100) {
+			x.update(content, off, 100);
+			x.digest();
+			assertEquals(REFERENCE.hashBytes(content, 0, off + 100)[0], x.low64(), "prefix of " + (off + 100));
+		}
+	}
+
+	@Test
+	public void resetStartsOver() {
+		byte[] content = content(1500);
+		Xxh3Java x = new Xxh3Java();
+		x.update(content(777), 0, 777);
+		x.reset();
+		x.update(content, 0, content.length);
+		assertMatches(content, x);
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static void assertMatches(byte[] content, Xxh3Java x) {
+		x.digest();
+		long[] expected = REFERENCE.hashBytes(content);
+		assertEquals(expected[0], x.low64(), "low64 of " + content.length + " bytes");
+		assertEquals(expected[1], x.high64(), "high64 of " + content.length + " bytes");
+	}
+
+	private static byte[] content(int size) {
+		byte[] b = new byte[size];
+		new SplittableRandom(size).nextBytes(b);
+		return b;
+	}
+}
@@ -0,0 +1,235 @@
+package com.veritynow.core.store.immutablestore;
+
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_INODE;
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_NODE_VERSION;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.TestDatabase;
+import com.veritynow.core.store.base.DefaultHashingService;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+import com.veritynow.core.store.txn.TransactionResult;
+
+/**
+ * What {@link BlobCollector} deletes: only blobs no live version and no delta references, and only once they
+ * have been idle (last_seen) and marked for at least the grace period.
+ */
+public class BlobCollectorTest {
+
+	private static final Duration GRACE = Duration.ofMillis(500);
+
+	@TempDir
+	Path root;
+
+	private DSLContext dsl;
+	private ImmutableRepository repo;
+	private ImmutableFSBackingStore store;
+	private BlobCollector collector;
+	private String algo;
+	private long inode;
+	private int seed;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		dsl = TestDatabase.dsl();
+		TestDatabase.clean();
+		repo = new ImmutableRepository(dsl);
+		DefaultHashingService hs = new DefaultHashingService("XXH3");
+		algo = hs.getAlgorithm();
+		BlobCatalog catalog = new BlobCatalog(repo, 1000);
+		store = new ImmutableFSBackingStore(root, repo, hs, null, null, null, catalog);
+		collector = new BlobCollector(store, repo, catalog, GRACE, Duration.ofDays(1), 100, 0, 10_000, 0);
+		inode = dsl.insertInto(VN_INODE).set(VN_INODE.PATH, "/").returning(VN_INODE.ID).fetchSingle().getId();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		collector.close();
+		store.close();
+	}
+
+	@Test
+	public void idleBlobIsCollectedAfterGrace() throws Exception {
+		String a = blob();
+		idle(a);
+
+		// marked by the first pass, deleted by the first pass at least grace later
+		assertEquals(0, collector.collectNow());
+		assertTrue(exists(a));
+		assertEquals(1, collector.stats().pending());
+
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(1, collector.collectNow());
+		assertFalse(exists(a));
+		assertFalse(store.getBlobBackend().exists(a + "-" + algo), "the file goes with the row");
+	}
+
+	@Test
+	public void recentlySeenBlobWaitsForGrace() throws Exception {
+		// just ingested, last_seen is now
+		String a = blob();
+
+		assertEquals(0, collector.collectNow());
+		assertEquals(0, collector.stats().pending());
+
+		// idle for grace now, marked, and deleted a grace after that
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(0, collector.collectNow());
+		assertTrue(exists(a));
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(1, collector.collectNow());
+		assertFalse(exists(a));
+	}
+
+	@Test
+	public void blobTouchedAfterItsMarkIsKept() throws Exception {
+		String a = blob();
+		String b = blob();
+		idle(a);
+		idle(b);
+		assertEquals(0, collector.collectNow());
+		assertEquals(2, collector.stats().pending());
+
+		Thread.sleep(GRACE.toMillis() + 100);
+		// a client checked it exists, or an ingest deduplicated against it
+		assertEquals(List.of(b), List.copyOf(store.existing(List.of(b))));
+		assertEquals(1, collector.collectNow());
+		assertFalse(exists(a));
+		assertTrue(exists(b));
+	}
+
+	@Test
+	public void onlyRolledBackVersionsLetTheirBlobGo() throws Exception {
+		String committed = blob();
+		String autoCommitted = blob();
+		String inFlight = blob();
+		String unresolved = blob();
+		String rolledBack = blob();
+		String none = blob();
+		version(committed, TransactionResult.COMMITTED);
+		version(autoCommitted, TransactionResult.AUTO_COMMITTED);
+		version(inFlight, TransactionResult.IN_FLIGHT);
+		version(unresolved, null);
+		version(rolledBack, TransactionResult.ROLLED_BACK);
+		for (String h : List.of(committed, autoCommitted, inFlight, unresolved, rolledBack, none)) {
+			idle(h);
+		}
+
+		collector.collectNow();
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(2, collector.collectNow());
+
+		assertTrue(exists(committed));
+		assertTrue(exists(autoCommitted));
+		assertTrue(exists(inFlight));
+		assertTrue(exists(unresolved));
+		assertFalse(exists(rolledBack));
+		assertFalse(exists(none));
+	}
+
+	@Test
+	public void versionAddedAfterTheMarkKeepsTheBlob() throws Exception {
+		String a = blob();
+		idle(a);
+		collector.collectNow();
+		Thread.sleep(GRACE.toMillis() + 100);
+
+		// the DELETE checks the references again
+		version(a, TransactionResult.COMMITTED);
+		assertEquals(0, collector.collectNow());
+		assertTrue(exists(a));
+	}
+
+	@Test
+	public void deltaBaseIsKeptWhileItsDeltaExists() throws Exception {
+		String base = blob();
+		String delta = deltaOf(base);
+		long version = version(delta, TransactionResult.COMMITTED);
+		idle(base);
+		idle(delta);
+
+		collector.collectNow();
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(0, collector.collectNow());
+		assertTrue(exists(base));
+
+		// once the delta goes, its base follows a pass later
+		dsl.update(VN_NODE_VERSION).set(VN_NODE_VERSION.TRANSACTION_RESULT, TransactionResult.ROLLED_BACK)
+				.where(VN_NODE_VERSION.ID.eq(version)).execute();
+		collector.collectNow();
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(1, collector.collectNow());
+		assertFalse(exists(delta));
+		assertTrue(exists(base));
+		Thread.sleep(GRACE.toMillis() + 100);
+		assertEquals(1, collector.collectNow());
+		assertFalse(exists(base));
+	}
+
+	@Test
+	public void deleteIfUnreferencedHonoursLastSeen() throws Exception {
+		String a = blob();
+		var justBefore = dsl.select(DSL.currentOffsetDateTime()).fetchSingle().value1().minusSeconds(60);
+
+		assertTrue(repo.deleteIfUnreferenced(dsl, a, algo, justBefore).isEmpty(), "seen after the cutoff");
+		idle(a);
+		assertTrue(repo.deleteIfUnreferenced(dsl, a, algo, justBefore).isPresent());
+		assertFalse(exists(a));
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private String blob() throws Exception {
+		byte[] b = new byte[1000 + seed];
+		new SplittableRandom(seed++).nextBytes(b);
+		return store.save("x", null, new ByteArrayInputStream(b)).orElseThrow().hash();
+	}
+
+	// a row stored as a delta against base, its payload does not matter here
+	private String deltaOf(String base) {
+		VnBlobRecord br = new VnBlobRecord();
+		br.setHash("delta-of-" + base);
+		br.setHashAlgorithm(algo);
+		br.setSize(10L);
+		br.setLayout(BlobLayout.RAW.name());
+		br.setCodec(BlobCodec.DELTA.name());
+		br.setDeltaBase(base);
+		br.setDeltaDepth(1);
+		repo.insert(br);
+		return br.getHash();
+	}
+
+	private void idle(String hash) {
+		dsl.execute("update vn_blob set last_seen = now() - interval '1 hour' where hash = ?", hash);
+	}
+
+	private long version(String hash, String result) {
+		return dsl.insertInto(VN_NODE_VERSION)
+				.set(VN_NODE_VERSION.INODE_ID, inode)
+				.set(VN_NODE_VERSION.SIZE, 1L)
+				.set(VN_NODE_VERSION.HASH, hash)
+				.set(VN_NODE_VERSION.HASH_ALGORITHM, algo)
+				.set(VN_NODE_VERSION.TRANSACTION_RESULT, result)
+				.returning(VN_NODE_VERSION.ID)
+				.fetchSingle()
+				.getId();
+	}
+
+	private boolean exists(String hash) {
+		return repo.findByHashAndAlgo(hash, algo).isPresent();
+	}
+}
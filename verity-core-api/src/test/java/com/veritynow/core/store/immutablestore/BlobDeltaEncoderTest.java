@@ -0,0 +1,102 @@
+package com.veritynow.core.store.immutablestore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link BlobDeltaEncoder#encode} and {@link BlobDeltaEncoder#apply} round trip over typical revisions of a blob.
+ */
+public class BlobDeltaEncoderTest {
+
+	private final BlobDeltaEncoder encoder = new BlobDeltaEncoder(16, 16 * 1024 * 1024, 1.0);
+
+	@Test
+	public void identicalContent() throws IOException {
+		byte[] base = random(100_000, 1);
+		byte[] delta = roundTrip(base, base.clone());
+		assertTrue(delta.length < 32, "delta of identical content is a single copy, got " + delta.length);
+	}
+
+	@Test
+	public void insertDeleteAndReplace() throws IOException {
+		byte[] base = random(200_000, 2);
+
+		// bytes inserted in the middle, at the start and at the end
+		roundTrip(base, splice(base, 50_000, 0, random(1234, 3)));
+		roundTrip(base, splice(base, 0, 0, random(7, 4)));
+		roundTrip(base, splice(base, base.length, 0, random(99, 5)));
+		// bytes removed
+		roundTrip(base, splice(base, 10_000, 5_000, new byte[0]));
+		// bytes overwritten, on and off the block grid
+		roundTrip(base, splice(base, 16 * 100, 16, random(16, 6)));
+		roundTrip(base, splice(base, 12_345, 3, random(3, 7)));
+		// moved blocks
+		byte[] moved = new byte[base.length];
+		System.arraycopy(base, 100_000, moved, 0, 100_000);
+		System.arraycopy(base, 0, moved, 100_000, 100_000);
+		byte[] delta = roundTrip(base, moved);
+		assertTrue(delta.length < 100, "swapped halves are two copies, got " + delta.length);
+	}
+
+	@Test
+	public void smallAndEmptyContent() throws IOException {
+		byte[] base = random(100, 8);
+		roundTrip(base, Arrays.copyOfRange(base, 30, 70));
+		roundTrip(base, Arrays.copyOfRange(base, 75, 100));
+		// nothing to gain below the size of the header and one instruction, stored whole
+		assertNull(encoder.encode(base, random(5, 9)));
+		assertNull(encoder.encode(base, new byte[0]));
+		assertNull(encoder.encode(new byte[0], random(40, 10)));
+	}
+
+	@Test
+	public void unrelatedContentIsRejected() {
+		BlobDeltaEncoder strict = new BlobDeltaEncoder(16, 16 * 1024 * 1024, 0.5);
+		assertNull(strict.encode(random(50_000, 11), random(50_000, 12)));
+		assertNotNull(strict.encode(random(50_000, 11), splice(random(50_000, 11), 100, 0, random(10, 13))));
+	}
+
+	@Test
+	public void wrongBaseIsDetected() {
+		byte[] base = random(10_000, 14);
+		byte[] delta = encoder.encode(base, splice(base, 10, 0, random(10, 15)));
+		assertThrows(IOException.class, () -> BlobDeltaEncoder.apply(random(9_999, 16), new ByteArrayInputStream(delta)));
+		byte[] truncated = Arrays.copyOf(delta, delta.length - 1);
+		assertThrows(IOException.class, () -> BlobDeltaEncoder.apply(base, new ByteArrayInputStream(truncated)));
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private byte[] roundTrip(byte[] base, byte[] target) throws IOException {
+		byte[] delta = encoder.encode(base, target);
+		assertNotNull(delta);
+		assertArrayEquals(target, BlobDeltaEncoder.apply(base, new ByteArrayInputStream(delta)));
+		return delta;
+	}
+
+	// content with length bytes at off replaced by insert
+	private static byte[] splice(byte[] content, int off, int length, byte[] insert) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(content, 0, off);
+		out.write(insert, 0, insert.length);
+		out.write(content, off + length, content.length - off - length);
+		return out.toByteArray();
+	}
+
+	private static byte[] random(int size, long seed) {
+		byte[] b = new byte[size];
+		new SplittableRandom(seed).nextBytes(b);
+		return b;
+	}
+}
@@ -0,0 +1,49 @@
+package com.veritynow.core.store.immutablestore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.veritynow.core.store.immutablestore.BlobScrubber.Bandwidth;
+
+/**
+ * The scrubber's read cap: a full second of budget after any idle gap, however long, and waits proportional to
+ * the overdraft.
+ */
+public class BlobScrubberBandwidthTest {
+
+	private static final long SECOND = 1_000_000_000L;
+	private static final long RATE = 50L * 1024 * 1024;
+
+	@Test
+	public void longIdleGapRefillsOneSecond() {
+		long t0 = 123_456_789L;
+		Bandwidth b = new Bandwidth(RATE, t0);
+		b.available = 0;
+
+		// the day between two passes, far past where elapsed * rate overflows
+		long now = t0 + 86_400L * SECOND;
+		assertEquals(0, b.reserve((int) RATE, now));
+		assertEquals(0, b.available);
+
+		// and the cap still holds right after it
+		assertEquals(SECOND / 2, b.reserve((int) (RATE / 2), now));
+	}
+
+	@Test
+	public void overdraftWaitsProportionally() {
+		long t0 = 0;
+		Bandwidth b = new Bandwidth(RATE, t0);
+		assertEquals(0, b.reserve((int) RATE, t0));
+		assertEquals(SECOND / 4, b.reserve((int) (RATE / 4), t0));
+		// a quarter second later the overdraft is covered
+		assertEquals(0, b.reserve(0, t0 + SECOND / 4));
+	}
+
+	@Test
+	public void clockGoingBackwardsAddsNothing() {
+		Bandwidth b = new Bandwidth(RATE, 10 * SECOND);
+		b.available = 0;
+		assertEquals(SECOND, b.reserve((int) RATE, 5 * SECOND));
+	}
+}
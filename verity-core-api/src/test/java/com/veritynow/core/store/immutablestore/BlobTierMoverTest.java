@@ -0,0 +1,282 @@
+package com.veritynow.core.store.immutablestore;
+
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_BLOB;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.TestDatabase;
+import com.veritynow.core.store.base.DefaultHashingService;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * {@link BlobTierMover} over a {@link TieredBlobBackend}: passes bounded in rows and bytes that carry on where
+ * the previous one stopped, and moves that never bring back a blob {@link BlobCollector} deleted.
+ */
+public class BlobTierMoverTest {
+
+	@TempDir
+	Path root;
+
+	private DSLContext dsl;
+	private ImmutableRepository repo;
+	private String algo;
+	private TieredBlobBackend tiers;
+	private BlobCatalog catalog;
+	private ImmutableFSBackingStore store;
+	private final List<AutoCloseable> closeables = new ArrayList<>();
+	private int seed;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		dsl = TestDatabase.dsl();
+		TestDatabase.clean();
+		repo = new ImmutableRepository(dsl);
+		DefaultHashingService hs = new DefaultHashingService("XXH3");
+		algo = hs.getAlgorithm();
+		tiers = new TieredBlobBackend(new FileSystemBlobBackend("hot", root.resolve("Blobs")),
+				new FileSystemBlobBackend("cold", root.resolve("Cold")), new BlobAccessTracker(1000), 1);
+		catalog = new BlobCatalog(repo, 0);
+		store = new ImmutableFSBackingStore(root, repo, hs, null, null, null, catalog, tiers, 4, 8);
+		closeables.add(store);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		for (AutoCloseable c : closeables) {
+			c.close();
+		}
+	}
+
+	@Test
+	public void passesCarryOnWhereThePreviousStopped() throws Exception {
+		List<String> hashes = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			hashes.add(blob(1000 + i));
+		}
+		BlobTierMover mover = mover(Long.MAX_VALUE, 3);
+
+		assertEquals(3, mover.move());
+		assertEquals(3, mover.move());
+		assertEquals(1, mover.move());
+		assertEquals(0, mover.move());
+		for (String h : hashes) {
+			assertFalse(tiers.getHot().exists(name(h)));
+			assertTrue(tiers.getCold().exists(name(h)));
+		}
+	}
+
+	@Test
+	public void passMovesAtMostItsBytes() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			blob(1000);
+		}
+		// two blobs of 1000 bytes fit, the third one waits for the next pass
+		BlobTierMover mover = mover(2500, 100);
+		assertEquals(2, mover.move());
+		assertEquals(2, mover.move());
+		assertEquals(1, mover.move());
+		assertEquals(0, mover.move());
+		assertEquals(5, tiers.stats().demoted());
+	}
+
+	@Test
+	public void recentlyReadBlobStaysHot() throws Exception {
+		String read = blob(1000);
+		String idle = blob(2000);
+		String fresh = blob(3000);
+		// written an hour ago, one of them read since
+		for (String h : List.of(read, idle)) {
+			Files.setLastModifiedTime(tiers.getHot().locate(name(h)).orElseThrow(),
+					FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(1).toMillis()));
+		}
+		read(read);
+		BlobTierMover mover = new BlobTierMover(tiers, repo, algo, Duration.ofMinutes(10), Long.MAX_VALUE, 100, 0);
+		closeables.add(mover);
+
+		assertEquals(1, mover.move());
+		assertTrue(tiers.getCold().exists(name(idle)));
+		assertTrue(tiers.getHot().exists(name(read)));
+		assertTrue(tiers.getHot().exists(name(fresh)));
+	}
+
+	@Test
+	public void collectedBlobIsNotPromoted() throws Exception {
+		String kept = blob(1000);
+		String gone = blob(2000);
+		BlobTierMover mover = mover(Long.MAX_VALUE, 100);
+		assertEquals(2, mover.move());
+
+		// both queued for promotion by a cold read, then one row is deleted before the pass
+		read(kept);
+		read(gone);
+		assertTrue(repo.deleteIfUnreferenced(gone, algo).isPresent());
+		BlobTierMover promoter = new BlobTierMover(tiers, repo, algo, Duration.ofHours(1), Long.MAX_VALUE, 100, 0);
+		closeables.add(promoter);
+		assertEquals(0, promoter.move());
+
+		assertTrue(tiers.getHot().exists(name(kept)));
+		assertFalse(tiers.getCold().exists(name(kept)));
+		assertFalse(tiers.getHot().exists(name(gone)), "promoted without a row");
+		assertEquals(1, tiers.stats().promoted());
+	}
+
+	@Test
+	public void collectorRacingTheMoverLosesNothing() throws Exception {
+		// a short grace so that blobs go idle, get marked and swept while being moved and ingested again
+		BlobCollector collector = new BlobCollector(store, repo, catalog, Duration.ofMillis(200), Duration.ofDays(1),
+				50, 0, 100_000, 0);
+		closeables.add(collector);
+		BlobTierMover mover = mover(Long.MAX_VALUE, 20);
+		Map<String, byte[]> contents = new ConcurrentHashMap<>();
+		List<byte[]> all = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			byte[] c = random(1000 + i);
+			all.add(c);
+		}
+		List<String> failures = new CopyOnWriteArrayList<>();
+		long until = System.nanoTime() + Duration.ofSeconds(4).toNanos();
+
+		ExecutorService pool = Executors.newCachedThreadPool();
+		List<Future<?>> work = new ArrayList<>();
+		try {
+			work.add(pool.submit(() -> {
+				while (System.nanoTime() < until) {
+					collector.collectNow();
+				}
+				return null;
+			}));
+			work.add(pool.submit(() -> {
+				while (System.nanoTime() < until) {
+					mover.move();
+				}
+				return null;
+			}));
+			for (int t = 0; t < 3; t++) {
+				work.add(pool.submit(() -> {
+					ThreadLocalRandom r = ThreadLocalRandom.current();
+					while (System.nanoTime() < until) {
+						byte[] c = all.get(r.nextInt(all.size()));
+						String hash;
+						try {
+							hash = store.save("x", null, new ByteArrayInputStream(c)).orElseThrow().hash();
+						} catch (IOException e) {
+							// collected between the insert race and the lookup, the caller retries
+							continue;
+						}
+						contents.put(hash, c);
+						// reads queue cold blobs for promotion
+						try {
+							store.read(hash).ifPresent(in -> {
+								try (in) {
+									in.readAllBytes();
+								} catch (IOException ignore) {
+								}
+							});
+						} catch (IOException ignore) {
+							// collected meanwhile
+						}
+						// under the hash lock a row has its bytes
+						repo.withHashLockTx(hash, algo, tx -> {
+							Optional<VnBlobRecord> row = repo.findByHashAndAlgo(tx, hash, algo);
+							if (row.isPresent() && !matches(row.get(), c)) {
+								failures.add(hash);
+							}
+							return null;
+						});
+						Thread.sleep(r.nextInt(5));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> f : work) {
+				f.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		assertEquals(List.of(), failures);
+		assertTrue(collector.stats().blobsDeleted() > 0, "the collector never got to delete anything");
+		assertTrue(tiers.stats().demoted() > 0, "the mover never got to demote anything");
+
+		// at rest every row has its bytes in one tier, and no file outlives its row
+		Set<String> rows = new HashSet<>();
+		for (VnBlobRecord row : dsl.selectFrom(VN_BLOB).fetch()) {
+			rows.add(name(row.getHash()));
+			assertTrue(matches(row, contents.get(row.getHash())), "blob " + row.getHash());
+			assertFalse(tiers.getHot().exists(name(row.getHash())) && tiers.getCold().exists(name(row.getHash())),
+					"in both tiers " + row.getHash());
+		}
+		Set<String> files = new HashSet<>();
+		tiers.forEach(e -> files.add(e.name()));
+		assertEquals(rows, files);
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	// demotes whatever was not read in the last instant
+	private BlobTierMover mover(long maxBytesPerPass, int maxBlobsPerPass) {
+		BlobTierMover mover = new BlobTierMover(tiers, repo, algo, Duration.ZERO, maxBytesPerPass, maxBlobsPerPass, 0);
+		closeables.add(mover);
+		return mover;
+	}
+
+	private String blob(int size) throws IOException {
+		return store.save("x", null, new ByteArrayInputStream(random(size))).orElseThrow().hash();
+	}
+
+	private void read(String hash) throws IOException {
+		try (InputStream in = store.read(hash).orElseThrow()) {
+			in.readAllBytes();
+		}
+	}
+
+	private boolean matches(VnBlobRecord row, byte[] content) throws IOException {
+		Optional<InputStream> in = store.scan(row);
+		if (in.isEmpty()) {
+			return false;
+		}
+		try (InputStream is = in.get()) {
+			return Arrays.equals(content, is.readAllBytes());
+		}
+	}
+
+	private String name(String hash) {
+		return hash + "-" + algo;
+	}
+
+	private byte[] random(int size) {
+		byte[] b = new byte[size];
+		new SplittableRandom(seed++).nextBytes(b);
+		return b;
+	}
+}
@@ -0,0 +1,171 @@
+package com.veritynow.core.store.immutablestore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.base.DefaultHashingService;
+
+/**
+ * {@link ChunkStore#sweepChunks}: one shard per pass, manifests whose blob row is gone are dropped with their
+ * chunks, and a row that appears while its manifest is being dropped keeps it.
+ */
+public class ChunkStoreTest {
+
+	@TempDir
+	Path root;
+
+	private DefaultHashingService hs;
+	private ChunkStore chunks;
+	private String algo;
+	private int seed;
+
+	// every file counts as old enough
+	private final Instant later = Instant.now().plusSeconds(3600);
+
+	@BeforeEach
+	public void setup() throws Exception {
+		hs = new DefaultHashingService("XXH3");
+		algo = hs.getAlgorithm();
+		chunks = new ChunkStore(root, hs, new FastCdcChunker(256, 1024, 4096), 0);
+	}
+
+	@Test
+	public void orphanManifestIsDroppedWithItsChunks() throws Exception {
+		byte[] kept = random(20_000);
+		byte[] gone = random(20_000);
+		String k = write(kept);
+		String g = write(gone);
+		Set<String> goneChunks = chunkNames(g);
+		goneChunks.removeAll(chunkNames(k));
+
+		// chunks in shards swept before the one of the manifest go with the next round
+		long deleted = sweepAll(Set.of(k));
+		assertFalse(chunks.exists(g));
+		deleted += sweepAll(Set.of(k));
+		assertEquals(goneChunks.size(), deleted);
+		for (String c : goneChunks) {
+			assertFalse(chunkFiles().contains(c), "chunk left " + c);
+		}
+		assertTrue(chunks.exists(k));
+		assertEquals(chunkNames(k), chunkFiles());
+		try (InputStream in = chunks.open(k)) {
+			assertArrayEquals(kept, in.readAllBytes());
+		}
+	}
+
+	@Test
+	public void passSweepsItsShardOnly() throws Exception {
+		String h = write(random(20_000));
+		Set<String> names = chunkNames(h);
+		String chunk = names.iterator().next();
+		int shard = Integer.parseInt(chunk.substring(0, 2), 16);
+		int other = (shard + 1) & 0xff;
+		while (prefixOf(other, names) || h.startsWith(String.format("%02x", other))) {
+			other = (other + 1) & 0xff;
+		}
+
+		// no row, but the pass is over another shard: the manifest and every chunk of the shard stay
+		chunks.sweepChunks(later, other, hashes -> Set.of());
+		assertTrue(chunks.exists(h));
+		assertTrue(chunkFiles().contains(chunk));
+
+		// the manifest is dropped by the pass over its own shard, the chunk by the pass over its own
+		chunks.sweepChunks(later, Integer.parseInt(h.substring(0, 2), 16), hashes -> Set.of());
+		assertFalse(chunks.exists(h));
+		assertTrue(chunks.sweepChunks(later, shard, hashes -> Set.of()) > 0);
+		assertFalse(chunkFiles().contains(chunk));
+	}
+
+	@Test
+	public void rowInsertedMeanwhileKeepsTheManifest() throws Exception {
+		byte[] content = random(20_000);
+		String h = write(content);
+		AtomicInteger lookups = new AtomicInteger();
+
+		// no row when the manifest is looked at, an ingest inserts it before the second lookup
+		long deleted = sweepAll(hashes -> lookups.incrementAndGet() == 1 ? Set.of() : new HashSet<>(hashes));
+		assertEquals(0, deleted);
+		assertEquals(2, lookups.get());
+		assertTrue(chunks.exists(h));
+		try (InputStream in = chunks.open(h)) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+		try (Stream<Path> s = Files.walk(root.resolve("Manifests"))) {
+			assertEquals(1, s.filter(Files::isRegularFile).count(), "a manifest left aside");
+		}
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private long sweepAll(Set<String> stored) throws IOException {
+		return sweepAll(hashes -> {
+			Set<String> out = new HashSet<>(hashes);
+			out.retainAll(stored);
+			return out;
+		});
+	}
+
+	private long sweepAll(Function<Collection<String>, Set<String>> stored) throws IOException {
+		long deleted = 0;
+		for (int shard = 0; shard < 256; shard++) {
+			deleted += chunks.sweepChunks(later, shard, stored);
+		}
+		return deleted;
+	}
+
+	private String write(byte[] content) throws IOException {
+		String hash = hs.hash(new ByteArrayInputStream(content), false);
+		Path file = root.resolve("content-" + hash);
+		Files.write(file, content);
+		chunks.write(hash, content.length, file);
+		Files.delete(file);
+		return hash;
+	}
+
+	private Set<String> chunkNames(String hash) throws IOException {
+		Set<String> names = new HashSet<>();
+		for (ChunkManifest.Chunk c : chunks.getManifest(hash).chunks()) {
+			names.add(c.hash() + "-" + algo);
+		}
+		return names;
+	}
+
+	private Set<String> chunkFiles() throws IOException {
+		Set<String> names = new HashSet<>();
+		try (Stream<Path> s = Files.walk(root.resolve("Chunks"))) {
+			s.filter(Files::isRegularFile).forEach(p -> names.add(p.getFileName().toString()));
+		}
+		return names;
+	}
+
+	private static boolean prefixOf(int shard, Set<String> names) {
+		String prefix = String.format("%02x", shard);
+		return names.stream().anyMatch(n -> n.startsWith(prefix));
+	}
+
+	private byte[] random(int size) {
+		byte[] b = new byte[size];
+		new SplittableRandom(seed++).nextBytes(b);
+		return b;
+	}
+}
@@ -0,0 +1,312 @@
+package com.veritynow.core.store.immutablestore;
+
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_BLOB;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.Store.KV;
+import com.veritynow.core.store.TestDatabase;
+import com.veritynow.core.store.base.DefaultHashingService;
+import com.veritynow.core.store.meta.BlobMeta;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * The lock-free ingest of {@link ImmutableFSBackingStore}: bytes published create-exclusive, then insertIgnore,
+ * then claim; against itself, against bulk ingest, and against {@link BlobCollector} purging under the hash lock.
+ */
+public class ConcurrentIngestTest {
+
+	private static final int THREADS = 16;
+
+	@TempDir
+	Path root;
+
+	private DSLContext dsl;
+	private ImmutableRepository repo;
+	private DefaultHashingService hs;
+	private ExecutorService pool;
+	private final List<AutoCloseable> closeables = new ArrayList<>();
+
+	@BeforeEach
+	public void setup() throws Exception {
+		dsl = TestDatabase.dsl();
+		TestDatabase.clean();
+		repo = new ImmutableRepository(dsl);
+		hs = new DefaultHashingService("XXH3");
+		pool = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		pool.shutdownNow();
+		for (AutoCloseable c : closeables) {
+			c.close();
+		}
+	}
+
+	@Test
+	public void sameContentFromManyThreadsIsStoredOnce() throws Exception {
+		ImmutableFSBackingStore store = store(null, null);
+		for (int round = 0; round < 5; round++) {
+			byte[] content = random(10_000 + round);
+			List<BlobMeta> metas = concurrently(THREADS, i -> store.save("x", null, new ByteArrayInputStream(content)).orElseThrow());
+
+			assertEquals(1, Set.copyOf(metas).size(), "one meta for all writers");
+			assertEquals(round + 1, dsl.fetchCount(VN_BLOB));
+			assertArrayEquals(content, read(store, metas.get(0).hash()));
+		}
+		assertEquals(5, blobFiles(store).size());
+		assertStagingEmpty();
+	}
+
+	@Test
+	public void samePackedContentFromManyThreadsIsStoredOnce() throws Exception {
+		PackStore packs = new PackStore(root, 64 * 1024, 1024 * 1024);
+		closeables.add(packs);
+		ImmutableFSBackingStore store = store(packs, null);
+		byte[] content = random(3000);
+		List<BlobMeta> metas = concurrently(THREADS, i -> store.save("x", null, new ByteArrayInputStream(content)).orElseThrow());
+
+		assertEquals(1, Set.copyOf(metas).size());
+		assertEquals(1, dsl.fetchCount(VN_BLOB));
+		assertEquals(BlobLayout.PACKED.name(), dsl.selectFrom(VN_BLOB).fetchSingle().getLayout());
+		assertArrayEquals(content, read(store, metas.get(0).hash()));
+		// every append is released, losers leave dead space only
+		assertEquals(List.of(), packs.compactableSegments(Duration.ZERO));
+		assertStagingEmpty();
+	}
+
+	@Test
+	public void singleAndBulkIngestOfOverlappingContent() throws Exception {
+		ImmutableFSBackingStore store = store(null, null);
+		List<byte[]> contents = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			contents.add(random(2000 + i));
+		}
+		concurrently(THREADS, t -> {
+			if (t % 2 == 0) {
+				Map<String, KV<BlobMeta>> batch = new LinkedHashMap<>();
+				for (int i = 0; i < contents.size(); i++) {
+					batch.put("k" + i, new KV<>(new BlobMeta("x" + i, null), new ByteArrayInputStream(contents.get(i))));
+				}
+				assertEquals(contents.size(), store.bulkCreate(batch).size());
+			} else {
+				for (byte[] c : contents) {
+					store.save("x", null, new ByteArrayInputStream(c)).orElseThrow();
+				}
+			}
+			return null;
+		});
+
+		assertEquals(contents.size(), dsl.fetchCount(VN_BLOB));
+		assertEquals(contents.size(), blobFiles(store).size());
+		for (byte[] c : contents) {
+			assertArrayEquals(c, read(store, hash(c)));
+		}
+		assertStagingEmpty();
+	}
+
+	@Test
+	public void staleFileUnderTheNameIsReplaced() throws Exception {
+		ImmutableFSBackingStore store = store(null, null);
+		byte[] content = random(5000);
+		String name = hash(content) + "-" + hs.getAlgorithm();
+
+		// left by a writer that died before its insert, or by a blob collected meanwhile
+		Path stale = Files.write(root.resolve("stale"), random(5000 + 1));
+		store.getBlobBackend().publish(stale, name);
+
+		BlobMeta bm = store.save("x", null, new ByteArrayInputStream(content)).orElseThrow();
+		assertArrayEquals(content, read(store, bm.hash()));
+	}
+
+	@Test
+	public void failedClaimWithdrawsTheRow() throws Exception {
+		AtomicBoolean failPublish = new AtomicBoolean(true);
+		FileSystemBlobBackend failing = new FileSystemBlobBackend("failing", root.resolve("Blobs")) {
+			@Override
+			public void publish(Path staged, String name) throws IOException {
+				if (failPublish.get()) {
+					throw new IOException("disk full");
+				}
+				super.publish(staged, name);
+			}
+		};
+		ImmutableFSBackingStore store = store(null, failing);
+		byte[] content = random(5000);
+		String name = hash(content) + "-" + hs.getAlgorithm();
+		Path stale = Files.write(root.resolve("stale"), random(5000 + 1));
+		Files.createDirectories(root.resolve("Blobs"));
+		failing.publishIfAbsent(stale, name);
+
+		// the row would point at the stale bytes, it is withdrawn
+		assertThrows(IOException.class, () -> store.save("x", null, new ByteArrayInputStream(content)));
+		assertEquals(0, dsl.fetchCount(VN_BLOB));
+
+		failPublish.set(false);
+		BlobMeta bm = store.save("x", null, new ByteArrayInputStream(content)).orElseThrow();
+		assertArrayEquals(content, read(store, bm.hash()));
+	}
+
+	@Test
+	public void collectorRacingIngestLosesNoBlob() throws Exception {
+		ImmutableFSBackingStore store = store(null, null);
+		BlobCatalog catalog = new BlobCatalog(repo, 0);
+		// a short grace so that blobs go idle, get marked and swept while being ingested again
+		BlobCollector collector = new BlobCollector(store, repo, catalog, Duration.ofMillis(200), Duration.ofDays(1),
+				50, 0, 100_000, 0);
+		closeables.add(collector);
+
+		Map<String, byte[]> contents = new ConcurrentHashMap<>();
+		List<byte[]> all = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			byte[] c = random(1000 + i);
+			all.add(c);
+			contents.put(hash(c), c);
+		}
+		List<String> lost = new CopyOnWriteArrayList<>();
+		long until = System.nanoTime() + Duration.ofSeconds(4).toNanos();
+
+		Future<?> collecting = Executors.newSingleThreadExecutor().submit(() -> {
+			while (System.nanoTime() < until) {
+				collector.collectNow();
+			}
+			return null;
+		});
+		concurrently(4, t -> {
+			ThreadLocalRandom r = ThreadLocalRandom.current();
+			while (System.nanoTime() < until) {
+				byte[] c = all.get(r.nextInt(all.size()));
+				String hash;
+				try {
+					hash = store.save("x", null, new ByteArrayInputStream(c)).orElseThrow().hash();
+				} catch (IOException e) {
+					// the row was collected between the insert race and the lookup, the caller retries
+					assertTrue(e.getMessage().contains("collected while being ingested"), e.getMessage());
+					continue;
+				}
+				// under the hash lock the collector cannot delete the row: if it is there its bytes are too
+				repo.withHashLockTx(hash, hs.getAlgorithm(), tx -> {
+					Optional<VnBlobRecord> row = repo.findByHashAndAlgo(tx, hash, hs.getAlgorithm());
+					if (row.isPresent() && !matches(store, row.get(), c)) {
+						lost.add(hash);
+					}
+					return null;
+				});
+				Thread.sleep(r.nextInt(5));
+			}
+			return null;
+		});
+		collecting.get();
+
+		assertTrue(collector.stats().blobsDeleted() > 0, "the collector never got to delete anything");
+		assertEquals(List.of(), lost);
+		// and at rest every row has its bytes
+		for (VnBlobRecord row : dsl.selectFrom(VN_BLOB).fetch()) {
+			assertTrue(matches(store, row, contents.get(row.getHash())), "blob " + row.getHash());
+		}
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	@FunctionalInterface
+	private interface Work<T> {
+		T run(int thread) throws Exception;
+	}
+
+	// run work on n threads started together, rethrows the first failure
+	private <T> List<T> concurrently(int n, Work<T> work) throws Exception {
+		CyclicBarrier start = new CyclicBarrier(n);
+		List<Future<T>> futures = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			int thread = i;
+			futures.add(pool.submit(() -> {
+				start.await();
+				return work.run(thread);
+			}));
+		}
+		List<T> out = new ArrayList<>();
+		for (Future<T> f : futures) {
+			out.add(f.get());
+		}
+		return out;
+	}
+
+	private ImmutableFSBackingStore store(PackStore packs, BlobBackend backend) {
+		ImmutableFSBackingStore store = new ImmutableFSBackingStore(root, repo, hs, null, null, packs,
+				new BlobCatalog(repo, 1000), backend, 4, 8);
+		closeables.add(store);
+		return store;
+	}
+
+	private boolean matches(ImmutableFSBackingStore store, VnBlobRecord row, byte[] content) throws IOException {
+		Optional<InputStream> in = store.scan(row);
+		if (in.isEmpty()) {
+			return false;
+		}
+		try (InputStream is = in.get()) {
+			return Arrays.equals(content, is.readAllBytes());
+		}
+	}
+
+	private static byte[] read(ImmutableFSBackingStore store, String hash) throws IOException {
+		try (InputStream in = store.read(hash).orElseThrow()) {
+			return in.readAllBytes();
+		}
+	}
+
+	private List<String> blobFiles(ImmutableFSBackingStore store) throws IOException {
+		List<String> names = new CopyOnWriteArrayList<>();
+		store.getBlobBackend().forEach(e -> names.add(e.name()));
+		return names;
+	}
+
+	private void assertStagingEmpty() throws IOException {
+		try (Stream<Path> s = Files.list(root.resolve("Blobs").resolve("incoming"))) {
+			assertFalse(s.findAny().isPresent(), "staged files left behind");
+		}
+	}
+
+	private String hash(byte[] content) throws IOException {
+		return hs.hash(new ByteArrayInputStream(content), false);
+	}
+
+	private static byte[] random(int size) {
+		byte[] b = new byte[size];
+		new SplittableRandom(size).nextBytes(b);
+		return b;
+	}
+}
@@ -0,0 +1,116 @@
+package com.veritynow.core.store.immutablestore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link FastCdcChunker} cuts content-defined chunks: sizes stay within bounds, the chunks rebuild the content,
+ * and an edit near the start only changes the chunks around it.
+ */
+public class FastCdcChunkerTest {
+
+	private static final int MIN = 2 * 1024;
+	private static final int AVG = 8 * 1024;
+	private static final int MAX = 64 * 1024;
+
+	private final FastCdcChunker chunker = new FastCdcChunker(MIN, AVG, MAX);
+
+	@Test
+	public void chunksRebuildTheContentWithinBounds() throws IOException {
+		byte[] content = random(2 * 1024 * 1024 + 333, 1);
+		List<byte[]> chunks = split(new ByteArrayInputStream(content));
+
+		ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+		for (int i = 0; i < chunks.size(); i++) {
+			byte[] c = chunks.get(i);
+			assertTrue(c.length <= MAX, "chunk " + i + " of " + c.length);
+			if (i < chunks.size() - 1) {
+				assertTrue(c.length > MIN, "chunk " + i + " of " + c.length);
+			}
+			rebuilt.write(c);
+		}
+		assertArrayEquals(content, rebuilt.toByteArray());
+		// normalized chunking keeps the mean near the average
+		double mean = (double) content.length / chunks.size();
+		assertTrue(mean > AVG / 2 && mean < AVG * 2, "mean chunk size " + mean);
+	}
+
+	@Test
+	public void boundariesDoNotDependOnReads() throws IOException {
+		byte[] content = random(1024 * 1024, 2);
+		List<String> whole = hashes(split(new ByteArrayInputStream(content)));
+		InputStream trickle = new ByteArrayInputStream(content) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1000));
+			}
+		};
+		assertEquals(whole, hashes(split(trickle)));
+	}
+
+	@Test
+	public void prefixInsertKeepsLaterChunks() throws IOException {
+		byte[] content = random(4 * 1024 * 1024, 3);
+		for (int inserted : new int[] { 1, 100, 5000 }) {
+			byte[] prefix = random(inserted, inserted);
+			byte[] edited = new byte[content.length + inserted];
+			System.arraycopy(prefix, 0, edited, 0, inserted);
+			System.arraycopy(content, 0, edited, inserted, content.length);
+
+			List<String> before = hashes(split(new ByteArrayInputStream(content)));
+			List<String> after = hashes(split(new ByteArrayInputStream(edited)));
+			Set<String> known = new HashSet<>(before);
+			long changed = after.stream().filter(h -> !known.contains(h)).count();
+			// the boundaries resynchronize within a chunk or two of the edit
+			assertTrue(changed <= 2, inserted + " bytes inserted changed " + changed + " of " + after.size() + " chunks");
+			assertEquals(before.get(before.size() - 1), after.get(after.size() - 1));
+		}
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private List<byte[]> split(InputStream in) throws IOException {
+		List<byte[]> chunks = new ArrayList<>();
+		chunker.split(in, (buf, off, len) -> chunks.add(Arrays.copyOfRange(buf, off, off + len)));
+		return chunks;
+	}
+
+	private static List<String> hashes(List<byte[]> chunks) {
+		List<String> out = new ArrayList<>(chunks.size());
+		for (byte[] c : chunks) {
+			out.add(HexFormat.of().formatHex(sha1(c)));
+		}
+		return out;
+	}
+
+	private static byte[] sha1(byte[] b) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(b);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] random(int size, long seed) {
+		byte[] b = new byte[size];
+		new SplittableRandom(seed).nextBytes(b);
+		return b;
+	}
+}
@@ -0,0 +1,214 @@
+package com.veritynow.core.store.immutablestore;
+
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_BLOB;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jooq.DSLContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.TestDatabase;
+import com.veritynow.core.store.base.DefaultHashingService;
+import com.veritynow.core.store.persistence.jooq.tables.records.VnBlobRecord;
+
+/**
+ * {@link PackCompactor} rewriting segments while blobs are appended, read and deleted: no append in flight is
+ * compacted away, every row is repointed, and every live blob reads back whatever the pass it is read during.
+ */
+public class PackCompactorTest {
+
+	@TempDir
+	Path root;
+
+	private DSLContext dsl;
+	private ImmutableRepository repo;
+	private PackStore packs;
+	private BlobCatalog catalog;
+	private ImmutableFSBackingStore store;
+	private String algo;
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+
+	@BeforeEach
+	public void setup() throws Exception {
+		dsl = TestDatabase.dsl();
+		TestDatabase.clean();
+		repo = new ImmutableRepository(dsl);
+		DefaultHashingService hs = new DefaultHashingService("XXH3");
+		algo = hs.getAlgorithm();
+		// small segments, so that they keep rolling over under the writers
+		packs = new PackStore(root, 8 * 1024, 32 * 1024);
+		catalog = new BlobCatalog(repo, 1000);
+		store = new ImmutableFSBackingStore(root, repo, hs, null, null, packs, catalog);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		pool.shutdownNow();
+		store.close();
+		packs.close();
+	}
+
+	@Test
+	public void compactionDuringAppendsAndReads() throws Exception {
+		// a ratio above 1 rewrites every sealed segment, whatever its live bytes
+		PackCompactor compactor = new PackCompactor(packs, repo, catalog, 2.0, 0, 0);
+		Map<String, byte[]> live = new ConcurrentHashMap<>();
+		List<String> hashes = new CopyOnWriteArrayList<>();
+		Set<String> deleted = ConcurrentHashMap.newKeySet();
+		List<String> failures = new CopyOnWriteArrayList<>();
+		AtomicInteger removed = new AtomicInteger();
+		long until = System.nanoTime() + Duration.ofSeconds(4).toNanos();
+
+		List<Future<?>> work = new ArrayList<>();
+		for (int w = 0; w < 4; w++) {
+			work.add(pool.submit(() -> {
+				ThreadLocalRandom r = ThreadLocalRandom.current();
+				while (System.nanoTime() < until) {
+					byte[] c = new byte[100 + r.nextInt(4000)];
+					r.nextBytes(c);
+					String hash = store.save("x", null, new ByteArrayInputStream(c)).orElseThrow().hash();
+					live.put(hash, c);
+					hashes.add(hash);
+				}
+				return null;
+			}));
+		}
+		for (int w = 0; w < 4; w++) {
+			work.add(pool.submit(() -> {
+				ThreadLocalRandom r = ThreadLocalRandom.current();
+				while (System.nanoTime() < until) {
+					if (hashes.isEmpty()) {
+						continue;
+					}
+					String hash = hashes.get(r.nextInt(hashes.size()));
+					byte[] expected = live.get(hash);
+					Optional<InputStream> in;
+					try {
+						in = store.read(hash);
+					} catch (IOException e) {
+						// a deleted row whose segment was compacted away meanwhile
+						if (!deleted.contains(hash)) {
+							failures.add(hash + ": " + e);
+						}
+						continue;
+					}
+					if (in.isEmpty()) {
+						if (!deleted.contains(hash)) {
+							failures.add(hash + ": not found");
+						}
+						continue;
+					}
+					try (InputStream is = in.get()) {
+						byte[] got = is.readAllBytes();
+						if (expected != null && !Arrays.equals(expected, got)) {
+							failures.add(hash + ": wrong bytes");
+						}
+					}
+				}
+				return null;
+			}));
+		}
+		// the collector, deleting rows so that compaction finds rows gone
+		work.add(pool.submit(() -> {
+			ThreadLocalRandom r = ThreadLocalRandom.current();
+			while (System.nanoTime() < until) {
+				if (hashes.size() > 10) {
+					String hash = hashes.get(r.nextInt(hashes.size()));
+					deleted.add(hash);
+					if (repo.deleteIfUnreferenced(hash, algo).isPresent()) {
+						catalog.invalidate(hash, algo);
+						live.remove(hash);
+					}
+				}
+				Thread.sleep(10);
+			}
+			return null;
+		}));
+		work.add(pool.submit(() -> {
+			while (System.nanoTime() < until) {
+				removed.addAndGet(compactor.compact());
+				// retired channels are closed by the next pass, readers get a pause to drain as they would an interval
+				Thread.sleep(20);
+			}
+			return null;
+		}));
+		for (Future<?> f : work) {
+			f.get();
+		}
+
+		assertEquals(List.of(), failures);
+		assertTrue(removed.get() > 0, "no segment was compacted");
+
+		// at rest: every row points at bytes that are there, and every live blob reads back
+		for (VnBlobRecord row : dsl.selectFrom(VN_BLOB).fetch()) {
+			assertTrue(live.containsKey(row.getHash()), "row of a deleted blob " + row.getHash());
+		}
+		assertEquals(live.size(), dsl.fetchCount(VN_BLOB));
+		for (Map.Entry<String, byte[]> e : live.entrySet()) {
+			try (InputStream in = store.read(e.getKey()).orElseThrow()) {
+				assertArrayEquals(e.getValue(), in.readAllBytes(), e.getKey());
+			}
+		}
+		// and a last pass at rest moves everything out of the segments sealed before it
+		List<Integer> sealed = packs.sealedSegments();
+		assertEquals(sealed.size(), compactor.compact());
+		assertTrue(Collections.disjoint(sealed, packs.sealedSegments()), "segments left " + packs.sealedSegments());
+		for (Map.Entry<String, byte[]> e : live.entrySet()) {
+			try (InputStream in = store.read(e.getKey()).orElseThrow()) {
+				assertArrayEquals(e.getValue(), in.readAllBytes(), e.getKey());
+			}
+		}
+		compactor.close();
+	}
+
+	@Test
+	public void segmentWithAnAppendInFlightIsKept() throws Exception {
+		PackCompactor compactor = new PackCompactor(packs, repo, catalog, 2.0, 0, 0);
+		Path payload = root.resolve("payload");
+		Files.write(payload, new byte[6000]);
+
+		// an append whose row is not inserted yet, then enough appends to seal its segment
+		PackStore.PackLocation pending = packs.append(payload);
+		for (int i = 0; i < 10; i++) {
+			packs.release(packs.append(payload).segment());
+		}
+		assertTrue(packs.sealedSegments().contains(pending.segment()));
+		assertFalse(packs.compactableSegments(Duration.ZERO).contains(pending.segment()));
+
+		compactor.compact();
+		assertTrue(packs.sealedSegments().contains(pending.segment()), "compacted with an append in flight");
+		assertFalse(packs.remove(pending.segment()));
+
+		packs.release(pending.segment());
+		assertTrue(packs.compactableSegments(Duration.ZERO).contains(pending.segment()));
+		// and the grace keeps a freshly sealed one
+		assertFalse(packs.compactableSegments(Duration.ofMinutes(5)).contains(pending.segment()));
+		compactor.close();
+	}
+}
@@ -0,0 +1,219 @@
+package com.veritynow.core.store.immutablestore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.veritynow.core.store.base.DefaultHashingService;
+import com.veritynow.core.store.immutablestore.UploadSessions.Upload;
+import com.veritynow.core.store.immutablestore.UploadSessions.UploadStatus;
+
+/**
+ * {@link UploadSessions}: parts in any order, resent, short or missing, and sessions left to expire. The size
+ * given at creation fixes every part's size, a session completes with all of its parts or not at all.
+ */
+public class UploadSessionsTest {
+
+	private static final int PART_SIZE = 1000;
+
+	@TempDir
+	Path root;
+
+	private DefaultHashingService hs;
+	private UploadSessions uploads;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		hs = new DefaultHashingService("XXH3");
+		uploads = new UploadSessions(root.resolve("Uploads"), hs, PART_SIZE, 100, 10_000, 10, Duration.ofHours(1), 3600);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		uploads.close();
+	}
+
+	@Test
+	public void partsInAnyOrderAssembleTheContent() throws Exception {
+		byte[] content = random(3500);
+		String id = create(content.length);
+
+		for (int part : new int[] { 3, 1, 0, 2 }) {
+			put(id, part, content);
+		}
+		UploadStatus status = uploads.status(id).orElseThrow();
+		assertEquals(List.of(0, 1, 2, 3), status.received());
+		assertEquals(3, status.lastPart());
+		assertEquals(4, status.hashedParts());
+
+		assertCompletes(id, content);
+	}
+
+	@Test
+	public void partsInParallel() throws Exception {
+		byte[] content = random(40 * PART_SIZE + 1);
+		String id = create(content.length);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> puts = new ArrayList<>();
+			for (int part = 40; part >= 0; part--) {
+				int p = part;
+				puts.add(pool.submit(() -> put(id, p, content)));
+			}
+			for (Future<?> f : puts) {
+				f.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertCompletes(id, content);
+	}
+
+	@Test
+	public void resentPartIsAConflict() throws Exception {
+		byte[] content = random(2500);
+		String id = create(content.length);
+		put(id, 0, content);
+
+		// whatever it holds, the part received first is kept
+		assertThrows(IllegalStateException.class,
+				() -> uploads.putPart(id, 0, new ByteArrayInputStream(random(PART_SIZE + 1))));
+		put(id, 1, content);
+		put(id, 2, content);
+		assertCompletes(id, content);
+	}
+
+	@Test
+	public void partCutShortIsSentAgain() throws Exception {
+		byte[] content = random(2500);
+		String id = create(content.length);
+
+		// a failed request: the part is not taken, and not in the way of the retry
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.putPart(id, 1, new ByteArrayInputStream(content, PART_SIZE, 400)));
+		assertEquals(List.of(), uploads.status(id).orElseThrow().received());
+		put(id, 1, content);
+
+		// the last part is short, by exactly the rest of the size
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.putPart(id, 2, new ByteArrayInputStream(content, 2 * PART_SIZE, 499)));
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.putPart(id, 2, new ByteArrayInputStream(random(PART_SIZE))));
+		put(id, 2, content);
+		put(id, 0, content);
+		assertCompletes(id, content);
+	}
+
+	@Test
+	public void missingShortLastPartIsNotComplete() throws Exception {
+		byte[] content = random(2500);
+		String id = create(content.length);
+		put(id, 0, content);
+		put(id, 1, content);
+
+		// two whole parts look like complete content, the size says a third one is due
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> uploads.complete(id));
+		assertTrue(e.getMessage().contains("[2]"), e.getMessage());
+		assertTrue(uploads.status(id).isPresent(), "the session stays open");
+
+		put(id, 2, content);
+		assertCompletes(id, content);
+	}
+
+	@Test
+	public void partsOutsideTheSizeAreRejected() throws Exception {
+		byte[] content = random(2000);
+		String id = create(content.length);
+
+		// 2000 bytes are two whole parts, there is no part 2
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.putPart(id, 2, new ByteArrayInputStream(random(10))));
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.putPart(id, 1, new ByteArrayInputStream(random(PART_SIZE + 1))));
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.putPart(id, 1, new ByteArrayInputStream(new byte[0])));
+		put(id, 1, content);
+		put(id, 0, content);
+		assertCompletes(id, content);
+	}
+
+	@Test
+	public void createChecksTheSize() {
+		assertThrows(IllegalArgumentException.class, () -> create(0));
+		assertThrows(IllegalArgumentException.class, () -> create(-1));
+		assertThrows(IllegalArgumentException.class, () -> create((long) UploadSessions.MAX_PARTS * PART_SIZE + 1));
+	}
+
+	@Test
+	public void untouchedSessionExpires() throws Exception {
+		uploads.close();
+		uploads = new UploadSessions(root.resolve("Uploads"), hs, PART_SIZE, 100, 10_000, 10, Duration.ofMillis(200), 1);
+		byte[] content = random(1500);
+		String id = create(content.length);
+		put(id, 0, content);
+		Path file = root.resolve("Uploads").resolve(id);
+		assertTrue(Files.exists(file));
+
+		// swept every second at most
+		long until = System.currentTimeMillis() + 5000;
+		while (uploads.status(id).isPresent() && System.currentTimeMillis() < until) {
+			Thread.sleep(100);
+		}
+		assertFalse(uploads.status(id).isPresent(), "not expired");
+		assertEquals(1, uploads.stats().expired());
+		assertFalse(Files.exists(file));
+		assertThrows(NoSuchElementException.class, () -> put(id, 1, content));
+		assertThrows(NoSuchElementException.class, () -> uploads.complete(id));
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private String create(long size) throws IOException {
+		return uploads.create("/a", "CREATE", "a.bin", null, 0, size).id();
+	}
+
+	private UploadStatus put(String id, int part, byte[] content) throws IOException {
+		int from = part * PART_SIZE;
+		int length = Math.min(PART_SIZE, content.length - from);
+		return uploads.putPart(id, part, new ByteArrayInputStream(content, from, length));
+	}
+
+	private void assertCompletes(String id, byte[] content) throws IOException {
+		Upload up = uploads.complete(id);
+		try {
+			assertEquals(content.length, up.size());
+			assertEquals(hs.hash(new ByteArrayInputStream(content), false), up.hash());
+			assertArrayEquals(content, Files.readAllBytes(up.content()));
+		} finally {
+			Files.deleteIfExists(up.content());
+		}
+		assertFalse(uploads.status(id).isPresent());
+		assertThrows(NoSuchElementException.class, () -> uploads.complete(id));
+	}
+
+	private static byte[] random(int size) {
+		byte[] b = new byte[size];
+		new SplittableRandom(size).nextBytes(b);
+		return b;
+	}
+}
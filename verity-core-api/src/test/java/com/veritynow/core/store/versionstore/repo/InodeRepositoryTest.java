@@ -0,0 +1,165 @@
+package com.veritynow.core.store.versionstore.repo;
+
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_DIR_ENTRY;
+import static com.veritynow.core.store.persistence.jooq.Tables.VN_INODE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.veritynow.core.store.TestDatabase;
+import com.veritynow.core.store.versionstore.model.Inode;
+
+/**
+ * vn_inode paths: public.vn_resolve_or_create_inode under concurrent creators of overlapping paths, and the
+ * upgrade of a database that still holds vn_inode_path_segment.
+ */
+public class InodeRepositoryTest {
+
+	private static final int THREADS = 16;
+
+	private DSLContext dsl;
+	private InodeRepository inodes;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		dsl = TestDatabase.dsl();
+		TestDatabase.clean();
+		inodes = new InodeRepository(dsl);
+	}
+
+	@Test
+	public void overlappingPathsCreatedConcurrently() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		Set<String> expected = new TreeSet<>(List.of("/"));
+		try {
+			for (int round = 0; round < 10; round++) {
+				String r = "/r" + round;
+				List<String> paths = List.of(r + "/a/b/c", r + "/a/b/d", r + "/a/e", r + "/a/b/c/f/g", r + "/h", r);
+				for (String p : paths) {
+					expected.addAll(prefixes(p));
+				}
+				CyclicBarrier start = new CyclicBarrier(THREADS);
+				List<Future<Map<String, Long>>> futures = new ArrayList<>();
+				for (int t = 0; t < THREADS; t++) {
+					futures.add(pool.submit(() -> {
+						List<String> mine = new ArrayList<>(paths);
+						Collections.shuffle(mine, ThreadLocalRandom.current());
+						start.await();
+						Map<String, Long> ids = new HashMap<>();
+						for (String p : mine) {
+							Inode inode = inodes.resolveOrCreateInode(p);
+							assertEquals(p, inode.path());
+							ids.put(p, inode.id());
+						}
+						return ids;
+					}));
+				}
+				Map<String, Long> first = futures.get(0).get();
+				for (Future<Map<String, Long>> f : futures) {
+					assertEquals(first, f.get(), "every creator resolves the same inodes");
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		// one inode per path, one entry per inode but the root, paths matching the tree
+		assertEquals(expected, Set.copyOf(dsl.select(VN_INODE.PATH).from(VN_INODE).fetch(VN_INODE.PATH)));
+		assertEquals(expected.size(), dsl.fetchCount(VN_INODE));
+		assertEquals(expected.size() - 1, dsl.fetchCount(VN_DIR_ENTRY));
+		assertTreeMatchesPaths(dsl);
+	}
+
+	@Test
+	public void pathSegmentsAreUpgradedToPaths() throws Exception {
+		DSLContext old = TestDatabase.createDatabase("vn_upgrade_" + System.nanoTime());
+		// vn_inode and its path segments as they were before vn_inode.path
+		old.execute("create extension if not exists ltree");
+		old.execute("create table vn_inode (created_at timestamp(6) with time zone not null default now(), "
+				+ "id bigint generated by default as identity primary key, scope_key ltree unique)");
+		old.execute("create table vn_dir_entry (child_id bigint not null references vn_inode, "
+				+ "created_at timestamp(6) with time zone not null default now(), "
+				+ "id bigint generated by default as identity primary key, parent_id bigint not null references vn_inode, "
+				+ "name varchar(255) not null, unique (parent_id, name))");
+		old.execute("create table vn_inode_path_segment (ord int not null, "
+				+ "created_at timestamp(6) with time zone not null default now(), "
+				+ "dir_entry_id bigint not null references vn_dir_entry, "
+				+ "id bigint generated by default as identity primary key, inode_id bigint not null references vn_inode, "
+				+ "unique (inode_id, ord))");
+		Map<String, Long> ids = new HashMap<>();
+		Map<String, Long> entries = new HashMap<>();
+		for (String p : List.of("/", "/a", "/a/b", "/a/b/c", "/x")) {
+			long id = old.fetchSingle("insert into vn_inode (scope_key) values (?::ltree) returning id",
+					PathKeyCodec.toLTree(p)).get(0, Long.class);
+			ids.put(p, id);
+			if (!p.equals("/")) {
+				String parent = p.lastIndexOf('/') == 0 ? "/" : p.substring(0, p.lastIndexOf('/'));
+				entries.put(p, old.fetchSingle("insert into vn_dir_entry (parent_id, name, child_id) values (?, ?, ?) "
+						+ "returning id", ids.get(parent), p.substring(p.lastIndexOf('/') + 1), id).get(0, Long.class));
+				List<String> down = prefixes(p);
+				for (int ord = 1; ord < down.size(); ord++) {
+					old.execute("insert into vn_inode_path_segment (inode_id, ord, dir_entry_id) values (?, ?, ?)", id,
+							ord - 1, entries.get(down.get(ord)));
+				}
+			}
+		}
+
+		TestDatabase.runScript(old, "/schema/schema.sql");
+		for (Map.Entry<String, Long> e : ids.entrySet()) {
+			assertEquals(e.getKey(),
+					old.fetchSingle("select path from vn_inode where id = ?", e.getValue()).get(0, String.class));
+		}
+		assertNull(old.fetchSingle("select to_regclass('public.vn_inode_path_segment')::text").get(0, String.class));
+		assertEquals("NO", old.fetchSingle("select is_nullable from information_schema.columns "
+				+ "where table_name = 'vn_inode' and column_name = 'path'").get(0, String.class));
+
+		// applied again it changes nothing, and the upgraded tree keeps growing
+		TestDatabase.runScript(old, "/schema/schema.sql");
+		InodeRepository upgraded = new InodeRepository(old);
+		assertEquals(ids.get("/a/b/c"), upgraded.resolveOrCreateInode("/a/b/c").id());
+		upgraded.resolveOrCreateInode("/a/b/d/e");
+		assertTreeMatchesPaths(old);
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	// "/", "/a", "/a/b" for "/a/b"
+	private static List<String> prefixes(String path) {
+		List<String> out = new ArrayList<>(List.of("/"));
+		int i = 0;
+		while ((i = path.indexOf('/', i + 1)) > 0) {
+			out.add(path.substring(0, i));
+		}
+		if (!path.equals("/")) {
+			out.add(path);
+		}
+		return out;
+	}
+
+	// every dir entry joins a parent to a child whose path is the parent's and the entry name
+	private static void assertTreeMatchesPaths(DSLContext dsl) {
+		for (Record r : dsl.fetch("select p.path as parent, d.name, c.path as child from vn_dir_entry d "
+				+ "join vn_inode p on p.id = d.parent_id join vn_inode c on c.id = d.child_id")) {
+			String parent = r.get("parent", String.class);
+			assertEquals((parent.equals("/") ? "" : parent) + "/" + r.get("name", String.class),
+					r.get("child", String.class));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.veritynow.rest.api;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.veritynow.core.store.meta.BlobMeta;
+
+/**
+ * Range handling of /api/read/content for a blob that is not a plain file (packed, compressed, chunked or delta),
+ * so its content only comes as a stream: a Range the controller ignores must give the full content, not a 416.
+ */
+public class StoreControllerTest {
+
+	private static final String HASH = "0123456789abcdef0123456789abcdef";
+	private static final String ETAG = "\"" + HASH + "\"";
+
+	private final byte[] blob = new byte[10_000];
+
+	private MockMvc mvc;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		new SplittableRandom(5).nextBytes(blob);
+
+		StoreService storeService = mock(StoreService.class);
+		when(storeService.getContentMeta(HASH))
+				.thenReturn(Optional.of(new BlobMeta("XXH3", HASH, "x.bin", "application/octet-stream", blob.length)));
+		when(storeService.getContentPath(HASH)).thenReturn(Optional.empty());
+		when(storeService.getContent(HASH)).thenAnswer(i -> Optional.of(new ByteArrayInputStream(blob)));
+		when(storeService.getContent(eq(HASH), anyLong(), anyLong())).thenAnswer(i -> {
+			int off = (int) i.getArgument(1, Long.class).longValue();
+			int len = (int) i.getArgument(2, Long.class).longValue();
+			return Optional.of(new ByteArrayInputStream(blob, off, len));
+		});
+
+		mvc = MockMvcBuilders.standaloneSetup(new StoreController(storeService, "vn", 0)).build();
+	}
+
+	@Test
+	public void multipleRangesGiveFullContent() throws Exception {
+		MvcResult r = perform(read().header(HttpHeaders.RANGE, "bytes=0-9,100-199"));
+		mvc.perform(asyncDispatch(r))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+				.andExpect(content().bytes(blob));
+	}
+
+	@Test
+	public void staleIfRangeGivesFullContent() throws Exception {
+		MvcResult r = perform(read().header(HttpHeaders.RANGE, "bytes=100-199").header(HttpHeaders.IF_RANGE,
+				"\"another-hash\""));
+		mvc.perform(asyncDispatch(r))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+				.andExpect(content().bytes(blob));
+	}
+
+	@Test
+	public void matchingIfRangeGivesTheRange() throws Exception {
+		MvcResult r = perform(read().header(HttpHeaders.RANGE, "bytes=100-199").header(HttpHeaders.IF_RANGE, ETAG));
+		mvc.perform(asyncDispatch(r))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 100-199/" + blob.length))
+				.andExpect(content().bytes(Arrays.copyOfRange(blob, 100, 200)));
+	}
+
+	@Test
+	public void rangePastTheEndIsNotSatisfiable() throws Exception {
+		mvc.perform(read().header(HttpHeaders.RANGE, "bytes=" + blob.length + "-"))
+				.andExpect(status().isRequestedRangeNotSatisfiable())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + blob.length));
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static MockHttpServletRequestBuilder read() {
+		return post("/api/read/content").contentType(MediaType.APPLICATION_JSON).content("{\"hash\":\"" + HASH + "\"}");
+	}
+
+	private MvcResult perform(MockHttpServletRequestBuilder builder) throws Exception {
+		return mvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+	}
+}
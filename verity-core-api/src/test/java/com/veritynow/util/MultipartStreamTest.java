@@ -0,0 +1,175 @@
+package com.veritynow.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import com.veritynow.util.MultipartStream.Part;
+
+/**
+ * {@link MultipartStream} over bodies delivered a few bytes at a time, so that delimiters and headers straddle
+ * buffer fills, with a preamble, near-miss delimiters in the content and truncated bodies.
+ */
+public class MultipartStreamTest {
+
+	private static final String BOUNDARY = "----vn-boundary-7MA4YWxkTrZu0gW";
+
+	@Test
+	public void partsAcrossBufferFills() throws IOException {
+		// larger than the 64K window, with bytes that look like the start of a delimiter
+		byte[] big = random(3 * 64 * 1024 + 17);
+		byte[] nearMiss = ("a\r\n--" + BOUNDARY.substring(0, 10) + "b\r\n-\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		byte[] body = body(null, field("meta", "{\"name\":\"x\"}"), file("content", "x.bin", big),
+				file("other", "y.bin", nearMiss));
+
+		for (int piece : new int[] { 1, 7, 4093, 65_536 }) {
+			try (MultipartStream ms = new MultipartStream(trickle(body, piece), BOUNDARY, 0)) {
+				Part meta = ms.next().orElseThrow();
+				assertEquals("meta", meta.name());
+				assertEquals("{\"name\":\"x\"}", meta.text(1024));
+
+				Part content = ms.next().orElseThrow();
+				assertEquals("content", content.name());
+				assertEquals("x.bin", content.filename());
+				assertEquals("application/octet-stream", content.contentType());
+				assertArrayEquals(big, readAll(content.content(), piece), "piece " + piece);
+
+				assertArrayEquals(nearMiss, ms.next().orElseThrow().content().readAllBytes());
+				assertTrue(ms.next().isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void preambleIsSkipped() throws IOException {
+		byte[] body = body("This is the preamble, to be ignored.\r\n--not-the-boundary\r\n",
+				field("a", "1"), field("b", "2"));
+		try (MultipartStream ms = new MultipartStream(trickle(body, 3), BOUNDARY, 0)) {
+			assertEquals("1", ms.next().orElseThrow().text(10));
+			assertEquals("2", ms.next().orElseThrow().text(10));
+			assertTrue(ms.next().isEmpty());
+		}
+	}
+
+	@Test
+	public void unreadPartIsSkipped() throws IOException {
+		byte[] body = body(null, file("content", "x.bin", random(200_000)), field("after", "ok"));
+		try (MultipartStream ms = new MultipartStream(trickle(body, 1000), BOUNDARY, 0)) {
+			Part first = ms.next().orElseThrow();
+			first.content().readNBytes(10);
+			Part second = ms.next().orElseThrow();
+			assertEquals("after", second.name());
+			assertEquals("ok", second.text(10));
+			// a skipped part reads as ended
+			assertEquals(-1, first.content().read());
+		}
+	}
+
+	@Test
+	public void truncatedBodyFails() throws IOException {
+		byte[] body = body(null, file("content", "x.bin", random(100_000)));
+
+		// cut inside the content
+		byte[] inContent = Arrays.copyOf(body, body.length / 2);
+		MultipartStream ms = new MultipartStream(trickle(inContent, 999), BOUNDARY, 0);
+		Part p = ms.next().orElseThrow();
+		assertThrows(EOFException.class, () -> p.content().readAllBytes());
+		// and so does draining it
+		assertThrows(EOFException.class, ms::close);
+
+		// cut inside the headers
+		byte[] inHeaders = Arrays.copyOf(body, BOUNDARY.length() + 20);
+		MultipartStream headers = new MultipartStream(trickle(inHeaders, 5), BOUNDARY, 0);
+		assertThrows(EOFException.class, headers::next);
+
+		// no boundary at all
+		MultipartStream none = new MultipartStream(trickle(random(1000), 100), BOUNDARY, 0);
+		assertThrows(EOFException.class, none::next);
+	}
+
+	@Test
+	public void partSizeIsBounded() throws IOException {
+		byte[] body = body(null, file("content", "x.bin", random(10_000)));
+		MultipartStream ms = new MultipartStream(trickle(body, 512), BOUNDARY, 5_000);
+		Part p = ms.next().orElseThrow();
+		assertThrows(MaxUploadSizeExceededException.class, () -> p.content().readAllBytes());
+	}
+
+	@Test
+	public void boundaryOfContentType() {
+		assertEquals(Optional.of("abc"), MultipartStream.boundary("multipart/form-data; boundary=\"abc\""));
+		assertEquals(Optional.of("xyz"), MultipartStream.boundary("multipart/mixed;boundary=xyz"));
+		assertFalse(MultipartStream.boundary("application/json").isPresent());
+		assertFalse(MultipartStream.boundary(null).isPresent());
+	}
+
+	/** HELPERS DOWN HERE **/
+
+	private static byte[] body(String preamble, byte[]... parts) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (preamble != null) {
+			out.write(preamble.getBytes(StandardCharsets.ISO_8859_1));
+		}
+		for (byte[] part : parts) {
+			out.write(("--" + BOUNDARY + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			out.write(part);
+			out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+		}
+		out.write(("--" + BOUNDARY + "--\r\nepilogue").getBytes(StandardCharsets.ISO_8859_1));
+		return out.toByteArray();
+	}
+
+	private static byte[] field(String name, String value) {
+		return ("Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] file(String name, String filename, byte[] content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename + "\"\r\n"
+				+ "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		out.write(content);
+		return out.toByteArray();
+	}
+
+	private static byte[] random(int size) {
+		byte[] b = new byte[size];
+		new SplittableRandom(size).nextBytes(b);
+		return b;
+	}
+
+	// a stream that never returns more than piece bytes per read, like a slow network
+	private static InputStream trickle(byte[] body, int piece) {
+		return new ByteArrayInputStream(body) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, piece));
+			}
+		};
+	}
+
+	private static byte[] readAll(InputStream in, int piece) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[Math.max(1, piece / 3)];
+		int n;
+		while ((n = in.read(buf, 0, buf.length)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}